@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import ch.dvbern.oss.lib.excelmerger.ColumnAutoSizer;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Anpassen der Spaltenbreiten: {@link Sheet#autoSizeColumn(int)} im Vergleich mit dem {@link ColumnAutoSizer}, der
+ * jede Zeile einmal ausmisst. Das Sheet hat {@link #COLUMNS} Spalten mit Text und Zahlen. Es werden nur die Breiten
+ * veraendert, das Sheet wird darum fuer alle Aufrufe verwendet.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class ColumnAutoSizerBenchmark {
+
+	private static final int COLUMNS = 3;
+
+	@Param({ "1000", "20000" })
+	private int rows;
+
+	private XSSFWorkbook workbook;
+	private Sheet sheet;
+
+	@Setup(Level.Trial)
+	public void createSheet() {
+		workbook = new XSSFWorkbook();
+		sheet = workbook.createSheet(TemplateLayout.SHEET_NAME);
+		for (int i = 0; i < rows; i++) {
+			Row row = sheet.createRow(i);
+			row.createCell(0).setCellValue("Name " + i);
+			row.createCell(1).setCellValue(i * 1.5);
+			row.createCell(2).setCellValue("Strasse " + (i % 97) + ", " + (3000 + i % 1000) + " Bern");
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void closeWorkbook() throws IOException {
+		workbook.close();
+	}
+
+	@Benchmark
+	public Sheet autoSizeColumn() {
+		for (int column = 0; column < COLUMNS; column++) {
+			sheet.autoSizeColumn(column);
+		}
+
+		return sheet;
+	}
+
+	@Benchmark
+	public Sheet columnAutoSizer() {
+		ColumnAutoSizer autoSizer = ColumnAutoSizer.allColumns();
+		for (Row row : sheet) {
+			autoSizer.track(row);
+		}
+		autoSizer.applyAutoSize(sheet);
+
+		return sheet;
+	}
+}
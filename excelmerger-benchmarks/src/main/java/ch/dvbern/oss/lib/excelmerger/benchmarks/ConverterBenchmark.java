@@ -0,0 +1,144 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.benchmarks;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.StringColorCellDTO;
+import ch.dvbern.oss.lib.excelmerger.converters.Converter;
+import ch.dvbern.oss.lib.excelmerger.converters.StandardConverters;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Alle {@link StandardConverters}, jeweils fuer einen Platzhalter, der die ganze Zelle fuellt, und einen Platzhalter
+ * innerhalb eines Textes. Vor jeder Konvertierung wird der Platzhalter (und der Style) wieder in die Zelle
+ * geschrieben, {@link #baseline()} misst nur dieses Zuruecksetzen.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ConverterBenchmark {
+
+	private static final String PATTERN = "{value}";
+	private static final String SAMPLE_TEXT = "Muster";
+	private static final XSSFColor RED = new XSSFColor(new byte[] { (byte) 255, 0, 0 }, null);
+
+	/**
+	 * Die Converter mit einem typischen Wert
+	 */
+	public enum Case {
+		STRING(StandardConverters.STRING_CONVERTER, SAMPLE_TEXT),
+		STRING_COLORED(StandardConverters.STRING_COLORED_CONVERTER, new StringColorCellDTO(SAMPLE_TEXT, RED)),
+		DATE(StandardConverters.DATE_CONVERTER, LocalDate.of(2017, 12, 24)),
+		DATETIME(StandardConverters.DATETIME_CONVERTER, LocalDateTime.of(2017, 12, 24, 18, 30)),
+		INTEGER(StandardConverters.INTEGER_CONVERTER, 42),
+		LONG(StandardConverters.LONG_CONVERTER, 42L),
+		BIGDECIMAL(StandardConverters.BIGDECIMAL_CONVERTER, new BigDecimal("1234.56")),
+		PERCENT(StandardConverters.PERCENT_CONVERTER, new BigDecimal("12.5")),
+		BOOLEAN(StandardConverters.BOOLEAN_CONVERTER, Boolean.TRUE),
+		BOOLEAN_X(StandardConverters.BOOLEAN_X_CONVERTER, Boolean.TRUE),
+		CELL_COLORING(StandardConverters.CELL_COLORING_CONVERTER.apply(RED), Boolean.TRUE),
+		AUTO_HEIGHT(StandardConverters.autoHeightConverter(StandardConverters.STRING_CONVERTER), SAMPLE_TEXT),
+		DO_NOTHING(StandardConverters.DO_NOTHING_CONVERTER, SAMPLE_TEXT);
+
+		@Nonnull
+		private final Converter<?> converter;
+		@Nullable
+		private final Object value;
+
+		Case(@Nonnull Converter<?> converter, @Nullable Object value) {
+			this.converter = converter;
+			this.value = value;
+		}
+
+		void convert(@Nonnull Cell cell) {
+			converter.setCellValue(cell, PATTERN, value);
+		}
+	}
+
+	@Param
+	private Case converter;
+
+	/**
+	 * CELL: die Zelle enthaelt nur den Platzhalter, TEXT: der Platzhalter steht in einem Text
+	 */
+	@Param({ "CELL", "TEXT" })
+	private String placement;
+
+	private XSSFWorkbook workbook;
+	private Cell cell;
+	private CellStyle style;
+	private String text;
+
+	@Setup(Level.Trial)
+	public void createCell() {
+		workbook = new XSSFWorkbook();
+		cell = workbook.createSheet(TemplateLayout.SHEET_NAME).createRow(0).createCell(0);
+		style = cell.getCellStyle();
+		text = "CELL".equals(placement) ? PATTERN : "Wert: " + PATTERN + " (Stand Ende Jahr)";
+	}
+
+	@TearDown(Level.Trial)
+	public void closeWorkbook() throws IOException {
+		workbook.close();
+	}
+
+	@Benchmark
+	public Cell baseline() {
+		reset();
+
+		return cell;
+	}
+
+	@Benchmark
+	public Cell convert() {
+		reset();
+		converter.convert(cell);
+
+		return cell;
+	}
+
+	private void reset() {
+		cell.setCellStyle(style);
+		cell.setCellValue(text);
+	}
+}
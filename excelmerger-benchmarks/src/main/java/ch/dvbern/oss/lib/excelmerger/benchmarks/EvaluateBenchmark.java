@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.benchmarks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ch.dvbern.oss.lib.excelmerger.ExcelMerger;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluation nach dem Merge: {@link ExcelMerger#evaluate(Workbook)} (evaluateAll) im Vergleich mit
+ * {@link ExcelMerger#evaluate(Workbook, java.util.Collection)}, welches nur die vom gemergten Sheet betroffenen
+ * Formeln evaluiert. Neben dem gemergten Sheet enthaelt das Workbook ein Sheet mit {@link #lookups} statischen
+ * VLOOKUP-Formeln, die nicht abhaengig sind, und ein Sheet mit einer abhaengigen Auswertung. Beide Varianten leeren
+ * zuerst den Cache des Evaluators, das Workbook wird darum fuer alle Aufrufe verwendet.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class EvaluateBenchmark {
+
+	private static final int DATA_ROWS = 5;
+
+	@Param({ "100", "1000" })
+	private int lookups;
+
+	private Workbook workbook;
+	private List<Sheet> mergedSheets;
+
+	@Setup(Level.Trial)
+	public void createWorkbook() {
+		workbook = new XSSFWorkbook();
+
+		Sheet data = workbook.createSheet(TemplateLayout.SHEET_NAME);
+		for (int i = 0; i < DATA_ROWS; i++) {
+			Row row = data.createRow(i);
+			row.createCell(0).setCellValue(i + 1);
+			row.createCell(1).setCellFormula("A" + (i + 1) + "*2");
+		}
+
+		Sheet lookup = workbook.createSheet("Lookup");
+		for (int i = 0; i < lookups; i++) {
+			Row row = lookup.createRow(i);
+			row.createCell(0).setCellValue(i);
+			row.createCell(1).setCellValue("Wert " + i);
+			row.createCell(2).setCellFormula("VLOOKUP(" + (lookups - i - 1) + ",$A$1:$B$" + lookups + ",2,FALSE)");
+		}
+
+		workbook.createSheet("Auswertung").createRow(0).createCell(0)
+			.setCellFormula("SUM(" + TemplateLayout.SHEET_NAME + "!B1:B" + DATA_ROWS + ')');
+
+		mergedSheets = Collections.singletonList(data);
+	}
+
+	@TearDown(Level.Trial)
+	public void closeWorkbook() throws IOException {
+		workbook.close();
+	}
+
+	@Benchmark
+	public Workbook evaluateAll() {
+		ExcelMerger.evaluate(workbook);
+
+		return workbook;
+	}
+
+	@Benchmark
+	public Workbook evaluateAffected() {
+		ExcelMerger.evaluate(workbook, mergedSheets);
+
+		return workbook;
+	}
+}
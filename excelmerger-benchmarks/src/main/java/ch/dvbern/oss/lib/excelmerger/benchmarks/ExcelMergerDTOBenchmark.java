@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.benchmarks;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ch.dvbern.oss.lib.excelmerger.ExcelMergeException;
+import ch.dvbern.oss.lib.excelmerger.ExcelMerger;
+import ch.dvbern.oss.lib.excelmerger.ExcelMergerDTO;
+import ch.dvbern.oss.lib.excelmerger.converters.StandardConverters;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatColMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatValMergeField;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Felder mit vielen Werten (REPEAT_COL, REPEAT_VAL): eine Ueberschrift und eine Daten-Zeile mit {@link #width}
+ * Spalten. Die Dauer pro Spalte soll ueber alle Breiten gleich bleiben (mit einer verketteten Liste pro Feld war der
+ * Zugriff ueber den Offset quadratisch). {@link #readOffsets()} misst nur die Zugriffe auf das DTO, ohne POI.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class ExcelMergerDTOBenchmark {
+
+	private static final RepeatColMergeField<String> TITEL =
+		new RepeatColMergeField<>("titel", StandardConverters.STRING_CONVERTER);
+	private static final RepeatValMergeField<Long> WERT =
+		new RepeatValMergeField<>("wert", StandardConverters.LONG_CONVERTER);
+	private static final List<MergeField<?>> FIELDS = Arrays.asList(TITEL, WERT);
+
+	@Param({ "2000", "4000", "8000", "16000" })
+	private int width;
+
+	private ExcelMergerDTO data;
+	private XSSFWorkbook workbook;
+	private Sheet sheet;
+
+	@Setup(Level.Trial)
+	public void createData() {
+		data = new ExcelMergerDTO();
+		for (int i = 0; i < width; i++) {
+			data.addValue(TITEL, "Titel " + i);
+			data.addValue(WERT, (long) i);
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void createSheet() {
+		workbook = new XSSFWorkbook();
+		sheet = workbook.createSheet(TemplateLayout.SHEET_NAME);
+		Row header = sheet.createRow(0);
+		Row values = sheet.createRow(1);
+		for (int i = 0; i < width; i++) {
+			header.createCell(i).setCellValue("{titel}");
+			values.createCell(i).setCellValue("{wert}");
+		}
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeWorkbook() throws IOException {
+		workbook.close();
+	}
+
+	@Benchmark
+	public Sheet mergeWideHeader() throws ExcelMergeException {
+		ExcelMerger.mergeData(sheet, FIELDS, data, false);
+
+		return sheet;
+	}
+
+	@Benchmark
+	public long readOffsets() {
+		long sum = 0;
+		for (int i = 0; data.hasValue(WERT, i); i++) {
+			sum += data.getValue(WERT, i);
+		}
+
+		return sum;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ch.dvbern.oss.lib.excelmerger.ExcelMergeException;
+import ch.dvbern.oss.lib.excelmerger.ExcelMerger;
+import ch.dvbern.oss.lib.excelmerger.ExcelMergerDTO;
+import ch.dvbern.oss.lib.excelmerger.ExcelTemplateParseException;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link ExcelMerger#mergeData(Sheet, List, ExcelMergerDTO)} inkl. Evaluation der Formeln. Das Workbook wird vor
+ * jedem Aufruf neu aus dem Template erstellt, das Parsen des Templates wird also nicht mitgemessen.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class MergeDataBenchmark {
+
+	@Param({ "FLAT", "NESTED", "WIDE" })
+	private TemplateLayout layout;
+
+	@Param({ "100", "1000" })
+	private int rows;
+
+	private byte[] template;
+	private List<MergeField<?>> fields;
+	private ExcelMergerDTO data;
+	private Workbook workbook;
+
+	@Setup(Level.Trial)
+	public void createTemplate() {
+		template = layout.createTemplate();
+		fields = layout.getFields();
+		data = layout.createData(rows);
+	}
+
+	@Setup(Level.Invocation)
+	public void openWorkbook() throws ExcelTemplateParseException {
+		workbook = ExcelMerger.createWorkbookFromTemplate(new ByteArrayInputStream(template));
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeWorkbook() throws IOException {
+		workbook.close();
+	}
+
+	@Benchmark
+	public Sheet mergeData() throws ExcelMergeException {
+		Sheet sheet = workbook.getSheet(TemplateLayout.SHEET_NAME);
+		ExcelMerger.mergeData(sheet, fields, data);
+
+		return sheet;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import ch.dvbern.oss.lib.excelmerger.PoiUtil;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Verschieben von Zeilen mit vielen Merged-Regions, wie in einem Kalender-Layout mit mehreren verbundenen Zellen pro
+ * Zeile: {@link XSSFSheet#shiftRows(int, int, int)} im Vergleich mit
+ * {@link PoiUtil#shiftRowsAndMergedRegions(org.apache.poi.ss.usermodel.Sheet, int, int, int)}, welches die
+ * Merged-Regions ueber einen Index verschiebt. Es wird {@link #SHIFTS} mal verschoben, jeweils 10 Zeilen weiter
+ * unten. Das Sheet wird vor jedem Aufruf neu erstellt.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class MergedRegionBenchmark {
+
+	private static final int SHIFTS = 20;
+	private static final int SHIFT = 3;
+
+	@Param({ "500", "2000" })
+	private int rows;
+
+	private XSSFWorkbook workbook;
+	private XSSFSheet sheet;
+
+	@Setup(Level.Invocation)
+	public void createSheet() {
+		workbook = new XSSFWorkbook();
+		sheet = workbook.createSheet(TemplateLayout.SHEET_NAME);
+		for (int rowNum = 0; rowNum < rows; rowNum++) {
+			sheet.createRow(rowNum).createCell(10).setCellValue(rowNum);
+			int firstColumn = (rowNum % 5) * 2;
+			sheet.addMergedRegionUnsafe(new CellRangeAddress(rowNum, rowNum, firstColumn, firstColumn + 1));
+		}
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeWorkbook() throws IOException {
+		workbook.close();
+	}
+
+	@Benchmark
+	public XSSFSheet poiShiftRows() {
+		for (int i = 0; i < SHIFTS; i++) {
+			sheet.shiftRows(i * 10, sheet.getLastRowNum() + 1, SHIFT);
+		}
+
+		return sheet;
+	}
+
+	@Benchmark
+	public XSSFSheet shiftRowsAndMergedRegions() {
+		for (int i = 0; i < SHIFTS; i++) {
+			PoiUtil.shiftRowsAndMergedRegions(sheet, i * 10, sheet.getLastRowNum() + 1, SHIFT);
+		}
+
+		return sheet;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import ch.dvbern.oss.lib.excelmerger.PoiUtil;
+import org.apache.poi.ss.usermodel.DataValidationHelper;
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellRangeAddressList;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Die shift-Methoden von {@link PoiUtil}: Alle Zeilen ab {@link #START_ROW} werden um {@link #SHIFT} Zeilen nach
+ * unten verschoben, wie beim Einfuegen einer Repeat-Gruppe. Jede zehnte Zeile enthaelt eine MergedRegion, jede
+ * hundertste eine DataValidation und einen Named-Range. Das Sheet wird vor jedem Aufruf neu erstellt.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class PoiUtilBenchmark {
+
+	private static final int START_ROW = 5;
+	private static final int SHIFT = 10;
+	private static final int COLUMNS = 5;
+
+	@Param({ "1000", "10000" })
+	private int rows;
+
+	private XSSFWorkbook workbook;
+	private Sheet sheet;
+
+	@Setup(Level.Invocation)
+	public void createSheet() {
+		workbook = new XSSFWorkbook();
+		sheet = workbook.createSheet(TemplateLayout.SHEET_NAME);
+		DataValidationHelper validationHelper = sheet.getDataValidationHelper();
+
+		for (int rowNum = 0; rowNum < rows; rowNum++) {
+			Row row = sheet.createRow(rowNum);
+			for (int col = 0; col < COLUMNS; col++) {
+				row.createCell(col).setCellValue(rowNum * COLUMNS + col);
+			}
+			if (rowNum % 10 == 0) {
+				sheet.addMergedRegionUnsafe(new CellRangeAddress(rowNum, rowNum, 0, 1));
+			}
+			if (rowNum % 100 == 0) {
+				sheet.addValidationData(validationHelper.createValidation(
+					validationHelper.createExplicitListConstraint(new String[] { "ja", "nein" }),
+					new CellRangeAddressList(rowNum, rowNum + 9, 2, 2)));
+
+				Name name = workbook.createName();
+				name.setNameName("range" + rowNum);
+				name.setRefersToFormula(TemplateLayout.SHEET_NAME + "!$D$" + (rowNum + 1) + ":$E$" + (rowNum + 10));
+			}
+		}
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeWorkbook() throws IOException {
+		workbook.close();
+	}
+
+	@Benchmark
+	public Sheet shiftRowsAndMergedRegions() {
+		PoiUtil.shiftRowsAndMergedRegions(sheet, START_ROW, sheet.getLastRowNum(), SHIFT);
+
+		return sheet;
+	}
+
+	@Benchmark
+	public Sheet shiftDataValidations() {
+		PoiUtil.shiftDataValidations(sheet, START_ROW, sheet.getLastRowNum(), SHIFT);
+
+		return sheet;
+	}
+
+	@Benchmark
+	public Sheet shiftNamedRanges() {
+		PoiUtil.shiftNamedRanges(sheet, START_ROW, sheet.getLastRowNum(), SHIFT);
+
+		return sheet;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ch.dvbern.oss.lib.excelmerger.ExcelMergeException;
+import ch.dvbern.oss.lib.excelmerger.ExcelMerger;
+import ch.dvbern.oss.lib.excelmerger.ExcelMergerDTO;
+import ch.dvbern.oss.lib.excelmerger.converters.StandardConverters;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.SimpleMergeField;
+import org.apache.poi.ss.usermodel.CellCopyPolicy;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Expandieren einer Repeat-Gruppe mit {@link #GROUP_ROWS} Zeilen mit Styles, Formeln und einer Merged-Region auf
+ * {@link #count} Instanzen: {@link ExcelMerger#mergeData(org.apache.poi.ss.usermodel.Sheet, List, ExcelMergerDTO)}
+ * (kopiert die Zeilen mit dem Row-Cloner) im Vergleich mit {@link XSSFSheet#copyRows(List, int, CellCopyPolicy)} pro
+ * Gruppen-Instanz, dem Kopieren ohne Mergen mit POI. Das Sheet wird vor jedem Aufruf neu erstellt.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class RepeatGroupBenchmark {
+
+	private static final int FIRST_ROW = 2;
+	private static final int GROUP_ROWS = 3;
+	private static final CellCopyPolicy POLICY = new CellCopyPolicy();
+
+	private static final RepeatRowMergeField GROUP = new RepeatRowMergeField("grp");
+	private static final SimpleMergeField<String> NAME =
+		new SimpleMergeField<>("name", StandardConverters.STRING_CONVERTER);
+	private static final List<MergeField<?>> FIELDS = Arrays.asList(GROUP, NAME);
+
+	@Param({ "200", "1000" })
+	private int count;
+
+	private ExcelMergerDTO data;
+	private XSSFWorkbook workbook;
+	private XSSFSheet sheet;
+
+	@Setup(Level.Trial)
+	public void createData() {
+		data = new ExcelMergerDTO();
+		for (int i = 0; i < count; i++) {
+			data.createGroup(GROUP).addValue(NAME, "Name " + i);
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void createSheet() {
+		workbook = new XSSFWorkbook();
+		sheet = workbook.createSheet(TemplateLayout.SHEET_NAME);
+		XSSFFont font = workbook.createFont();
+		font.setBold(true);
+		CellStyle bold = workbook.createCellStyle();
+		bold.setFont(font);
+
+		sheet.createRow(0).createCell(0).setCellValue("Titel");
+		for (int rowNum = FIRST_ROW; rowNum < FIRST_ROW + GROUP_ROWS; rowNum++) {
+			XSSFRow row = sheet.createRow(rowNum);
+			row.createCell(0).setCellValue("{name}");
+			row.getCell(0).setCellStyle(bold);
+			row.createCell(1).setCellValue(rowNum);
+			row.createCell(2).setCellValue(rowNum * 2);
+			row.createCell(3).setCellFormula("B" + (rowNum + 1) + "*C" + (rowNum + 1));
+			row.createCell(4).setCellFormula("SUM($D$" + (FIRST_ROW + 1) + ":D" + (rowNum + 1) + ')');
+		}
+		sheet.getRow(FIRST_ROW).createCell(7).setCellValue("{grp:" + GROUP_ROWS + '}');
+		sheet.addMergedRegion(new CellRangeAddress(FIRST_ROW, FIRST_ROW, 5, 6));
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeWorkbook() throws IOException {
+		workbook.close();
+	}
+
+	@Benchmark
+	public XSSFSheet mergeData() throws ExcelMergeException {
+		ExcelMerger.mergeData(sheet, FIELDS, data, false);
+
+		return sheet;
+	}
+
+	@Benchmark
+	public XSSFSheet copyRows() {
+		List<XSSFRow> rows = new ArrayList<>();
+		for (int i = 0; i < GROUP_ROWS; i++) {
+			rows.add(sheet.getRow(FIRST_ROW + i));
+		}
+
+		int target = sheet.getLastRowNum() + 1;
+		for (int i = 0; i < count - 1; i++) {
+			sheet.copyRows(rows, target + i * GROUP_ROWS, POLICY);
+		}
+
+		return sheet;
+	}
+}
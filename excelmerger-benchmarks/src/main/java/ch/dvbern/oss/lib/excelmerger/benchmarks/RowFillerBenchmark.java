@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ch.dvbern.oss.lib.excelmerger.ExcelMergerDTO;
+import ch.dvbern.oss.lib.excelmerger.RowFiller;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static ch.dvbern.oss.lib.excelmerger.benchmarks.TemplateLayout.ANZAHL;
+import static ch.dvbern.oss.lib.excelmerger.benchmarks.TemplateLayout.BETRAG;
+import static ch.dvbern.oss.lib.excelmerger.benchmarks.TemplateLayout.DATUM;
+import static ch.dvbern.oss.lib.excelmerger.benchmarks.TemplateLayout.NAME;
+
+/**
+ * Durchsatz von {@link RowFiller#fillRow(ExcelMergerDTO)} und {@link RowFiller#fillRow()} in Zeilen pro Sekunde, auf
+ * dem Template {@link TemplateLayout#FLAT}. Pro Aufruf werden {@link #ROWS} Zeilen geschrieben, das Erstellen des
+ * RowFillers wird nicht mitgemessen.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@OperationsPerInvocation(RowFillerBenchmark.ROWS)
+@State(Scope.Thread)
+public class RowFillerBenchmark {
+
+	static final int ROWS = 10_000;
+
+	private static final int DISTINCT_VALUES = 1_000;
+	private static final LocalDate START_DATE = LocalDate.of(2017, 1, 1);
+
+	private byte[] template;
+	private List<MergeField<?>> fields;
+	private ExcelMergerDTO[] rowData;
+	private String[] names;
+	private RowFiller rowFiller;
+
+	@Setup(Level.Trial)
+	public void createTemplate() {
+		template = TemplateLayout.FLAT.createTemplate();
+		fields = TemplateLayout.FLAT.getFields();
+		rowData = new ExcelMergerDTO[ROWS];
+		for (int i = 0; i < ROWS; i++) {
+			rowData[i] = new ExcelMergerDTO();
+			TemplateLayout.addRow(rowData[i], i);
+		}
+		names = new String[DISTINCT_VALUES];
+		for (int i = 0; i < DISTINCT_VALUES; i++) {
+			names[i] = "Name " + i;
+		}
+	}
+
+	@Setup(Level.Invocation)
+	@SuppressWarnings("PMD.CloseResource")
+	public void initRowFiller() throws IOException {
+		XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(template));
+		rowFiller = RowFiller.initRowFiller(workbook.getSheet(TemplateLayout.SHEET_NAME), fields, ROWS);
+	}
+
+	@TearDown(Level.Invocation)
+	@SuppressWarnings("PMD.CloseResource")
+	public void disposeWorkbook() throws IOException {
+		SXSSFWorkbook workbook = rowFiller.getSheet().getWorkbook();
+		workbook.dispose();
+		workbook.close();
+	}
+
+	@Benchmark
+	public SXSSFSheet fillRowFromDTO() {
+		for (ExcelMergerDTO row : rowData) {
+			rowFiller.fillRow(row);
+		}
+
+		return rowFiller.getSheet();
+	}
+
+	/**
+	 * Ohne ExcelMergerDTO pro Zeile und (fuer Betrag und Anzahl) ohne Boxing
+	 */
+	@Benchmark
+	public SXSSFSheet fillRowFromValues() {
+		for (int i = 0; i < ROWS; i++) {
+			rowFiller
+				.addValue(NAME, names[i % DISTINCT_VALUES])
+				.addValue(DATUM, START_DATE.plusDays(i % 365))
+				.addDouble(BETRAG, i * 1.05)
+				.addInt(ANZAHL, i % 7)
+				.fillRow();
+		}
+
+		return rowFiller.getSheet();
+	}
+}
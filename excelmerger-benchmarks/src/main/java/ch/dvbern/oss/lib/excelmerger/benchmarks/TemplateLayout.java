@@ -0,0 +1,251 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import ch.dvbern.oss.lib.excelmerger.ExcelMergerDTO;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatColMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatValMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.SimpleMergeField;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import static ch.dvbern.oss.lib.excelmerger.converters.StandardConverters.BIGDECIMAL_CONVERTER;
+import static ch.dvbern.oss.lib.excelmerger.converters.StandardConverters.DATE_CONVERTER;
+import static ch.dvbern.oss.lib.excelmerger.converters.StandardConverters.INTEGER_CONVERTER;
+import static ch.dvbern.oss.lib.excelmerger.converters.StandardConverters.STRING_CONVERTER;
+
+/**
+ * Die Templates der Benchmarks. Sie werden programmatisch erstellt, damit keine Binaer-Dateien gepflegt werden
+ * muessen und die Groesse der Templates im Code ersichtlich ist.
+ */
+public enum TemplateLayout {
+
+	/**
+	 * Eine Repeat-Gruppe mit einer Zeile pro Datensatz, darunter (nach einer leeren Zeile, damit die Bereiche beim
+	 * Einfuegen erweitert werden) eine Total-Zeile mit SUM-Formeln.
+	 */
+	FLAT {
+		@Nonnull
+		@Override
+		byte[] createTemplate() {
+			return write(sheet -> {
+				cells(sheet.createRow(0), "{title}");
+				cells(sheet.createRow(1), "Name", "Datum", "Betrag", "Anzahl", "Total");
+				Row data = cells(sheet.createRow(2), "{name}", "{datum}", "{betrag}", "{anzahl}");
+				data.createCell(4).setCellFormula("C3*D3");
+				data.createCell(5).setCellValue("{" + ROWS.getKey() + '}');
+				Row total = cells(sheet.createRow(4), "TOTAL");
+				total.createCell(2).setCellFormula("SUM(C3:C4)");
+				total.createCell(3).setCellFormula("SUM(D3:D4)");
+				total.createCell(4).setCellFormula("SUM(E3:E4)");
+			});
+		}
+
+		@Nonnull
+		@Override
+		ExcelMergerDTO createData(int rows) {
+			ExcelMergerDTO dto = new ExcelMergerDTO();
+			dto.addValue(TITLE, "Flat " + rows);
+			for (int i = 0; i < rows; i++) {
+				addRow(dto.createGroup(ROWS), i);
+			}
+
+			return dto;
+		}
+
+		@Nonnull
+		@Override
+		List<MergeField<?>> getFields() {
+			return Arrays.asList(TITLE, ROWS, NAME, DATUM, BETRAG, ANZAHL);
+		}
+	},
+
+	/**
+	 * Gruppen mit einer Titel-Zeile, den Datensaetzen der Gruppe und einer Subtotal-Zeile. Jede Gruppe enthaelt
+	 * {@link #ROWS_PER_GROUP} Datensaetze.
+	 */
+	NESTED {
+		@Nonnull
+		@Override
+		byte[] createTemplate() {
+			return write(sheet -> {
+				cells(sheet.createRow(0), "{title}");
+				Row group = cells(sheet.createRow(1), "{groupName}");
+				group.createCell(5).setCellValue("{" + GROUPS.getKey() + ":4}");
+				Row data = cells(sheet.createRow(2), "{name}", "{datum}", "{betrag}", "{anzahl}");
+				data.createCell(4).setCellFormula("C3*D3");
+				data.createCell(5).setCellValue("{" + ROWS.getKey() + '}');
+				Row subtotal = cells(sheet.createRow(4), "Subtotal");
+				subtotal.createCell(2).setCellFormula("SUM(C3:C4)");
+				subtotal.createCell(4).setCellFormula("SUM(E3:E4)");
+				Row total = cells(sheet.createRow(6), "TOTAL");
+				total.createCell(4).setCellFormula("SUM(E2:E6)");
+			});
+		}
+
+		@Nonnull
+		@Override
+		ExcelMergerDTO createData(int rows) {
+			ExcelMergerDTO dto = new ExcelMergerDTO();
+			dto.addValue(TITLE, "Nested " + rows);
+			for (int i = 0; i < rows; i += ROWS_PER_GROUP) {
+				ExcelMergerDTO group = dto.createGroup(GROUPS);
+				group.addValue(GROUP_NAME, "Gruppe " + i / ROWS_PER_GROUP);
+				for (int j = i; j < Math.min(i + ROWS_PER_GROUP, rows); j++) {
+					addRow(group.createGroup(ROWS), j);
+				}
+			}
+
+			return dto;
+		}
+
+		@Nonnull
+		@Override
+		List<MergeField<?>> getFields() {
+			return Arrays.asList(TITLE, GROUPS, GROUP_NAME, ROWS, NAME, DATUM, BETRAG, ANZAHL);
+		}
+	},
+
+	/**
+	 * Eine Repeat-Gruppe mit {@link #WIDE_COLUMNS} Spalten-Repeatern ({@link MergeField.Type#REPEAT_COL}) in der
+	 * Ueberschrift und Werte-Repeatern ({@link MergeField.Type#REPEAT_VAL}) pro Datensatz, z.B. ein Wert pro Woche.
+	 * Die Haelfte der Spalten bleibt leer und wird ausgeblendet.
+	 */
+	WIDE {
+		@Nonnull
+		@Override
+		byte[] createTemplate() {
+			return write(sheet -> {
+				cells(sheet.createRow(0), "{title}");
+				Row header = cells(sheet.createRow(1), "Name");
+				Row data = cells(sheet.createRow(2), "{name}");
+				Row total = cells(sheet.createRow(4), "TOTAL");
+				for (int col = 1; col <= WIDE_COLUMNS; col++) {
+					String column = CellReference.convertNumToColString(col);
+					header.createCell(col).setCellValue("{" + WEEK.getKey() + '}');
+					data.createCell(col).setCellValue("{" + VALUE.getKey() + '}');
+					total.createCell(col).setCellFormula("SUM(" + column + "3:" + column + "4)");
+				}
+				data.createCell(WIDE_COLUMNS + 1).setCellValue("{" + ROWS.getKey() + '}');
+			});
+		}
+
+		@Nonnull
+		@Override
+		ExcelMergerDTO createData(int rows) {
+			ExcelMergerDTO dto = new ExcelMergerDTO();
+			dto.addValue(TITLE, "Wide " + rows);
+			int weeks = WIDE_COLUMNS / 2;
+			for (int week = 1; week <= weeks; week++) {
+				dto.addValue(WEEK, "KW " + week);
+			}
+			for (int i = 0; i < rows; i++) {
+				ExcelMergerDTO row = dto.createGroup(ROWS);
+				row.addValue(NAME, "Name " + i);
+				for (int week = 0; week < weeks; week++) {
+					row.addDouble(VALUE, i + week / 10.0);
+				}
+			}
+
+			return dto;
+		}
+
+		@Nonnull
+		@Override
+		List<MergeField<?>> getFields() {
+			return Arrays.asList(TITLE, ROWS, NAME, WEEK, VALUE);
+		}
+	};
+
+	static final String SHEET_NAME = "Bench";
+	static final int ROWS_PER_GROUP = 10;
+	static final int WIDE_COLUMNS = 52;
+
+	static final SimpleMergeField<String> TITLE = new SimpleMergeField<>("title", STRING_CONVERTER);
+	static final RepeatRowMergeField GROUPS = new RepeatRowMergeField("groups");
+	static final SimpleMergeField<String> GROUP_NAME = new SimpleMergeField<>("groupName", STRING_CONVERTER);
+	static final RepeatRowMergeField ROWS = new RepeatRowMergeField("rows");
+	static final SimpleMergeField<String> NAME = new SimpleMergeField<>("name", STRING_CONVERTER);
+	static final SimpleMergeField<LocalDate> DATUM = new SimpleMergeField<>("datum", DATE_CONVERTER);
+	static final SimpleMergeField<BigDecimal> BETRAG = new SimpleMergeField<>("betrag", BIGDECIMAL_CONVERTER);
+	static final SimpleMergeField<Integer> ANZAHL = new SimpleMergeField<>("anzahl", INTEGER_CONVERTER);
+	static final RepeatColMergeField<String> WEEK = new RepeatColMergeField<>("week", STRING_CONVERTER);
+	static final RepeatValMergeField<BigDecimal> VALUE = new RepeatValMergeField<>("value", BIGDECIMAL_CONVERTER);
+
+	private static final LocalDate START_DATE = LocalDate.of(2017, 1, 1);
+
+	/**
+	 * @return die Template-Datei (xlsx) mit einem Sheet {@link #SHEET_NAME}
+	 */
+	@Nonnull
+	abstract byte[] createTemplate();
+
+	@Nonnull
+	abstract ExcelMergerDTO createData(int rows);
+
+	@Nonnull
+	abstract List<MergeField<?>> getFields();
+
+	/**
+	 * Die Werte einer Zeile von {@link #FLAT} und {@link #NESTED}, auch fuer den RowFiller
+	 */
+	static void addRow(@Nonnull ExcelMergerDTO row, int i) {
+		row.addValue(NAME, "Name " + i);
+		row.addValue(DATUM, START_DATE.plusDays(i % 365));
+		row.addDouble(BETRAG, i * 1.05);
+		row.addInt(ANZAHL, i % 7);
+	}
+
+	@Nonnull
+	private static Row cells(@Nonnull Row row, @Nonnull String... values) {
+		for (int i = 0; i < values.length; i++) {
+			row.createCell(i).setCellValue(values[i]);
+		}
+
+		return row;
+	}
+
+	@Nonnull
+	private static byte[] write(@Nonnull SheetBuilder builder) {
+		try (XSSFWorkbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+			builder.build(workbook.createSheet(SHEET_NAME));
+			workbook.write(out);
+
+			return out.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@FunctionalInterface
+	private interface SheetBuilder {
+		void build(@Nonnull Sheet sheet);
+	}
+}
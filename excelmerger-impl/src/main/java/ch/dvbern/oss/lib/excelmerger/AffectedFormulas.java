@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Sucht die Formel-Zellen, welche nach einem Merge neu evaluiert werden muessen: alle Formeln der gemergten Sheets
+ * (dort wurden Formeln erstellt, verschoben und Werte geschrieben) und alle Formeln der Sheets, die direkt oder
+ * indirekt (ueber andere Sheets oder Named-Ranges) auf ein gemergtes Sheet verweisen.
+ *
+ * <p>Die Abhaengigkeiten werden pro Sheet ueber den Formel-Text bestimmt. Das ist konservativ: ein Sheet wird eher
+ * zu viel als zu wenig evaluiert. Formeln mit INDIRECT oder OFFSET koennen auf beliebige Sheets verweisen und machen
+ * ihr Sheet deshalb immer abhaengig.</p>
+ */
+final class AffectedFormulas {
+
+	private static final String[] DYNAMIC_REFERENCES = { "indirect(", "offset(" };
+
+	@Nonnull
+	private final Workbook workbook;
+	@Nonnull
+	private final Set<Sheet> dirtySheets = new HashSet<>();
+	@Nonnull
+	private final Set<String> dirtyTokens = new HashSet<>();
+
+	private AffectedFormulas(@Nonnull Workbook workbook) {
+		this.workbook = workbook;
+	}
+
+	@Nonnull
+	static List<Cell> find(@Nonnull Workbook workbook, @Nonnull Collection<? extends Sheet> mergedSheets) {
+		AffectedFormulas affected = new AffectedFormulas(workbook);
+		mergedSheets.forEach(affected::markDirty);
+
+		boolean changed = true;
+		while (changed) {
+			affected.addDirtyNames();
+			changed = affected.addDependentSheets();
+		}
+
+		List<Cell> cells = new ArrayList<>();
+		for (Sheet sheet : workbook) {
+			if (affected.dirtySheets.contains(sheet)) {
+				collectFormulaCells(sheet, cells);
+			}
+		}
+
+		return cells;
+	}
+
+	private void markDirty(@Nonnull Sheet sheet) {
+		dirtySheets.add(sheet);
+		dirtyTokens.add(sheet.getSheetName().toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * Named-Ranges, die auf ein abhaengiges Sheet verweisen, machen alle Formeln abhaengig, die sie verwenden
+	 */
+	private void addDirtyNames() {
+		for (Name name : workbook.getAllNames()) {
+			String refersTo = name.getRefersToFormula();
+			if (refersTo != null && isDependent(refersTo.toLowerCase(Locale.ROOT))) {
+				dirtyTokens.add(name.getNameName().toLowerCase(Locale.ROOT));
+			}
+		}
+	}
+
+	/**
+	 * @return TRUE, wenn ein weiteres Sheet abhaengig wurde
+	 */
+	private boolean addDependentSheets() {
+		boolean changed = false;
+		for (Sheet sheet : workbook) {
+			if (!dirtySheets.contains(sheet) && hasDependentFormula(sheet)) {
+				markDirty(sheet);
+				changed = true;
+			}
+		}
+
+		return changed;
+	}
+
+	private boolean hasDependentFormula(@Nonnull Sheet sheet) {
+		for (Row row : sheet) {
+			for (Cell cell : row) {
+				if (cell.getCellType() == CellType.FORMULA
+					&& isDependent(cell.getCellFormula().toLowerCase(Locale.ROOT))) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private boolean isDependent(@Nonnull String formula) {
+		for (String dynamic : DYNAMIC_REFERENCES) {
+			if (formula.contains(dynamic)) {
+				return true;
+			}
+		}
+
+		return dirtyTokens.stream().anyMatch(formula::contains);
+	}
+
+	private static void collectFormulaCells(@Nonnull Sheet sheet, @Nonnull List<Cell> cells) {
+		for (Row row : sheet) {
+			for (Cell cell : row) {
+				if (cell.getCellType() == CellType.FORMULA) {
+					cells.add(cell);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.StringJoiner;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Ein laufendes Aggregat ueber die Werte eines {@link MergeField}s, z.B. die Summe einer Spalte. Wird vom
+ * {@link RowFiller} bei jedem {@link RowFiller#fillRow(ExcelMergerDTO)} nachgefuehrt, ohne dafuer Objekte zu
+ * erzeugen, und am Schluss in eine Zelle geschrieben. Damit muessen Total-Formeln nicht ueber alle Zeilen evaluiert
+ * werden.
+ *
+ * <p>Alle Werte des Feldes einer Zeile werden beruecksichtigt (auch mehrere Werte von Repeat-Feldern), NULL-Werte
+ * werden ignoriert. Nicht thread-safe, jeder RowFiller braucht eigene Instanzen.</p>
+ */
+public final class Aggregate {
+
+	@Nonnull
+	private final AggregateFunction function;
+	@Nonnull
+	private final MergeField<?> field;
+
+	private long count = 0;
+	private double sum = 0;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	private Aggregate(@Nonnull AggregateFunction function, @Nonnull MergeField<?> field) {
+		this.function = requireNonNull(function);
+		this.field = requireNonNull(field);
+	}
+
+	@Nonnull
+	public static Aggregate sum(@Nonnull MergeField<? extends Number> field) {
+		return new Aggregate(AggregateFunction.SUM, field);
+	}
+
+	@Nonnull
+	public static Aggregate count(@Nonnull MergeField<?> field) {
+		return new Aggregate(AggregateFunction.COUNT, field);
+	}
+
+	@Nonnull
+	public static Aggregate min(@Nonnull MergeField<? extends Number> field) {
+		return new Aggregate(AggregateFunction.MIN, field);
+	}
+
+	@Nonnull
+	public static Aggregate max(@Nonnull MergeField<? extends Number> field) {
+		return new Aggregate(AggregateFunction.MAX, field);
+	}
+
+	@Nonnull
+	public static Aggregate avg(@Nonnull MergeField<? extends Number> field) {
+		return new Aggregate(AggregateFunction.AVG, field);
+	}
+
+	@Nonnull
+	public AggregateFunction getFunction() {
+		return function;
+	}
+
+	@Nonnull
+	public MergeField<?> getField() {
+		return field;
+	}
+
+	/**
+	 * Fuehrt das Aggregat mit allen Werten des Feldes aus den Daten einer Zeile nach
+	 */
+	public void accept(@Nonnull ExcelMergerDTO rowData) {
+		for (int i = 0; rowData.hasValue(field, i); i++) {
+			double value = rowData.getDouble(field, i);
+			if (Double.isNaN(value)) {
+				// NULL, keine Zahl oder tatsaechlich NaN
+				accept(rowData.getValue(field, i));
+			} else {
+				accept(value);
+			}
+		}
+	}
+
+	private void accept(@Nullable Object value) {
+		if (value instanceof Number) {
+			accept(((Number) value).doubleValue());
+		} else if (value != null) {
+			count++;
+		}
+	}
+
+	private void accept(double value) {
+		count++;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return der aggregierte Wert, {@link Double#NaN} fuer MIN, MAX und AVG ohne Werte
+	 */
+	public double getValue() {
+		switch (function) {
+		case SUM:
+			return sum;
+		case COUNT:
+			return count;
+		case MIN:
+			return count == 0 ? Double.NaN : min;
+		case MAX:
+			return count == 0 ? Double.NaN : max;
+		case AVG:
+			return count == 0 ? Double.NaN : sum / count;
+		default:
+			throw new IllegalStateException("Unknown function: " + function);
+		}
+	}
+
+	/**
+	 * Schreibt den Wert in die Zelle. Enthaelt die Zelle eine Formel, bleibt diese erhalten und der Wert wird als
+	 * gecachtes Resultat gespeichert (damit z.B. LibreOffice ohne Neuberechnung einen Wert anzeigt), sonst wird der
+	 * Wert als Zahl geschrieben.
+	 */
+	void writeTo(@Nonnull Cell cell) {
+		double value = getValue();
+		if (!Double.isNaN(value)) {
+			cell.setCellValue(value);
+		} else if (cell.getCellType() != CellType.FORMULA) {
+			cell.setBlank();
+		}
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", Aggregate.class.getSimpleName() + '[', "]")
+			.add("function=" + function)
+			.add("field=" + field.getKey())
+			.add("count=" + count)
+			.add("value=" + getValue())
+			.toString();
+	}
+}
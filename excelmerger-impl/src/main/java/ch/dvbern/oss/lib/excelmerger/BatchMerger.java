@@ -0,0 +1,278 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Erstellt viele Reports aus demselben Template, z.B. einen pro Kunde. Jeder Report wird auf dem Executor in einem
+ * eigenen Workbook gemerged und danach dem {@link BatchOutput} uebergeben. Das Template wird nur einmal kompiliert.
+ *
+ * <p>Damit der Heap nicht von der Anzahl gleichzeitiger Jobs abhaengt, wird der Speicherbedarf jedes Jobs aus der
+ * Anzahl Zeilen und Werte seines DTOs geschaetzt ({@link #estimateMemory(ExcelMergerDTO)}). Ein Job wird erst
+ * gestartet, wenn die Summe der Schaetzungen aller laufenden Jobs das Budget nicht ueberschreitet. Solange kein Platz
+ * ist, wird auch der Stream nicht weiter gelesen. Ein Job, der alleine schon groesser ist als das Budget, laeuft
+ * alleine.</p>
+ *
+ * <p>Der Executor bestimmt die maximale Parallelitaet, z.B. ein Pool mit einem Thread pro Core oder (ab Java 21)
+ * ein Executor mit virtuellen Threads, bei dem nur das Budget begrenzt.</p>
+ */
+public final class BatchMerger {
+
+	/**
+	 * Heap eines XSSFWorkbooks pro Byte der (gezippten) Template-Datei, gemessen mit den Test-Templates
+	 */
+	private static final int TEMPLATE_HEAP_FACTOR = 128;
+	private static final int BYTES_PER_ROW = 512;
+	private static final int BYTES_PER_CELL = 768;
+	private static final int BYTES_PER_PERMIT = 1024;
+	private static final int DEFAULT_BUDGET_DIVISOR = 2;
+
+	@Nonnull
+	private final byte[] template;
+	@Nonnull
+	private final String sheetName;
+	@Nonnull
+	private final CompiledTemplate compiledTemplate;
+	@Nonnull
+	private final Executor executor;
+	private final int budgetPermits;
+	private final int cellsPerRow;
+	@Nonnull
+	private final MergeListener listener;
+
+	private BatchMerger(
+		@Nonnull byte[] template,
+		@Nonnull String sheetName,
+		@Nonnull CompiledTemplate compiledTemplate,
+		@Nonnull Executor executor,
+		long memoryBudget,
+		int cellsPerRow,
+		@Nonnull MergeListener listener) {
+
+		this.template = template;
+		this.sheetName = sheetName;
+		this.compiledTemplate = compiledTemplate;
+		this.executor = executor;
+		this.budgetPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryBudget / BYTES_PER_PERMIT));
+		this.cellsPerRow = cellsPerRow;
+		this.listener = listener;
+	}
+
+	/**
+	 * @param template die Template-Datei, wird nicht kopiert und darf danach nicht mehr veraendert werden
+	 * @param sheetName das Sheet, in welches gemerged wird
+	 * @param fields alle MergeFields, die im Sheet verwendet werden
+	 * @param executor fuehrt die Jobs aus
+	 * @param memoryBudget Summe des geschaetzten Speicherbedarfs aller gleichzeitig laufenden Jobs in Bytes
+	 */
+	@Nonnull
+	public static BatchMerger of(
+		@Nonnull byte[] template,
+		@Nonnull String sheetName,
+		@Nonnull List<MergeField<?>> fields,
+		@Nonnull Executor executor,
+		long memoryBudget) throws ExcelTemplateParseException {
+		requireNonNull(template);
+		requireNonNull(sheetName);
+		requireNonNull(fields);
+		requireNonNull(executor);
+
+		if (memoryBudget <= 0) {
+			throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudget);
+		}
+
+		try (Workbook workbook = ExcelMerger.createWorkbookFromTemplate(new ByteArrayInputStream(template))) {
+			Sheet sheet = workbook.getSheet(sheetName);
+			if (sheet == null) {
+				throw new ExcelTemplateParseException("Sheet not found: " + sheetName);
+			}
+
+			int cellsPerRow = 0;
+			for (Row row : sheet) {
+				cellsPerRow = Math.max(cellsPerRow, row.getPhysicalNumberOfCells());
+			}
+
+			return new BatchMerger(template, sheetName, CompiledTemplate.compile(sheet, fields), executor,
+				memoryBudget, cellsPerRow, MergeListener.NO_OP);
+		} catch (IOException e) {
+			throw new ExcelTemplateParseException("Error closing template", e);
+		}
+	}
+
+	/**
+	 * Wie {@link #of(byte[], String, List, Executor, long)} mit der Haelfte des maximalen Heaps als Budget
+	 */
+	@Nonnull
+	public static BatchMerger of(
+		@Nonnull byte[] template,
+		@Nonnull String sheetName,
+		@Nonnull List<MergeField<?>> fields,
+		@Nonnull Executor executor) throws ExcelTemplateParseException {
+
+		return of(template, sheetName, fields, executor, Runtime.getRuntime().maxMemory() / DEFAULT_BUDGET_DIVISOR);
+	}
+
+	/**
+	 * @param listener wird ueber alle Jobs informiert (zusaetzlich zu den Phasen des Merges ueber
+	 * {@link MergePhase#OPEN_TEMPLATE} und {@link MergePhase#WRITE}) und muss deshalb thread-safe sein, z.B.
+	 * {@link MergeStatistics}
+	 * @return ein BatchMerger mit demselben Template und Budget, welcher den Listener informiert
+	 */
+	@Nonnull
+	public BatchMerger withListener(@Nonnull MergeListener listener) {
+		requireNonNull(listener);
+
+		return new BatchMerger(template, sheetName, compiledTemplate, executor,
+			(long) budgetPermits * BYTES_PER_PERMIT, cellsPerRow, listener);
+	}
+
+	/**
+	 * @return der geschaetzte Speicherbedarf eines Jobs in Bytes: das Workbook aus dem Template und pro Zeile des
+	 * DTOs eine Zeile mit so vielen Zellen wie die breiteste Zeile des Templates (bzw. eine Zelle pro Wert, wenn das
+	 * DTO mehr Werte hat)
+	 */
+	public long estimateMemory(@Nonnull ExcelMergerDTO data) {
+		long rows = data.countRows();
+		long cells = Math.max(data.countValues(), rows * cellsPerRow);
+
+		return (long) template.length * TEMPLATE_HEAP_FACTOR + rows * BYTES_PER_ROW + cells * BYTES_PER_CELL;
+	}
+
+	/**
+	 * Merged alle DTOs des Streams und kehrt erst zurueck, wenn alle Jobs beendet sind. Schlaegt ein Job fehl, werden
+	 * die anderen trotzdem ausgefuehrt und am Schluss wird eine Exception mit allen Fehlern geworfen.
+	 *
+	 * @param data die Daten der Reports, werden erst gelesen, wenn der vorherige Job gestartet wurde
+	 * @param output erhaelt jedes gemergte Workbook, das Workbook wird danach geschlossen
+	 */
+	public void mergeAll(@Nonnull Stream<ExcelMergerDTO> data, @Nonnull BatchOutput output)
+		throws ExcelMergeException {
+		requireNonNull(data);
+		requireNonNull(output);
+
+		Semaphore budget = new Semaphore(budgetPermits);
+		Queue<Exception> failures = new ConcurrentLinkedQueue<>();
+		long jobs = 0;
+
+		try {
+			Iterator<ExcelMergerDTO> iterator = data.iterator();
+			while (iterator.hasNext()) {
+				ExcelMergerDTO dto = requireNonNull(iterator.next());
+				long index = jobs++;
+				int permits = permitsFor(dto);
+				budget.acquire(permits);
+
+				try {
+					executor.execute(() -> {
+						try {
+							merge(index, dto, output);
+						} catch (ExcelMergeException | IOException | RuntimeException e) {
+							failures.add(new ExcelMergeException("Error in job " + index, e));
+						} finally {
+							budget.release(permits);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					budget.release(permits);
+					throw new ExcelMergeException("Job " + index + " rejected by executor", e);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExcelMergeException("Interrupted after " + jobs + " jobs", e);
+		} finally {
+			// alle laufenden Jobs abwarten, sie schreiben noch in den Output
+			budget.acquireUninterruptibly(budgetPermits);
+		}
+
+		if (!failures.isEmpty()) {
+			ExcelMergeException exception =
+				new ExcelMergeException(failures.size() + " of " + jobs + " jobs failed", failures.peek());
+			failures.stream().skip(1).forEach(exception::addSuppressed);
+
+			throw exception;
+		}
+	}
+
+	private int permitsFor(@Nonnull ExcelMergerDTO dto) {
+		// abgerundet wie das Budget, damit z.B. zwei Jobs in das doppelte Budget eines Jobs passen
+		long permits = estimateMemory(dto) / BYTES_PER_PERMIT;
+
+		return (int) Math.max(1, Math.min(budgetPermits, permits));
+	}
+
+	private void merge(long index, @Nonnull ExcelMergerDTO dto, @Nonnull BatchOutput output)
+		throws ExcelMergeException, IOException {
+
+		long start = System.nanoTime();
+		listener.phaseStarted(MergePhase.OPEN_TEMPLATE, start);
+		try (Workbook workbook = ExcelMerger.createWorkbookFromTemplate(new ByteArrayInputStream(template))) {
+			listener.phaseFinished(MergePhase.OPEN_TEMPLATE, start, System.nanoTime());
+
+			ExcelMerger.mergeData(
+				workbook.getSheet(sheetName),
+				SheetMerge.of(compiledTemplate, dto),
+				MergeOptions.defaults().withListener(listener));
+
+			long writeStart = System.nanoTime();
+			listener.phaseStarted(MergePhase.WRITE, writeStart);
+			output.write(index, dto, workbook);
+			listener.phaseFinished(MergePhase.WRITE, writeStart, System.nanoTime());
+		}
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", BatchMerger.class.getSimpleName() + '[', "]")
+			.add("sheetName=" + sheetName)
+			.add("templateSize=" + template.length)
+			.add("budget=" + (long) budgetPermits * BYTES_PER_PERMIT)
+			.toString();
+	}
+
+	/**
+	 * Schreibt das Resultat eines Jobs, wird parallel aus mehreren Threads aufgerufen
+	 */
+	@FunctionalInterface
+	public interface BatchOutput {
+
+		/**
+		 * @param index die Position des DTOs im Stream
+		 */
+		void write(long index, @Nonnull ExcelMergerDTO data, @Nonnull Workbook workbook) throws IOException;
+	}
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFRow;
+
+/**
+ * Passt die Spaltenbreiten an den Inhalt an, wie {@link Sheet#autoSizeColumn(int)}, aber ohne jede Zelle mit AWT zu
+ * layouten: die Breite eines Textes wird aus den gecachten Zeichenbreiten seiner Schrift berechnet (siehe
+ * {@link GlyphWidths}).
+ *
+ * <p>Die maximale Breite pro Spalte wird laufend nachgefuehrt, waehrend die Zeilen gemerged werden (siehe
+ * {@link MergeOptions#withAutoSizer(ColumnAutoSizer)} und
+ * {@link RowFiller#autoSize(ColumnAutoSizer)}). Das Setzen der Breiten am Schluss ist dadurch O(Spalten), auch bei
+ * SXSSF, wo die meisten Zeilen bereits auf die Disk geschrieben wurden. Wurde keine Zeile nachgefuehrt, liest
+ * {@link #applyAutoSize(Sheet)} alle Zeilen des Sheets.</p>
+ *
+ * <p>Wie bei POI werden Zellen in Merged-Regions ignoriert. Das Resultat entspricht POI bis auf Kerning und Rich-Text
+ * (es wird immer die Schrift des Zell-Styles verwendet). Formeln werden erst in {@link #applyAutoSize(Sheet)}
+ * ausgemessen, nach dem Evaluieren.</p>
+ *
+ * <p>Ein ColumnAutoSizer gehoert zu einem Sheet und ist nicht thread-safe.</p>
+ */
+public final class ColumnAutoSizer implements ExcelConverter {
+
+	private static final int UNITS_PER_CHAR = 256;
+	private static final int MAX_COLUMN_WIDTH = 255 * UNITS_PER_CHAR;
+	private static final int INITIAL_COLUMNS = 16;
+	private static final int COLUMN_BITS = 32;
+	private static final long COLUMN_MASK = 0xFFFF_FFFFL;
+	private static final double NO_WIDTH = -1;
+
+	/**
+	 * null: alle Spalten
+	 */
+	@Nullable
+	private final BitSet columns;
+	@Nonnull
+	private double[] widths = newWidths(INITIAL_COLUMNS);
+	@Nonnull
+	private final DataFormatter formatter = new DataFormatter();
+	@Nonnull
+	private final MergedCells mergedCells = new MergedCells();
+	private boolean tracked = false;
+
+	/**
+	 * Die Schriften des Workbooks, Index: Font-Index
+	 */
+	@Nullable
+	private Workbook workbook = null;
+	@Nonnull
+	private GlyphWidths[] fonts = new GlyphWidths[0];
+	private int defaultCharWidth = 1;
+
+	/**
+	 * Zeile (obere 32 Bit) und Spalte der Formel-Zellen, die erst nach dem Evaluieren ausgemessen werden
+	 */
+	@Nonnull
+	private long[] formulaCells = new long[INITIAL_COLUMNS];
+	private int formulaCellCount = 0;
+
+	private ColumnAutoSizer(@Nullable BitSet columns) {
+		this.columns = columns;
+	}
+
+	@Nonnull
+	public static ColumnAutoSizer allColumns() {
+		return new ColumnAutoSizer(null);
+	}
+
+	/**
+	 * @param columns die Spalten (0-basiert), deren Breite angepasst wird
+	 */
+	@Nonnull
+	public static ColumnAutoSizer of(@Nonnull int... columns) {
+		BitSet bitSet = new BitSet();
+		for (int column : columns) {
+			bitSet.set(column);
+		}
+
+		return new ColumnAutoSizer(bitSet);
+	}
+
+	/**
+	 * Fuehrt die Breiten mit den Zellen der Zeile nach
+	 */
+	public void track(@Nonnull Row row) {
+		tracked = true;
+
+		List<CellRangeAddress> regions = mergedCells.getRegions(row.getSheet(), row.getRowNum());
+		int start = Math.max(row.getFirstCellNum(), 0);
+		int end = Math.max(row.getLastCellNum(), 0);
+
+		for (int i = start; i <= end; i++) {
+			Cell cell = row.getCell(i);
+			if (cell != null && isTracked(i) && !isMerged(regions, i)) {
+				track(cell, !(row instanceof SXSSFRow));
+			}
+		}
+	}
+
+	/**
+	 * Setzt die Breite aller Spalten mit mindestens einem Wert. Spalten ohne Wert werden nicht veraendert.
+	 */
+	@Override
+	public void applyAutoSize(@Nonnull Sheet sheet) {
+		if (!tracked) {
+			for (Row row : sheet) {
+				track(row);
+			}
+		}
+
+		measureFormulaCells(sheet);
+
+		for (int column = 0; column < widths.length; column++) {
+			double width = widths[column];
+			if (width >= 0) {
+				// wie Sheet#autoSizeColumn
+				sheet.setColumnWidth(column, (int) Math.round(Math.min(width * UNITS_PER_CHAR, MAX_COLUMN_WIDTH)));
+			}
+		}
+	}
+
+	/**
+	 * @return die Breite der Spalte in Anzahl Zeichen wie {@link org.apache.poi.ss.util.SheetUtil#getColumnWidth},
+	 * -1 wenn die Spalte keine Werte hat
+	 */
+	public double getWidth(int column) {
+		return column < widths.length ? widths[column] : NO_WIDTH;
+	}
+
+	/**
+	 * Die Merged-Regions wurden verschoben (z.B. durch shiftRows) und muessen neu gelesen werden
+	 */
+	void mergedRegionsChanged() {
+		mergedCells.invalidate();
+	}
+
+	private boolean isTracked(int column) {
+		return columns == null || columns.get(column);
+	}
+
+	private static boolean isMerged(@Nonnull List<CellRangeAddress> regions, int column) {
+		for (int i = 0; i < regions.size(); i++) {
+			CellRangeAddress region = regions.get(i);
+			if (column >= region.getFirstColumn() && column <= region.getLastColumn()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private void track(@Nonnull Cell cell, boolean deferFormulas) {
+		CellType type = cell.getCellType();
+		if (type == CellType.FORMULA) {
+			if (deferFormulas) {
+				deferFormula(cell);
+				return;
+			}
+			type = cell.getCachedFormulaResultType();
+		}
+
+		String text = getText(cell, type);
+		if (text != null) {
+			updateWidth(cell, text);
+		}
+	}
+
+	@Nullable
+	private String getText(@Nonnull Cell cell, @Nonnull CellType type) {
+		switch (type) {
+		case STRING:
+			return cell.getStringCellValue();
+		case NUMERIC:
+			CellStyle style = cell.getCellStyle();
+			return formatter.formatRawCellContents(cell.getNumericCellValue(), style.getDataFormat(),
+				style.getDataFormatString());
+		case BOOLEAN:
+			return cell.getBooleanCellValue() ? "TRUE" : "FALSE";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Wie SheetUtil#getCellWidth: die breiteste Zeile inkl. einem Zeichen '0' als Rand, in Anzahl Zeichen '0' der
+	 * Standard-Schrift, plus Einzug
+	 */
+	private void updateWidth(@Nonnull Cell cell, @Nonnull String text) {
+		CellStyle style = cell.getCellStyle();
+		GlyphWidths glyphs = getGlyphWidths(cell.getSheet().getWorkbook(), style.getFontIndex());
+		short rotation = style.getRotation();
+
+		double max = NO_WIDTH;
+		int lineStart = 0;
+		while (lineStart <= text.length()) {
+			int lineEnd = text.indexOf('\n', lineStart);
+			if (lineEnd < 0) {
+				lineEnd = text.length();
+			}
+
+			double width = rotation == 0
+				? glyphs.frameWidthOf(text, lineStart, lineEnd)
+				: glyphs.rotatedFrameWidthOf(text, lineStart, lineEnd, rotation);
+
+			max = Math.max(max, width / defaultCharWidth + style.getIndention());
+			lineStart = lineEnd + 1;
+		}
+
+		int column = cell.getColumnIndex();
+		if (column >= widths.length) {
+			int length = widths.length;
+			widths = Arrays.copyOf(widths, Math.max(column + 1, length * 2));
+			Arrays.fill(widths, length, widths.length, NO_WIDTH);
+		}
+		widths[column] = Math.max(widths[column], max);
+	}
+
+	@Nonnull
+	private GlyphWidths getGlyphWidths(@Nonnull Workbook wb, int fontIndex) {
+		if (!wb.equals(workbook)) {
+			workbook = wb;
+			fonts = new GlyphWidths[wb.getNumberOfFonts()];
+			defaultCharWidth = Math.max((int) GlyphWidths.of(wb.getFontAt(0)).widthOf(GlyphWidths.DEFAULT_CHAR), 1);
+		}
+
+		if (fontIndex >= fonts.length) {
+			fonts = Arrays.copyOf(fonts, Math.max(fontIndex + 1, wb.getNumberOfFonts()));
+		}
+
+		GlyphWidths glyphs = fonts[fontIndex];
+		if (glyphs == null) {
+			glyphs = GlyphWidths.of(wb.getFontAt(fontIndex));
+			fonts[fontIndex] = glyphs;
+		}
+
+		return glyphs;
+	}
+
+	private void deferFormula(@Nonnull Cell cell) {
+		if (formulaCellCount == formulaCells.length) {
+			formulaCells = Arrays.copyOf(formulaCells, formulaCellCount * 2);
+		}
+
+		formulaCells[formulaCellCount++] = ((long) cell.getRowIndex() << COLUMN_BITS) | cell.getColumnIndex();
+	}
+
+	private void measureFormulaCells(@Nonnull Sheet sheet) {
+		for (int i = 0; i < formulaCellCount; i++) {
+			Row row = sheet.getRow((int) (formulaCells[i] >>> COLUMN_BITS));
+			Cell cell = row == null ? null : row.getCell((int) (formulaCells[i] & COLUMN_MASK));
+			if (cell != null && cell.getCellType() == CellType.FORMULA) {
+				track(cell, false);
+			}
+		}
+
+		formulaCellCount = 0;
+	}
+
+	@Nonnull
+	private static double[] newWidths(int length) {
+		double[] widths = new double[length];
+		Arrays.fill(widths, NO_WIDTH);
+
+		return widths;
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", ColumnAutoSizer.class.getSimpleName() + '[', "]")
+			.add("columns=" + (columns == null ? "all" : columns.toString()))
+			.add("formulaCells=" + formulaCellCount)
+			.toString();
+	}
+
+	/**
+	 * Die Merged-Regions pro Zeile. Neue Regions werden am Ende angefuegt (addMergedRegion), dann werden nur diese
+	 * nachgelesen.
+	 */
+	private static final class MergedCells {
+
+		@Nonnull
+		private final Map<Integer, List<CellRangeAddress>> regionsByRow = new HashMap<>();
+		@Nullable
+		private Sheet sheet = null;
+		private int indexed = 0;
+
+		@Nonnull
+		List<CellRangeAddress> getRegions(@Nonnull Sheet currentSheet, int rowNum) {
+			if (!currentSheet.equals(sheet)) {
+				invalidate();
+				sheet = currentSheet;
+			}
+
+			int count = currentSheet.getNumMergedRegions();
+			if (count < indexed) {
+				invalidate();
+			}
+
+			for (int i = indexed; i < count; i++) {
+				CellRangeAddress region = currentSheet.getMergedRegion(i);
+				for (int row = region.getFirstRow(); row <= region.getLastRow(); row++) {
+					regionsByRow.computeIfAbsent(row, key -> new ArrayList<>()).add(region);
+				}
+			}
+			indexed = count;
+
+			return regionsByRow.getOrDefault(rowNum, Collections.emptyList());
+		}
+
+		void invalidate() {
+			regionsByRow.clear();
+			indexed = 0;
+		}
+	}
+}
@@ -0,0 +1,637 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.StringJoiner;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.converters.Converter;
+import ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil;
+import ch.dvbern.oss.lib.excelmerger.converters.DoubleCellConverter;
+import ch.dvbern.oss.lib.excelmerger.converters.LongCellConverter;
+import ch.dvbern.oss.lib.excelmerger.converters.StandardConverters;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldProvider;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import org.apache.poi.ss.usermodel.Cell;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Die Zeilen einer Repeat-Gruppe, spaltenweise gespeichert. Fuer grosse (v.a. numerische) Reports, bei denen ein
+ * {@link ExcelMergerDTO} pro Zeile mit geboxten Werten zu viel Heap braucht.
+ *
+ * <p>Ganzzahlen werden in einem long[], Dezimalzahlen in einem double[] und Datumswerte als Epoch-Day in einem int[]
+ * gespeichert, ob eine Zeile einen Wert hat, haelt ein Bitset fest. Der Speicherbedarf ist dadurch proportional zur
+ * Anzahl Werte (8 bzw. 4 Bytes pro Wert) statt zur Anzahl Objekte. Andere Werte werden in einem Object[] gespeichert.</p>
+ *
+ * <p>Beim Mergen werden Zahlen, deren Feld einen {@link LongCellConverter} bzw. {@link DoubleCellConverter}
+ * verwendet (z.B. die Standard-Converter fuer Zahlen), ungeboxt aus dem Array in die Zelle geschrieben, ebenso
+ * Datumswerte mit dem {@link StandardConverters#DATE_CONVERTER}. Alle anderen Werte werden erst beim Lesen in das
+ * Objekt des Feldes umgewandelt (z.B. {@link BigDecimal#valueOf(double)}), d.h. Dezimalzahlen haben die Genauigkeit
+ * eines double, so wie in der Excel-Zelle.</p>
+ *
+ * <p>Jedes Feld hat hoechstens einen Wert pro Zeile, verschachtelte Gruppen werden nicht unterstuetzt. Beispiel:</p>
+ * <pre>
+ * ColumnarGroup kinder = excelData.createColumnarGroup(REPEAT_KIND);
+ * for (Kind kind : kinder) {
+ *     kinder.addRow()
+ *         .setValue(NAME, kind.getName())
+ *         .setLong(PRIORITAET, kind.getPrioritaet())
+ *         .setDecimal(PENSUM, kind.getPensum())
+ *         .setDate(GEBURTSTAG, kind.getGeburtstag());
+ * }
+ * </pre>
+ */
+public final class ColumnarGroup {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	@Nonnull
+	private final Map<MergeField<?>, Column> columns = new HashMap<>();
+	private int rowCount = 0;
+	private int capacity = 0;
+
+	/**
+	 * @see ExcelMergerDTO#createColumnarGroup(MergeField)
+	 */
+	ColumnarGroup() {
+		// erstellt via ExcelMergerDTO
+	}
+
+	/**
+	 * Beginnt eine neue Zeile, die folgenden set-Methoden schreiben in diese Zeile.
+	 */
+	@Nonnull
+	public ColumnarGroup addRow() {
+		if (rowCount == capacity) {
+			capacity = capacity == 0 ? INITIAL_CAPACITY : capacity * 2;
+			columns.values().forEach(column -> column.grow(capacity));
+		}
+
+		rowCount++;
+
+		return this;
+	}
+
+	@Nonnull
+	public ColumnarGroup setInt(@Nonnull MergeFieldProvider provider, int value) {
+		return setLong(provider.getMergeField(), value, LongColumn.INTEGER);
+	}
+
+	@Nonnull
+	public ColumnarGroup setInt(@Nonnull MergeField<Integer> field, int value) {
+		return setLong(field, value, LongColumn.INTEGER);
+	}
+
+	@Nonnull
+	public ColumnarGroup setLong(@Nonnull MergeFieldProvider provider, long value) {
+		return setLong(provider.getMergeField(), value, LongColumn.LONG);
+	}
+
+	@Nonnull
+	public ColumnarGroup setLong(@Nonnull MergeField<Long> field, long value) {
+		return setLong(field, value, LongColumn.LONG);
+	}
+
+	@Nonnull
+	public ColumnarGroup setDecimal(@Nonnull MergeFieldProvider provider, double value) {
+		return setDouble(provider.getMergeField(), value);
+	}
+
+	@Nonnull
+	public ColumnarGroup setDecimal(@Nonnull MergeField<BigDecimal> field, double value) {
+		return setDouble(field, value);
+	}
+
+	/**
+	 * Convenience, speichert den Wert als double. NULL bedeutet: kein Wert.
+	 */
+	@Nonnull
+	public ColumnarGroup setDecimal(@Nonnull MergeFieldProvider provider, @Nullable BigDecimal value) {
+		return value == null ? this : setDouble(provider.getMergeField(), value.doubleValue());
+	}
+
+	/**
+	 * Convenience, speichert den Wert als double. NULL bedeutet: kein Wert.
+	 */
+	@Nonnull
+	public ColumnarGroup setDecimal(@Nonnull MergeField<BigDecimal> field, @Nullable BigDecimal value) {
+		return value == null ? this : setDouble(field, value.doubleValue());
+	}
+
+	/**
+	 * Speichert das Datum als Epoch-Day. NULL bedeutet: kein Wert.
+	 */
+	@Nonnull
+	public ColumnarGroup setDate(@Nonnull MergeFieldProvider provider, @Nullable LocalDate value) {
+		return setEpochDay(provider.getMergeField(), value);
+	}
+
+	/**
+	 * Speichert das Datum als Epoch-Day. NULL bedeutet: kein Wert.
+	 */
+	@Nonnull
+	public ColumnarGroup setDate(@Nonnull MergeField<LocalDate> field, @Nullable LocalDate value) {
+		return setEpochDay(field, value);
+	}
+
+	/**
+	 * Fuer alle anderen Werte, z.B. Texte. NULL bedeutet: kein Wert.
+	 */
+	@Nonnull
+	public <V> ColumnarGroup setValue(@Nonnull MergeFieldProvider provider, @Nullable V value) {
+		return setObject(provider.getMergeField(), value);
+	}
+
+	/**
+	 * Fuer alle anderen Werte, z.B. Texte. NULL bedeutet: kein Wert.
+	 */
+	@Nonnull
+	public <V> ColumnarGroup setValue(@Nonnull MergeField<V> field, @Nullable V value) {
+		return setObject(field, value);
+	}
+
+	public int size() {
+		return rowCount;
+	}
+
+	/**
+	 * @return die Zeilen als unveraenderbare Liste. Die DTOs werden beim Zugriff erstellt und lesen direkt aus den
+	 * Spalten.
+	 */
+	@Nonnull
+	List<ExcelMergerDTO> asList() {
+		return new Rows();
+	}
+
+	@Nonnull
+	private ColumnarGroup setLong(@Nonnull MergeField<?> field, long value, boolean asInteger) {
+		requireNonNull(field);
+
+		LongColumn column = column(field, LongColumn.class, cap -> new LongColumn(cap, asInteger));
+		if (column.asInteger != asInteger) {
+			throw new IllegalArgumentException("Field " + field.getKey() + " is used for int and long values");
+		}
+		column.set(currentRow(), value);
+
+		return this;
+	}
+
+	@Nonnull
+	private ColumnarGroup setDouble(@Nonnull MergeField<?> field, double value) {
+		requireNonNull(field);
+
+		DoubleColumn column = column(field, DoubleColumn.class, DoubleColumn::new);
+		column.set(currentRow(), value);
+
+		return this;
+	}
+
+	@Nonnull
+	private ColumnarGroup setEpochDay(@Nonnull MergeField<?> field, @Nullable LocalDate value) {
+		requireNonNull(field);
+		if (value == null) {
+			return this;
+		}
+
+		DateColumn column = column(field, DateColumn.class, DateColumn::new);
+		column.set(currentRow(), Math.toIntExact(value.toEpochDay()));
+
+		return this;
+	}
+
+	@Nonnull
+	private ColumnarGroup setObject(@Nonnull MergeField<?> field, @Nullable Object value) {
+		requireNonNull(field);
+		if (value == null) {
+			return this;
+		}
+
+		ObjectColumn column = column(field, ObjectColumn.class, ObjectColumn::new);
+		column.set(currentRow(), value);
+
+		return this;
+	}
+
+	private int currentRow() {
+		if (rowCount == 0) {
+			throw new IllegalStateException("addRow() must be called before setting values");
+		}
+
+		return rowCount - 1;
+	}
+
+	@Nonnull
+	private <C extends Column> C column(
+		@Nonnull MergeField<?> field,
+		@Nonnull Class<C> type,
+		@Nonnull ColumnFactory<C> factory) {
+
+		Column column = columns.computeIfAbsent(field, key -> factory.create(capacity));
+		if (!type.isInstance(column)) {
+			throw new IllegalArgumentException("Field " + field.getKey() + " already has values of another type: "
+				+ column.getClass().getSimpleName());
+		}
+
+		return type.cast(column);
+	}
+
+	@Nullable
+	private Column getColumn(@Nonnull MergeField<?> field) {
+		return columns.get(field);
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", ColumnarGroup.class.getSimpleName() + '[', "]")
+			.add("rows=" + rowCount)
+			.add("columns=" + columns.size())
+			.toString();
+	}
+
+	@FunctionalInterface
+	private interface ColumnFactory<C extends Column> {
+
+		@Nonnull
+		C create(int capacity);
+	}
+
+	/**
+	 * Eine Spalte mit Bitset fuer die Zeilen, die einen Wert haben
+	 */
+	private abstract static class Column {
+
+		private static final int BITS_PER_WORD = 64;
+		private static final int WORD_SHIFT = 6;
+
+		@Nonnull
+		private long[] present;
+
+		Column(int capacity) {
+			present = new long[words(capacity)];
+		}
+
+		private static int words(int capacity) {
+			return (capacity + BITS_PER_WORD - 1) / BITS_PER_WORD;
+		}
+
+		void grow(int newCapacity) {
+			present = Arrays.copyOf(present, words(newCapacity));
+		}
+
+		void markPresent(int row) {
+			present[row >>> WORD_SHIFT] |= 1L << row;
+		}
+
+		boolean isPresent(int row) {
+			return (present[row >>> WORD_SHIFT] & (1L << row)) != 0;
+		}
+
+		@Nonnull
+		abstract Object get(int row);
+
+		/**
+		 * @return der Wert als double, {@link Double#NaN} wenn er keine Zahl ist
+		 */
+		double getDouble(int row) {
+			Object value = get(row);
+
+			return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+		}
+
+		/**
+		 * @return FALSE, wenn der Wert ueber den Converter geschrieben werden muss
+		 */
+		boolean write(
+			@Nonnull Cell cell,
+			@Nonnull String pattern,
+			@Nonnull Converter<?> converter,
+			int row,
+			boolean date1904) {
+
+			return false;
+		}
+	}
+
+	private static final class LongColumn extends Column {
+
+		private static final boolean INTEGER = true;
+		private static final boolean LONG = false;
+
+		private final boolean asInteger;
+		@Nonnull
+		private long[] values;
+
+		LongColumn(int capacity, boolean asInteger) {
+			super(capacity);
+			this.asInteger = asInteger;
+			this.values = new long[capacity];
+		}
+
+		@Override
+		void grow(int newCapacity) {
+			super.grow(newCapacity);
+			values = Arrays.copyOf(values, newCapacity);
+		}
+
+		void set(int row, long value) {
+			values[row] = value;
+			markPresent(row);
+		}
+
+		@Nonnull
+		@Override
+		Object get(int row) {
+			if (asInteger) {
+				// kein ?:-Operator, der wuerde den Integer zu einem Long machen
+				return Integer.valueOf((int) values[row]);
+			}
+
+			return Long.valueOf(values[row]);
+		}
+
+		@Override
+		double getDouble(int row) {
+			return values[row];
+		}
+
+		@Override
+		boolean write(
+			@Nonnull Cell cell,
+			@Nonnull String pattern,
+			@Nonnull Converter<?> converter,
+			int row,
+			boolean date1904) {
+
+			if (!(converter instanceof LongCellConverter)) {
+				return false;
+			}
+
+			((LongCellConverter) converter).setLongCellValue(cell, pattern, values[row]);
+
+			return true;
+		}
+	}
+
+	private static final class DoubleColumn extends Column {
+
+		@Nonnull
+		private double[] values;
+
+		DoubleColumn(int capacity) {
+			super(capacity);
+			this.values = new double[capacity];
+		}
+
+		@Override
+		void grow(int newCapacity) {
+			super.grow(newCapacity);
+			values = Arrays.copyOf(values, newCapacity);
+		}
+
+		void set(int row, double value) {
+			values[row] = value;
+			markPresent(row);
+		}
+
+		@Nonnull
+		@Override
+		Object get(int row) {
+			return BigDecimal.valueOf(values[row]);
+		}
+
+		@Override
+		double getDouble(int row) {
+			return values[row];
+		}
+
+		@Override
+		boolean write(
+			@Nonnull Cell cell,
+			@Nonnull String pattern,
+			@Nonnull Converter<?> converter,
+			int row,
+			boolean date1904) {
+
+			if (!(converter instanceof DoubleCellConverter)) {
+				return false;
+			}
+
+			((DoubleCellConverter) converter).setDoubleCellValue(cell, pattern, values[row]);
+
+			return true;
+		}
+	}
+
+	private static final class DateColumn extends Column {
+
+		@Nonnull
+		private int[] epochDays;
+
+		DateColumn(int capacity) {
+			super(capacity);
+			this.epochDays = new int[capacity];
+		}
+
+		@Override
+		void grow(int newCapacity) {
+			super.grow(newCapacity);
+			epochDays = Arrays.copyOf(epochDays, newCapacity);
+		}
+
+		void set(int row, int epochDay) {
+			epochDays[row] = epochDay;
+			markPresent(row);
+		}
+
+		@Nonnull
+		@Override
+		Object get(int row) {
+			return LocalDate.ofEpochDay(epochDays[row]);
+		}
+
+		@Override
+		boolean write(
+			@Nonnull Cell cell,
+			@Nonnull String pattern,
+			@Nonnull Converter<?> converter,
+			int row,
+			boolean date1904) {
+
+			if (!StandardConverters.DATE_CONVERTER.equals(converter) || !pattern.equals(cell.getStringCellValue())) {
+				return false;
+			}
+
+			cell.setCellValue(ConverterUtil.toExcelDate(epochDays[row], date1904));
+
+			return true;
+		}
+	}
+
+	private static final class ObjectColumn extends Column {
+
+		@Nonnull
+		private Object[] values;
+
+		ObjectColumn(int capacity) {
+			super(capacity);
+			this.values = new Object[capacity];
+		}
+
+		@Override
+		void grow(int newCapacity) {
+			super.grow(newCapacity);
+			values = Arrays.copyOf(values, newCapacity);
+		}
+
+		void set(int row, @Nonnull Object value) {
+			values[row] = value;
+			markPresent(row);
+		}
+
+		@Nonnull
+		@Override
+		Object get(int row) {
+			return values[row];
+		}
+	}
+
+	final class Rows extends AbstractList<ExcelMergerDTO> implements RandomAccess {
+
+		/**
+		 * @return die Anzahl Werte aller Zeilen, ohne die DTOs der Zeilen zu erstellen (jede Spalte zaehlt auf jeder
+		 * Zeile, auch wenn sie dort keinen Wert hat)
+		 */
+		long countValues() {
+			return (long) rowCount * columns.size();
+		}
+
+		@Override
+		@Nonnull
+		public ExcelMergerDTO get(int index) {
+			if (index < 0 || index >= rowCount) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rowCount);
+			}
+
+			return new RowView(index);
+		}
+
+		@Override
+		public int size() {
+			return rowCount;
+		}
+	}
+
+	/**
+	 * Eine Zeile der Gruppe, liest direkt aus den Spalten
+	 */
+	private final class RowView extends ExcelMergerDTO {
+
+		private static final String READ_ONLY = "Rows of a ColumnarGroup are read only";
+
+		private final int row;
+
+		private RowView(int row) {
+			this.row = row;
+		}
+
+		@Override
+		public <V> boolean hasValue(@Nonnull MergeField<V> mergeField, int valueOffset) {
+			Column column = getColumn(mergeField);
+
+			return valueOffset == 0 && column != null && column.isPresent(row);
+		}
+
+		@Nullable
+		@Override
+		public <V> V getValue(@Nonnull MergeField<V> mergeField, int valueOffset) {
+			if (!hasValue(mergeField, valueOffset)) {
+				return null;
+			}
+
+			//noinspection unchecked
+			return (V) requireNonNull(getColumn(mergeField)).get(row);
+		}
+
+		@Override
+		public double getDouble(@Nonnull MergeField<?> mergeField, int valueOffset) {
+			if (!hasValue(mergeField, valueOffset)) {
+				return Double.NaN;
+			}
+
+			return requireNonNull(getColumn(mergeField)).getDouble(row);
+		}
+
+		@Override
+		boolean writeValue(
+			@Nonnull Cell cell,
+			@Nonnull String pattern,
+			@Nonnull MergeField<?> field,
+			int valueOffset,
+			boolean date1904) {
+
+			if (!hasValue(field, valueOffset)) {
+				return false;
+			}
+
+			return requireNonNull(getColumn(field)).write(cell, pattern, field.getConverter(), row, date1904);
+		}
+
+		@Nullable
+		@Override
+		public List<ExcelMergerDTO> getGroup(@Nonnull RepeatRowMergeField groupField) {
+			return null;
+		}
+
+		@Override
+		public <V> void addValue(@Nonnull MergeField<V> mergeField, @Nullable V value) {
+			throw new UnsupportedOperationException(READ_ONLY);
+		}
+
+		@Override
+		public void addInt(@Nonnull MergeField<Integer> mergeField, int value) {
+			throw new UnsupportedOperationException(READ_ONLY);
+		}
+
+		@Override
+		public void addLong(@Nonnull MergeField<Long> mergeField, long value) {
+			throw new UnsupportedOperationException(READ_ONLY);
+		}
+
+		@Override
+		public void addDouble(@Nonnull MergeField<BigDecimal> mergeField, double value) {
+			throw new UnsupportedOperationException(READ_ONLY);
+		}
+
+		@Nonnull
+		@Override
+		public <V> ExcelMergerDTO createGroup(@Nonnull MergeField<V> group) {
+			throw new UnsupportedOperationException("Rows of a ColumnarGroup cannot have groups");
+		}
+	}
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.MergeEvents.TemplateParse;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import net.jcip.annotations.Immutable;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Unveraenderlicher Merge-Plan eines Template-Sheets.
+ *
+ * <p>Beim Kompilieren wird das Sheet genau einmal gelesen: Placeholder-Positionen, Repeat-Gruppen (inkl. Anzahl
+ * Zeilen), Formel-Zellen und Merged-Regions werden festgehalten. Die Texte der Placeholder-Zellen werden
+ * vorgeparst, so dass beim Mergen keine Regex mehr ausgewertet werden muss.</p>
+ *
+ * <p>Ein CompiledTemplate enthaelt keine Referenzen auf POI-Objekte und kann deshalb ueber mehrere Requests und
+ * Threads hinweg fuer alle Workbooks verwendet werden, die aus demselben Template erstellt wurden.</p>
+ *
+ * @see ExcelMerger#mergeData(Sheet, SheetMerge, MergeOptions)
+ * @see RowFiller#initRowFiller(org.apache.poi.xssf.usermodel.XSSFSheet, CompiledTemplate, int)
+ */
+@Immutable
+public final class CompiledTemplate {
+
+	@Nonnull
+	private final String sheetName;
+	@Nonnull
+	private final Map<String, MergeField<?>> mergeFields;
+	@Nonnull
+	private final FieldOrdinals ordinals;
+	@Nonnull
+	private final Map<String, TokenizedText> texts;
+	@Nonnull
+	private final List<TemplateRow> rows;
+	@Nonnull
+	private final List<CellRangeAddress> mergedRegions;
+
+	private CompiledTemplate(
+		@Nonnull String sheetName,
+		@Nonnull Map<String, MergeField<?>> mergeFields,
+		@Nonnull Map<String, TokenizedText> texts,
+		@Nonnull List<TemplateRow> rows,
+		@Nonnull List<CellRangeAddress> mergedRegions) {
+
+		this.sheetName = sheetName;
+		this.mergeFields = Collections.unmodifiableMap(mergeFields);
+		this.ordinals = FieldOrdinals.of(mergeFields);
+		this.texts = Collections.unmodifiableMap(texts);
+		this.rows = Collections.unmodifiableList(rows);
+		this.mergedRegions = Collections.unmodifiableList(mergedRegions);
+	}
+
+	/**
+	 * Liest das (noch ungemergte) Template-Sheet und erstellt daraus den Merge-Plan.
+	 *
+	 * @param sheet das Template-Sheet, darf noch nicht gemerged worden sein
+	 * @param fields alle MergeFields, die im Sheet verwendet werden
+	 */
+	@Nonnull
+	public static CompiledTemplate compile(@Nonnull Sheet sheet, @Nonnull List<MergeField<?>> fields) {
+		requireNonNull(sheet);
+		requireNonNull(fields);
+
+		TemplateParse event = MergeEvents.templateParse();
+		event.begin();
+
+		Map<String, MergeField<?>> fieldMap = fields.stream()
+			.collect(Collectors.toMap(MergeField::getKey, field -> field));
+
+		Map<String, TokenizedText> texts = new HashMap<>();
+		List<TemplateRow> rows = new ArrayList<>();
+
+		for (int rowNum = 0; rowNum <= sheet.getLastRowNum(); rowNum++) {
+			Row row = sheet.getRow(rowNum);
+			rows.add(row == null ? null : compileRow(row, fieldMap, texts));
+		}
+
+		List<CellRangeAddress> mergedRegions = sheet.getMergedRegions().stream()
+			.map(CellRangeAddress::copy)
+			.collect(Collectors.toList());
+
+		if (event.shouldCommit()) {
+			event.setSheet(sheet.getSheetName());
+			event.setRows(rows.size());
+			event.setPlaceholders((int) countCells(rows, TemplateCell::hasPlaceholder));
+			event.setFormulas((int) countCells(rows, cell -> cell.getFormula() != null));
+			event.commit();
+		}
+
+		return new CompiledTemplate(sheet.getSheetName(), fieldMap, texts, rows, mergedRegions);
+	}
+
+	private static long countCells(@Nonnull List<TemplateRow> rows, @Nonnull Predicate<TemplateCell> predicate) {
+		return rows.stream()
+			.filter(Objects::nonNull)
+			.flatMap(row -> row.getCells().stream())
+			.filter(predicate)
+			.count();
+	}
+
+	@Nonnull
+	private static TemplateRow compileRow(
+		@Nonnull Row row,
+		@Nonnull Map<String, MergeField<?>> fieldMap,
+		@Nonnull Map<String, TokenizedText> texts) {
+
+		List<TemplateCell> cells = new ArrayList<>();
+		List<TemplateGroup> groups = new ArrayList<>();
+
+		for (int col = Math.max(row.getFirstCellNum(), 0); col < row.getLastCellNum(); col++) {
+			Cell cell = row.getCell(col);
+			if (cell == null) {
+				continue;
+			}
+
+			String text = null;
+			String formula = null;
+			ParsedPlaceholder parsed = null;
+			if (cell.getCellType() == CellType.STRING) {
+				text = cell.getStringCellValue();
+				TokenizedText tokens = PlaceholderTokenizer.tokenize(text);
+				if (tokens.hasPlaceholders()) {
+					texts.put(text, tokens);
+				}
+				parsed = tokens.getLastPlaceholder();
+			} else if (cell.getCellType() == CellType.FORMULA) {
+				formula = cell.getCellFormula();
+			}
+
+			cells.add(new TemplateCell(col, cell.getCellType(), text, formula, parsed != null));
+
+			MergeField<?> field = parsed == null ? null : fieldMap.get(parsed.getKey());
+			if (field != null && field.getType() == MergeField.Type.REPEAT_ROW) {
+				// wie Context#detectGroup: von der hintersten zur vordersten Spalte
+				Integer groupRows = parsed.getRows();
+				groups.add(0, new TemplateGroup(col, (RepeatRowMergeField) field, groupRows == null ? 1 : groupRows));
+			}
+		}
+
+		return new TemplateRow(row.getRowNum(), cells, groups);
+	}
+
+	@Nonnull
+	public String getSheetName() {
+		return sheetName;
+	}
+
+	/**
+	 * @return die MergeFields nach Key
+	 */
+	@Nonnull
+	public Map<String, MergeField<?>> getMergeFields() {
+		return mergeFields;
+	}
+
+	/**
+	 * @return die Nummerierung der MergeFields, wird von allen Contexts dieses Templates verwendet
+	 */
+	@Nonnull
+	FieldOrdinals getOrdinals() {
+		return ordinals;
+	}
+
+	/**
+	 * Liefert den vorgeparsten Zell-Text. Texte, die nicht im Template vorkommen (z.B. weil ein Teil der
+	 * Placeholder bereits ersetzt wurde), werden ungecached zerlegt.
+	 */
+	@Nonnull
+	TokenizedText tokenize(@Nonnull String text) {
+		TokenizedText cached = texts.get(text);
+
+		return cached != null ? cached : PlaceholderTokenizer.tokenize(text);
+	}
+
+	/**
+	 * @return die Template-Zeile oder NULL, wenn die Zeile im Template nicht existiert
+	 */
+	@Nullable
+	public TemplateRow getRow(int rowNum) {
+		return rowNum >= 0 && rowNum < rows.size() ? rows.get(rowNum) : null;
+	}
+
+	/**
+	 * @return die Gruppen, die auf der Zeile beginnen, von der hintersten zur vordersten Spalte
+	 */
+	@Nonnull
+	List<TemplateGroup> getGroups(int rowNum) {
+		TemplateRow row = getRow(rowNum);
+
+		return row == null ? Collections.emptyList() : row.getGroups();
+	}
+
+	/**
+	 * @return alle Zeilen des Templates, Index = Zeilennummer. Nicht existierende Zeilen sind NULL.
+	 */
+	@Nonnull
+	public List<TemplateRow> getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return die erste Zeile mit einer Repeat-Gruppe, NULL wenn das Template keine Gruppe enthaelt.
+	 */
+	@Nullable
+	public TemplateRow getFirstGroupRow() {
+		return rows.stream()
+			.filter(row -> row != null && row.getGroup() != null)
+			.findFirst()
+			.orElse(null);
+	}
+
+	/**
+	 * @return Kopien der Merged-Regions des Templates
+	 */
+	@Nonnull
+	public List<CellRangeAddress> getMergedRegions() {
+		return mergedRegions.stream()
+			.map(CellRangeAddress::copy)
+			.collect(Collectors.toList());
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", CompiledTemplate.class.getSimpleName() + '[', "]")
+			.add("sheetName=" + sheetName)
+			.add("rows=" + rows.size())
+			.add("texts=" + texts.size())
+			.toString();
+	}
+
+	/**
+	 * Eine Zeile des Templates.
+	 */
+	@Immutable
+	public static final class TemplateRow {
+
+		private final int rowNum;
+		@Nonnull
+		private final List<TemplateCell> cells;
+		@Nonnull
+		private final List<TemplateGroup> groups;
+
+		TemplateRow(int rowNum, @Nonnull List<TemplateCell> cells, @Nonnull List<TemplateGroup> groups) {
+			this.rowNum = rowNum;
+			this.cells = Collections.unmodifiableList(cells);
+			this.groups = Collections.unmodifiableList(groups);
+		}
+
+		public int getRowNum() {
+			return rowNum;
+		}
+
+		@Nonnull
+		public List<TemplateCell> getCells() {
+			return cells;
+		}
+
+		/**
+		 * @return die Repeat-Gruppe, die auf dieser Zeile beginnt oder NULL. Beginnen mehrere Gruppen auf der Zeile,
+		 * gewinnt wie beim Mergen die hinterste.
+		 */
+		@Nullable
+		public TemplateGroup getGroup() {
+			return groups.isEmpty() ? null : groups.get(0);
+		}
+
+		/**
+		 * @return alle Repeat-Gruppen, die auf dieser Zeile beginnen, von der hintersten zur vordersten Spalte
+		 */
+		@Nonnull
+		public List<TemplateGroup> getGroups() {
+			return groups;
+		}
+
+		public boolean hasFormulas() {
+			return cells.stream().anyMatch(cell -> cell.getFormula() != null);
+		}
+
+		@Override
+		@Nonnull
+		public String toString() {
+			return new StringJoiner(", ", TemplateRow.class.getSimpleName() + '[', "]")
+				.add("rowNum=" + rowNum)
+				.add("cells=" + cells.size())
+				.add("groups=" + groups)
+				.toString();
+		}
+	}
+
+	/**
+	 * Eine (nicht leere) Zelle des Templates.
+	 */
+	@Immutable
+	public static final class TemplateCell {
+
+		private final int column;
+		@Nonnull
+		private final CellType cellType;
+		@Nullable
+		private final String text;
+		@Nullable
+		private final String formula;
+		private final boolean placeholder;
+
+		TemplateCell(
+			int column,
+			@Nonnull CellType cellType,
+			@Nullable String text,
+			@Nullable String formula,
+			boolean placeholder) {
+
+			this.column = column;
+			this.cellType = requireNonNull(cellType);
+			this.text = text;
+			this.formula = formula;
+			this.placeholder = placeholder;
+		}
+
+		public int getColumn() {
+			return column;
+		}
+
+		@Nonnull
+		public CellType getCellType() {
+			return cellType;
+		}
+
+		/**
+		 * @return der Text einer STRING Zelle, sonst NULL
+		 */
+		@Nullable
+		public String getText() {
+			return text;
+		}
+
+		/**
+		 * @return die Formel einer FORMULA Zelle, sonst NULL
+		 */
+		@Nullable
+		public String getFormula() {
+			return formula;
+		}
+
+		public boolean hasPlaceholder() {
+			return placeholder;
+		}
+
+		@Override
+		@Nonnull
+		public String toString() {
+			return new StringJoiner(", ", TemplateCell.class.getSimpleName() + '[', "]")
+				.add("column=" + column)
+				.add("cellType=" + cellType)
+				.add("text=" + text)
+				.add("formula=" + formula)
+				.toString();
+		}
+	}
+
+	/**
+	 * Eine Repeat-Gruppe: beginnt auf der Zeile, auf welcher der {@link RepeatRowMergeField} Placeholder steht und
+	 * umfasst {@link #getRows()} Zeilen.
+	 */
+	@Immutable
+	public static final class TemplateGroup {
+
+		private final int column;
+		@Nonnull
+		private final RepeatRowMergeField field;
+		private final int rows;
+
+		TemplateGroup(int column, @Nonnull RepeatRowMergeField field, int rows) {
+			this.column = column;
+			this.field = requireNonNull(field);
+			this.rows = rows;
+		}
+
+		public int getColumn() {
+			return column;
+		}
+
+		@Nonnull
+		public RepeatRowMergeField getField() {
+			return field;
+		}
+
+		public int getRows() {
+			return rows;
+		}
+
+		@Override
+		@Nonnull
+		public String toString() {
+			return new StringJoiner(", ", TemplateGroup.class.getSimpleName() + '[', "]")
+				.add("column=" + column)
+				.add("field=" + field)
+				.add("rows=" + rows)
+				.toString();
+		}
+	}
+}
@@ -15,13 +15,15 @@
 
 package ch.dvbern.oss.lib.excelmerger;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Matcher;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil;
+import ch.dvbern.oss.lib.excelmerger.converters.DateCellConverter;
 import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
 import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
 import org.apache.poi.ss.usermodel.Cell;
@@ -30,6 +32,7 @@ import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
 
 import static java.util.Objects.requireNonNull;
 
@@ -41,6 +44,21 @@ public class Context {
 	private final Sheet sheet;
 	@Nonnull
 	private final Map<String, MergeField<?>> mergeFields;
+	@Nonnull
+	private final FieldOrdinals ordinals;
+	@Nullable
+	private final CompiledTemplate template;
+
+	/**
+	 * Die Offsets der Repeat-Felder der Zeile, die gerade gemerged wird (Index: Nummer des Feldes)
+	 */
+	@Nonnull
+	private final int[] valueOffsets;
+
+	/**
+	 * Das Datums-System des Workbooks, wird einmal pro Merge gelesen (siehe {@link DateCellConverter})
+	 */
+	private final boolean date1904;
 
 	private int currentRow = 0;
 
@@ -48,6 +66,16 @@ public class Context {
 	private CellCopyPolicy cellCopyPolicy = new CellCopyPolicy.Builder()
 		.build();
 
+	@Nullable
+	private ColumnAutoSizer autoSizer = null;
+
+	@Nonnull
+	private MergeListener listener = MergeListener.NO_OP;
+	private boolean listening = false;
+
+	@Nullable
+	private MergedRegionIndex mergedRegionIndex = null;
+
 	Context(@Nonnull Workbook workbook, @Nonnull Sheet sheet, @Nonnull Map<String, MergeField<?>> mergeFields) {
 		this(workbook, sheet, mergeFields, sheet.getFirstRowNum());
 	}
@@ -61,9 +89,24 @@ public class Context {
 		this.workbook = requireNonNull(workbook);
 		this.sheet = requireNonNull(sheet);
 		this.mergeFields = requireNonNull(mergeFields);
+		this.ordinals = FieldOrdinals.of(mergeFields);
+		this.template = null;
+		this.valueOffsets = new int[ordinals.size()];
+		this.date1904 = ConverterUtil.isDate1904(workbook);
 		this.currentRow = startRow;
 	}
 
+	Context(@Nonnull Workbook workbook, @Nonnull Sheet sheet, @Nonnull CompiledTemplate template) {
+		this.workbook = requireNonNull(workbook);
+		this.sheet = requireNonNull(sheet);
+		this.template = requireNonNull(template);
+		this.mergeFields = template.getMergeFields();
+		this.ordinals = template.getOrdinals();
+		this.valueOffsets = new int[ordinals.size()];
+		this.date1904 = ConverterUtil.isDate1904(workbook);
+		this.currentRow = sheet.getFirstRowNum();
+	}
+
 	@Nonnull
 	public Workbook getWorkbook() {
 		return workbook;
@@ -91,6 +134,10 @@ public class Context {
 		currentRow++;
 	}
 
+	void advanceRows(int count) {
+		currentRow += count;
+	}
+
 	@Nonnull
 	Optional<GroupPlaceholder> detectGroup() {
 		Row row = currentRow();
@@ -122,18 +169,13 @@ public class Context {
 			return Optional.empty();
 		}
 
-		Matcher matcher = ExcelMerger.MERGEFIELD_REX.matcher(cell.getStringCellValue());
-		if (!matcher.matches()) {
+		ParsedPlaceholder parsed = tokenize(cell.getStringCellValue()).getLastPlaceholder();
+		if (parsed == null) {
 			return Optional.empty();
 		}
 
-		String pattern = matcher.group(ExcelMerger.REX_GROUP_PATTERN);
-		String key = matcher.group(ExcelMerger.REX_GROUP_KEY);
-
-		Integer groupRows = matcher.group(ExcelMerger.REF_GROUP_ROWS) != null ?
-			Integer.valueOf(matcher.group(ExcelMerger.REF_GROUP_ROWS), BASE_10) :
-			null;
-
+		String pattern = parsed.getPattern();
+		String key = parsed.getKey();
 		MergeField<?> field = mergeFields.get(key);
 
 		if (field == null) {
@@ -142,7 +184,7 @@ public class Context {
 
 		if (field.getType() == MergeField.Type.REPEAT_ROW) {
 			GroupPlaceholder groupPlaceholder =
-				new GroupPlaceholder(cell, pattern, key, (RepeatRowMergeField) field, groupRows);
+				new GroupPlaceholder(cell, pattern, key, (RepeatRowMergeField) field, parsed.getRows());
 
 			return Optional.of(groupPlaceholder);
 		}
@@ -152,6 +194,51 @@ public class Context {
 		return Optional.of(placeholder);
 	}
 
+	@Nullable
+	MergeField<?> getMergeField(@Nonnull String key) {
+		return mergeFields.get(key);
+	}
+
+	/**
+	 * @return die Nummer des Feldes (0 bis Anzahl Felder - 1) oder -1, wenn es kein Feld mit diesem Key gibt
+	 */
+	int ordinalOf(@Nonnull String key) {
+		return ordinals.ordinalOf(key);
+	}
+
+	@Nonnull
+	MergeField<?> getMergeField(int ordinal) {
+		return ordinals.getField(ordinal);
+	}
+
+	/**
+	 * @return die Offsets der Repeat-Felder, alle auf 0 zurueckgesetzt. Das Array wird fuer jede Zeile
+	 * wiederverwendet, ein Merge darf deshalb nicht parallel Zeilen desselben Contexts mergen.
+	 */
+	@Nonnull
+	int[] resetValueOffsets() {
+		Arrays.fill(valueOffsets, 0);
+
+		return valueOffsets;
+	}
+
+	/**
+	 * Zerlegt den Text in Literale und Placeholder. Mit einem {@link CompiledTemplate} werden die vorgeparsten
+	 * Texte verwendet.
+	 */
+	@Nonnull
+	TokenizedText tokenize(@Nonnull String text) {
+		return template == null ? PlaceholderTokenizer.tokenize(text) : template.tokenize(text);
+	}
+
+	/**
+	 * @return das vorkompilierte Template, falls der Merge mit einem {@link CompiledTemplate} gestartet wurde
+	 */
+	@Nullable
+	public CompiledTemplate getTemplate() {
+		return template;
+	}
+
 	@Nonnull
 	public CellCopyPolicy getCellCopyPolicy() {
 		return cellCopyPolicy;
@@ -160,4 +247,80 @@ public class Context {
 	public void setCellCopyPolicy(@Nonnull CellCopyPolicy cellCopyPolicy) {
 		this.cellCopyPolicy = cellCopyPolicy;
 	}
+
+	/**
+	 * @return der ColumnAutoSizer, welcher die gemergten Zeilen ausmisst, falls gesetzt
+	 */
+	@Nullable
+	public ColumnAutoSizer getAutoSizer() {
+		return autoSizer;
+	}
+
+	public void setAutoSizer(@Nullable ColumnAutoSizer autoSizer) {
+		this.autoSizer = autoSizer;
+	}
+
+	@Nonnull
+	public MergeListener getListener() {
+		return listener;
+	}
+
+	public void setListener(@Nonnull MergeListener listener) {
+		this.listener = requireNonNull(listener);
+		this.listening = !MergeListener.NO_OP.equals(listener);
+	}
+
+	/**
+	 * @return der Beginn der Phase fuer {@link #phaseFinished(MergePhase, long)}. Ohne Listener wird die Zeit nicht
+	 * gelesen und 0 zurueckgegeben.
+	 */
+	long phaseStarted(@Nonnull MergePhase phase) {
+		if (!listening) {
+			return 0;
+		}
+
+		long start = System.nanoTime();
+		listener.phaseStarted(phase, start);
+
+		return start;
+	}
+
+	void phaseFinished(@Nonnull MergePhase phase, long startNanos) {
+		if (listening) {
+			listener.phaseFinished(phase, startNanos, System.nanoTime());
+		}
+	}
+
+	/**
+	 * @return TRUE, wenn das Workbook das 1904-Datums-System verwendet
+	 */
+	boolean isDate1904() {
+		return date1904;
+	}
+
+	/**
+	 * @return der Index ueber die Merged-Regions des (XSSF-)Sheets, wird beim ersten Aufruf erstellt und bleibt fuer
+	 * den ganzen Merge bestehen
+	 */
+	@Nonnull
+	MergedRegionIndex getMergedRegionIndex() {
+		if (mergedRegionIndex == null) {
+			mergedRegionIndex = MergedRegionIndex.of((XSSFSheet) sheet);
+		}
+
+		return mergedRegionIndex;
+	}
+
+	/**
+	 * Muss nach dem Verschieben von Zeilen aufgerufen werden: die Merged-Regions werden ins Sheet zurueckgeschrieben
+	 * und der {@link ColumnAutoSizer} liest sie neu.
+	 */
+	void mergedRegionsChanged() {
+		if (mergedRegionIndex != null) {
+			mergedRegionIndex.writeBack();
+		}
+		if (autoSizer != null) {
+			autoSizer.mergedRegionsChanged();
+		}
+	}
 }
@@ -15,12 +15,14 @@
 package ch.dvbern.oss.lib.excelmerger;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -30,11 +32,23 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import javax.annotation.Nonnull;
-
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.MergeEvents.FormulaEvaluation;
+import ch.dvbern.oss.lib.excelmerger.MergeEvents.GroupExpansion;
+import ch.dvbern.oss.lib.excelmerger.MergeEvents.MergeSheet;
+import ch.dvbern.oss.lib.excelmerger.MergeEvents.RowShift;
+import ch.dvbern.oss.lib.excelmerger.converters.Converter;
+import ch.dvbern.oss.lib.excelmerger.converters.DateCellConverter;
+import ch.dvbern.oss.lib.excelmerger.converters.TextConverter;
 import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
 import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField.Type;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.poifs.filesystem.FileMagic;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellCopyPolicy;
+import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.FormulaEvaluator;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -54,12 +68,6 @@ public final class ExcelMerger {
 
 	private static final Logger LOG = LoggerFactory.getLogger(ExcelMerger.class);
 
-	static final Pattern MERGEFIELD_REX = Pattern.compile(".*(\\{([a-zA-Z0-9_]+)(:(\\d+))?}).*");
-	static final int REX_GROUP_PATTERN = 1;
-	static final int REX_GROUP_KEY = 2;
-	static final int REF_GROUP_ROWS = 4;
-	// nur ein willkuerlicher Counter, damit's kein while(true) geben muss
-	private static final int MAX_PLACEHOLDERS_PER_CELL = 10;
 	static final Pattern SAME_ROW_CELL_REF = Pattern.compile(
 		"(?:\\b)([a-zA-Z]+)[0-9]+\\b(?!\\()(?=(?:[^\"']*[\"'][^\"']*[\"'])*[^\"']*$)");
 
@@ -117,6 +125,83 @@ public final class ExcelMerger {
 		mergeData(excelMergerDTO, ctx, evaluate);
 	}
 
+	/**
+	 * Wie {@link #mergeData(Sheet, List, ExcelMergerDTO)}, mit den MergeFields oder einem vorkompilierten Template
+	 * (siehe {@link SheetMerge}) und den {@link MergeOptions}, z.B. ohne Evaluation, mit einem
+	 * {@link ColumnAutoSizer} oder einem {@link MergeListener}. Ein {@link CompiledTemplate} muss nur einmal kompiliert
+	 * werden und kann danach fuer alle Workbooks verwendet werden, die aus derselben Template-Datei erstellt wurden.
+	 */
+	@SuppressWarnings("PMD.CloseResource")
+	public static void mergeData(
+		@Nonnull Sheet sheet,
+		@Nonnull SheetMerge merge,
+		@Nonnull MergeOptions options) throws ExcelMergeException {
+		requireNonNull(sheet);
+		requireNonNull(merge);
+		requireNonNull(options);
+
+		Context ctx = new Context(sheet.getWorkbook(), sheet, merge.compile(sheet));
+		ctx.setAutoSizer(options.getAutoSizer());
+		ctx.setListener(options.getListener());
+
+		mergeData(merge.getData(), ctx, options.isEvaluate());
+	}
+
+	/**
+	 * Merged mehrere Sheets desselben Workbooks, z.B. ein Template mit einem Sheet pro Auswertung. Das Resultat ist
+	 * identisch mit einem Aufruf von {@link #mergeData(Sheet, List, ExcelMergerDTO)} pro Sheet in der Reihenfolge der
+	 * Map (also z.B. eine LinkedHashMap verwenden).
+	 *
+	 * <p>Die Sheets werden nacheinander auf dem aufrufenden Thread gemerged, nur die Evaluation wird zusammengefasst:
+	 * die betroffenen Formeln werden einmal fuer alle Sheets evaluiert statt einmal pro Sheet.</p>
+	 *
+	 * @param merges pro Sheet die MergeFields (bzw. das kompilierte Template) und die Daten
+	 */
+	public static void mergeSheets(@Nonnull Map<? extends Sheet, SheetMerge> merges) throws ExcelMergeException {
+		mergeSheets(merges, true);
+	}
+
+	/**
+	 * Wie {@link #mergeSheets(Map)}.
+	 *
+	 * @param evaluate FALSE, wenn die Formeln nicht evaluiert werden sollen, z.B. weil danach noch weitere Sheets
+	 * gemerged werden oder Excel beim Oeffnen neu rechnet
+	 */
+	@SuppressWarnings("PMD.CloseResource")
+	public static void mergeSheets(@Nonnull Map<? extends Sheet, SheetMerge> merges, boolean evaluate)
+		throws ExcelMergeException {
+		requireNonNull(merges);
+
+		if (merges.isEmpty()) {
+			return;
+		}
+
+		List<Sheet> sheets = new ArrayList<>(merges.keySet());
+		Workbook workbook = sheets.get(0).getWorkbook();
+		for (Sheet sheet : sheets) {
+			if (!sheet.getWorkbook().equals(workbook)) {
+				throw new IllegalArgumentException("Sheet " + sheet.getSheetName() + " belongs to another workbook");
+			}
+		}
+
+		// zuerst alle Templates, damit bei einem Fehler noch kein Sheet veraendert wurde
+		List<CompiledTemplate> templates = new ArrayList<>(sheets.size());
+		try {
+			sheets.forEach(sheet -> templates.add(merges.get(sheet).compile(sheet)));
+		} catch (RuntimeException e) {
+			throw new ExcelMergeException("Error compiling templates", e);
+		}
+
+		for (int i = 0; i < sheets.size(); i++) {
+			Sheet sheet = sheets.get(i);
+			mergeData(merges.get(sheet).getData(), new Context(workbook, sheet, templates.get(i)), false);
+		}
+
+		if (evaluate) {
+			evaluate(workbook, sheets);
+		}
+	}
+
 	public static void mergeData(@Nonnull ExcelMergerDTO excelMergerDTO, @Nonnull Context ctx)
 		throws ExcelMergeException {
 		mergeData(excelMergerDTO, ctx, true);
@@ -125,19 +210,85 @@ public final class ExcelMerger {
 	public static void mergeData(@Nonnull ExcelMergerDTO excelMergerDTO, @Nonnull Context ctx, boolean evaluate)
 		throws ExcelMergeException {
 
-		mergeGroup(ctx, Collections.singletonList(excelMergerDTO), ctx.getSheet().getLastRowNum() + 1);
+		MergeSheet event = MergeEvents.mergeSheet();
+		event.begin();
+		long start = ctx.phaseStarted(MergePhase.MERGE);
+		int numberOfStyles = ctx.getWorkbook().getNumCellStyles();
+		int templateRows = ctx.getSheet().getLastRowNum() + 1;
+
+		mergeGroup(ctx, Collections.singletonList(excelMergerDTO), templateRows);
 
 		if (evaluate) {
-			evaluate(ctx.getWorkbook());
+			long evaluateStart = ctx.phaseStarted(MergePhase.EVALUATE);
+			int formulas = evaluateAffected(ctx.getWorkbook(), Collections.singletonList(ctx.getSheet()));
+			ctx.getListener().formulasEvaluated(formulas);
+			ctx.phaseFinished(MergePhase.EVALUATE, evaluateStart);
+		}
+
+		ColumnAutoSizer autoSizer = ctx.getAutoSizer();
+		if (autoSizer != null) {
+			long autoSizeStart = ctx.phaseStarted(MergePhase.AUTO_SIZE);
+			autoSizer.applyAutoSize(ctx.getSheet());
+			ctx.phaseFinished(MergePhase.AUTO_SIZE, autoSizeStart);
+		}
+
+		int stylesCreated = ctx.getWorkbook().getNumCellStyles() - numberOfStyles;
+		ctx.getListener().stylesCreated(stylesCreated);
+		ctx.phaseFinished(MergePhase.MERGE, start);
+
+		if (event.shouldCommit()) {
+			event.setSheet(ctx.getSheet().getSheetName());
+			event.setTemplateRows(templateRows);
+			event.setRows(ctx.getSheet().getLastRowNum() + 1);
+			event.setStylesCreated(stylesCreated);
+			event.commit();
 		}
 	}
 
+	/**
+	 * Evaluiert alle Formeln des Workbooks
+	 */
 	public static void evaluate(@Nonnull Workbook  workbook) {
 		FormulaEvaluator eval = workbook.getCreationHelper().createFormulaEvaluator();
 		eval.clearAllCachedResultValues();
 		eval.evaluateAll();
 	}
 
+	/**
+	 * Evaluiert nur die Formeln, die vom Merge der uebergebenen Sheets betroffen sein koennen: alle Formeln dieser
+	 * Sheets und der Sheets, die (direkt oder indirekt) auf sie verweisen. Z.B. Sheets mit statischen Lookup-Tabellen
+	 * werden nicht neu evaluiert.
+	 */
+	public static void evaluate(@Nonnull Workbook workbook, @Nonnull Collection<? extends Sheet> mergedSheets) {
+		requireNonNull(workbook);
+		requireNonNull(mergedSheets);
+
+		evaluateAffected(workbook, mergedSheets);
+	}
+
+	/**
+	 * @return die Anzahl evaluierter Formeln
+	 */
+	private static int evaluateAffected(@Nonnull Workbook workbook, @Nonnull Collection<? extends Sheet> mergedSheets) {
+		FormulaEvaluation event = MergeEvents.formulaEvaluation();
+		event.begin();
+
+		FormulaEvaluator eval = workbook.getCreationHelper().createFormulaEvaluator();
+		eval.clearAllCachedResultValues();
+		List<Cell> formulas = AffectedFormulas.find(workbook, mergedSheets);
+		formulas.forEach(eval::evaluateFormulaCell);
+
+		if (event.shouldCommit()) {
+			event.setSheets(mergedSheets.stream()
+				.map(Sheet::getSheetName)
+				.collect(Collectors.joining(", ")));
+			event.setFormulas(formulas.size());
+			event.commit();
+		}
+
+		return formulas.size();
+	}
+
 	@Nonnull
 	public static Workbook createWorkbookFromTemplate(@Nonnull InputStream is) throws ExcelTemplateParseException {
 		requireNonNull(is);
@@ -151,6 +302,42 @@ public final class ExcelMerger {
 		}
 	}
 
+	/**
+	 * Oeffnet das Template direkt aus der Datei: ein xlsx wird nicht als Ganzes in den Speicher kopiert, POI liest die
+	 * Teile aus der Datei. Die Datei bleibt deshalb geoeffnet, bis das Workbook mit {@link Workbook#close()}
+	 * geschlossen wird. Das Template wird dabei nie veraendert, Aenderungen am Workbook werden nur mit
+	 * {@link Workbook#write(java.io.OutputStream)} geschrieben.
+	 *
+	 * <p>Nur Templates aus einer Datei (Path oder File) werden so gelesen: aus einem
+	 * {@link #createWorkbookFromTemplate(InputStream) InputStream} entpackt POI alle Teile in den Speicher.</p>
+	 */
+	@Nonnull
+	public static Workbook createWorkbookFromTemplate(@Nonnull Path template) throws ExcelTemplateParseException {
+		requireNonNull(template);
+
+		return createWorkbookFromTemplate(template.toFile());
+	}
+
+	/**
+	 * @see #createWorkbookFromTemplate(Path)
+	 */
+	@Nonnull
+	public static Workbook createWorkbookFromTemplate(@Nonnull File template) throws ExcelTemplateParseException {
+		requireNonNull(template);
+
+		try {
+			if (FileMagic.valueOf(template) == FileMagic.OOXML) {
+				return TemplateWorkbook.open(template);
+			}
+
+			// xls: nur lesend geoeffnet, kann trotzdem in einen anderen Stream geschrieben werden
+			return WorkbookFactory.create(template, null, true);
+
+		} catch (IOException | InvalidFormatException | RuntimeException e) {
+			throw new ExcelTemplateParseException("Error reading template " + template, e);
+		}
+	}
+
 	@FunctionalInterface
 	private interface TetraConsumer<T, U, V, S> {
 		void accept(T a, U b, V c, S s) throws ExcelMergeException;
@@ -163,67 +350,218 @@ public final class ExcelMerger {
 
 	@Nonnull
 	private static InputStream toSeekable(@Nonnull InputStream is) throws IOException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		IOUtils.copy(is, baos);
-		baos.flush();
+		if (is instanceof ByteArrayInputStream) {
+			return is;
+		}
 
-		return new ByteArrayInputStream(baos.toByteArray());
+		// liefert die gelesenen Bloecke als Stream, ohne sie nochmals in ein einzelnes Array zu kopieren
+		return UnsynchronizedByteArrayOutputStream.toBufferedInputStream(is);
 	}
 
 	static void mergeRow(@Nonnull Context ctx, @Nonnull ExcelMergerDTO data, @Nonnull Row targetRow) {
-		Map<MergeField<?>, Integer> valueOffsets = new HashMap<>();
+		// pro Zeile keine neuen Objekte: die Offsets werden im Context wiederverwendet
+		int[] valueOffsets = ctx.resetValueOffsets();
 		int start = Math.max(targetRow.getFirstCellNum(), 0);
 		int end = Math.max(targetRow.getLastCellNum(), 0);
+		int mergedCells = 0;
 
-		IntStream.rangeClosed(start, end)
-			.mapToObj(targetRow::getCell)
-			.filter(Objects::nonNull)
-			.forEach(cell -> mergePlaceholders(ctx, data, valueOffsets, cell));
+		for (int i = start; i <= end; i++) {
+			Cell cell = targetRow.getCell(i);
+			if (cell != null && mergePlaceholders(ctx, data, valueOffsets, cell)) {
+				mergedCells++;
+			}
+		}
+		ctx.getListener().cellsMerged(mergedCells);
+
+		ColumnAutoSizer autoSizer = ctx.getAutoSizer();
+		if (autoSizer != null) {
+			autoSizer.track(targetRow);
+		}
 	}
 
-	private static void mergePlaceholders(
+	/**
+	 * @return true, wenn die Zelle Placeholder enthielt
+	 */
+	private static boolean mergePlaceholders(
 		@Nonnull Context ctx,
 		@Nonnull ExcelMergerDTO data,
-		@Nonnull Map<MergeField<?>, Integer> valueOffsets,
+		@Nonnull int[] valueOffsets,
 		@Nonnull Cell cell) {
 
-		for (int i = 0; i < MAX_PLACEHOLDERS_PER_CELL; i++) {
-			Optional<Placeholder> placeholderOpt = ctx.parsePlaceholder(cell);
-			if (!placeholderOpt.isPresent()) {
-				break; // gibt keine Placeholder, da kann sofort abgebrochen werden
-			}
+		if (cell.getCellType() != CellType.STRING) {
+			return false;
+		}
 
-			MergeField<?> field = placeholderOpt.get().getField();
-			String pattern = placeholderOpt.get().getPattern();
+		long parseStart = ctx.phaseStarted(MergePhase.PARSE);
+		TokenizedText text = ctx.tokenize(cell.getStringCellValue());
+		ctx.phaseFinished(MergePhase.PARSE, parseStart);
+		if (!text.hasPlaceholders()) {
+			return false; // gibt keine Placeholder, da kann sofort abgebrochen werden
+		}
 
-			if (Type.PAGE_BREAK == field.getType()) {
-				int rowNum = cell.getRow().getRowNum();
-				field.getConverter().setCellValue(cell, pattern, null);
-				ctx.getSheet().setRowBreak(rowNum);
-				break;
+		long convertStart = ctx.phaseStarted(MergePhase.CONVERT);
+		if (!text.isSinglePlaceholder() && isTextRenderable(ctx, text)) {
+			renderText(ctx, data, valueOffsets, cell, text);
+		} else {
+			// Die Converter schreiben die Zelle selber: von hinten nach vorne, jedes Pattern nur einmal
+			for (int i = text.getNumberOfPlaceholders() - 1; i >= 0; i--) {
+				if (text.firstIndexOfPattern(i) == i) {
+					mergePlaceholder(ctx, data, valueOffsets, cell, text.getPlaceholder(i));
+				}
 			}
+		}
+		ctx.phaseFinished(MergePhase.CONVERT, convertStart);
 
-			if (!field.getType().doMergeValue()) {
-				break;
+		return true;
+	}
+
+	/**
+	 * Alle Placeholder koennen als Text dargestellt werden -> die ganze Zelle in einem Durchgang zusammensetzen.
+	 * Seitenumbrueche werden nicht als Text dargestellt, sondern wie bisher von {@link #mergePlaceholder} eingefuegt.
+	 */
+	private static boolean isTextRenderable(@Nonnull Context ctx, @Nonnull TokenizedText text) {
+		for (int i = 0; i < text.getNumberOfPlaceholders(); i++) {
+			MergeField<?> field = ctx.getMergeField(text.getPlaceholder(i).getKey());
+			if (field == null) {
+				continue;
 			}
 
-			Integer valueOffset = 0;
-			if (field.getType().doConsumeValue()) {
-				// erhöht den valueOffset (repeat Felder)
-				valueOffsets.compute(field, (key, oldVal) -> oldVal == null ? 0 : oldVal + 1);
-				valueOffset = valueOffsets.get(field);
+			if (field.getType() == Type.PAGE_BREAK
+				|| field.getType().doMergeValue() && !(field.getConverter() instanceof TextConverter)) {
+				return false;
 			}
-			if (data.hasValue(field, valueOffset)) {
-				// Schreibt den Wert
-				Object value = data.getValue(field, valueOffset);
-				field.getConverter().setCellValue(cell, pattern, value);
-			} else {
-				field.getConverter().setCellValue(cell, pattern, null);
-				// Spalte ausblenden
-				if (field.getType().doHideColumnOnEmpty()) {
-					ctx.getSheet().setColumnHidden(cell.getColumnIndex(), true);
-				}
+		}
+
+		return true;
+	}
+
+	private static void renderText(
+		@Nonnull Context ctx,
+		@Nonnull ExcelMergerDTO data,
+		@Nonnull int[] valueOffsets,
+		@Nonnull Cell cell,
+		@Nonnull TokenizedText text) {
+
+		int numberOfPlaceholders = text.getNumberOfPlaceholders();
+		String[] rendered = new String[numberOfPlaceholders];
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < numberOfPlaceholders; i++) {
+			sb.append(text.getLiteral(i));
+
+			// gleiche Patterns erhalten denselben Wert
+			int first = text.firstIndexOfPattern(i);
+			if (first == i) {
+				rendered[i] = renderPlaceholder(ctx, data, valueOffsets, cell, text.getPlaceholder(i));
 			}
+			sb.append(rendered[first]);
+		}
+		sb.append(text.getLiteral(numberOfPlaceholders));
+
+		cell.setCellValue(sb.toString());
+	}
+
+	@Nonnull
+	private static String renderPlaceholder(
+		@Nonnull Context ctx,
+		@Nonnull ExcelMergerDTO data,
+		@Nonnull int[] valueOffsets,
+		@Nonnull Cell cell,
+		@Nonnull ParsedPlaceholder placeholder) {
+
+		String pattern = placeholder.getPattern();
+		int ordinal = ctx.ordinalOf(placeholder.getKey());
+		if (ordinal < 0) {
+			return pattern;
+		}
+
+		MergeField<?> field = ctx.getMergeField(ordinal);
+		if (!field.getType().doMergeValue()) {
+			return pattern;
+		}
+
+		TextConverter<?> converter = (TextConverter<?>) field.getConverter();
+		int valueOffset = nextValueOffset(field, ordinal, valueOffsets);
+		if (data.hasValue(field, valueOffset)) {
+			return converter.getText(cell, pattern, data.getValue(field, valueOffset));
+		}
+
+		hideColumnOnEmpty(ctx, field, cell);
+
+		return converter.getText(cell, pattern, null);
+	}
+
+	private static void mergePlaceholder(
+		@Nonnull Context ctx,
+		@Nonnull ExcelMergerDTO data,
+		@Nonnull int[] valueOffsets,
+		@Nonnull Cell cell,
+		@Nonnull ParsedPlaceholder placeholder) {
+
+		int ordinal = ctx.ordinalOf(placeholder.getKey());
+		if (ordinal < 0) {
+			return;
+		}
+
+		MergeField<?> field = ctx.getMergeField(ordinal);
+		String pattern = placeholder.getPattern();
+
+		if (Type.PAGE_BREAK == field.getType()) {
+			int rowNum = cell.getRow().getRowNum();
+			field.getConverter().setCellValue(cell, pattern, null);
+			ctx.getSheet().setRowBreak(rowNum);
+			return;
+		}
+
+		if (!field.getType().doMergeValue()) {
+			return;
+		}
+
+		int valueOffset = nextValueOffset(field, ordinal, valueOffsets);
+		if (data.writeValue(cell, pattern, field, valueOffset, ctx.isDate1904())) {
+			return;
+		}
+
+		if (data.hasValue(field, valueOffset)) {
+			// Schreibt den Wert
+			Object value = data.getValue(field, valueOffset);
+			setCellValue(ctx, field.getConverter(), cell, pattern, value);
+		} else {
+			setCellValue(ctx, field.getConverter(), cell, pattern, null);
+			hideColumnOnEmpty(ctx, field, cell);
+		}
+	}
+
+	/**
+	 * Datums-Converter bekommen das Datums-System des Merges, statt es fuer jede Zelle aus dem Workbook zu lesen.
+	 */
+	private static void setCellValue(
+		@Nonnull Context ctx,
+		@Nonnull Converter<?> converter,
+		@Nonnull Cell cell,
+		@Nonnull String pattern,
+		@Nullable Object value) {
+
+		if (converter instanceof DateCellConverter) {
+			((DateCellConverter) converter).setDateCellValue(cell, pattern, value, ctx.isDate1904());
+		} else {
+			converter.setCellValue(cell, pattern, value);
+		}
+	}
+
+	private static int nextValueOffset(@Nonnull MergeField<?> field, int ordinal, @Nonnull int[] valueOffsets) {
+		if (!field.getType().doConsumeValue()) {
+			return 0;
+		}
+
+		// erhöht den valueOffset (repeat Felder)
+		return valueOffsets[ordinal]++;
+	}
+
+	private static void hideColumnOnEmpty(@Nonnull Context ctx, @Nonnull MergeField<?> field, @Nonnull Cell cell) {
+		// Spalte ausblenden
+		if (field.getType().doHideColumnOnEmpty()) {
+			ctx.getSheet().setColumnHidden(cell.getColumnIndex(), true);
 		}
 	}
 
@@ -237,7 +575,7 @@ public final class ExcelMerger {
 
 					Optional<GroupPlaceholder> group = ctx.detectGroup();
 					if (group.isPresent()) {
-						mergeGroup(ctx, group.get(), dto, row, ExcelMerger::mergeSubGroup);
+						mergeGroup(ctx, group.get(), dto, row, ExcelMerger::layoutSubGroup);
 					} else {
 						mergeRow(ctx, dto, ctx.currentRow());
 						ctx.advanceRow();
@@ -265,10 +603,41 @@ public final class ExcelMerger {
 			mergeRow(ctx, dto, ctx.currentRow());
 			ctx.advanceRow();
 		} else {
+			GroupExpansion event = MergeEvents.groupExpansion();
+			event.begin();
+			long start = ctx.phaseStarted(MergePhase.GROUP_EXPANSION);
 			merger.accept(ctx, group, subGroups, currentRow);
+			ctx.phaseFinished(MergePhase.GROUP_EXPANSION, start);
+
+			// pro Gruppe: ohne Aufzeichnung nichts ausfuellen
+			if (event.isEnabled() && event.shouldCommit()) {
+				event.setSheet(ctx.getSheet().getSheetName());
+				event.setGroup(group.getField().getKey());
+				event.setInstances(subGroups.size());
+				event.setTemplateRows(group.getRows());
+				event.commit();
+			}
 		}
 	}
 
+	/**
+	 * Expandiert die Gruppe inkl. aller verschachtelten Gruppen mit einem {@link RowLayout}: die Zeilen werden nicht
+	 * mehr pro Gruppen-Instanz verschoben, sondern zuerst komplett ausgelegt und danach einmal geschrieben.
+	 * Das Resultat entspricht {@link #mergeSubGroup(Context, GroupPlaceholder, List, Row)}.
+	 */
+	static void layoutSubGroup(
+		@Nonnull Context ctx,
+		@Nonnull GroupPlaceholder group,
+		@Nonnull List<ExcelMergerDTO> subGroups,
+		@Nonnull Row currentRow) {
+
+		RowLayout.mergeSubGroup(ctx, group, subGroups);
+	}
+
+	/**
+	 * Bisherige Implementation: dupliziert die Zeilen jeder Gruppen-Instanz sofort und verschiebt dabei jedes Mal
+	 * alle nachfolgenden Zeilen.
+	 */
 	static void mergeSubGroup(
 		@Nonnull Context ctx,
 		@Nonnull GroupPlaceholder group,
@@ -301,28 +670,61 @@ public final class ExcelMerger {
 
 		// Wenns nach dem zu duplizierenden Bereich noch Zeilen hat: nach unten wegschieben
 		if (anzRows > 0 && startNeuerBereich <= lastRow) {
-			shiftRowsAndMergedRegions(ctx.getSheet(), startNeuerBereich, lastRow, anzRows);
+			long start = ctx.phaseStarted(MergePhase.ROW_SHIFT);
+			shiftRows(ctx, startNeuerBereich, lastRow, anzRows);
+			ctx.mergedRegionsChanged();
+			ctx.phaseFinished(MergePhase.ROW_SHIFT, start);
+
 			// shiftRows does not shift DataValidations or NamedRanges. We have to shift them manually.
+			start = ctx.phaseStarted(MergePhase.DATA_VALIDATION_SHIFT);
 			shiftDataValidations(ctx.getSheet(), startNeuerBereich, lastRow + anzRows, anzRows);
+			ctx.phaseFinished(MergePhase.DATA_VALIDATION_SHIFT, start);
+
+			start = ctx.phaseStarted(MergePhase.NAMED_RANGE_SHIFT);
 			shiftNamedRanges(ctx.getSheet(), startRow.getRowNum(), lastRow, anzRows);
+			ctx.phaseFinished(MergePhase.NAMED_RANGE_SHIFT, start);
 		}
 
 		// Kopieren
+		long start = ctx.phaseStarted(MergePhase.ROW_COPY);
 		if (isXSSFSheet) {
 			copyXssfRows(ctx, startRow, anzSrcRows, anzGroups, startNeuerBereich);
 		} else {
 			copyRows(ctx, startRow, anzSrcRows, anzGroups, startNeuerBereich);
 		}
+		ctx.getListener().rowsCreated(Math.max(anzRows, 0));
+		ctx.phaseFinished(MergePhase.ROW_COPY, start);
+	}
 
+	/**
+	 * Verschiebt die Zeilen startRow bis endRow inkl. Merged-Regions um offset Zeilen nach unten und meldet das dem
+	 * {@link MergeListener} und als {@link RowShiftEvent}. Bei XSSF werden die Merged-Regions ueber den
+	 * {@link MergedRegionIndex} verschoben und erst mit {@link Context#mergedRegionsChanged()} zurueckgeschrieben.
+	 */
+	static void shiftRows(@Nonnull Context ctx, int startRow, int endRow, int offset) {
+		RowShift event = MergeEvents.rowShift();
+		event.begin();
+
+		if (ctx.getSheet() instanceof XSSFSheet) {
+			ctx.getMergedRegionIndex().shiftRows(startRow, endRow, offset);
+		} else {
+			shiftRowsAndMergedRegions(ctx.getSheet(), startRow, endRow, offset);
+		}
+		ctx.getListener().rowsShifted(startRow, endRow, offset);
+
+		// pro Verschiebung: ohne Aufzeichnung nichts ausfuellen
+		if (event.isEnabled() && event.shouldCommit()) {
+			event.setSheet(ctx.getSheet().getSheetName());
+			event.setFirstRow(startRow);
+			event.setLastRow(endRow);
+			event.setOffset(offset);
+			event.commit();
+		}
 	}
 
 	/**
-	 * Issues
-	 * <ul>
-	 * <li>Slow!</li>
-	 * <li>Beta</li>
-	 * <li>XSSF dependent</li>
-	 * </ul>
+	 * Kopiert den Block anzGroups - 1 mal in einem Durchgang mit dem {@link XssfRowCloner}. Nur wenn die
+	 * {@link CellCopyPolicy} vom Cloner nicht unterstuetzt wird, wird pro Gruppe {@link XSSFSheet#copyRows} verwendet.
 	 */
 	private static void copyXssfRows(
 		@Nonnull Context ctx,
@@ -332,6 +734,13 @@ public final class ExcelMerger {
 		int startNeuerBereich) {
 
 		XSSFSheet sheet = (XSSFSheet) ctx.getSheet();
+		CellCopyPolicy policy = ctx.getCellCopyPolicy();
+
+		if (XssfRowCloner.supports(policy)) {
+			XssfRowCloner.of(sheet, startRow.getRowNum(), anzSrcRows, policy)
+				.cloneBlock(startNeuerBereich, anzGroups - 1);
+			return;
+		}
 
 		List<XSSFRow> rowsToCopy = IntStream.range(0, anzSrcRows)
 			.mapToObj(i -> sheet.getRow(startRow.getRowNum() + i))
@@ -340,9 +749,8 @@ public final class ExcelMerger {
 		for (int i = 0; i < anzGroups - 1; i++) {
 			int startGroup = startNeuerBereich + i * anzSrcRows;
 
-			sheet.copyRows(rowsToCopy, startGroup, ctx.getCellCopyPolicy());
+			sheet.copyRows(rowsToCopy, startGroup, policy);
 		}
-
 	}
 
 	private static void copyRows(
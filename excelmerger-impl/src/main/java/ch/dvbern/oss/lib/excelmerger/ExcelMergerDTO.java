@@ -14,29 +14,79 @@
  */
 package ch.dvbern.oss.lib.excelmerger;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import ch.dvbern.oss.lib.excelmerger.converters.Converter;
+import ch.dvbern.oss.lib.excelmerger.converters.DoubleCellConverter;
+import ch.dvbern.oss.lib.excelmerger.converters.IntCellConverter;
+import ch.dvbern.oss.lib.excelmerger.converters.LongCellConverter;
 import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
 import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField.Type;
 import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldProvider;
 import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import org.apache.poi.ss.usermodel.Cell;
 
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Die Daten fuer einen Merge.
+ *
+ * <p>Die Werte werden nicht in einer Map von Listen gespeichert, sondern in einer Hash-Tabelle mit offener
+ * Adressierung: jedes Feld erhaelt beim ersten Wert einen festen Slot (seine Ordinal-Nummer in diesem DTO). Ein
+ * einzelner Wert wird direkt im Slot gespeichert, erst ab dem zweiten Wert (REPEAT_COL, REPEAT_VAL) wird ein wachsendes
+ * Array angelegt. Der Zugriff ueber den Offset ist dadurch O(1), egal wie viele Werte ein Feld hat.</p>
+ *
+ * <p>Die Slots sind bewusst nicht die Nummern aus {@link FieldOrdinals}: ein DTO wird gefuellt, bevor der
+ * {@link Context} (und damit die Nummerierung) existiert, und kann mit verschiedenen Feld-Listen bzw. Templates
+ * gemerged werden, deren Nummern sich unterscheiden. Die MergeFields ueberschreiben equals und hashCode nicht, die
+ * Suche in der hoechstens halb vollen Tabelle ist also ein Vergleich der Identitaet ohne Allokation.</p>
+ *
+ * <p>Mit {@link #addInt(MergeField, int)}, {@link #addLong(MergeField, long)} und
+ * {@link #addDouble(MergeField, double)} wird der erste Wert eines Feldes ungeboxt gespeichert und beim Mergen ueber
+ * {@link IntCellConverter}, {@link LongCellConverter} bzw. {@link DoubleCellConverter} in die Zelle geschrieben (z.B.
+ * mit den Standard-Convertern fuer Zahlen). Erst {@link #getValue(MergeField, int)} oder ein eigener Converter boxen
+ * den Wert.</p>
+ */
 public class ExcelMergerDTO {
 
+	private static final int INITIAL_CAPACITY = 8;
+	private static final int HASH_SPREAD_BITS = 16;
+
 	/**
-	 * Zellen, die im globalen Teil des Excel wiederholt werden (z.B. Ueberschriften mit Firmennamen)
+	 * Platzhalter fuer den Wert null, damit ein leerer Slot von einem Feld mit dem Wert null unterschieden werden kann
 	 */
-	@Nonnull
-	private final Map<MergeField<?>, List<Object>> values = new HashMap<>();
-	private final Map<MergeField<?>, List<ExcelMergerDTO>> groups = new HashMap<>();
+	private static final Object NULL_VALUE = new Object();
+
+	/**
+	 * Die Felder mit mindestens einem Wert, Laenge ist immer eine Zweierpotenz
+	 */
+	@Nullable
+	private MergeField<?>[] fields = null;
+
+	/**
+	 * Zellen, die im globalen Teil des Excel wiederholt werden (z.B. Ueberschriften mit Firmennamen). Pro Slot der
+	 * einzige Wert des Feldes bzw. {@link #NULL_VALUE} oder eine {@link ValueList}, wenn das Feld mehrere Werte hat.
+	 */
+	@Nullable
+	private Object[] values = null;
+
+	/**
+	 * Die ungeboxten Werte der Slots, deren Wert ein {@link Primitive} ist
+	 */
+	@Nullable
+	private long[] primitives = null;
+	private int size = 0;
+
+	@Nullable
+	private Map<MergeField<?>, List<ExcelMergerDTO>> groups = null;
 
 	@Nonnull
 	public <V> ExcelMergerDTO createGroup(@Nonnull MergeFieldProvider provider) {
@@ -51,13 +101,55 @@ public class ExcelMergerDTO {
 			throw new IllegalArgumentException("Not a REPEAT_ROW type %" + group.getType());
 		}
 
-		List<ExcelMergerDTO> entries = groups.computeIfAbsent(group, key -> new LinkedList<>());
+		if (groups == null) {
+			groups = new HashMap<>();
+		}
+
+		List<ExcelMergerDTO> entries = groups.computeIfAbsent(group, key -> new ArrayList<>());
+		if (entries instanceof ColumnarGroup.Rows) {
+			throw new IllegalStateException("Group " + group.getKey() + " is a ColumnarGroup, its rows must be "
+				+ "added with ColumnarGroup#addRow()");
+		}
+
 		ExcelMergerDTO newGroup = new ExcelMergerDTO();
 		entries.add(newGroup);
 
 		return newGroup;
 	}
 
+	@Nonnull
+	public ColumnarGroup createColumnarGroup(@Nonnull MergeFieldProvider provider) {
+		return createColumnarGroup(provider.getMergeField());
+	}
+
+	/**
+	 * Wie {@link #createGroup(MergeField)}, aber alle Zeilen der Gruppe werden spaltenweise in der
+	 * {@link ColumnarGroup} gespeichert, z.B. fuer grosse numerische Auswertungen. Weitere Zeilen koennen nur noch mit
+	 * {@link ColumnarGroup#addRow()} hinzugefuegt werden, {@link #createGroup(MergeField)} wirft fuer diese Gruppe
+	 * eine {@link IllegalStateException}.
+	 */
+	@Nonnull
+	public ColumnarGroup createColumnarGroup(@Nonnull MergeField<?> group) {
+		requireNonNull(group);
+
+		if (group.getType() != Type.REPEAT_ROW) {
+			throw new IllegalArgumentException("Not a REPEAT_ROW type %" + group.getType());
+		}
+
+		if (groups == null) {
+			groups = new HashMap<>();
+		}
+
+		if (groups.containsKey(group)) {
+			throw new IllegalStateException("Group " + group.getKey() + " already has rows");
+		}
+
+		ColumnarGroup columnarGroup = new ColumnarGroup();
+		groups.put(group, columnarGroup.asList());
+
+		return columnarGroup;
+	}
+
 	public <V> void addValue(@Nonnull MergeFieldProvider provider, @Nullable V value) {
 		addValue(provider.getMergeField(), value);
 	}
@@ -65,22 +157,151 @@ public class ExcelMergerDTO {
 	public <V> void addValue(@Nonnull MergeField<V> mergeField, @Nullable V value) {
 		requireNonNull(mergeField);
 
-		List<Object> valuesList = values.computeIfAbsent(mergeField, key -> new LinkedList<>());
-		valuesList.add(value);
+		Object stored = value == null ? NULL_VALUE : value;
+		int slot = slotOf(mergeField);
+		if (slot < 0) {
+			insert(mergeField, stored);
+			return;
+		}
+
+		append(slot, stored);
+	}
+
+	public void addInt(@Nonnull MergeFieldProvider provider, int value) {
+		addInt(provider.getMergeField(), value);
+	}
+
+	/**
+	 * Wie {@link #addValue(MergeField, Object)}, ohne den Wert zu boxen
+	 */
+	public void addInt(@Nonnull MergeField<Integer> mergeField, int value) {
+		addPrimitive(mergeField, Primitive.INT, value);
+	}
+
+	public void addLong(@Nonnull MergeFieldProvider provider, long value) {
+		addLong(provider.getMergeField(), value);
+	}
+
+	/**
+	 * Wie {@link #addValue(MergeField, Object)}, ohne den Wert zu boxen
+	 */
+	public void addLong(@Nonnull MergeField<Long> mergeField, long value) {
+		addPrimitive(mergeField, Primitive.LONG, value);
+	}
+
+	public void addDouble(@Nonnull MergeFieldProvider provider, double value) {
+		addDouble(provider.getMergeField(), value);
+	}
+
+	/**
+	 * Wie {@link #addValue(MergeField, Object)} mit {@link BigDecimal#valueOf(double)}, ohne den Wert zu boxen
+	 */
+	public void addDouble(@Nonnull MergeField<BigDecimal> mergeField, double value) {
+		addPrimitive(mergeField, Primitive.DOUBLE, Double.doubleToRawLongBits(value));
+	}
+
+	private void addPrimitive(@Nonnull MergeField<?> mergeField, @Nonnull Primitive type, long bits) {
+		requireNonNull(mergeField);
+
+		int slot = slotOf(mergeField);
+		if (slot >= 0) {
+			// weitere Werte (REPEAT_COL, REPEAT_VAL) werden wie bisher geboxt gespeichert
+			append(slot, type.box(bits));
+			return;
+		}
+
+		slot = insert(mergeField, type);
+		if (primitives == null) {
+			primitives = new long[requireNonNull(fields).length];
+		}
+		primitives[slot] = bits;
+	}
+
+	private void append(int slot, @Nonnull Object stored) {
+		Object[] slots = requireNonNull(values);
+		Object existing = slots[slot];
+		if (existing instanceof ValueList) {
+			((ValueList) existing).add(stored);
+		} else {
+			slots[slot] = new ValueList(unwrap(slot, existing), stored);
+		}
+	}
+
+	/**
+	 * @return der gespeicherte Wert, ein ungeboxter Wert wird dazu geboxt
+	 */
+	@Nonnull
+	private Object unwrap(int slot, @Nonnull Object stored) {
+		if (stored instanceof Primitive) {
+			return ((Primitive) stored).box(requireNonNull(primitives)[slot]);
+		}
+
+		return stored;
 	}
 
 	@Nullable
 	public List<ExcelMergerDTO> getGroup(@Nonnull RepeatRowMergeField groupField) {
-		return groups.get(groupField);
+		return groups == null ? null : groups.get(groupField);
+	}
+
+	/**
+	 * @return die Anzahl Zeilen, die mit diesem DTO gefuellt werden: das DTO selbst und alle Zeilen seiner Gruppen
+	 * (rekursiv). Z.B. fuer eine Schaetzung des Speicherbedarfs (siehe {@link BatchMerger}).
+	 */
+	public long countRows() {
+		long rows = 1;
+		if (groups != null) {
+			for (List<ExcelMergerDTO> group : groups.values()) {
+				if (group instanceof ColumnarGroup.Rows) {
+					rows += group.size();
+				} else {
+					for (ExcelMergerDTO row : group) {
+						rows += row.countRows();
+					}
+				}
+			}
+		}
+
+		return rows;
+	}
+
+	/**
+	 * @return die Anzahl Werte dieses DTOs und aller Zeilen seiner Gruppen (rekursiv)
+	 */
+	public long countValues() {
+		long count = 0;
+		for (int slot = 0; values != null && slot < values.length; slot++) {
+			Object stored = values[slot];
+			if (stored != null) {
+				count += stored instanceof ValueList ? ((ValueList) stored).size : 1;
+			}
+		}
+
+		if (groups != null) {
+			for (List<ExcelMergerDTO> group : groups.values()) {
+				if (group instanceof ColumnarGroup.Rows) {
+					count += ((ColumnarGroup.Rows) group).countValues();
+				} else {
+					for (ExcelMergerDTO row : group) {
+						count += row.countValues();
+					}
+				}
+			}
+		}
+
+		return count;
 	}
 
 	public <V> boolean hasValue(@Nonnull MergeField<V> mergeField, int valueOffset) {
-		List<Object> list = values.get(mergeField);
-		if (list == null) {
+		int slot = slotOf(mergeField);
+		if (slot < 0) {
 			return false;
 		}
 
-		return valueOffset < list.size();
+		Object stored = requireNonNull(values)[slot];
+		int count = stored instanceof ValueList ? ((ValueList) stored).size : 1;
+
+		return valueOffset < count;
 	}
 
 	@Nullable
@@ -90,16 +311,292 @@ public class ExcelMergerDTO {
 
 	@Nullable
 	public <V> V getValue(@Nonnull MergeField<V> mergeField, int valueOffset) {
-		List<Object> list = values.get(mergeField);
-		if (list == null) {
+		int slot = slotOf(mergeField);
+		if (slot < 0) {
 			return null;
 		}
 
-		if (valueOffset < list.size()) {
-			//noinspection unchecked
-			return (V) list.get(valueOffset);
+		Object stored = requireNonNull(values)[slot];
+		Object value;
+		if (stored instanceof ValueList) {
+			value = ((ValueList) stored).get(valueOffset);
+		} else {
+			value = valueOffset == 0 ? unwrap(slot, stored) : null;
+		}
+
+		//noinspection unchecked
+		return value == NULL_VALUE ? null : (V) value;
+	}
+
+	/**
+	 * Wie {@link #getValue(MergeField, int)} fuer Zahlen, ungeboxte Werte (siehe {@link #addInt}, {@link #addLong},
+	 * {@link #addDouble}) werden direkt gelesen, ohne sie zu boxen.
+	 *
+	 * @return der Wert als double, {@link Double#NaN} wenn kein Wert, NULL oder keine Zahl gespeichert ist
+	 */
+	public double getDouble(@Nonnull MergeField<?> mergeField, int valueOffset) {
+		int slot = slotOf(mergeField);
+		if (slot < 0) {
+			return Double.NaN;
+		}
+
+		Object stored = requireNonNull(values)[slot];
+		Object value;
+		if (stored instanceof ValueList) {
+			value = ((ValueList) stored).get(valueOffset);
+		} else if (valueOffset != 0) {
+			return Double.NaN;
+		} else if (stored instanceof Primitive) {
+			return ((Primitive) stored).toDouble(requireNonNull(primitives)[slot]);
+		} else {
+			value = stored;
+		}
+
+		return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+	}
+
+	/**
+	 * Schreibt den Wert direkt in die Zelle, ohne ihn als Objekt zu lesen (siehe {@link ColumnarGroup}).
+	 *
+	 * @return FALSE, wenn der Wert wie bisher ueber {@link #getValue(MergeField, int)} und den Converter des Feldes
+	 * geschrieben werden muss
+	 * @param date1904 das Datums-System des Workbooks, fuer Datums-Spalten
+	 */
+	boolean writeValue(
+		@Nonnull Cell cell,
+		@Nonnull String pattern,
+		@Nonnull MergeField<?> field,
+		int valueOffset,
+		boolean date1904) {
+
+		int slot = valueOffset == 0 ? slotOf(field) : -1;
+		if (slot < 0) {
+			return false;
+		}
+
+		Object stored = requireNonNull(values)[slot];
+		if (!(stored instanceof Primitive)) {
+			return false;
+		}
+
+		return ((Primitive) stored).write(field.getConverter(), cell, pattern, requireNonNull(primitives)[slot]);
+	}
+
+	/**
+	 * Entfernt alle Werte und Gruppen. Die Arrays bleiben erhalten, damit das DTO ohne neue Allokationen wieder
+	 * gefuellt werden kann (siehe {@link RowFiller#fillRow()}).
+	 */
+	void clear() {
+		if (fields != null) {
+			Arrays.fill(fields, null);
+			Arrays.fill(requireNonNull(values), null);
+		}
+
+		size = 0;
+		groups = null;
+	}
+
+	/**
+	 * @return der Slot des Feldes oder -1, wenn das Feld noch keinen Wert hat
+	 */
+	private int slotOf(@Nonnull MergeField<?> mergeField) {
+		MergeField<?>[] keys = fields;
+		if (keys == null) {
+			return -1;
+		}
+
+		int mask = keys.length - 1;
+		for (int slot = hash(mergeField) & mask; ; slot = (slot + 1) & mask) {
+			MergeField<?> key = keys[slot];
+			if (key == null) {
+				return -1;
+			}
+			if (key.equals(mergeField)) {
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * @return der Slot des neuen Feldes
+	 */
+	private int insert(@Nonnull MergeField<?> mergeField, @Nonnull Object stored) {
+		if (fields == null) {
+			fields = new MergeField<?>[INITIAL_CAPACITY];
+			values = new Object[INITIAL_CAPACITY];
+		} else if ((size + 1) * 2 > fields.length) {
+			// hoechstens halb voll, damit die Suche nach einem Feld kurz bleibt
+			resize(fields.length * 2);
+		}
+
+		int slot = put(requireNonNull(fields), requireNonNull(values), mergeField, stored);
+		size++;
+
+		return slot;
+	}
+
+	private void resize(int capacity) {
+		MergeField<?>[] oldFields = requireNonNull(fields);
+		Object[] oldValues = requireNonNull(values);
+		long[] oldPrimitives = primitives;
+		MergeField<?>[] newFields = new MergeField<?>[capacity];
+		Object[] newValues = new Object[capacity];
+		long[] newPrimitives = oldPrimitives == null ? null : new long[capacity];
+
+		for (int i = 0; i < oldFields.length; i++) {
+			MergeField<?> key = oldFields[i];
+			if (key != null) {
+				int slot = put(newFields, newValues, key, oldValues[i]);
+				if (newPrimitives != null) {
+					newPrimitives[slot] = oldPrimitives[i];
+				}
+			}
+		}
+
+		fields = newFields;
+		values = newValues;
+		primitives = newPrimitives;
+	}
+
+	private static int put(
+		@Nonnull MergeField<?>[] keys,
+		@Nonnull Object[] slots,
+		@Nonnull MergeField<?> mergeField,
+		@Nonnull Object stored) {
+
+		int mask = keys.length - 1;
+		int slot = hash(mergeField) & mask;
+		while (keys[slot] != null) {
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = mergeField;
+		slots[slot] = stored;
+
+		return slot;
+	}
+
+	private static int hash(@Nonnull MergeField<?> mergeField) {
+		int h = mergeField.hashCode();
+
+		return h ^ (h >>> HASH_SPREAD_BITS);
+	}
+
+	/**
+	 * Markiert einen Slot, dessen Wert ungeboxt in {@link #primitives} steht
+	 */
+	private enum Primitive {
+		INT {
+			@Nonnull
+			@Override
+			Object box(long bits) {
+				return (int) bits;
+			}
+
+			@Override
+			double toDouble(long bits) {
+				return (int) bits;
+			}
+
+			@Override
+			boolean write(@Nonnull Converter<?> converter, @Nonnull Cell cell, @Nonnull String pattern, long bits) {
+				if (converter instanceof IntCellConverter) {
+					((IntCellConverter) converter).setIntCellValue(cell, pattern, (int) bits);
+					return true;
+				}
+
+				return false;
+			}
+		},
+		LONG {
+			@Nonnull
+			@Override
+			Object box(long bits) {
+				return bits;
+			}
+
+			@Override
+			double toDouble(long bits) {
+				return bits;
+			}
+
+			@Override
+			boolean write(@Nonnull Converter<?> converter, @Nonnull Cell cell, @Nonnull String pattern, long bits) {
+				if (converter instanceof LongCellConverter) {
+					((LongCellConverter) converter).setLongCellValue(cell, pattern, bits);
+					return true;
+				}
+
+				return false;
+			}
+		},
+		DOUBLE {
+			@Nonnull
+			@Override
+			Object box(long bits) {
+				return BigDecimal.valueOf(Double.longBitsToDouble(bits));
+			}
+
+			@Override
+			double toDouble(long bits) {
+				return Double.longBitsToDouble(bits);
+			}
+
+			@Override
+			boolean write(@Nonnull Converter<?> converter, @Nonnull Cell cell, @Nonnull String pattern, long bits) {
+				if (converter instanceof DoubleCellConverter) {
+					((DoubleCellConverter) converter).setDoubleCellValue(cell, pattern, Double.longBitsToDouble(bits));
+					return true;
+				}
+
+				return false;
+			}
+		};
+
+		/**
+		 * @return der Wert, wie ihn {@link ExcelMergerDTO#getValue(MergeField, int)} liefert
+		 */
+		@Nonnull
+		abstract Object box(long bits);
+
+		/**
+		 * @return der Wert als double, ohne ihn zu boxen
+		 */
+		abstract double toDouble(long bits);
+
+		/**
+		 * @return FALSE, wenn der Converter keine ungeboxten Werte schreiben kann
+		 */
+		abstract boolean write(@Nonnull Converter<?> converter, @Nonnull Cell cell, @Nonnull String pattern, long bits);
+	}
+
+	/**
+	 * Die Werte eines Feldes mit mehreren Werten, waechst bei Bedarf auf die doppelte Groesse
+	 */
+	private static final class ValueList {
+
+		@Nonnull
+		private Object[] items;
+		private int size;
+
+		private ValueList(@Nonnull Object first, @Nonnull Object second) {
+			this.items = new Object[INITIAL_CAPACITY];
+			this.items[0] = first;
+			this.items[1] = second;
+			this.size = 2;
+		}
+
+		private void add(@Nonnull Object value) {
+			if (size == items.length) {
+				items = Arrays.copyOf(items, size * 2);
+			}
+
+			items[size++] = value;
 		}
 
-		return null;
+		@Nullable
+		private Object get(int offset) {
+			return offset < size ? items[offset] : null;
+		}
 	}
 }
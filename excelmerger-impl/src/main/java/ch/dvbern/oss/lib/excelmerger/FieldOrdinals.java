@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+
+/**
+ * Nummeriert die MergeFields eines Merges fortlaufend (0 bis size - 1). Damit kann der Zustand pro Feld (z.B. der
+ * Offset der Repeat-Felder einer Zeile) in einem int[] gehalten werden, statt in einer Map mit geboxten Werten.
+ *
+ * <p>Wird einmal pro {@link Context} bzw. {@link CompiledTemplate} erstellt und danach nur noch gelesen.</p>
+ */
+final class FieldOrdinals {
+
+	/**
+	 * Die Integer werden beim Erstellen einmal geboxt, {@link #ordinalOf(String)} erzeugt keine Objekte
+	 */
+	@Nonnull
+	private final Map<String, Integer> ordinals;
+	@Nonnull
+	private final MergeField<?>[] fields;
+
+	private FieldOrdinals(@Nonnull Map<String, Integer> ordinals, @Nonnull MergeField<?>[] fields) {
+		this.ordinals = ordinals;
+		this.fields = fields;
+	}
+
+	@Nonnull
+	static FieldOrdinals of(@Nonnull Map<String, MergeField<?>> mergeFields) {
+		Map<String, Integer> ordinals = new HashMap<>();
+		MergeField<?>[] fields = new MergeField<?>[mergeFields.size()];
+
+		for (MergeField<?> field : mergeFields.values()) {
+			int ordinal = ordinals.size();
+			ordinals.put(field.getKey(), ordinal);
+			fields[ordinal] = field;
+		}
+
+		return new FieldOrdinals(ordinals, fields);
+	}
+
+	/**
+	 * @return die Nummer des Feldes oder -1, wenn es kein Feld mit diesem Key gibt
+	 */
+	int ordinalOf(@Nonnull String key) {
+		Integer ordinal = ordinals.get(key);
+
+		return ordinal == null ? -1 : ordinal;
+	}
+
+	@Nonnull
+	MergeField<?> getField(int ordinal) {
+		return fields[ordinal];
+	}
+
+	@Nullable
+	MergeField<?> getField(@Nonnull String key) {
+		int ordinal = ordinalOf(key);
+
+		return ordinal < 0 ? null : fields[ordinal];
+	}
+
+	int size() {
+		return fields.length;
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", FieldOrdinals.class.getSimpleName() + '[', "]")
+			.add("size=" + fields.length)
+			.toString();
+	}
+}
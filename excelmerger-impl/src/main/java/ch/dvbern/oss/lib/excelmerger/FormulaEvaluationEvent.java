@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import javax.annotation.Nullable;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR-Event fuer das Evaluieren der vom Merge betroffenen Formeln
+ */
+@Name(FormulaEvaluationEvent.NAME)
+@Label("Formula Evaluation")
+@Category("Excel Merger")
+@StackTrace(false)
+@Description("Evaluation of the formulas affected by a merge")
+final class FormulaEvaluationEvent extends Event implements MergeEvents.FormulaEvaluation {
+
+	static final String NAME = "ch.dvbern.oss.lib.excelmerger.FormulaEvaluation";
+
+	@Label("Sheets")
+	@Description("Merged sheets, comma separated")
+	@Nullable
+	private String sheets;
+
+	@Label("Formulas")
+	private int formulas;
+
+	@Nullable
+	String getSheets() {
+		return sheets;
+	}
+
+	@Override
+	public void setSheets(@Nullable String sheets) {
+		this.sheets = sheets;
+	}
+
+	int getFormulas() {
+		return formulas;
+	}
+
+	@Override
+	public void setFormulas(int formulas) {
+		this.formulas = formulas;
+	}
+}
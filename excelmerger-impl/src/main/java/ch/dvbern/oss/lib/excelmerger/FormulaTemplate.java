@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.List;
+import java.util.StringJoiner;
+
+import javax.annotation.Nonnull;
+
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaRenderer;
+import org.apache.poi.ss.formula.FormulaShifter;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.Area3DPtg;
+import org.apache.poi.ss.formula.ptg.AreaPtgBase;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.Pxg;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+
+import static org.apache.poi.ss.SpreadsheetVersion.EXCEL2007;
+
+/**
+ * Eine Formel, die nur einmal geparst wird und danach beliebig oft fuer andere Zeilen umgeschrieben werden kann.
+ */
+final class FormulaTemplate {
+
+	@Nonnull
+	private final XSSFEvaluationWorkbook workbook;
+	private final int sheetIndex;
+	@Nonnull
+	private final String sheetName;
+	private final int rowNum;
+	@Nonnull
+	private final String formula;
+	@Nonnull
+	private final Ptg[] ptgs;
+
+	private FormulaTemplate(
+		@Nonnull XSSFEvaluationWorkbook workbook,
+		int sheetIndex,
+		@Nonnull String sheetName,
+		int rowNum,
+		@Nonnull String formula,
+		@Nonnull Ptg[] ptgs) {
+
+		this.workbook = workbook;
+		this.sheetIndex = sheetIndex;
+		this.sheetName = sheetName;
+		this.rowNum = rowNum;
+		this.formula = formula;
+		this.ptgs = ptgs;
+	}
+
+	/**
+	 * @param workbook das Evaluation-Workbook des Sheets, kann fuer alle Formeln eines Workbooks verwendet werden
+	 * @param rowNum die Zeile, auf welcher die Formel steht
+	 */
+	@Nonnull
+	static FormulaTemplate parse(
+		@Nonnull XSSFEvaluationWorkbook workbook,
+		@Nonnull XSSFSheet sheet,
+		int rowNum,
+		@Nonnull String formula) {
+
+		int sheetIndex = sheet.getWorkbook().getSheetIndex(sheet);
+		Ptg[] ptgs = FormulaParser.parse(formula, workbook, FormulaType.CELL, sheetIndex, rowNum);
+
+		return new FormulaTemplate(workbook, sheetIndex, sheet.getSheetName(), rowNum, formula, ptgs);
+	}
+
+	@Nonnull
+	String getFormula() {
+		return formula;
+	}
+
+	/**
+	 * Wie beim Kopieren der Zeile um rows Zeilen nach unten (bzw. oben, wenn negativ): alle relativen Referenzen
+	 * werden verschoben.
+	 */
+	@Nonnull
+	String copiedBy(int rows) {
+		if (rows == 0) {
+			return formula;
+		}
+
+		FormulaShifter shifter = FormulaShifter.createForRowCopy(sheetIndex, sheetName, rowNum, rowNum, rows, EXCEL2007);
+
+		return adjust(shifter);
+	}
+
+	/**
+	 * Wie beim Einfuegen von rows Zeilen unterhalb eines Blocks (firstBlockRow bis lastBlockRow), welcher rows / Block
+	 * mal wiederholt wird: Referenzen unterhalb des Blocks werden verschoben und Bereiche, die im Block enden, werden
+	 * bis in die letzte Wiederholung erweitert. Aus SUM(B5:B5) wird so z.B. SUM(B5:B100004).
+	 */
+	@Nonnull
+	String withRepeatedBlock(int firstBlockRow, int lastBlockRow, int rows) {
+		if (rows == 0) {
+			return formula;
+		}
+
+		FormulaShifter shifter = FormulaShifter.createForRowShift(sheetIndex, sheetName, lastBlockRow + 1,
+			EXCEL2007.getLastRowIndex(), rows, EXCEL2007);
+		Ptg[] copy = copyPtgs();
+		boolean changed = shifter.adjustFormula(copy, sheetIndex);
+
+		for (Ptg ptg : copy) {
+			if (isAreaOnSheet(ptg)) {
+				AreaPtgBase area = (AreaPtgBase) ptg;
+				if (area.getLastRow() >= firstBlockRow && area.getLastRow() <= lastBlockRow) {
+					area.setLastRow(area.getLastRow() + rows);
+					changed = true;
+				}
+			}
+		}
+
+		return changed ? FormulaRenderer.toFormulaString(workbook, copy) : formula;
+	}
+
+	/**
+	 * Wie beim Verschieben der Zeile durch die Verschiebungen (in dieser Reihenfolge) auf dem Sheet: Referenzen auf
+	 * verschobene Zeilen werden angepasst, Bereiche, die in verschobenen Zeilen enden, werden erweitert.
+	 */
+	@Nonnull
+	String shiftedBy(@Nonnull List<RowShift> shifts) {
+		Ptg[] copy = copyPtgs();
+		boolean changed = false;
+		for (RowShift shift : shifts) {
+			FormulaShifter shifter = FormulaShifter.createForRowShift(sheetIndex, sheetName,
+				shift.getFirstShiftedRow(), shift.getLastRow(), shift.getNumRows(), EXCEL2007);
+			changed |= shifter.adjustFormula(copy, sheetIndex);
+		}
+
+		return changed ? FormulaRenderer.toFormulaString(workbook, copy) : formula;
+	}
+
+	private boolean isAreaOnSheet(@Nonnull Ptg ptg) {
+		if (!(ptg instanceof AreaPtgBase) || ptg instanceof Area3DPtg) {
+			return false;
+		}
+
+		return !(ptg instanceof Pxg) || sheetName.equals(((Pxg) ptg).getSheetName());
+	}
+
+	@Nonnull
+	private String adjust(@Nonnull FormulaShifter shifter) {
+		Ptg[] copy = copyPtgs();
+
+		return shifter.adjustFormula(copy, sheetIndex) ? FormulaRenderer.toFormulaString(workbook, copy) : formula;
+	}
+
+	@Nonnull
+	private Ptg[] copyPtgs() {
+		Ptg[] copy = new Ptg[ptgs.length];
+		for (int i = 0; i < ptgs.length; i++) {
+			copy[i] = ptgs[i].copy();
+		}
+
+		return copy;
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", FormulaTemplate.class.getSimpleName() + '[', "]")
+			.add("sheetName=" + sheetName)
+			.add("rowNum=" + rowNum)
+			.add("formula=" + formula)
+			.toString();
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.awt.Rectangle;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.poi.ss.usermodel.Font;
+
+/**
+ * Die Breite der Zeichen einer Schrift, so wie sie {@link org.apache.poi.ss.util.SheetUtil} mit einem
+ * {@link TextLayout} berechnet. Jedes Zeichen wird nur einmal ausgemessen, danach ist die Breite eines Textes die
+ * Summe der Breiten seiner Zeichen (ohne Kerning und Ligaturen).
+ *
+ * <p>Die Tabellen werden pro Schrift (Name, Groesse, fett, kursiv) JVM-weit gecached und sind thread-safe. Die
+ * Zeichen werden in Seiten zu 256 Zeichen ausgemessen, die erste Seite (Latin-1) sofort.</p>
+ */
+final class GlyphWidths {
+
+	/**
+	 * Wie in SheetUtil: die Breite einer Spalte wird in Anzahl Zeichen '0' der Standard-Schrift gemessen
+	 */
+	static final char DEFAULT_CHAR = '0';
+
+	private static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, true, true);
+	private static final Map<FontKey, GlyphWidths> CACHE = new ConcurrentHashMap<>();
+
+	private static final double ROTATED_HEIGHT_FACTOR = 2;
+
+	private static final int PAGE_BITS = 8;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final int PAGES = (Character.MAX_VALUE + 1) / PAGE_SIZE;
+
+	@Nonnull
+	private final java.awt.Font font;
+	@Nonnull
+	private final AtomicReferenceArray<float[]> pages = new AtomicReferenceArray<>(PAGES);
+	private final double defaultCharRightEdge;
+
+	private GlyphWidths(@Nonnull java.awt.Font font) {
+		this.font = font;
+		Rectangle2D bounds = new TextLayout(String.valueOf(DEFAULT_CHAR), font, FONT_RENDER_CONTEXT).getBounds();
+		this.defaultCharRightEdge = bounds.getX() + bounds.getWidth();
+		pages.set(0, measurePage(0));
+	}
+
+	@Nonnull
+	static GlyphWidths of(@Nonnull Font font) {
+		FontKey key = new FontKey(font.getFontName(), font.getFontHeightInPoints(), font.getBold(), font.getItalic());
+
+		return CACHE.computeIfAbsent(key, GlyphWidths::create);
+	}
+
+	@Nonnull
+	private static GlyphWidths create(@Nonnull FontKey key) {
+		int style = (key.bold ? java.awt.Font.BOLD : 0) | (key.italic ? java.awt.Font.ITALIC : 0);
+
+		return new GlyphWidths(new java.awt.Font(key.name, style, 1).deriveFont((float) key.size));
+	}
+
+	/**
+	 * Wie SheetUtil: die Breite des Textes (bzw. des Ausschnitts start bis end) mit einem angehaengten
+	 * {@link #DEFAULT_CHAR}, vom Ursprung bis zum rechten Rand des letzten Zeichens, in Punkten
+	 */
+	double frameWidthOf(@Nonnull CharSequence text, int start, int end) {
+		double width = 0;
+		for (int i = start; i < end; i++) {
+			width += widthOf(text.charAt(i));
+		}
+
+		return width + defaultCharRightEdge;
+	}
+
+	/**
+	 * Wie {@link #frameWidthOf(CharSequence, int, int)} fuer gedrehten Text. Selten, darum wie in SheetUtil mit
+	 * einem {@link TextLayout} berechnet (inkl. der doppelten Hoehe).
+	 */
+	double rotatedFrameWidthOf(@Nonnull String text, int start, int end, short rotation) {
+		String line = text.substring(start, end) + DEFAULT_CHAR;
+		if (line.trim().isEmpty()) {
+			return frameWidthOf(text, start, end);
+		}
+
+		AffineTransform transform = AffineTransform.getRotateInstance(Math.toRadians(rotation));
+		transform.concatenate(AffineTransform.getScaleInstance(1, ROTATED_HEIGHT_FACTOR));
+		Rectangle bounds = new TextLayout(line, font, FONT_RENDER_CONTEXT).getOutline(transform).getBounds();
+
+		return bounds.getX() + bounds.getWidth();
+	}
+
+	float widthOf(char c) {
+		int page = c >>> PAGE_BITS;
+		float[] widths = pages.get(page);
+		if (widths == null) {
+			// im schlimmsten Fall wird eine Seite von zwei Threads ausgemessen, das Resultat ist dasselbe
+			widths = measurePage(page);
+			pages.set(page, widths);
+		}
+
+		return widths[c & PAGE_MASK];
+	}
+
+	@Nonnull
+	private float[] measurePage(int page) {
+		float[] widths = new float[PAGE_SIZE];
+		for (int i = 0; i < PAGE_SIZE; i++) {
+			char c = (char) ((page << PAGE_BITS) | i);
+			widths[i] = Character.isISOControl(c) || Character.isSurrogate(c) ? 0 : measure(c);
+		}
+
+		return widths;
+	}
+
+	private float measure(char c) {
+		return new TextLayout(String.valueOf(c), font, FONT_RENDER_CONTEXT).getAdvance();
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", GlyphWidths.class.getSimpleName() + '[', "]")
+			.add("font=" + font)
+			.toString();
+	}
+
+	private static final class FontKey {
+
+		@Nonnull
+		private final String name;
+		private final short size;
+		private final boolean bold;
+		private final boolean italic;
+
+		private FontKey(@Nonnull String name, short size, boolean bold, boolean italic) {
+			this.name = name;
+			this.size = size;
+			this.bold = bold;
+			this.italic = italic;
+		}
+
+		@Override
+		public boolean equals(@Nullable Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof FontKey)) {
+				return false;
+			}
+
+			FontKey other = (FontKey) o;
+
+			return size == other.size && bold == other.bold && italic == other.italic && name.equals(other.name);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(name, size, bold, italic);
+		}
+	}
+}
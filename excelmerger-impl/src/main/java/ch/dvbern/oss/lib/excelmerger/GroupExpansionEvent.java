@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import javax.annotation.Nullable;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR-Event fuer das Expandieren einer Repeat-Gruppe, inkl. Mergen der Zeilen und aller verschachtelten Gruppen
+ */
+@Name(GroupExpansionEvent.NAME)
+@Label("Group Expansion")
+@Category("Excel Merger")
+@StackTrace(false)
+@Description("Expansion of a repeat group including its nested groups")
+final class GroupExpansionEvent extends Event implements MergeEvents.GroupExpansion {
+
+	static final String NAME = "ch.dvbern.oss.lib.excelmerger.GroupExpansion";
+
+	@Label("Sheet")
+	@Nullable
+	private String sheet;
+
+	@Label("Group")
+	@Description("Key of the repeat row merge field")
+	@Nullable
+	private String group;
+
+	@Label("Instances")
+	private int instances;
+
+	@Label("Template Rows")
+	@Description("Rows per instance")
+	private int templateRows;
+
+	@Nullable
+	String getSheet() {
+		return sheet;
+	}
+
+	@Override
+	public void setSheet(@Nullable String sheet) {
+		this.sheet = sheet;
+	}
+
+	@Nullable
+	String getGroup() {
+		return group;
+	}
+
+	@Override
+	public void setGroup(@Nullable String group) {
+		this.group = group;
+	}
+
+	int getInstances() {
+		return instances;
+	}
+
+	@Override
+	public void setInstances(int instances) {
+		this.instances = instances;
+	}
+
+	int getTemplateRows() {
+		return templateRows;
+	}
+
+	@Override
+	public void setTemplateRows(int templateRows) {
+		this.templateRows = templateRows;
+	}
+}
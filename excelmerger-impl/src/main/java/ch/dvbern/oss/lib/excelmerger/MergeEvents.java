@@ -0,0 +1,271 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+package ch.dvbern.oss.lib.excelmerger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Erstellt die JFR-Events des ExcelMergers. Die Event-Klassen erben von jdk.jfr.Event und werden nur geladen, wenn
+ * das Modul jdk.jfr vorhanden ist (fehlt z.B. in Java 8 vor 8u262 oder in jlink-Images ohne jdk.jfr). Sonst wird ein
+ * Event verwendet, das nichts aufzeichnet.
+ *
+ * <p>Die Aufrufer verwenden nur die Interfaces, nie die Event-Klassen selbst.</p>
+ */
+final class MergeEvents {
+
+	private static final boolean AVAILABLE = isJfrAvailable();
+
+	private MergeEvents() {
+		// utility class
+	}
+
+	/**
+	 * @return TRUE, wenn die Events mit JFR aufgezeichnet werden koennen
+	 */
+	static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	@Nonnull
+	static MergeSheet mergeSheet() {
+		return AVAILABLE ? Jfr.mergeSheet() : NoOp.INSTANCE;
+	}
+
+	@Nonnull
+	static GroupExpansion groupExpansion() {
+		return AVAILABLE ? Jfr.groupExpansion() : NoOp.INSTANCE;
+	}
+
+	@Nonnull
+	static RowShift rowShift() {
+		return AVAILABLE ? Jfr.rowShift() : NoOp.INSTANCE;
+	}
+
+	@Nonnull
+	static FormulaEvaluation formulaEvaluation() {
+		return AVAILABLE ? Jfr.formulaEvaluation() : NoOp.INSTANCE;
+	}
+
+	@Nonnull
+	static TemplateParse templateParse() {
+		return AVAILABLE ? Jfr.templateParse() : NoOp.INSTANCE;
+	}
+
+	private static boolean isJfrAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, MergeEvents.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError ignored) {
+			return false;
+		}
+	}
+
+	/**
+	 * Die Methoden von jdk.jfr.Event, die der ExcelMerger verwendet
+	 */
+	interface MergeEvent {
+
+		void begin();
+
+		void commit();
+
+		boolean isEnabled();
+
+		boolean shouldCommit();
+	}
+
+	/**
+	 * @see MergeSheetEvent
+	 */
+	interface MergeSheet extends MergeEvent {
+
+		void setSheet(@Nullable String sheet);
+
+		void setStreaming(boolean streaming);
+
+		void setTemplateRows(int templateRows);
+
+		void setRows(int rows);
+
+		void setStylesCreated(int stylesCreated);
+	}
+
+	/**
+	 * @see GroupExpansionEvent
+	 */
+	interface GroupExpansion extends MergeEvent {
+
+		void setSheet(@Nullable String sheet);
+
+		void setGroup(@Nullable String group);
+
+		void setInstances(int instances);
+
+		void setTemplateRows(int templateRows);
+	}
+
+	/**
+	 * @see RowShiftEvent
+	 */
+	interface RowShift extends MergeEvent {
+
+		void setSheet(@Nullable String sheet);
+
+		void setFirstRow(int firstRow);
+
+		void setLastRow(int lastRow);
+
+		void setOffset(int offset);
+	}
+
+	/**
+	 * @see FormulaEvaluationEvent
+	 */
+	interface FormulaEvaluation extends MergeEvent {
+
+		void setSheets(@Nullable String sheets);
+
+		void setFormulas(int formulas);
+	}
+
+	/**
+	 * @see TemplateParseEvent
+	 */
+	interface TemplateParse extends MergeEvent {
+
+		void setSheet(@Nullable String sheet);
+
+		void setRows(int rows);
+
+		void setPlaceholders(int placeholders);
+
+		void setFormulas(int formulas);
+	}
+
+	/**
+	 * Referenziert die Event-Klassen und wird deshalb erst beim ersten Event geladen, nur wenn JFR verfuegbar ist.
+	 */
+	private static final class Jfr {
+
+		private Jfr() {
+			// utility class
+		}
+
+		@Nonnull
+		static MergeSheet mergeSheet() {
+			return new MergeSheetEvent();
+		}
+
+		@Nonnull
+		static GroupExpansion groupExpansion() {
+			return new GroupExpansionEvent();
+		}
+
+		@Nonnull
+		static RowShift rowShift() {
+			return new RowShiftEvent();
+		}
+
+		@Nonnull
+		static FormulaEvaluation formulaEvaluation() {
+			return new FormulaEvaluationEvent();
+		}
+
+		@Nonnull
+		static TemplateParse templateParse() {
+			return new TemplateParseEvent();
+		}
+	}
+
+	/**
+	 * Ohne JFR: ist nie enabled und zeichnet nichts auf, eine Instanz fuer alle Events.
+	 */
+	@SuppressWarnings("PMD.UncommentedEmptyMethodBody")
+	private static final class NoOp implements MergeSheet, GroupExpansion, RowShift, FormulaEvaluation, TemplateParse {
+
+		private static final NoOp INSTANCE = new NoOp();
+
+		@Override
+		public void begin() {
+		}
+
+		@Override
+		public void commit() {
+		}
+
+		@Override
+		public boolean isEnabled() {
+			return false;
+		}
+
+		@Override
+		public boolean shouldCommit() {
+			return false;
+		}
+
+		@Override
+		public void setSheet(@Nullable String sheet) {
+		}
+
+		@Override
+		public void setSheets(@Nullable String sheets) {
+		}
+
+		@Override
+		public void setGroup(@Nullable String group) {
+		}
+
+		@Override
+		public void setStreaming(boolean streaming) {
+		}
+
+		@Override
+		public void setTemplateRows(int templateRows) {
+		}
+
+		@Override
+		public void setRows(int rows) {
+		}
+
+		@Override
+		public void setInstances(int instances) {
+		}
+
+		@Override
+		public void setFirstRow(int firstRow) {
+		}
+
+		@Override
+		public void setLastRow(int lastRow) {
+		}
+
+		@Override
+		public void setOffset(int offset) {
+		}
+
+		@Override
+		public void setStylesCreated(int stylesCreated) {
+		}
+
+		@Override
+		public void setPlaceholders(int placeholders) {
+		}
+
+		@Override
+		public void setFormulas(int formulas) {
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Wird waehrend des Merges ueber den Fortschritt informiert, z.B. um zu messen, wieviel Zeit in welcher
+ * {@link MergePhase} verbraucht wird. Alle Methoden haben eine leere Default-Implementation, siehe
+ * {@link MergeStatistics} fuer eine Implementation, welche alles aufsummiert.
+ *
+ * <p>Die Methoden werden im Thread des Merges aufgerufen, zum Teil pro Zelle, und sollten deshalb schnell sein. Wird
+ * derselbe Listener fuer mehrere Merges gleichzeitig verwendet (z.B. im {@link BatchMerger}), muss er thread-safe
+ * sein. Wirft ein Merge eine Exception, wird die angefangene Phase nicht mehr beendet.</p>
+ *
+ * <p>Ohne Listener ({@link #NO_OP}) wird auch die Zeit nicht gelesen, der Merge wird dadurch nicht langsamer.</p>
+ */
+public interface MergeListener {
+
+	/**
+	 * Ignoriert alle Ereignisse, Default fuer jeden Merge
+	 */
+	MergeListener NO_OP = new MergeListener() {
+	};
+
+	/**
+	 * @param startNanos {@link System#nanoTime()} zu Beginn der Phase
+	 */
+	default void phaseStarted(@Nonnull MergePhase phase, long startNanos) {
+		// nop
+	}
+
+	/**
+	 * @param startNanos derselbe Wert wie bei {@link #phaseStarted(MergePhase, long)}
+	 * @param endNanos {@link System#nanoTime()} am Ende der Phase
+	 */
+	default void phaseFinished(@Nonnull MergePhase phase, long startNanos, long endNanos) {
+		// nop
+	}
+
+	/**
+	 * Beim Expandieren einer Gruppe wurden neue Zeilen erstellt (Kopien der Template-Zeilen)
+	 */
+	default void rowsCreated(int rows) {
+		// nop
+	}
+
+	/**
+	 * In einer Zeile wurden so viele Zellen mit Placeholdern gemerged
+	 */
+	default void cellsMerged(int cells) {
+		// nop
+	}
+
+	/**
+	 * Die Zeilen firstRow bis lastRow (0-basiert) wurden um offset Zeilen nach unten verschoben
+	 */
+	default void rowsShifted(int firstRow, int lastRow, int offset) {
+		// nop
+	}
+
+	/**
+	 * Beim Merge eines Sheets wurden so viele Styles im Workbook erstellt (z.B. von Convertern, die Zellen einfaerben)
+	 */
+	default void stylesCreated(int styles) {
+		// nop
+	}
+
+	/**
+	 * Nach dem Merge wurden so viele Formel-Zellen evaluiert
+	 */
+	default void formulasEvaluated(int formulas) {
+		// nop
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.StringJoiner;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Optionen fuer {@link ExcelMerger#mergeData(org.apache.poi.ss.usermodel.Sheet, SheetMerge, MergeOptions)}. Jede
+ * Methode gibt eine Kopie mit der geaenderten Option zurueck, z.B.
+ * {@code MergeOptions.defaults().withoutEvaluation().withListener(statistics)}.
+ *
+ * <p>Ein {@link ColumnAutoSizer} gehoert zu einem Sheet: Optionen mit einem AutoSizer duerfen darum nur fuer einen
+ * Merge verwendet werden.</p>
+ */
+public final class MergeOptions {
+
+	private static final MergeOptions DEFAULTS = new MergeOptions(true, null, MergeListener.NO_OP);
+
+	private final boolean evaluate;
+	@Nullable
+	private final ColumnAutoSizer autoSizer;
+	@Nonnull
+	private final MergeListener listener;
+
+	private MergeOptions(boolean evaluate, @Nullable ColumnAutoSizer autoSizer, @Nonnull MergeListener listener) {
+		this.evaluate = evaluate;
+		this.autoSizer = autoSizer;
+		this.listener = listener;
+	}
+
+	/**
+	 * Evaluiert die betroffenen Formeln, ohne AutoSize und ohne Listener (wie
+	 * {@link ExcelMerger#mergeData(org.apache.poi.ss.usermodel.Sheet, java.util.List, ExcelMergerDTO)})
+	 */
+	@Nonnull
+	public static MergeOptions defaults() {
+		return DEFAULTS;
+	}
+
+	/**
+	 * Die Formeln werden nicht evaluiert, z.B. weil Excel beim Oeffnen neu rechnet.
+	 */
+	@Nonnull
+	public MergeOptions withoutEvaluation() {
+		return new MergeOptions(false, autoSizer, listener);
+	}
+
+	/**
+	 * Die Spaltenbreiten werden nach dem Merge mit dem AutoSizer angepasst. Die Zeilen werden schon beim Mergen
+	 * ausgemessen.
+	 */
+	@Nonnull
+	public MergeOptions withAutoSizer(@Nonnull ColumnAutoSizer columnAutoSizer) {
+		return new MergeOptions(evaluate, requireNonNull(columnAutoSizer), listener);
+	}
+
+	/**
+	 * Der Listener wird ueber alle Phasen des Merges informiert, z.B. {@link MergeStatistics}.
+	 */
+	@Nonnull
+	public MergeOptions withListener(@Nonnull MergeListener mergeListener) {
+		return new MergeOptions(evaluate, autoSizer, requireNonNull(mergeListener));
+	}
+
+	public boolean isEvaluate() {
+		return evaluate;
+	}
+
+	@Nullable
+	public ColumnAutoSizer getAutoSizer() {
+		return autoSizer;
+	}
+
+	@Nonnull
+	public MergeListener getListener() {
+		return listener;
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", MergeOptions.class.getSimpleName() + '[', "]")
+			.add("evaluate=" + evaluate)
+			.add("autoSizer=" + autoSizer)
+			.add("listener=" + listener)
+			.toString();
+	}
+}
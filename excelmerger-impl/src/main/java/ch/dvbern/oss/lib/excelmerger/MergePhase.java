@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+/**
+ * Die Phasen eines Merges, welche einem {@link MergeListener} gemeldet werden. Phasen koennen verschachtelt sein,
+ * z.B. enthaelt {@link #MERGE} alle anderen Phasen des Sheets und {@link #GROUP_EXPANSION} das Verschieben, Kopieren
+ * und Mergen der Zeilen einer Gruppe.
+ */
+public enum MergePhase {
+	/**
+	 * Der ganze Merge eines Sheets inkl. Evaluation der Formeln und Anpassen der Spaltenbreiten
+	 */
+	MERGE,
+	/**
+	 * Expandieren einer Repeat-Gruppe inkl. aller verschachtelten Gruppen
+	 */
+	GROUP_EXPANSION,
+	/**
+	 * Berechnen der Ziel-Zeilen einer Gruppe, bevor das Sheet veraendert wird
+	 */
+	LAYOUT,
+	/**
+	 * Verschieben der bestehenden Zeilen inkl. Merged-Regions, um Platz fuer die Kopien zu machen
+	 */
+	ROW_SHIFT,
+	/**
+	 * Verschieben der DataValidations (z.B. Dropdowns)
+	 */
+	DATA_VALIDATION_SHIFT,
+	/**
+	 * Verschieben der Named-Ranges
+	 */
+	NAMED_RANGE_SHIFT,
+	/**
+	 * Kopieren der Zeilen einer Gruppe inkl. Styles und Merged-Regions
+	 */
+	ROW_COPY,
+	/**
+	 * Zerlegen eines Zellen-Textes in Literale und Placeholder (einmal pro Zelle)
+	 */
+	PARSE,
+	/**
+	 * Schreiben der Werte mit den Convertern (einmal pro Zelle mit Placeholdern)
+	 */
+	CONVERT,
+	/**
+	 * Evaluieren der Formeln nach dem Merge
+	 */
+	EVALUATE,
+	/**
+	 * Anpassen der Spaltenbreiten mit dem {@link ColumnAutoSizer}
+	 */
+	AUTO_SIZE,
+	/**
+	 * Erstellen des Workbooks aus der Template-Datei ({@link BatchMerger})
+	 */
+	OPEN_TEMPLATE,
+	/**
+	 * Schreiben des gemergten Workbooks ({@link BatchMerger.BatchOutput})
+	 */
+	WRITE
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import javax.annotation.Nullable;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR-Event fuer den Merge eines Sheets, von {@link ExcelMerger} inkl. Evaluation der Formeln bzw. von
+ * {@link RowFiller} von der Initialisierung bis zur letzten Zeile.
+ */
+@Name(MergeSheetEvent.NAME)
+@Label("Merge Sheet")
+@Category("Excel Merger")
+@Description("Merge of one sheet with ExcelMerger or RowFiller")
+final class MergeSheetEvent extends Event implements MergeEvents.MergeSheet {
+
+	static final String NAME = "ch.dvbern.oss.lib.excelmerger.MergeSheet";
+
+	@Label("Sheet")
+	@Nullable
+	private String sheet;
+
+	@Label("Streaming")
+	@Description("Merged with a RowFiller")
+	private boolean streaming;
+
+	@Label("Template Rows")
+	private int templateRows;
+
+	@Label("Rows")
+	@Description("Rows of the sheet after the merge")
+	private int rows;
+
+	@Label("Styles Created")
+	private int stylesCreated;
+
+	@Nullable
+	String getSheet() {
+		return sheet;
+	}
+
+	@Override
+	public void setSheet(@Nullable String sheet) {
+		this.sheet = sheet;
+	}
+
+	boolean isStreaming() {
+		return streaming;
+	}
+
+	@Override
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	int getTemplateRows() {
+		return templateRows;
+	}
+
+	@Override
+	public void setTemplateRows(int templateRows) {
+		this.templateRows = templateRows;
+	}
+
+	int getRows() {
+		return rows;
+	}
+
+	@Override
+	public void setRows(int rows) {
+		this.rows = rows;
+	}
+
+	int getStylesCreated() {
+		return stylesCreated;
+	}
+
+	@Override
+	public void setStylesCreated(int stylesCreated) {
+		this.stylesCreated = stylesCreated;
+	}
+}
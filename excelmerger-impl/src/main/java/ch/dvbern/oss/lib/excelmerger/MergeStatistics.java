@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Ein {@link MergeListener}, der alle Ereignisse aufsummiert: pro {@link MergePhase} die Anzahl und die gesamte Zeit,
+ * dazu die Anzahl erstellter Zeilen, gemergter Zellen, Verschiebungen, Styles und evaluierter Formeln. Kann fuer
+ * beliebig viele (auch gleichzeitige) Merges verwendet werden, z.B. fuer alle Jobs eines {@link BatchMerger}s.
+ *
+ * <p>Weil Phasen verschachtelt sind, ist die Zeit einer Phase auch in der Zeit der umgebenden Phasen enthalten.</p>
+ */
+@ThreadSafe
+public final class MergeStatistics implements MergeListener {
+
+	private final Map<MergePhase, LongAdder> phaseCounts = new EnumMap<>(MergePhase.class);
+	private final Map<MergePhase, LongAdder> phaseNanos = new EnumMap<>(MergePhase.class);
+	private final LongAdder rowsCreated = new LongAdder();
+	private final LongAdder cellsMerged = new LongAdder();
+	private final LongAdder shifts = new LongAdder();
+	private final LongAdder shiftedRows = new LongAdder();
+	private final LongAdder stylesCreated = new LongAdder();
+	private final LongAdder formulasEvaluated = new LongAdder();
+
+	private MergeStatistics() {
+		// die Maps werden nur hier veraendert, danach nur noch gelesen
+		for (MergePhase phase : MergePhase.values()) {
+			phaseCounts.put(phase, new LongAdder());
+			phaseNanos.put(phase, new LongAdder());
+		}
+	}
+
+	@Nonnull
+	public static MergeStatistics create() {
+		return new MergeStatistics();
+	}
+
+	@Override
+	public void phaseFinished(@Nonnull MergePhase phase, long startNanos, long endNanos) {
+		phaseCounts.get(phase).increment();
+		phaseNanos.get(phase).add(endNanos - startNanos);
+	}
+
+	@Override
+	public void rowsCreated(int rows) {
+		rowsCreated.add(rows);
+	}
+
+	@Override
+	public void cellsMerged(int cells) {
+		cellsMerged.add(cells);
+	}
+
+	@Override
+	public void rowsShifted(int firstRow, int lastRow, int offset) {
+		shifts.increment();
+		shiftedRows.add(lastRow - firstRow + 1L);
+	}
+
+	@Override
+	public void stylesCreated(int styles) {
+		stylesCreated.add(styles);
+	}
+
+	@Override
+	public void formulasEvaluated(int formulas) {
+		formulasEvaluated.add(formulas);
+	}
+
+	/**
+	 * @return wie oft die Phase beendet wurde
+	 */
+	public long getCount(@Nonnull MergePhase phase) {
+		return phaseCounts.get(phase).sum();
+	}
+
+	/**
+	 * @return die Summe der Dauer aller beendeten Phasen dieses Typs
+	 */
+	public long getNanos(@Nonnull MergePhase phase) {
+		return phaseNanos.get(phase).sum();
+	}
+
+	public long getRowsCreated() {
+		return rowsCreated.sum();
+	}
+
+	public long getCellsMerged() {
+		return cellsMerged.sum();
+	}
+
+	/**
+	 * @return die Anzahl shiftRows-Aufrufe
+	 */
+	public long getShifts() {
+		return shifts.sum();
+	}
+
+	/**
+	 * @return die Summe der verschobenen Zeilen aller Verschiebungen
+	 */
+	public long getShiftedRows() {
+		return shiftedRows.sum();
+	}
+
+	public long getStylesCreated() {
+		return stylesCreated.sum();
+	}
+
+	public long getFormulasEvaluated() {
+		return formulasEvaluated.sum();
+	}
+
+	/**
+	 * Setzt alle Werte auf 0 zurueck. Ereignisse, die gleichzeitig gemeldet werden, gehen eventuell verloren.
+	 */
+	public void reset() {
+		phaseCounts.values().forEach(LongAdder::reset);
+		phaseNanos.values().forEach(LongAdder::reset);
+		rowsCreated.reset();
+		cellsMerged.reset();
+		shifts.reset();
+		shiftedRows.reset();
+		stylesCreated.reset();
+		formulasEvaluated.reset();
+	}
+
+	/**
+	 * @return alle Phasen, die mindestens einmal beendet wurden, mit Anzahl und Zeit in Millisekunden, und alle Zaehler
+	 */
+	@Override
+	@Nonnull
+	public String toString() {
+		StringJoiner joiner = new StringJoiner(", ", MergeStatistics.class.getSimpleName() + '[', "]");
+		for (MergePhase phase : MergePhase.values()) {
+			long count = getCount(phase);
+			if (count > 0) {
+				joiner.add(phase + "=" + count + "x/" + TimeUnit.NANOSECONDS.toMillis(getNanos(phase)) + "ms");
+			}
+		}
+
+		return joiner
+			.add("rowsCreated=" + getRowsCreated())
+			.add("cellsMerged=" + getCellsMerged())
+			.add("shifts=" + getShifts())
+			.add("shiftedRows=" + getShiftedRows())
+			.add("stylesCreated=" + getStylesCreated())
+			.add("formulasEvaluated=" + getFormulasEvaluated())
+			.toString();
+	}
+}
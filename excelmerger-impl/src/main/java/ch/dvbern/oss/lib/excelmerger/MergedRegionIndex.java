@@ -0,0 +1,240 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTMergeCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorksheet;
+
+/**
+ * Index ueber die Merged-Regions eines XSSF-Sheets nach Zeilen, fuer Verschiebungen ohne
+ * {@link org.apache.poi.ss.usermodel.Sheet#getMergedRegions()} und ohne Validierung pro Region.
+ *
+ * <p>POI liest bei {@link XSSFSheet#shiftRows(int, int, int)} jede Merged-Region einzeln aus dem XML und fuegt die
+ * verschobenen mit {@link XSSFSheet#addMergedRegion(CellRangeAddress)} wieder ein, wobei jede gegen alle anderen
+ * validiert wird. Hier werden die Merged-Regions vor dem Verschieben vom Sheet entfernt, im Index nur die betroffenen
+ * Regions nachgefuehrt und danach alle in einem Durchgang zurueckgeschrieben ({@link #writeBack()}). Mehrere
+ * Verschiebungen hintereinander werden nur einmal zurueckgeschrieben.</p>
+ *
+ * <p>Die Regions sind nach erster Zeile sortiert. Weil eine Region hoechstens {@link #maxHeight} Zeilen hoch ist,
+ * muessen fuer alle Regions, die einen Zeilen-Bereich schneiden, nur die Eintraege ab firstRow - maxHeight gelesen
+ * werden.</p>
+ *
+ * <p>Der Index bleibt waehrend des ganzen Merges gueltig, solange Merged-Regions ausserhalb des Index nur angefuegt
+ * werden (z.B. mit addMergedRegionUnsafe beim Kopieren von Zeilen): diese werden vor der naechsten Verschiebung
+ * nachgelesen.</p>
+ */
+final class MergedRegionIndex {
+
+	@Nonnull
+	private final XSSFSheet sheet;
+	/**
+	 * In der Reihenfolge des Sheets, damit diese beim Zurueckschreiben erhalten bleibt
+	 */
+	@Nonnull
+	private final List<CellRangeAddress> regions = new ArrayList<>();
+	@Nonnull
+	private final NavigableMap<Integer, List<CellRangeAddress>> byFirstRow = new TreeMap<>();
+	private int maxHeight = 0;
+	private boolean attached = true;
+
+	private MergedRegionIndex(@Nonnull XSSFSheet sheet) {
+		this.sheet = sheet;
+		sheet.getMergedRegions().forEach(this::add);
+	}
+
+	@Nonnull
+	static MergedRegionIndex of(@Nonnull XSSFSheet sheet) {
+		return new MergedRegionIndex(sheet);
+	}
+
+	/**
+	 * @return Kopien aller Regions, die vollstaendig in den Zeilen firstRow bis lastRow liegen
+	 */
+	@Nonnull
+	List<CellRangeAddress> getContained(int firstRow, int lastRow) {
+		sync();
+
+		return findContained(firstRow, lastRow).stream()
+			.map(CellRangeAddress::copy)
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Wie {@link PoiUtil#shiftRowsAndMergedRegions}: Regions, die vollstaendig in den Zeilen startRow bis endRow
+	 * liegen, werden mitverschoben. Regions in den ueberschriebenen Zeilen gehen verloren, alle anderen bleiben.
+	 * Die Regions werden erst mit {@link #writeBack()} wieder ins Sheet geschrieben.
+	 */
+	void shiftRows(int startRow, int endRow, int offset) {
+		if (offset == 0 || startRow > endRow) {
+			return;
+		}
+
+		detach();
+		sheet.shiftRows(startRow, endRow, offset);
+
+		int firstOverwritten = offset > 0 ? Math.max(endRow + 1, startRow + offset) : startRow + offset;
+		int lastOverwritten = offset > 0 ? endRow + offset : Math.min(startRow - 1, endRow + offset);
+		Set<CellRangeAddress> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+		if (firstOverwritten <= lastOverwritten) {
+			removed.addAll(getIntersecting(firstOverwritten, lastOverwritten, startRow, endRow));
+		}
+
+		List<CellRangeAddress> shifted = findContained(startRow, endRow);
+		shifted.forEach(this::unindex);
+		removed.forEach(this::unindex);
+		if (!removed.isEmpty()) {
+			regions.removeIf(removed::contains);
+		}
+
+		for (CellRangeAddress region : shifted) {
+			region.setFirstRow(region.getFirstRow() + offset);
+			region.setLastRow(region.getLastRow() + offset);
+			index(region);
+		}
+	}
+
+	/**
+	 * Schreibt die Regions nach Verschiebungen in einem Durchgang (ohne Validierung) zurueck ins Sheet
+	 */
+	void writeBack() {
+		if (attached) {
+			return;
+		}
+
+		if (!regions.isEmpty()) {
+			CTMergeCell[] cells = new CTMergeCell[regions.size()];
+			for (int i = 0; i < cells.length; i++) {
+				cells[i] = CTMergeCell.Factory.newInstance();
+				cells[i].setRef(regions.get(i).formatAsString());
+			}
+			sheet.getCTWorksheet().addNewMergeCells().setMergeCellArray(cells);
+		}
+
+		attached = true;
+	}
+
+	@Nonnull
+	private List<CellRangeAddress> findContained(int firstRow, int lastRow) {
+		List<CellRangeAddress> contained = new ArrayList<>();
+		for (List<CellRangeAddress> row : byFirstRow.subMap(firstRow, true, lastRow, true).values()) {
+			for (CellRangeAddress region : row) {
+				if (region.getLastRow() <= lastRow) {
+					contained.add(region);
+				}
+			}
+		}
+
+		return contained;
+	}
+
+	/**
+	 * Regions, welche die Zeilen firstRow bis lastRow schneiden, ohne die vollstaendig in den verschobenen Zeilen
+	 */
+	@Nonnull
+	private List<CellRangeAddress> getIntersecting(int firstRow, int lastRow, int startRow, int endRow) {
+		List<CellRangeAddress> intersecting = new ArrayList<>();
+		for (List<CellRangeAddress> row : byFirstRow.subMap(firstRow - maxHeight, true, lastRow, true).values()) {
+			for (CellRangeAddress region : row) {
+				boolean moved = region.getFirstRow() >= startRow && region.getLastRow() <= endRow;
+				if (region.getLastRow() >= firstRow && !moved) {
+					intersecting.add(region);
+				}
+			}
+		}
+
+		return intersecting;
+	}
+
+	/**
+	 * Liest die seit dem letzten Zugriff angefuegten Regions nach
+	 */
+	private void sync() {
+		if (!attached) {
+			return;
+		}
+
+		int count = sheet.getNumMergedRegions();
+		if (count == regions.size()) {
+			return;
+		}
+
+		List<CellRangeAddress> current = sheet.getMergedRegions();
+		if (count < regions.size()) {
+			// Regions wurden ausserhalb des Index entfernt
+			regions.clear();
+			byFirstRow.clear();
+			maxHeight = 0;
+			current.forEach(this::add);
+		} else {
+			current.subList(regions.size(), count).forEach(this::add);
+		}
+	}
+
+	private void detach() {
+		if (!attached) {
+			return;
+		}
+
+		sync();
+		CTWorksheet worksheet = sheet.getCTWorksheet();
+		if (worksheet.isSetMergeCells()) {
+			worksheet.unsetMergeCells();
+		}
+		attached = false;
+	}
+
+	private void add(@Nonnull CellRangeAddress region) {
+		regions.add(region);
+		index(region);
+	}
+
+	private void index(@Nonnull CellRangeAddress region) {
+		byFirstRow.computeIfAbsent(region.getFirstRow(), key -> new ArrayList<>()).add(region);
+		maxHeight = Math.max(maxHeight, region.getLastRow() - region.getFirstRow());
+	}
+
+	private void unindex(@Nonnull CellRangeAddress region) {
+		List<CellRangeAddress> row = byFirstRow.get(region.getFirstRow());
+		row.removeIf(candidate -> candidate == region);
+		if (row.isEmpty()) {
+			byFirstRow.remove(region.getFirstRow());
+		}
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", MergedRegionIndex.class.getSimpleName() + '[', "]")
+			.add("sheet=" + sheet.getSheetName())
+			.add("regions=" + regions.size())
+			.add("attached=" + attached)
+			.toString();
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.StringJoiner;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.jcip.annotations.Immutable;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Ein Placeholder innerhalb eines Zell-Textes, unabhaengig von einer konkreten Zelle.
+ * Kann daher in einem {@link CompiledTemplate} gecached werden.
+ *
+ * @see PlaceholderTokenizer
+ */
+@Immutable
+final class ParsedPlaceholder {
+
+	@Nonnull
+	private final String pattern;
+	@Nonnull
+	private final String key;
+	@Nullable
+	private final Integer rows;
+
+	ParsedPlaceholder(@Nonnull String pattern, @Nonnull String key, @Nullable Integer rows) {
+		this.pattern = requireNonNull(pattern);
+		this.key = requireNonNull(key);
+		this.rows = rows;
+	}
+
+	@Nonnull
+	public String getPattern() {
+		return pattern;
+	}
+
+	@Nonnull
+	public String getKey() {
+		return key;
+	}
+
+	@Nullable
+	public Integer getRows() {
+		return rows;
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", ParsedPlaceholder.class.getSimpleName() + '[', "]")
+			.add("pattern=" + pattern)
+			.add("key=" + key)
+			.add("rows=" + rows)
+			.toString();
+	}
+}
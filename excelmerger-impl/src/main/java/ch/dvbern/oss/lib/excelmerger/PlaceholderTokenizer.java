@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Zerlegt einen Zell-Text in einem einzigen Durchgang in Literale und Placeholder.
+ * <p>
+ * Ein Placeholder hat die Form <code>{key}</code> oder <code>{key:rows}</code>, wobei der Key aus
+ * <code>[a-zA-Z0-9_]</code> besteht und rows eine Zahl ist. Alles andere (auch einzelne geschweifte Klammern)
+ * gilt als Literal.
+ */
+final class PlaceholderTokenizer {
+
+	private static final char OPEN = '{';
+	private static final char CLOSE = '}';
+	private static final char ROWS_SEPARATOR = ':';
+
+	private PlaceholderTokenizer() {
+		// utility class
+	}
+
+	@Nonnull
+	static TokenizedText tokenize(@Nonnull String text) {
+		int open = text.indexOf(OPEN);
+		if (open < 0) {
+			// schneller Ausstieg, die meisten Zellen haben gar keinen Placeholder
+			return TokenizedText.NONE;
+		}
+
+		List<String> literals = new ArrayList<>();
+		List<ParsedPlaceholder> placeholders = new ArrayList<>();
+		int literalStart = 0;
+
+		while (open >= 0) {
+			ParsedPlaceholder placeholder = scanPlaceholder(text, open);
+			if (placeholder == null) {
+				open = text.indexOf(OPEN, open + 1);
+				continue;
+			}
+
+			literals.add(text.substring(literalStart, open));
+			placeholders.add(placeholder);
+			literalStart = open + placeholder.getPattern().length();
+			open = text.indexOf(OPEN, literalStart);
+		}
+
+		if (placeholders.isEmpty()) {
+			return TokenizedText.NONE;
+		}
+
+		literals.add(text.substring(literalStart));
+
+		return new TokenizedText(literals, placeholders);
+	}
+
+	/**
+	 * @return den Placeholder, der an der Position open beginnt, NULL wenn dort kein gueltiger Placeholder steht.
+	 */
+	@Nullable
+	private static ParsedPlaceholder scanPlaceholder(@Nonnull String text, int open) {
+		int keyEnd = skipKeyChars(text, open + 1);
+		if (keyEnd == open + 1 || keyEnd >= text.length()) {
+			return null;
+		}
+
+		int pos = keyEnd;
+		Integer rows = null;
+		if (text.charAt(pos) == ROWS_SEPARATOR) {
+			int digitsEnd = skipDigits(text, pos + 1);
+			if (digitsEnd == pos + 1 || digitsEnd >= text.length()) {
+				return null;
+			}
+			rows = Integer.valueOf(text.substring(pos + 1, digitsEnd), Context.BASE_10);
+			pos = digitsEnd;
+		}
+
+		if (text.charAt(pos) != CLOSE) {
+			return null;
+		}
+
+		return new ParsedPlaceholder(text.substring(open, pos + 1), text.substring(open + 1, keyEnd), rows);
+	}
+
+	private static int skipKeyChars(@Nonnull String text, int start) {
+		int pos = start;
+		while (pos < text.length() && isKeyChar(text.charAt(pos))) {
+			pos++;
+		}
+
+		return pos;
+	}
+
+	private static int skipDigits(@Nonnull String text, int start) {
+		int pos = start;
+		while (pos < text.length() && isDigit(text.charAt(pos))) {
+			pos++;
+		}
+
+		return pos;
+	}
+
+	private static boolean isKeyChar(char c) {
+		return isLetter(c) || isDigit(c) || c == '_';
+	}
+
+	private static boolean isLetter(char c) {
+		return inRange(c, 'a', 'z') || inRange(c, 'A', 'Z');
+	}
+
+	private static boolean isDigit(char c) {
+		return inRange(c, '0', '9');
+	}
+
+	private static boolean inRange(char c, char from, char to) {
+		return c >= from && c <= to;
+	}
+}
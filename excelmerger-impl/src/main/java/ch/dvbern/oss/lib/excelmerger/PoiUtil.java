@@ -49,10 +49,20 @@ public final class PoiUtil {
 	/*
 	 * Workaround für POI >= 3.15: Bei shiftRows gehen die MergedRegions (Cell-Verbindungen) verloren.
 	 *
+	 * Bei XSSF werden die MergedRegions mit einem MergedRegionIndex verschoben: POI sieht beim shiftRows keine
+	 * MergedRegions und diese werden danach ohne Validierung in einem Durchgang zurueckgeschrieben.
+	 *
 	 * @see <a href="https://bz.apache.org/bugzilla/show_bug.cgi?id=60384">https://bz.apache.org/bugzilla/show_bug
 	 * .cgi?id=60384</a>
 	 */
 	public static void shiftRowsAndMergedRegions(@Nonnull Sheet sheet, int startRow, int endRow, int anzNewRows) {
+		if (sheet instanceof XSSFSheet) {
+			MergedRegionIndex index = MergedRegionIndex.of((XSSFSheet) sheet);
+			index.shiftRows(startRow, endRow, anzNewRows);
+			index.writeBack();
+			return;
+		}
+
 		List<CellRangeAddress> mergedRegionsBeforeShift = sheet.getMergedRegions();
 		List<CellRangeAddress> containedMergedRegions = mergedRegionsBeforeShift.stream()
 			.filter(cra -> isContained(cra, startRow, endRow))
@@ -96,6 +106,34 @@ public final class PoiUtil {
 			return;
 		}
 
+		shiftValidationRegions(validations, startRow, endRow, anzNewRows);
+		recreateDataValidations(sheet, validations);
+	}
+
+	/**
+	 * Wie {@link #shiftDataValidations(Sheet, int, int, int)} fuer mehrere Verschiebungen (von oben nach unten
+	 * sortiert). Die DataValidations werden nur einmal neu erstellt.
+	 */
+	static void shiftDataValidations(@Nonnull Sheet sheet, @Nonnull List<RowShift> shifts) {
+		List<? extends DataValidation> validations = sheet.getDataValidations();
+
+		if (shifts.isEmpty() || validations.isEmpty() || !(sheet instanceof XSSFSheet)) {
+			return;
+		}
+
+		for (RowShift shift : shifts) {
+			shiftValidationRegions(validations, shift.getFirstShiftedRow(), shift.getLastRow() + shift.getNumRows(),
+				shift.getNumRows());
+		}
+		recreateDataValidations(sheet, validations);
+	}
+
+	private static void shiftValidationRegions(
+		@Nonnull List<? extends DataValidation> validations,
+		int startRow,
+		int endRow,
+		int anzNewRows) {
+
 		validations.stream()
 			.filter(validation -> validation.getValidationConstraint().getExplicitListValues() != null)
 			.flatMap(validation -> Stream.of(validation.getRegions().getCellRangeAddresses()))
@@ -104,6 +142,11 @@ public final class PoiUtil {
 				cra.setFirstRow(cra.getFirstRow() + anzNewRows);
 				cra.setLastRow(cra.getLastRow() + anzNewRows);
 			});
+	}
+
+	private static void recreateDataValidations(
+		@Nonnull Sheet sheet,
+		@Nonnull List<? extends DataValidation> validations) {
 
 		// remove existing data validations
 		// FIXME do only remove data validations with explicit list values, since these are the only ones we re-create
@@ -141,6 +184,34 @@ public final class PoiUtil {
 			.forEach(name -> shiftNamedRange(name, anzNewRows));
 	}
 
+	/**
+	 * Wie {@link #shiftNamedRanges(Sheet, int, int, int)} fuer mehrere Verschiebungen (von oben nach unten
+	 * sortiert). Jeder Named-Range wird nur einmal geparst und neu gesetzt.
+	 */
+	static void shiftNamedRanges(@Nonnull Sheet sheet, @Nonnull List<RowShift> shifts) {
+		if (shifts.isEmpty()) {
+			return;
+		}
+
+		sheet.getWorkbook().getAllNames().stream()
+			.filter(name -> name.getRefersToFormula() != null)
+			.filter(name -> sheet.getSheetName().equals(name.getSheetName()))
+			.forEach(name -> {
+				AreaReference areaReference = new AreaReference(name.getRefersToFormula(), EXCEL2007);
+				int firstRow = areaReference.getFirstCell().getRow();
+				int lastRow = areaReference.getLastCell().getRow();
+				int anzNewRows = 0;
+				for (RowShift shift : shifts) {
+					if (intersects(firstRow, lastRow + anzNewRows, shift.getStartRow(), shift.getLastRow())) {
+						anzNewRows += shift.getNumRows();
+					}
+				}
+				if (anzNewRows > 0) {
+					shiftNamedRange(name, anzNewRows);
+				}
+			});
+	}
+
 	private static void shiftNamedRange(@Nonnull Name name, int anzNewRows) {
 		AreaReference areaReference = new AreaReference(name.getRefersToFormula(), EXCEL2007);
 		CellReference firstCell = areaReference.getFirstCell();
@@ -162,9 +233,11 @@ public final class PoiUtil {
 	}
 
 	private static boolean intersects(@Nonnull AreaReference areaReference, int startRow, int endRow) {
-		int firstRow = areaReference.getFirstCell().getRow();
-		int lastRow = areaReference.getLastCell().getRow();
+		return intersects(areaReference.getFirstCell().getRow(), areaReference.getLastCell().getRow(), startRow,
+			endRow);
+	}
 
+	private static boolean intersects(int firstRow, int lastRow, int startRow, int endRow) {
 		if (firstRow < startRow && lastRow < startRow) {
 			return false;
 		}
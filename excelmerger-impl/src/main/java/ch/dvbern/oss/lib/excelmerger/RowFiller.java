@@ -15,37 +15,75 @@
 
 package ch.dvbern.oss.lib.excelmerger;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.ObjIntConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import ch.dvbern.oss.lib.excelmerger.CompiledTemplate.TemplateRow;
+import ch.dvbern.oss.lib.excelmerger.MergeEvents.MergeSheet;
+import ch.dvbern.oss.lib.excelmerger.MergeEvents.TemplateParse;
 import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
 import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellUtil;
 import org.apache.poi.xssf.streaming.SXSSFRow;
 import org.apache.poi.xssf.streaming.SXSSFSheet;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import static java.util.Objects.requireNonNull;
 
 public class RowFiller {
 
 	private static final int RANDOM_ACCESS_WINDOW_SIZE = 10;
+	private static final int UNKNOWN_NUMBER_OF_ROWS = -1;
 
 	@Nonnull
 	private final SXSSFSheet sheet;
 	@Nonnull
 	private final Context ctx;
 	@Nonnull
-	private final Row sourceRow;
+	private final List<Row> sourceRows;
+	@Nonnull
+	private final List<CellRangeAddress> blockRegions;
+	@Nonnull
+	private final Map<CellAddress, FormulaTemplate> blockFormulas;
+	@Nonnull
+	private final Footer footer;
+	@Nonnull
+	private final List<Aggregate> aggregates = new ArrayList<>();
+	@Nonnull
+	private final List<CellAddress> aggregateTargets = new ArrayList<>();
+	@Nonnull
+	private final MergeSheet event;
+	private final int numberOfStyles;
 	private int numberOfTargetRows = 0;
 	private int numberOfMergedRows = 0;
 	@Nullable
 	private ExcelMergerDTO firstRowData = null;
+	@Nullable
+	private ExcelMergerDTO currentRowData = null;
+	private boolean heldBackDataWritten = false;
+	private boolean finished = false;
 
 	public RowFiller(
 		@Nonnull SXSSFSheet sheet,
@@ -53,10 +91,42 @@ public class RowFiller {
 		@Nonnull Row sourceRow,
 		int numberOfTargetRows) {
 
+		this(sheet, ctx, Collections.singletonList(sourceRow), Collections.emptyList(), Collections.emptyMap(),
+			Footer.none(sourceRow.getRowNum()), numberOfTargetRows, beginMergeSheet(ctx.getSheet()));
+	}
+
+	private RowFiller(
+		@Nonnull SXSSFSheet sheet,
+		@Nonnull Context ctx,
+		@Nonnull List<Row> sourceRows,
+		@Nonnull List<CellRangeAddress> blockRegions,
+		@Nonnull Map<CellAddress, FormulaTemplate> blockFormulas,
+		@Nonnull Footer footer,
+		int numberOfTargetRows,
+		@Nonnull MergeSheet event) {
+
 		this.sheet = sheet;
 		this.ctx = ctx;
-		this.sourceRow = sourceRow;
+		this.sourceRows = sourceRows;
+		this.blockRegions = blockRegions;
+		this.blockFormulas = blockFormulas;
+		this.footer = footer;
 		this.numberOfTargetRows = numberOfTargetRows;
+		this.event = event;
+		this.numberOfStyles = ctx.getWorkbook().getNumCellStyles();
+	}
+
+	/**
+	 * Das Event dauert von der Initialisierung bis zur letzten Zeile
+	 */
+	@Nonnull
+	private static MergeSheet beginMergeSheet(@Nonnull Sheet template) {
+		MergeSheet event = MergeEvents.mergeSheet();
+		event.begin();
+		event.setStreaming(true);
+		event.setTemplateRows(template.getLastRowNum() + 1);
+
+		return event;
 	}
 
 	/**
@@ -69,8 +139,16 @@ public class RowFiller {
 	 * (no evaluation over the whole sheet)</li>
 	 * </ul>
 	 *
-	 * <p>All data rows that are written with the RowFiller will overwrite any existing rows.
-	 * Hence, the RowFiller should only be used when below it's source row no other merge fields are defined.</p>
+	 * <p>Rows below the source row (e.g. footers with totals) are captured at initialization and written again after
+	 * the last data row. Their formulas are adjusted as if the data rows had been inserted: references below the
+	 * source row are shifted and ranges ending on the source row are extended to the last data row, e.g.
+	 * <code>SUM(B5:B5)</code> becomes <code>SUM(B5:B100004)</code>. Merged regions are shifted as well. Placeholders in
+	 * these rows must be merged before the RowFiller is initialized.</p>
+	 *
+	 * <p>A {@link RepeatRowMergeField} spanning several rows (e.g. <code>{row:2}</code>) is supported: each
+	 * {@link RowFiller#fillRow(ExcelMergerDTO)} writes a block of that many rows, including the merged regions within
+	 * the block. Formulas of such a block are shifted like a copy in Excel, i.e. references to other rows of the block
+	 * point to the same block.</p>
 	 *
 	 * <p>All limitations of SXSSF apply. It is your responsibility to cleanup the temporary files by calling
 	 * {@code workbook.dispose();} after writing the workbook.</p>
@@ -79,11 +157,13 @@ public class RowFiller {
 	 * @param fields should contain a {@link RepeatRowMergeField}, which is used to determine the source row,
 	 * and all merge fields that are needed to fill that source row with data.
 	 * @param numberOfDataRows the number of data rows that will be filled. E.g. the number of
-	 * {@link RowFiller#fillRow(ExcelMergerDTO)} executions
+	 * {@link RowFiller#fillRow(ExcelMergerDTO)} executions. The held back first row is written on the last of them
+	 * (immediately when 0). Additional rows can be filled afterwards, unless the template has rows below the source
+	 * rows or aggregates or auto sizing are used. When fewer rows are filled, {@link RowFiller#finish()} must be
+	 * called, writing the workbook fails with an {@link IllegalStateException} otherwise.
 	 * @return a RowFiller, which can be used to write a single {@link ExcelMergerDTO} data row.
 	 * @see <a href="https://poi.apache.org/spreadsheet/how-to.html#sxssf">SXSSF HowTo</a>
 	 */
-	@SuppressWarnings("PMD.CloseResource")
 	@Nonnull
 	public static RowFiller initRowFiller(
 		@Nonnull XSSFSheet sheet,
@@ -103,25 +183,155 @@ public class RowFiller {
 			.findFirst()
 			.orElseThrow(() -> new ExcelMergeRuntimeException("No RepeatRowMergeField marker found"));
 
-		if (groupPlaceholder.getRows() != 1) {
-			throw new IllegalStateException("Currently, only 1 source row is supported, but "
-				+ groupPlaceholder
-				+ " given");
-		}
+		return createRowFiller(sheet, ctx, groupPlaceholder, numberOfDataRows);
+	}
+
+	/**
+	 * Like {@link #initRowFiller(XSSFSheet, List, int)}, but the number of data rows does not have to be known in
+	 * advance (e.g. when reading from a cursor or a paged query). {@link RowFiller#finish()} must be called after the
+	 * last {@link RowFiller#fillRow(ExcelMergerDTO)}, writing the workbook fails with an {@link IllegalStateException}
+	 * otherwise.
+	 */
+	@Nonnull
+	public static RowFiller initRowFiller(@Nonnull XSSFSheet sheet, @Nonnull List<MergeField<?>> fields) {
+		return initRowFiller(sheet, fields, UNKNOWN_NUMBER_OF_ROWS);
+	}
+
+	/**
+	 * Wie {@link #initRowFiller(XSSFSheet, List)}, mit vorkompiliertem Template.
+	 */
+	@Nonnull
+	public static RowFiller initRowFiller(@Nonnull XSSFSheet sheet, @Nonnull CompiledTemplate template) {
+		return initRowFiller(sheet, template, UNKNOWN_NUMBER_OF_ROWS);
+	}
 
-		Row sourceRow = groupPlaceholder.getCell().getRow();
+	/**
+	 * Wie {@link #initRowFiller(XSSFSheet, List, int)}, die Source-Row wird aber aus dem vorkompilierten Template
+	 * gelesen anstatt das ganze Sheet nach einem {@link RepeatRowMergeField} abzusuchen.
+	 */
+	@Nonnull
+	public static RowFiller initRowFiller(
+		@Nonnull XSSFSheet sheet,
+		@Nonnull CompiledTemplate template,
+		int numberOfDataRows) {
+
+		Context ctx = new Context(sheet.getWorkbook(), sheet, template);
+
+		TemplateRow groupRow = template.getFirstGroupRow();
+		Row row = groupRow == null ? null : sheet.getRow(groupRow.getRowNum());
+		GroupPlaceholder groupPlaceholder = Optional.ofNullable(row)
+			.flatMap(ctx::detectGroup)
+			.orElseThrow(() -> new ExcelMergeRuntimeException("No RepeatRowMergeField marker found"));
+
+		return createRowFiller(sheet, ctx, groupPlaceholder, numberOfDataRows);
+	}
+
+	@SuppressWarnings("PMD.CloseResource")
+	@Nonnull
+	private static RowFiller createRowFiller(
+		@Nonnull XSSFSheet sheet,
+		@Nonnull Context ctx,
+		@Nonnull GroupPlaceholder groupPlaceholder,
+		int numberOfDataRows) {
+
+		MergeSheet event = beginMergeSheet(sheet);
+		TemplateParse parseEvent = MergeEvents.templateParse();
+		parseEvent.begin();
+
+		int firstSourceRow = groupPlaceholder.getCell().getRowIndex();
+		int lastSourceRow = firstSourceRow + groupPlaceholder.getRows() - 1;
 		groupPlaceholder.clearPlaceholder();
 
-		SXSSFWorkbook wb = new SXSSFWorkbook(sheet.getWorkbook());
+		// fehlende Zeilen muessen noch vor dem Streaming erstellt werden, sie dienen als (leere) Vorlage
+		List<Row> sourceRows = IntStream.rangeClosed(firstSourceRow, lastSourceRow)
+			.mapToObj(rowNum -> Optional.<Row>ofNullable(sheet.getRow(rowNum))
+				.orElseGet(() -> sheet.createRow(rowNum)))
+			.collect(Collectors.toList());
+
+		List<CellRangeAddress> blockRegions = sourceRows.size() == 1 ?
+			Collections.emptyList() :
+			sheet.getMergedRegions().stream()
+				.filter(region -> region.getFirstRow() >= firstSourceRow && region.getLastRow() <= lastSourceRow)
+				.collect(Collectors.toList());
+
+		Map<CellAddress, FormulaTemplate> blockFormulas = sourceRows.size() == 1 ?
+			Collections.emptyMap() :
+			parseFormulas(sheet, sourceRows);
+
+		if (parseEvent.shouldCommit()) {
+			commit(parseEvent, ctx, sourceRows);
+		}
+
+		Footer footer = Footer.read(sheet, firstSourceRow, lastSourceRow);
+
+		RowFillerWorkbook wb = new RowFillerWorkbook(sheet.getWorkbook());
 		wb.setCompressTempFiles(true);
 		// wenn true, dann evaluiert Excel die Formeln. LibreOffice kann das leider nicht
 		wb.setForceFormulaRecalculation(true);
 
 		SXSSFSheet sh = wb.getSheetAt(sheet.getWorkbook().getSheetIndex(sheet));
 		// keep 10 rows in memory, exceeding rows will be flushed to disk
-		sh.setRandomAccessWindowSize(RANDOM_ACCESS_WINDOW_SIZE);
+		sh.setRandomAccessWindowSize(Math.max(RANDOM_ACCESS_WINDOW_SIZE, sourceRows.size()));
 
-		return new RowFiller(sh, ctx, sourceRow, numberOfDataRows);
+		RowFiller rowFiller =
+			new RowFiller(sh, ctx, sourceRows, blockRegions, blockFormulas, footer, numberOfDataRows, event);
+		wb.rowFiller = rowFiller;
+
+		if (numberOfDataRows == 0) {
+			// es gibt keine letzte Zeile, auf welcher die Footer geschrieben wuerden
+			rowFiller.firstRowData = new ExcelMergerDTO();
+			rowFiller.writeHeldBackData();
+		}
+
+		return rowFiller;
+	}
+
+	private static void commit(
+		@Nonnull TemplateParse parseEvent,
+		@Nonnull Context ctx,
+		@Nonnull List<Row> sourceRows) {
+
+		int formulas = 0;
+		int placeholders = 0;
+		for (Row row : sourceRows) {
+			for (Cell cell : row) {
+				if (cell.getCellType() == CellType.FORMULA) {
+					formulas++;
+				} else if (cell.getCellType() == CellType.STRING
+					&& ctx.tokenize(cell.getStringCellValue()).hasPlaceholders()) {
+					placeholders++;
+				}
+			}
+		}
+
+		parseEvent.setSheet(ctx.getSheet().getSheetName());
+		parseEvent.setRows(sourceRows.size());
+		parseEvent.setPlaceholders(placeholders);
+		parseEvent.setFormulas(formulas);
+		parseEvent.commit();
+	}
+
+	/**
+	 * Die Formeln eines mehrzeiligen Blocks werden einmal geparst und pro Block nur noch verschoben.
+	 */
+	@Nonnull
+	private static Map<CellAddress, FormulaTemplate> parseFormulas(
+		@Nonnull XSSFSheet sheet,
+		@Nonnull List<Row> sourceRows) {
+
+		XSSFEvaluationWorkbook evaluationWorkbook = XSSFEvaluationWorkbook.create(sheet.getWorkbook());
+		Map<CellAddress, FormulaTemplate> formulas = new HashMap<>();
+
+		for (Row row : sourceRows) {
+			for (Cell cell : row) {
+				if (cell.getCellType() == CellType.FORMULA) {
+					formulas.put(cell.getAddress(),
+						FormulaTemplate.parse(evaluationWorkbook, sheet, cell.getRowIndex(), cell.getCellFormula()));
+				}
+			}
+		}
+
+		return formulas;
 	}
 
 	@Nonnull
@@ -129,35 +339,431 @@ public class RowFiller {
 		return sheet;
 	}
 
+	/**
+	 * Registers a running aggregate, which is updated on every {@link RowFiller#fillRow(ExcelMergerDTO)} and written to
+	 * the target cell on the last row (or {@link RowFiller#finish()}). Must be called before the first row is filled. The target cell must be above or below the
+	 * source rows. Cells below the source rows are addressed as in the template (they are moved with the footer) and
+	 * must be on an existing row.
+	 *
+	 * @param target a cell in the template, e.g. <code>new CellAddress("B4")</code>. If it contains a formula, the
+	 * formula is kept and the aggregated value is written as its cached result.
+	 * @return this RowFiller
+	 */
+	@Nonnull
+	public RowFiller aggregate(@Nonnull Aggregate aggregate, @Nonnull CellAddress target) {
+		requireNonNull(aggregate);
+		requireNonNull(target);
+
+		if (firstRowData != null || numberOfMergedRows > 0) {
+			// die bereits geschriebenen Zeilen wuerden im Aggregat fehlen
+			throw new IllegalStateException("Aggregates must be registered before the first row is filled");
+		}
+		if (target.getRow() >= getFirstSourceRow() && target.getRow() <= getLastSourceRow()) {
+			throw new IllegalArgumentException("Aggregate target " + target + " must not be within the source rows");
+		}
+		if (target.getRow() > getLastSourceRow() && !footer.hasRow(target.getRow())) {
+			throw new IllegalArgumentException("Aggregate target " + target + " is not on a template row");
+		}
+
+		aggregates.add(aggregate);
+		aggregateTargets.add(target);
+
+		return this;
+	}
+
+	/**
+	 * Adds a value to the current data row, which is written by {@link RowFiller#fillRow()}.
+	 *
+	 * @return this RowFiller
+	 */
+	@Nonnull
+	public <V> RowFiller addValue(@Nonnull MergeField<V> field, @Nullable V value) {
+		getCurrentRowData().addValue(field, value);
+
+		return this;
+	}
+
+	/**
+	 * Like {@link RowFiller#addValue(MergeField, Object)}, without boxing the value.
+	 *
+	 * @see ExcelMergerDTO#addInt(MergeField, int)
+	 */
+	@Nonnull
+	public RowFiller addInt(@Nonnull MergeField<Integer> field, int value) {
+		getCurrentRowData().addInt(field, value);
+
+		return this;
+	}
+
+	/**
+	 * Like {@link RowFiller#addValue(MergeField, Object)}, without boxing the value.
+	 *
+	 * @see ExcelMergerDTO#addLong(MergeField, long)
+	 */
+	@Nonnull
+	public RowFiller addLong(@Nonnull MergeField<Long> field, long value) {
+		getCurrentRowData().addLong(field, value);
+
+		return this;
+	}
+
+	/**
+	 * Like {@link RowFiller#addValue(MergeField, Object)}, without boxing the value.
+	 *
+	 * @see ExcelMergerDTO#addDouble(MergeField, double)
+	 */
+	@Nonnull
+	public RowFiller addDouble(@Nonnull MergeField<BigDecimal> field, double value) {
+		getCurrentRowData().addDouble(field, value);
+
+		return this;
+	}
+
+	/**
+	 * Writes the values added since the last call, like {@link RowFiller#fillRow(ExcelMergerDTO)}. The data row is
+	 * reused for the next row, i.e. apart from the first (held back) row no {@link ExcelMergerDTO} is created per row.
+	 */
+	public void fillRow() {
+		ExcelMergerDTO rowData = getCurrentRowData();
+		boolean heldBack = firstRowData == null;
+
+		fillRow(rowData);
+
+		if (heldBack) {
+			currentRowData = null;
+		} else {
+			rowData.clear();
+		}
+	}
+
+	@Nonnull
+	private ExcelMergerDTO getCurrentRowData() {
+		if (currentRowData == null) {
+			currentRowData = new ExcelMergerDTO();
+		}
+
+		return currentRowData;
+	}
+
+	/**
+	 * Adjusts the column widths on {@link RowFiller#finish()} (or after the last row). Every row is measured when it
+	 * is written, so rows already flushed to disk are taken into account as well. Rows above the source rows are
+	 * measured on finish.
+	 *
+	 * @return this RowFiller
+	 */
+	@Nonnull
+	public RowFiller autoSize(@Nonnull ColumnAutoSizer autoSizer) {
+		requireNonNull(autoSizer);
+
+		if (heldBackDataWritten) {
+			throw new IllegalStateException("RowFiller is already finished");
+		}
+
+		ctx.setAutoSizer(autoSizer);
+
+		return this;
+	}
+
 	public void fillRow(@Nonnull ExcelMergerDTO rowData) {
+		if (finished) {
+			throw new IllegalStateException("RowFiller is already finished");
+		}
+		if (heldBackDataWritten && !canFillAfterLastRow()) {
+			throw new IllegalStateException("RowFiller was initialized for " + numberOfTargetRows + " data rows, "
+				+ "the rows below the source rows, aggregates and column widths have already been written");
+		}
+
+		for (int i = 0; i < aggregates.size(); i++) {
+			aggregates.get(i).accept(rowData);
+		}
+
 		if (firstRowData == null) {
-			// we cannot write to the sourceRow yet, because we need it as a template for the remaining rows
+			// we cannot write to the sourceRows yet, because we need them as a template for the remaining rows
 			// -> store it for later writing
 			firstRowData = rowData;
 		} else {
-			SXSSFRow targetRow = sheet.createRow(sourceRow.getRowNum() + numberOfMergedRows + 1);
-			// copy styles & formulas
-			ExcelMerger.copyCells(sourceRow, targetRow);
+			int offset = (numberOfMergedRows + 1) * sourceRows.size();
+			List<Row> targetRows = new ArrayList<>(sourceRows.size());
+			for (Row sourceRow : sourceRows) {
+				targetRows.add(copyRow(sourceRow, offset));
+			}
+			copyBlockRegions(offset);
 
-			mergeRow(rowData, targetRow);
+			mergeRows(rowData, targetRows);
 		}
 
 		if (isLastRow()) {
-			// since we are creating new rows, we have to write the data we held back to our template
-			ExcelMerger.mergeRow(ctx, firstRowData, sourceRow);
+			writeHeldBackData();
+		}
+	}
+
+	/**
+	 * Writes the data row held back by the first {@link RowFiller#fillRow(ExcelMergerDTO)} to the template rows.
+	 * Required when the number of data rows was not given at initialization, optional otherwise. When no data row was
+	 * filled at all, the placeholders of the template rows are cleared. The rows below the source rows (footers) are
+	 * written afterwards.
+	 *
+	 * <p>Calling finish more than once has no effect. No more rows can be filled afterwards.</p>
+	 */
+	public void finish() {
+		if (finished) {
+			return;
+		}
+
+		finished = true;
+		if (heldBackDataWritten) {
+			return;
+		}
+
+		if (firstRowData == null) {
+			firstRowData = new ExcelMergerDTO();
+		}
+
+		writeHeldBackData();
+	}
+
+	/**
+	 * Wie bisher koennen nach der angekuendigten Anzahl Zeilen weitere Zeilen geschrieben werden, ausser es wurde nach
+	 * der letzten Zeile bereits etwas geschrieben, das von allen Zeilen abhaengt.
+	 */
+	private boolean canFillAfterLastRow() {
+		return footer.isEmpty() && aggregates.isEmpty() && ctx.getAutoSizer() == null;
+	}
+
+	/**
+	 * @return TRUE, wenn die erste Daten-Zeile und die Footer noch nicht geschrieben wurden: ohne Anzahl Zeilen bis
+	 * {@link #finish()}, sonst bis zur letzten angekuendigten Zeile
+	 */
+	private boolean isFinishPending() {
+		return !heldBackDataWritten;
+	}
+
+	private void writeHeldBackData() {
+		// since we are creating new rows, we have to write the data we held back to our template
+		ExcelMergerDTO data = requireNonNull(firstRowData);
+		sourceRows.forEach(sourceRow -> ExcelMerger.mergeRow(ctx, data, sourceRow));
+		writeHeaderAggregates();
+		footer.writeTo(sheet, numberOfMergedRows * sourceRows.size(), this::writeFooterAggregates);
+		heldBackDataWritten = true;
+
+		ColumnAutoSizer autoSizer = ctx.getAutoSizer();
+		if (autoSizer != null) {
+			for (int rowNum = ctx.getSheet().getFirstRowNum(); rowNum < getFirstSourceRow(); rowNum++) {
+				Row row = ctx.getSheet().getRow(rowNum);
+				if (row != null) {
+					autoSizer.track(row);
+				}
+			}
+			autoSizer.applyAutoSize(sheet);
+		}
+
+		if (event.shouldCommit()) {
+			event.setSheet(sheet.getSheetName());
+			event.setRows(sheet.getLastRowNum() + 1);
+			event.setStylesCreated(ctx.getWorkbook().getNumCellStyles() - numberOfStyles);
+			event.commit();
+		}
+	}
+
+	private int getFirstSourceRow() {
+		return sourceRows.get(0).getRowNum();
+	}
+
+	private int getLastSourceRow() {
+		return sourceRows.get(sourceRows.size() - 1).getRowNum();
+	}
+
+	/**
+	 * Die Aggregate oberhalb der Source-Rows stehen noch im Template
+	 */
+	private void writeHeaderAggregates() {
+		for (int i = 0; i < aggregates.size(); i++) {
+			CellAddress address = aggregateTargets.get(i);
+			if (address.getRow() < getFirstSourceRow()) {
+				Row row = CellUtil.getRow(address.getRow(), ctx.getSheet());
+				aggregates.get(i).writeTo(CellUtil.getCell(row, address.getColumn()));
+			}
 		}
 	}
 
+	private void writeFooterAggregates(@Nonnull Row target, int templateRowNum) {
+		for (int i = 0; i < aggregates.size(); i++) {
+			CellAddress address = aggregateTargets.get(i);
+			if (address.getRow() == templateRowNum) {
+				aggregates.get(i).writeTo(CellUtil.getCell(target, address.getColumn()));
+			}
+		}
+
+		ColumnAutoSizer autoSizer = ctx.getAutoSizer();
+		if (autoSizer != null) {
+			autoSizer.track(target);
+		}
+	}
+
+	@Nonnull
+	private SXSSFRow copyRow(@Nonnull Row sourceRow, int offset) {
+		SXSSFRow targetRow = sheet.createRow(sourceRow.getRowNum() + offset);
+		// copy styles & formulas
+		ExcelMerger.copyCells(sourceRow, targetRow);
+
+		if (sourceRow.getHeight() != sourceRow.getSheet().getDefaultRowHeight()) {
+			targetRow.setHeight(sourceRow.getHeight());
+		}
+
+		// in a block, formulas may refer to other rows of the same block
+		blockFormulas.forEach((address, formula) -> {
+			if (address.getRow() == sourceRow.getRowNum()) {
+				targetRow.getCell(address.getColumn()).setCellFormula(formula.copiedBy(offset));
+			}
+		});
+
+		return targetRow;
+	}
+
+	private void copyBlockRegions(int offset) {
+		blockRegions.forEach(region -> sheet.addMergedRegionUnsafe(new CellRangeAddress(
+			region.getFirstRow() + offset,
+			region.getLastRow() + offset,
+			region.getFirstColumn(),
+			region.getLastColumn())));
+	}
+
 	private int getNumberOfRemainingRows() {
 		return numberOfTargetRows - numberOfMergedRows;
 	}
 
 	private boolean isLastRow() {
-		return getNumberOfRemainingRows() == 1;
+		return numberOfTargetRows != UNKNOWN_NUMBER_OF_ROWS && getNumberOfRemainingRows() == 1;
 	}
 
-	private void mergeRow(@Nonnull ExcelMergerDTO rowData, @Nonnull Row targetRow) {
-		ExcelMerger.mergeRow(ctx, rowData, targetRow);
+	private void mergeRows(@Nonnull ExcelMergerDTO rowData, @Nonnull List<Row> targetRows) {
+		targetRows.forEach(targetRow -> ExcelMerger.mergeRow(ctx, rowData, targetRow));
 		numberOfMergedRows++;
 	}
+
+	/**
+	 * Die Zeilen unterhalb der Source-Rows: werden vor dem Streaming gelesen und aus dem Template entfernt, damit sie
+	 * nach der letzten Daten-Zeile wieder geschrieben werden koennen.
+	 */
+	private static final class Footer {
+
+		private final int firstBlockRow;
+		private final int lastBlockRow;
+		@Nonnull
+		private final List<RowSnapshot> rows;
+		@Nonnull
+		private final List<CellRangeAddress> mergedRegions;
+
+		private Footer(
+			int firstBlockRow,
+			int lastBlockRow,
+			@Nonnull List<RowSnapshot> rows,
+			@Nonnull List<CellRangeAddress> mergedRegions) {
+
+			this.firstBlockRow = firstBlockRow;
+			this.lastBlockRow = lastBlockRow;
+			this.rows = rows;
+			this.mergedRegions = mergedRegions;
+		}
+
+		@Nonnull
+		static Footer none(int sourceRow) {
+			return new Footer(sourceRow, sourceRow, Collections.emptyList(), Collections.emptyList());
+		}
+
+		@Nonnull
+		static Footer read(@Nonnull XSSFSheet sheet, int firstBlockRow, int lastBlockRow) {
+			XSSFEvaluationWorkbook evaluationWorkbook = XSSFEvaluationWorkbook.create(sheet.getWorkbook());
+			List<RowSnapshot> rows = new ArrayList<>();
+			for (int rowNum = lastBlockRow + 1; rowNum <= sheet.getLastRowNum(); rowNum++) {
+				Row row = sheet.getRow(rowNum);
+				if (row != null) {
+					rows.add(RowSnapshot.read(evaluationWorkbook, sheet, row));
+				}
+			}
+
+			List<CellRangeAddress> mergedRegions = new ArrayList<>();
+			List<Integer> indices = new ArrayList<>();
+			List<CellRangeAddress> regions = sheet.getMergedRegions();
+			for (int i = 0; i < regions.size(); i++) {
+				if (regions.get(i).getFirstRow() > lastBlockRow) {
+					mergedRegions.add(regions.get(i));
+					indices.add(i);
+				}
+			}
+			sheet.removeMergedRegions(indices);
+
+			for (int rowNum = sheet.getLastRowNum(); rowNum > lastBlockRow; rowNum--) {
+				Row row = sheet.getRow(rowNum);
+				if (row != null) {
+					sheet.removeRow(row);
+				}
+			}
+
+			return new Footer(firstBlockRow, lastBlockRow, rows, mergedRegions);
+		}
+
+		boolean isEmpty() {
+			return rows.isEmpty() && mergedRegions.isEmpty();
+		}
+
+		boolean hasRow(int rowNum) {
+			return rows.stream().anyMatch(row -> row.getRowNum() == rowNum);
+		}
+
+		/**
+		 * @param insertedRows die Anzahl Daten-Zeilen, die nach den Source-Rows geschrieben wurden
+		 * @param afterRow wird fuer jede geschriebene Zeile mit der Zeilen-Nummer im Template aufgerufen
+		 */
+		void writeTo(@Nonnull SXSSFSheet sheet, int insertedRows, @Nonnull ObjIntConsumer<Row> afterRow) {
+			// zuerst die Merged-Regions, damit sie in afterRow schon bekannt sind
+			for (CellRangeAddress region : mergedRegions) {
+				CellRangeAddress copy = region.copy();
+				copy.setFirstRow(region.getFirstRow() + insertedRows);
+				copy.setLastRow(region.getLastRow() + insertedRows);
+				sheet.addMergedRegionUnsafe(copy);
+			}
+
+			for (RowSnapshot row : rows) {
+				SXSSFRow target = sheet.createRow(row.getRowNum() + insertedRows);
+				row.writeTo(target, formula -> formula.withRepeatedBlock(firstBlockRow, lastBlockRow, insertedRows));
+				afterRow.accept(target, row.getRowNum());
+			}
+		}
+	}
+
+	/**
+	 * Das Workbook eines RowFillers: die erste Daten-Zeile und die Zeilen unterhalb der Source-Rows fehlen, solange
+	 * weder {@link RowFiller#finish()} aufgerufen noch die letzte angekuendigte Zeile geschrieben wurde. Das Schreiben
+	 * schlaegt dann fehl.
+	 */
+	private static final class RowFillerWorkbook extends SXSSFWorkbook {
+
+		@Nullable
+		private RowFiller rowFiller = null;
+
+		RowFillerWorkbook(@Nonnull XSSFWorkbook workbook) {
+			super(workbook);
+		}
+
+		@Override
+		public void write(@Nonnull OutputStream stream) throws IOException {
+			checkFinished();
+			super.write(stream);
+		}
+
+		@Override
+		public void writeAvoidingTempFiles(@Nonnull OutputStream stream) throws IOException {
+			checkFinished();
+			super.writeAvoidingTempFiles(stream);
+		}
+
+		private void checkFinished() {
+			if (rowFiller != null && rowFiller.isFinishPending()) {
+				throw new IllegalStateException("RowFiller#finish() must be called before the workbook is written, "
+					+ "unless all announced data rows were filled");
+			}
+		}
+	}
 }
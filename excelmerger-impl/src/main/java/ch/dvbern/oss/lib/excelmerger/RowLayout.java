@@ -0,0 +1,361 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.CompiledTemplate.TemplateGroup;
+import ch.dvbern.oss.lib.excelmerger.CompiledTemplate.TemplateRow;
+import org.apache.poi.ss.usermodel.CellCopyPolicy;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+
+/**
+ * Expandiert eine Repeat-Gruppe inkl. aller verschachtelten Gruppen in zwei Durchgaengen.
+ * <ol>
+ * <li>Layout ({@link VirtualLayout}): die Gruppe wird auf einem virtuellen Abbild der Zeilen expandiert, genau so wie
+ * {@link ExcelMerger#mergeSubGroup} es auf dem Sheet machen wuerde. Dabei wird fuer jede Ziel-Zeile festgehalten, von
+ * welcher Zeile sie stammt, welche Gruppen-Zellen geloescht wurden und mit welchem DTO sie gefuellt wird.</li>
+ * <li>Render: die bestehenden Zeilen werden abschnittsweise an ihre endgueltige Position verschoben (ein shiftRows
+ * pro Abschnitt statt pro Gruppen-Instanz), danach werden die Kopien von oben nach unten erstellt und jede Zeile
+ * genau einmal gemerged.</li>
+ * </ol>
+ * Der Aufwand ist dadurch linear in der Anzahl Ziel-Zeilen, die Anzahl shiftRows haengt nur noch vom Template ab.
+ */
+final class RowLayout {
+
+	@Nonnull
+	private final Context ctx;
+	@Nonnull
+	private final Sheet sheet;
+	private final int startRow;
+	private final int lastRow;
+
+	@Nonnull
+	private final VirtualLayout layout;
+	@Nonnull
+	private final List<VirtualRow> layoutRows = new ArrayList<>();
+	@Nonnull
+	private final List<ExcelMergerDTO> layoutData = new ArrayList<>();
+	@Nullable
+	private final CompiledTemplate template;
+	private final int templateOffset;
+	@Nonnull
+	private final Map<Integer, List<TemplateGroup>> groupsBySourceRow = new HashMap<>();
+	@Nonnull
+	private final Map<Integer, XssfRowCloner> cloners = new HashMap<>();
+
+	private RowLayout(@Nonnull Context ctx, @Nonnull GroupPlaceholder group) {
+		this.ctx = ctx;
+		this.sheet = ctx.getSheet();
+		this.startRow = ctx.currentRowNum();
+		this.lastRow = Math.max(sheet.getLastRowNum(), startRow);
+		this.layout = new VirtualLayout(startRow, lastRow, this::getGroups, this::emit, true);
+
+		// Die Zeilen ab startRow sind noch ungemergt, aber durch die vorangehenden Gruppen um dieselbe Anzahl Zeilen
+		// verschoben wie die letzte Zeile des Sheets.
+		CompiledTemplate compiled = ctx.getTemplate();
+		this.templateOffset = compiled == null ? 0 : sheet.getLastRowNum() - (compiled.getRows().size() - 1);
+		this.template = isGroupRow(compiled, startRow - templateOffset, group) ? compiled : null;
+	}
+
+	/**
+	 * Prueft, ob die Gruppe im Template auf der erwarteten Zeile steht. Sonst passt das Sheet nicht zum Template und
+	 * die Gruppen werden aus den Zellen gelesen.
+	 */
+	private static boolean isGroupRow(
+		@Nullable CompiledTemplate compiled,
+		int templateRow,
+		@Nonnull GroupPlaceholder group) {
+
+		TemplateRow row = compiled == null ? null : compiled.getRow(templateRow);
+		TemplateGroup templateGroup = row == null ? null : row.getGroup();
+
+		return templateGroup != null
+			&& templateGroup.getColumn() == group.getCell().getColumnIndex()
+			&& templateGroup.getField().equals(group.getField());
+	}
+
+	/**
+	 * Expandiert die Gruppe auf der aktuellen Zeile des Contexts mit den uebergebenen Daten und setzt die aktuelle
+	 * Zeile hinter die gemergten Zeilen.
+	 */
+	static void mergeSubGroup(
+		@Nonnull Context ctx,
+		@Nonnull GroupPlaceholder group,
+		@Nonnull List<ExcelMergerDTO> subGroups) {
+
+		long start = ctx.phaseStarted(MergePhase.LAYOUT);
+		RowLayout rowLayout = new RowLayout(ctx, group);
+		rowLayout.layout.expand(group.getRows(), subGroups.size());
+		rowLayout.layout.layoutGroup(subGroups, group.getRows());
+		ctx.phaseFinished(MergePhase.LAYOUT, start);
+
+		rowLayout.render();
+	}
+
+	/**
+	 * @return die Gruppen der Zeile, von der hintersten zur vordersten Spalte
+	 */
+	@Nonnull
+	static List<TemplateGroup> readGroups(@Nonnull Context ctx, @Nullable Row row) {
+		if (row == null) {
+			return Collections.emptyList();
+		}
+
+		List<TemplateGroup> groups = new ArrayList<>();
+		for (int i = Math.max(row.getLastCellNum(), 0); i >= Math.max(row.getFirstCellNum(), 0); i--) {
+			int column = i;
+			ctx.parsePlaceholder(row.getCell(i))
+				.filter(placeholder -> placeholder instanceof GroupPlaceholder)
+				.map(placeholder -> (GroupPlaceholder) placeholder)
+				.ifPresent(group -> groups.add(new TemplateGroup(column, group.getField(), group.getRows())));
+		}
+
+		return groups;
+	}
+
+	// --- Layout
+
+	private void emit(@Nonnull VirtualRow row, @Nonnull ExcelMergerDTO dto) {
+		layoutRows.add(row);
+		layoutData.add(dto);
+	}
+
+	/**
+	 * Die Gruppen kommen wenn moeglich aus dem kompilierten Template. Einzig auf der ersten Zeile wird das Sheet
+	 * gelesen: dort wurde der Placeholder der expandierten Gruppe bereits entfernt.
+	 */
+	@Nonnull
+	private List<TemplateGroup> getGroups(int sourceRow) {
+		if (template != null && sourceRow != startRow) {
+			return template.getGroups(sourceRow - templateOffset);
+		}
+
+		return groupsBySourceRow.computeIfAbsent(sourceRow, key -> readGroups(ctx, sheet.getRow(key)));
+	}
+
+	// --- Render
+
+	private void render() {
+		int mergedRows = layoutRows.size();
+		List<VirtualRow> rows = new ArrayList<>(layoutRows);
+		rows.addAll(layout.getRemainingRows());
+
+		int[] targets = new int[lastRow - startRow + 1];
+		for (int i = 0; i < rows.size(); i++) {
+			VirtualRow row = rows.get(i);
+			if (row.isOriginal()) {
+				targets[row.getSource() - startRow] = startRow + i;
+			}
+		}
+
+		Map<Integer, List<CellRangeAddress>> mergedRegions = getMergedRegionsByFirstRow();
+
+		long start = ctx.phaseStarted(MergePhase.ROW_SHIFT);
+		shiftOriginalRows(targets);
+		ctx.mergedRegionsChanged();
+		ctx.phaseFinished(MergePhase.ROW_SHIFT, start);
+
+		start = ctx.phaseStarted(MergePhase.DATA_VALIDATION_SHIFT);
+		PoiUtil.shiftDataValidations(sheet, layout.getShifts());
+		ctx.phaseFinished(MergePhase.DATA_VALIDATION_SHIFT, start);
+
+		start = ctx.phaseStarted(MergePhase.NAMED_RANGE_SHIFT);
+		PoiUtil.shiftNamedRanges(sheet, layout.getShifts());
+		ctx.phaseFinished(MergePhase.NAMED_RANGE_SHIFT, start);
+
+		start = ctx.phaseStarted(MergePhase.ROW_COPY);
+		copyRows(rows, targets, mergedRegions);
+		ctx.phaseFinished(MergePhase.ROW_COPY, start);
+
+		mergeRows(rows, mergedRows);
+
+		ctx.advanceRows(mergedRows);
+	}
+
+	/**
+	 * Verschiebt die bestehenden Zeilen an ihre endgueltige Position. Zeilen mit derselben Verschiebung werden
+	 * zusammen verschoben, von unten nach oben, damit nichts ueberschrieben wird.
+	 */
+	private void shiftOriginalRows(@Nonnull int[] targets) {
+		// + 1 ist wichtig, sonst verschwindet beim Filtern die Total-Zeile
+		int segmentEnd = lastRow + 1;
+		int rowNum = lastRow;
+
+		while (rowNum >= startRow) {
+			int offset = targets[rowNum - startRow] - rowNum;
+			int segmentStart = rowNum;
+			while (segmentStart > startRow && targets[segmentStart - 1 - startRow] - (segmentStart - 1) == offset) {
+				segmentStart--;
+			}
+
+			if (offset > 0) {
+				ExcelMerger.shiftRows(ctx, segmentStart, segmentEnd, offset);
+			}
+
+			segmentEnd = segmentStart - 1;
+			rowNum = segmentStart - 1;
+		}
+	}
+
+	@Nonnull
+	private Map<Integer, List<CellRangeAddress>> getMergedRegionsByFirstRow() {
+		Map<Integer, List<CellRangeAddress>> regions = new HashMap<>();
+		if (!(sheet instanceof XSSFSheet)) {
+			// wie bisher: ausserhalb von XSSF werden keine Merged-Regions kopiert
+			return regions;
+		}
+
+		ctx.getMergedRegionIndex().getContained(startRow, lastRow)
+			.forEach(region -> regions.computeIfAbsent(region.getFirstRow(), key -> new ArrayList<>()).add(region));
+
+		return regions;
+	}
+
+	/**
+	 * Erstellt alle Kopien von oben nach unten. Die Originale stehen bereits an ihrer endgueltigen Position und
+	 * sind noch nicht gemerged.
+	 */
+	private void copyRows(
+		@Nonnull List<VirtualRow> rows,
+		@Nonnull int[] targets,
+		@Nonnull Map<Integer, List<CellRangeAddress>> mergedRegions) {
+
+		CellCopyPolicy policy = new CellCopyPolicy(ctx.getCellCopyPolicy());
+		policy.setCopyMergedRegions(false);
+		int createdRows = 0;
+
+		for (int i = 0; i < rows.size(); i++) {
+			VirtualRow row = rows.get(i);
+			if (row.isOriginal()) {
+				continue;
+			}
+
+			createdRows++;
+
+			int rowNum = startRow + i;
+			Row source = row.getSource() < 0 ? null : sheet.getRow(targets[row.getSource() - startRow]);
+			if (source == null) {
+				createRow(rowNum);
+				continue;
+			}
+
+			copyRow(source, rowNum, policy);
+			copyMergedRegions(rows, i, mergedRegions.get(row.getSource()));
+		}
+
+		ctx.getListener().rowsCreated(createdRows);
+	}
+
+	private void copyRow(@Nonnull Row source, int rowNum, @Nonnull CellCopyPolicy policy) {
+		if (sheet instanceof XSSFSheet && XssfRowCloner.supports(policy)) {
+			// die Quell-Zeile wird nur einmal gelesen, egal wie oft sie kopiert wird
+			cloners.computeIfAbsent(source.getRowNum(), sourceRow -> XssfRowCloner.of((XSSFSheet) sheet, sourceRow, 1,
+				policy))
+				.cloneBlock(rowNum, 1);
+			return;
+		}
+
+		Row target = createRow(rowNum);
+		if (target instanceof XSSFRow) {
+			((XSSFRow) target).copyRowFrom(source, policy);
+		} else {
+			ExcelMerger.copyCells(source, target);
+		}
+	}
+
+	/**
+	 * Kopiert die Merged-Regions, deren Zeilen vollstaendig (und in derselben Reihenfolge) kopiert wurden.
+	 */
+	private void copyMergedRegions(
+		@Nonnull List<VirtualRow> rows,
+		int index,
+		@Nullable List<CellRangeAddress> regions) {
+
+		if (regions == null) {
+			return;
+		}
+
+		for (CellRangeAddress region : regions) {
+			int height = region.getLastRow() - region.getFirstRow();
+			if (isCopiedBlock(rows, index, region.getFirstRow(), height)) {
+				CellRangeAddress copy = region.copy();
+				copy.setFirstRow(startRow + index);
+				copy.setLastRow(startRow + index + height);
+				sheet.addMergedRegionUnsafe(copy);
+			}
+		}
+	}
+
+	private boolean isCopiedBlock(@Nonnull List<VirtualRow> rows, int index, int firstSource, int height) {
+		if (index + height >= rows.size()) {
+			return false;
+		}
+
+		for (int i = 1; i <= height; i++) {
+			VirtualRow row = rows.get(index + i);
+			if (row.isOriginal() || row.getSource() != firstSource + i) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void mergeRows(@Nonnull List<VirtualRow> rows, int mergedRows) {
+		for (int i = 0; i < rows.size(); i++) {
+			int rowNum = startRow + i;
+			Row row = i < mergedRows ? getOrCreateRow(rowNum) : sheet.getRow(rowNum);
+			if (row == null) {
+				continue;
+			}
+
+			rows.get(i).clearCells(row);
+
+			if (i < mergedRows) {
+				ExcelMerger.mergeRow(ctx, layoutData.get(i), row);
+			}
+		}
+	}
+
+	@Nonnull
+	private Row createRow(int rowNum) {
+		Row existing = sheet.getRow(rowNum);
+		if (existing != null) {
+			sheet.removeRow(existing);
+		}
+
+		return sheet.createRow(rowNum);
+	}
+
+	@Nonnull
+	private Row getOrCreateRow(int rowNum) {
+		Row row = sheet.getRow(rowNum);
+
+		return row == null ? sheet.createRow(rowNum) : row;
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.StringJoiner;
+
+import javax.annotation.Nonnull;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * Eine Verschiebung, welche durch das Expandieren einer Repeat-Gruppe entsteht: die Gruppe beginnt auf startRow,
+ * alle Zeilen ab firstShiftedRow bis lastRow werden um numRows nach unten verschoben.
+ */
+@Immutable
+final class RowShift {
+
+	private final int startRow;
+	private final int firstShiftedRow;
+	private final int lastRow;
+	private final int numRows;
+
+	RowShift(int startRow, int firstShiftedRow, int lastRow, int numRows) {
+		this.startRow = startRow;
+		this.firstShiftedRow = firstShiftedRow;
+		this.lastRow = lastRow;
+		this.numRows = numRows;
+	}
+
+	public int getStartRow() {
+		return startRow;
+	}
+
+	public int getFirstShiftedRow() {
+		return firstShiftedRow;
+	}
+
+	public int getLastRow() {
+		return lastRow;
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", RowShift.class.getSimpleName() + '[', "]")
+			.add("startRow=" + startRow)
+			.add("firstShiftedRow=" + firstShiftedRow)
+			.add("lastRow=" + lastRow)
+			.add("numRows=" + numRows)
+			.toString();
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import javax.annotation.Nullable;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR-Event fuer das Verschieben von Zeilen inkl. Merged-Regions
+ */
+@Name(RowShiftEvent.NAME)
+@Label("Row Shift")
+@Category("Excel Merger")
+@StackTrace(false)
+@Description("Rows and merged regions shifted down to make room for a group")
+final class RowShiftEvent extends Event implements MergeEvents.RowShift {
+
+	static final String NAME = "ch.dvbern.oss.lib.excelmerger.RowShift";
+
+	@Label("Sheet")
+	@Nullable
+	private String sheet;
+
+	@Label("First Row")
+	private int firstRow;
+
+	@Label("Last Row")
+	private int lastRow;
+
+	@Label("Offset")
+	private int offset;
+
+	@Nullable
+	String getSheet() {
+		return sheet;
+	}
+
+	@Override
+	public void setSheet(@Nullable String sheet) {
+		this.sheet = sheet;
+	}
+
+	int getFirstRow() {
+		return firstRow;
+	}
+
+	@Override
+	public void setFirstRow(int firstRow) {
+		this.firstRow = firstRow;
+	}
+
+	int getLastRow() {
+		return lastRow;
+	}
+
+	@Override
+	public void setLastRow(int lastRow) {
+		this.lastRow = lastRow;
+	}
+
+	int getOffset() {
+		return offset;
+	}
+
+	@Override
+	public void setOffset(int offset) {
+		this.offset = offset;
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+
+/**
+ * Eine aus dem Template gelesene Zeile, die auch nach dem Entfernen der Zeile aus dem Sheet noch (beliebig oft)
+ * geschrieben werden kann, z.B. in ein SXSSF-Sheet. Zellen werden mit Style und Wert kopiert, Formeln werden nur
+ * einmal geparst.
+ */
+final class RowSnapshot {
+
+	private final int rowNum;
+	private final short height;
+	private final boolean zeroHeight;
+	@Nullable
+	private final CellStyle rowStyle;
+	@Nonnull
+	private final List<CellSnapshot> cells;
+
+	private RowSnapshot(
+		int rowNum,
+		short height,
+		boolean zeroHeight,
+		@Nullable CellStyle rowStyle,
+		@Nonnull List<CellSnapshot> cells) {
+
+		this.rowNum = rowNum;
+		this.height = height;
+		this.zeroHeight = zeroHeight;
+		this.rowStyle = rowStyle;
+		this.cells = cells;
+	}
+
+	@Nonnull
+	static RowSnapshot read(
+		@Nonnull XSSFEvaluationWorkbook evaluationWorkbook,
+		@Nonnull XSSFSheet sheet,
+		@Nonnull Row row) {
+
+		List<CellSnapshot> cells = new ArrayList<>();
+		for (Cell cell : row) {
+			cells.add(CellSnapshot.read(evaluationWorkbook, sheet, cell));
+		}
+
+		short height = row.getHeight() == sheet.getDefaultRowHeight() ? -1 : row.getHeight();
+
+		return new RowSnapshot(row.getRowNum(), height, row.getZeroHeight(), row.getRowStyle(), cells);
+	}
+
+	int getRowNum() {
+		return rowNum;
+	}
+
+	/**
+	 * @param formulas liefert den Formel-Text fuer die Ziel-Zeile, z.B. {@link FormulaTemplate#copiedBy(int)}
+	 */
+	void writeTo(@Nonnull Row target, @Nonnull Function<FormulaTemplate, String> formulas) {
+		if (height >= 0) {
+			target.setHeight(height);
+		}
+		if (zeroHeight) {
+			target.setZeroHeight(true);
+		}
+		if (rowStyle != null) {
+			target.setRowStyle(rowStyle);
+		}
+
+		for (CellSnapshot cell : cells) {
+			cell.writeTo(target, formulas);
+		}
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", RowSnapshot.class.getSimpleName() + '[', "]")
+			.add("rowNum=" + rowNum)
+			.add("cells=" + cells)
+			.toString();
+	}
+
+	/**
+	 * Style und Wert bzw. die einmal geparste Formel einer Zelle
+	 */
+	private static final class CellSnapshot {
+
+		private final int column;
+		@Nonnull
+		private final CellStyle style;
+		@Nonnull
+		private final CellType type;
+		@Nullable
+		private final Object value;
+
+		private CellSnapshot(int column, @Nonnull CellStyle style, @Nonnull CellType type, @Nullable Object value) {
+			this.column = column;
+			this.style = style;
+			this.type = type;
+			this.value = value;
+		}
+
+		@Nonnull
+		static CellSnapshot read(
+			@Nonnull XSSFEvaluationWorkbook evaluationWorkbook,
+			@Nonnull XSSFSheet sheet,
+			@Nonnull Cell cell) {
+
+			CellType type = cell.getCellType();
+			Object value;
+			switch (type) {
+			case STRING:
+				value = cell.getStringCellValue();
+				break;
+			case NUMERIC:
+				value = cell.getNumericCellValue();
+				break;
+			case BOOLEAN:
+				value = cell.getBooleanCellValue();
+				break;
+			case FORMULA:
+				value = FormulaTemplate.parse(evaluationWorkbook, sheet, cell.getRowIndex(), cell.getCellFormula());
+				break;
+			default:
+				value = null;
+			}
+
+			return new CellSnapshot(cell.getColumnIndex(), cell.getCellStyle(), type, value);
+		}
+
+		void writeTo(@Nonnull Row target, @Nonnull Function<FormulaTemplate, String> formulas) {
+			Cell cell = target.createCell(column);
+			cell.setCellStyle(style);
+
+			if (value instanceof String) {
+				cell.setCellValue((String) value);
+			} else if (value instanceof Double) {
+				cell.setCellValue((Double) value);
+			} else if (value instanceof Boolean) {
+				cell.setCellValue((Boolean) value);
+			} else if (value instanceof FormulaTemplate) {
+				cell.setCellFormula(formulas.apply((FormulaTemplate) value));
+			}
+		}
+
+		@Override
+		@Nonnull
+		public String toString() {
+			return new StringJoiner(", ", CellSnapshot.class.getSimpleName() + '[', "]")
+				.add("column=" + column)
+				.add("type=" + type)
+				.add("value=" + value)
+				.toString();
+		}
+	}
+}
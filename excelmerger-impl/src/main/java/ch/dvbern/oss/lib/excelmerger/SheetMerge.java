@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Was in ein Sheet gemerged werden soll: die MergeFields (oder ein bereits {@link CompiledTemplate}) und die Daten.
+ *
+ * @see ExcelMerger#mergeData(Sheet, SheetMerge, MergeOptions)
+ * @see ExcelMerger#mergeSheets(java.util.Map)
+ */
+public final class SheetMerge {
+
+	@Nullable
+	private final List<MergeField<?>> fields;
+	@Nullable
+	private final CompiledTemplate template;
+	@Nonnull
+	private final ExcelMergerDTO data;
+
+	private SheetMerge(
+		@Nullable List<MergeField<?>> fields,
+		@Nullable CompiledTemplate template,
+		@Nonnull ExcelMergerDTO data) {
+
+		this.fields = fields;
+		this.template = template;
+		this.data = requireNonNull(data);
+	}
+
+	@Nonnull
+	public static SheetMerge of(@Nonnull List<MergeField<?>> fields, @Nonnull ExcelMergerDTO data) {
+		return new SheetMerge(Collections.unmodifiableList(requireNonNull(fields)), null, data);
+	}
+
+	@Nonnull
+	public static SheetMerge of(@Nonnull CompiledTemplate template, @Nonnull ExcelMergerDTO data) {
+		return new SheetMerge(null, requireNonNull(template), data);
+	}
+
+	@Nonnull
+	public ExcelMergerDTO getData() {
+		return data;
+	}
+
+	/**
+	 * Liest das Template des Sheets, falls es nicht schon kompiliert uebergeben wurde.
+	 */
+	@Nonnull
+	CompiledTemplate compile(@Nonnull Sheet sheet) {
+		if (template != null) {
+			return template;
+		}
+
+		return CompiledTemplate.compile(sheet, requireNonNull(fields));
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", SheetMerge.class.getSimpleName() + '[', "]")
+			.add("fields=" + (fields == null ? null : fields.size()))
+			.add("template=" + template)
+			.toString();
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.CompiledTemplate.TemplateGroup;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Low-Memory Gegenstueck zu {@link ExcelMerger#mergeData(org.apache.poi.ss.usermodel.Sheet, List, ExcelMergerDTO)}
+ * fuer XSSF-Sheets mit (verschachtelten) {@link RepeatRowMergeField}s.
+ *
+ * <p>Der DTO-Baum wird depth-first durchlaufen ({@link VirtualLayout}) und jede Ziel-Zeile wird genau einmal und
+ * strikt von oben nach unten in ein {@link SXSSFSheet} geschrieben. Es werden nie Zeilen verschoben oder kopiert,
+ * im Speicher bleiben nur das Template und das Fenster von SXSSF.</p>
+ *
+ * <p>Die Zeilen oberhalb der ersten Gruppe bleiben im Template und werden dort gemerged. Ab der ersten Gruppe werden
+ * alle Template-Zeilen (inkl. der Zeilen nach den Gruppen) gelesen, aus dem Template entfernt und gestreamt.
+ * Einschraenkungen gegenueber dem normalen Merge:</p>
+ * <ul>
+ * <li>Formeln in Kopien von Gruppen-Zeilen werden wie beim Kopieren einer Zeile angepasst: relative Referenzen
+ * bewegen sich mit der Zeile. Formeln in allen anderen Zeilen (z.B. ein Total unterhalb einer Gruppe) werden wie beim
+ * normalen Merge durch die Verschiebungen der bisher expandierten Gruppen angepasst.</li>
+ * <li>Data-Validations, Named-Ranges und bedingte Formatierungen unterhalb der ersten Gruppe werden nicht
+ * verschoben.</li>
+ * <li>Zellen werden mit Style und Wert kopiert, Rich-Text und Hyperlinks gehen verloren.</li>
+ * <li>Es werden keine Formeln evaluiert, Excel rechnet beim Oeffnen neu.</li>
+ * </ul>
+ *
+ * <p>Es liegt in der Verantwortung des Aufrufers, die temporaeren Dateien nach dem Schreiben mit
+ * {@code workbook.dispose();} aufzuraeumen.</p>
+ */
+public final class StreamingMerger {
+
+	@Nonnull
+	private final Context ctx;
+	@Nonnull
+	private final XSSFSheet template;
+	@Nonnull
+	private final Map<Integer, List<TemplateGroup>> groupsBySourceRow;
+	private final int firstStreamedRow;
+	@Nonnull
+	private final Map<Integer, RowSnapshot> sourceRows = new HashMap<>();
+	@Nonnull
+	private final Map<Integer, List<CellRangeAddress>> mergedRegions = new HashMap<>();
+	@Nonnull
+	private final List<OpenRegion> openRegions = new ArrayList<>();
+	@Nullable
+	private SXSSFSheet target = null;
+	@Nullable
+	private VirtualLayout layout = null;
+	private int nextRow = 0;
+
+	private StreamingMerger(
+		@Nonnull Context ctx,
+		@Nonnull Map<Integer, List<TemplateGroup>> groupsBySourceRow,
+		int firstStreamedRow) {
+
+		this.ctx = ctx;
+		this.template = (XSSFSheet) ctx.getSheet();
+		this.groupsBySourceRow = groupsBySourceRow;
+		this.firstStreamedRow = firstStreamedRow;
+	}
+
+	/**
+	 * Merged die Daten in das Sheet.
+	 *
+	 * @return das Streaming-Workbook, welches das Workbook des Sheets umhuellt. Muss geschrieben und danach mit
+	 * {@link SXSSFWorkbook#dispose()} aufgeraeumt werden.
+	 */
+	@Nonnull
+	public static SXSSFWorkbook mergeData(
+		@Nonnull XSSFSheet sheet,
+		@Nonnull List<MergeField<?>> fields,
+		@Nonnull ExcelMergerDTO excelMergerDTO) throws ExcelMergeException {
+		requireNonNull(sheet);
+		requireNonNull(fields);
+		requireNonNull(excelMergerDTO);
+
+		Map<String, MergeField<?>> fieldMap = fields.stream()
+			.collect(Collectors.toMap(MergeField::getKey, field -> field));
+
+		return merge(new Context(sheet.getWorkbook(), sheet, fieldMap), excelMergerDTO);
+	}
+
+	/**
+	 * Wie {@link #mergeData(XSSFSheet, List, ExcelMergerDTO)}, mit vorkompiliertem Template.
+	 */
+	@Nonnull
+	public static SXSSFWorkbook mergeData(
+		@Nonnull XSSFSheet sheet,
+		@Nonnull CompiledTemplate template,
+		@Nonnull ExcelMergerDTO excelMergerDTO) throws ExcelMergeException {
+		requireNonNull(sheet);
+		requireNonNull(template);
+		requireNonNull(excelMergerDTO);
+
+		return merge(new Context(sheet.getWorkbook(), sheet, template), excelMergerDTO);
+	}
+
+	@SuppressWarnings("PMD.CloseResource")
+	@Nonnull
+	private static SXSSFWorkbook merge(@Nonnull Context ctx, @Nonnull ExcelMergerDTO excelMergerDTO)
+		throws ExcelMergeException {
+
+		XSSFSheet sheet = (XSSFSheet) ctx.getSheet();
+		int lastRow = sheet.getLastRowNum();
+		// das Sheet ist noch ungemergt: die Zeilen entsprechen 1:1 denen des kompilierten Templates
+		CompiledTemplate compiled = ctx.getTemplate();
+
+		Map<Integer, List<TemplateGroup>> groups = new HashMap<>();
+		int firstGroupRow = lastRow + 1;
+		for (int rowNum = lastRow; rowNum >= 0; rowNum--) {
+			List<TemplateGroup> rowGroups = compiled == null
+				? RowLayout.readGroups(ctx, sheet.getRow(rowNum))
+				: compiled.getGroups(rowNum);
+			if (!rowGroups.isEmpty()) {
+				groups.put(rowNum, rowGroups);
+				firstGroupRow = rowNum;
+			}
+		}
+
+		StreamingMerger merger = new StreamingMerger(ctx, groups, firstGroupRow);
+		merger.readSourceRows(lastRow);
+
+		SXSSFWorkbook wb = new SXSSFWorkbook(sheet.getWorkbook());
+		wb.setCompressTempFiles(true);
+		// wenn true, dann evaluiert Excel die Formeln. LibreOffice kann das leider nicht
+		wb.setForceFormulaRecalculation(true);
+		merger.target = wb.getSheetAt(sheet.getWorkbook().getSheetIndex(sheet));
+
+		VirtualLayout layout = new VirtualLayout(0, lastRow, merger::getGroups, merger::writeRow, true);
+		merger.layout = layout;
+		try {
+			layout.layoutGroup(Collections.singletonList(excelMergerDTO), lastRow + 1);
+		} catch (RuntimeException rte) {
+			wb.dispose();
+			throw new ExcelMergeException("Caught error in sheet "
+				+ sheet.getSheetName()
+				+ " on row: "
+				+ merger.nextRow, rte);
+		}
+
+		return wb;
+	}
+
+	/**
+	 * Liest alle Zeilen ab der ersten Gruppe samt Merged-Regions und entfernt sie aus dem Template: SXSSF kann nur
+	 * Zeilen unterhalb der bestehenden Zeilen schreiben.
+	 */
+	private void readSourceRows(int lastRow) {
+		XSSFEvaluationWorkbook evaluationWorkbook = XSSFEvaluationWorkbook.create(template.getWorkbook());
+
+		for (int rowNum = firstStreamedRow; rowNum <= lastRow; rowNum++) {
+			Row row = template.getRow(rowNum);
+			if (row != null) {
+				sourceRows.put(rowNum, RowSnapshot.read(evaluationWorkbook, template, row));
+			}
+		}
+
+		List<Integer> streamedRegions = new ArrayList<>();
+		List<CellRangeAddress> regions = template.getMergedRegions();
+		for (int i = 0; i < regions.size(); i++) {
+			CellRangeAddress region = regions.get(i);
+			if (region.getFirstRow() >= firstStreamedRow) {
+				mergedRegions.computeIfAbsent(region.getFirstRow(), key -> new ArrayList<>()).add(region);
+				streamedRegions.add(i);
+			}
+		}
+		template.removeMergedRegions(streamedRegions);
+
+		for (int rowNum = lastRow; rowNum >= firstStreamedRow; rowNum--) {
+			Row row = template.getRow(rowNum);
+			if (row != null) {
+				template.removeRow(row);
+			}
+		}
+	}
+
+	@Nonnull
+	private List<TemplateGroup> getGroups(int sourceRow) {
+		return groupsBySourceRow.getOrDefault(sourceRow, Collections.emptyList());
+	}
+
+	private void writeRow(@Nonnull VirtualRow row, @Nonnull ExcelMergerDTO dto) {
+		int rowNum = nextRow++;
+
+		if (rowNum < firstStreamedRow) {
+			// oberhalb der ersten Gruppe: die Zeile steht noch unveraendert im Template
+			Row templateRow = template.getRow(rowNum);
+			if (templateRow != null) {
+				ExcelMerger.mergeRow(ctx, dto, templateRow);
+			}
+			return;
+		}
+
+		// wie Context#currentRow wird die Zeile auch erstellt, wenn es im Template keine gibt
+		Row targetRow = requireNonNull(target).createRow(rowNum);
+		RowSnapshot source = sourceRows.get(row.getSource());
+		if (source != null) {
+			if (row.isOriginal()) {
+				// wie beim normalen Merge wurde die Zeile durch das Expandieren der Gruppen oberhalb verschoben
+				List<RowShift> shifts = requireNonNull(layout).getShifts();
+				source.writeTo(targetRow, formula -> formula.shiftedBy(shifts));
+			} else {
+				int offset = rowNum - source.getRowNum();
+				source.writeTo(targetRow, formula -> formula.copiedBy(offset));
+			}
+			row.clearCells(targetRow);
+			ExcelMerger.mergeRow(ctx, dto, targetRow);
+		}
+
+		writeMergedRegions(row.getSource(), rowNum);
+	}
+
+	/**
+	 * Eine Merged-Region wird geschrieben, sobald alle ihre Zeilen in derselben Reihenfolge geschrieben wurden.
+	 */
+	private void writeMergedRegions(int sourceRow, int rowNum) {
+		Iterator<OpenRegion> iterator = openRegions.iterator();
+		while (iterator.hasNext()) {
+			OpenRegion open = iterator.next();
+			if (open.nextSource != sourceRow) {
+				iterator.remove();
+			} else if (open.region.getLastRow() == sourceRow) {
+				addMergedRegion(open.region, open.firstTargetRow);
+				iterator.remove();
+			} else {
+				open.nextSource++;
+			}
+		}
+
+		if (sourceRow < 0) {
+			return;
+		}
+
+		for (CellRangeAddress region : mergedRegions.getOrDefault(sourceRow, Collections.emptyList())) {
+			if (region.getLastRow() == sourceRow) {
+				addMergedRegion(region, rowNum);
+			} else {
+				openRegions.add(new OpenRegion(region, rowNum));
+			}
+		}
+	}
+
+	private void addMergedRegion(@Nonnull CellRangeAddress region, int firstTargetRow) {
+		CellRangeAddress copy = region.copy();
+		copy.setFirstRow(firstTargetRow);
+		copy.setLastRow(firstTargetRow + region.getLastRow() - region.getFirstRow());
+		requireNonNull(target).addMergedRegionUnsafe(copy);
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", StreamingMerger.class.getSimpleName() + '[', "]")
+			.add("sheet=" + template.getSheetName())
+			.add("firstStreamedRow=" + firstStreamedRow)
+			.add("nextRow=" + nextRow)
+			.toString();
+	}
+
+	private static final class OpenRegion {
+
+		@Nonnull
+		private final CellRangeAddress region;
+		private final int firstTargetRow;
+		private int nextSource;
+
+		private OpenRegion(@Nonnull CellRangeAddress region, int firstTargetRow) {
+			this.region = region;
+			this.firstTargetRow = firstTargetRow;
+			this.nextSource = region.getFirstRow() + 1;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Haelt Templates im Speicher, damit sie nicht fuer jeden Report neu gelesen (z.B. vom Classpath oder aus der
+ * Datenbank) und kopiert werden muessen. Jedes {@link #createWorkbook(String, TemplateLoader)} liefert ein neues,
+ * unabhaengiges Workbook.
+ *
+ * <p>Die Groesse ist auf eine Anzahl Bytes beschraenkt, wenn sie ueberschritten wird, werden die am laengsten nicht
+ * mehr verwendeten Templates entfernt (LRU). Ein Template, das alleine groesser ist, wird nicht gecacht.</p>
+ */
+@ThreadSafe
+public final class TemplateCache {
+
+	private final long maxSize;
+
+	/**
+	 * Nach letztem Zugriff sortiert, das erste Template wird als naechstes entfernt
+	 */
+	private final Map<String, byte[]> templates = new LinkedHashMap<>(16, 0.75f, true);
+	private long size = 0;
+
+	private TemplateCache(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param maxSize maximale Summe der Groessen aller Template-Dateien in Bytes
+	 */
+	@Nonnull
+	public static TemplateCache withMaxSize(long maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("Max size must not be negative: " + maxSize);
+		}
+
+		return new TemplateCache(maxSize);
+	}
+
+	/**
+	 * Erstellt ein neues Workbook aus dem Template. Ist es noch nicht im Cache, wird es mit dem Loader gelesen. Der
+	 * Loader kann gleichzeitig mehrmals aufgerufen werden, wenn dasselbe Template in mehreren Threads fehlt.
+	 *
+	 * @param name identifiziert das Template, z.B. der Pfad auf dem Classpath
+	 * @param loader liest das Template, der Stream wird danach geschlossen
+	 */
+	@Nonnull
+	public Workbook createWorkbook(@Nonnull String name, @Nonnull TemplateLoader loader)
+		throws ExcelTemplateParseException {
+		requireNonNull(name);
+		requireNonNull(loader);
+
+		byte[] template = get(name);
+		if (template != null) {
+			return ExcelMerger.createWorkbookFromTemplate(new ByteArrayInputStream(template));
+		}
+
+		byte[] loaded = load(loader);
+		// erst cachen, wenn POI das Template lesen kann
+		Workbook workbook = ExcelMerger.createWorkbookFromTemplate(new ByteArrayInputStream(loaded));
+		put(name, loaded);
+
+		return workbook;
+	}
+
+	public synchronized boolean contains(@Nonnull String name) {
+		return templates.containsKey(name);
+	}
+
+	/**
+	 * Entfernt das Template, z.B. wenn die Datei geaendert wurde
+	 */
+	public synchronized void invalidate(@Nonnull String name) {
+		byte[] removed = templates.remove(name);
+		if (removed != null) {
+			size -= removed.length;
+		}
+	}
+
+	public synchronized void clear() {
+		templates.clear();
+		size = 0;
+	}
+
+	/**
+	 * @return die Summe der Groessen aller Templates im Cache in Bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	@Nullable
+	private synchronized byte[] get(@Nonnull String name) {
+		return templates.get(name);
+	}
+
+	private synchronized void put(@Nonnull String name, @Nonnull byte[] template) {
+		if (template.length > maxSize) {
+			return;
+		}
+
+		byte[] previous = templates.put(name, template);
+		size += template.length - (previous == null ? 0 : previous.length);
+
+		Iterator<byte[]> eldest = templates.values().iterator();
+		while (size > maxSize) {
+			size -= eldest.next().length;
+			eldest.remove();
+		}
+	}
+
+	@Nonnull
+	private static byte[] load(@Nonnull TemplateLoader loader) throws ExcelTemplateParseException {
+		try (InputStream is = loader.open()) {
+			return IOUtils.toByteArray(requireNonNull(is, "Template loader returned null"));
+		} catch (IOException e) {
+			throw new ExcelTemplateParseException("Error loading template", e);
+		}
+	}
+
+	@Override
+	@Nonnull
+	public synchronized String toString() {
+		return new StringJoiner(", ", TemplateCache.class.getSimpleName() + '[', "]")
+			.add("templates=" + templates.size())
+			.add("size=" + size)
+			.add("maxSize=" + maxSize)
+			.toString();
+	}
+
+	/**
+	 * Liest ein Template, z.B. {@code () -> getClass().getResourceAsStream("/report.xlsx")}
+	 */
+	@FunctionalInterface
+	public interface TemplateLoader {
+
+		@Nonnull
+		InputStream open() throws IOException;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import javax.annotation.Nullable;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR-Event fuer das Parsen eines Templates: Kompilieren eines {@link CompiledTemplate}s bzw. Lesen der Source-Rows
+ * eines {@link RowFiller}s. Ohne CompiledTemplate parst {@link ExcelMerger} die Zellen erst beim Mergen, dafuer gibt
+ * es kein eigenes Event.
+ */
+@Name(TemplateParseEvent.NAME)
+@Label("Template Parse")
+@Category("Excel Merger")
+@Description("Parsing of a template sheet or of the source rows of a RowFiller")
+final class TemplateParseEvent extends Event implements MergeEvents.TemplateParse {
+
+	static final String NAME = "ch.dvbern.oss.lib.excelmerger.TemplateParse";
+
+	@Label("Sheet")
+	@Nullable
+	private String sheet;
+
+	@Label("Rows")
+	private int rows;
+
+	@Label("Placeholder Cells")
+	private int placeholders;
+
+	@Label("Formulas")
+	private int formulas;
+
+	@Nullable
+	String getSheet() {
+		return sheet;
+	}
+
+	@Override
+	public void setSheet(@Nullable String sheet) {
+		this.sheet = sheet;
+	}
+
+	int getRows() {
+		return rows;
+	}
+
+	@Override
+	public void setRows(int rows) {
+		this.rows = rows;
+	}
+
+	int getPlaceholders() {
+		return placeholders;
+	}
+
+	@Override
+	public void setPlaceholders(int placeholders) {
+		this.placeholders = placeholders;
+	}
+
+	int getFormulas() {
+		return formulas;
+	}
+
+	@Override
+	public void setFormulas(int formulas) {
+		this.formulas = formulas;
+	}
+}
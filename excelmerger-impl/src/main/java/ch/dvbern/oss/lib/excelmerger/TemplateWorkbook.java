@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Ein direkt aus der Template-Datei geoeffnetes XSSF-Workbook: POI liest die Teile des Zips aus der Datei, statt das
+ * ganze Template in den Speicher zu kopieren.
+ *
+ * <p>Ein mit {@link PackageAccess#READ} geoeffnetes Package kann POI nicht schreiben, auch nicht in einen anderen
+ * Stream. Das Package wird deshalb mit Schreibzugriff geoeffnet und beim Schliessen verworfen, statt wie bei POI in
+ * die Template-Datei zurueckgeschrieben.</p>
+ */
+final class TemplateWorkbook extends XSSFWorkbook {
+
+	private TemplateWorkbook(@Nonnull OPCPackage pkg) throws IOException {
+		super(pkg);
+	}
+
+	@Nonnull
+	static XSSFWorkbook open(@Nonnull File template) throws IOException, InvalidFormatException {
+		OPCPackage pkg = OPCPackage.open(template, PackageAccess.READ_WRITE);
+		try {
+			return new TemplateWorkbook(pkg);
+		} catch (IOException | RuntimeException e) {
+			pkg.revert();
+			throw e;
+		}
+	}
+
+	/**
+	 * Schliesst die Template-Datei, ohne sie zu veraendern
+	 */
+	@Override
+	public void close() {
+		getPackage().revert();
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * Ein in Literale und Placeholder zerlegter Zell-Text: <code>literal(0) placeholder(0) literal(1) ...
+ * placeholder(n-1) literal(n)</code>.
+ *
+ * @see PlaceholderTokenizer
+ */
+@Immutable
+final class TokenizedText {
+
+	static final TokenizedText NONE =
+		new TokenizedText(Collections.singletonList(""), Collections.emptyList());
+
+	@Nonnull
+	private final List<String> literals;
+	@Nonnull
+	private final List<ParsedPlaceholder> placeholders;
+
+	TokenizedText(@Nonnull List<String> literals, @Nonnull List<ParsedPlaceholder> placeholders) {
+		if (literals.size() != placeholders.size() + 1) {
+			throw new IllegalArgumentException("Expected one more literal than placeholders");
+		}
+		this.literals = Collections.unmodifiableList(literals);
+		this.placeholders = Collections.unmodifiableList(placeholders);
+	}
+
+	public int getNumberOfPlaceholders() {
+		return placeholders.size();
+	}
+
+	public boolean hasPlaceholders() {
+		return !placeholders.isEmpty();
+	}
+
+	/**
+	 * @return TRUE, wenn die Zelle aus genau einem Placeholder besteht
+	 */
+	public boolean isSinglePlaceholder() {
+		return placeholders.size() == 1 && literals.get(0).isEmpty() && literals.get(1).isEmpty();
+	}
+
+	@Nonnull
+	public String getLiteral(int index) {
+		return literals.get(index);
+	}
+
+	@Nonnull
+	public ParsedPlaceholder getPlaceholder(int index) {
+		return placeholders.get(index);
+	}
+
+	/**
+	 * @return der hinterste Placeholder oder NULL, wenn es keinen gibt
+	 */
+	@Nullable
+	public ParsedPlaceholder getLastPlaceholder() {
+		return placeholders.isEmpty() ? null : placeholders.get(placeholders.size() - 1);
+	}
+
+	/**
+	 * @return den Index des ersten Placeholders mit demselben Pattern wie der Placeholder an index
+	 */
+	public int firstIndexOfPattern(int index) {
+		String pattern = placeholders.get(index).getPattern();
+		for (int i = 0; i < index; i++) {
+			if (placeholders.get(i).getPattern().equals(pattern)) {
+				return i;
+			}
+		}
+
+		return index;
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", TokenizedText.class.getSimpleName() + '[', "]")
+			.add("literals=" + literals)
+			.add("placeholders=" + placeholders)
+			.toString();
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.CompiledTemplate.TemplateGroup;
+
+/**
+ * Der Layout-Durchgang von {@link RowLayout}: expandiert Repeat-Gruppen auf einem virtuellen Abbild der Zeilen,
+ * genau so wie {@link ExcelMerger#mergeSubGroup} es auf dem Sheet machen wuerde, und uebergibt jede fertige
+ * Ziel-Zeile in Reihenfolge an einen {@link RowSink}.
+ *
+ * <p>Die Kopien einer Gruppe werden erst beim Lesen erstellt: es wird nur der Block und die Anzahl Kopien gemerkt.
+ * Der Speicherbedarf haengt damit von der Tiefe der Gruppen und der Groesse des Templates ab, nicht von der Anzahl
+ * Ziel-Zeilen.</p>
+ */
+final class VirtualLayout {
+
+	/**
+	 * Empfaengt die Ziel-Zeilen von oben nach unten
+	 */
+	@FunctionalInterface
+	interface RowSink {
+
+		void emit(@Nonnull VirtualRow row, @Nonnull ExcelMergerDTO dto);
+	}
+
+	private final int startRow;
+	@Nonnull
+	private final IntFunction<List<TemplateGroup>> groups;
+	@Nonnull
+	private final RowSink sink;
+	@Nullable
+	private final List<RowShift> shifts;
+
+	/**
+	 * Die noch nicht verarbeiteten Zeilen ab der aktuellen Zeile
+	 */
+	@Nonnull
+	private final Deque<Segment> pending = new ArrayDeque<>();
+	private int pendingRows = 0;
+	private int emittedRows = 0;
+
+	/**
+	 * @param groups liefert die Gruppen einer Template-Zeile, von der hintersten zur vordersten Spalte
+	 * @param recordShifts TRUE, wenn die Verschiebungen fuer {@link #getShifts()} gesammelt werden sollen
+	 */
+	VirtualLayout(
+		int startRow,
+		int lastRow,
+		@Nonnull IntFunction<List<TemplateGroup>> groups,
+		@Nonnull RowSink sink,
+		boolean recordShifts) {
+
+		this.startRow = startRow;
+		this.groups = groups;
+		this.sink = sink;
+		this.shifts = recordShifts ? new ArrayList<>() : null;
+
+		for (int rowNum = startRow; rowNum <= lastRow; rowNum++) {
+			pending.addLast(new Segment(new VirtualRow[] { VirtualRow.original(rowNum) }, 1));
+			pendingRows++;
+		}
+	}
+
+	/**
+	 * Entspricht ExcelMerger#mergeGroup: fuer jedes DTO werden rowSize Zeilen bzw. Gruppen verarbeitet.
+	 */
+	void layoutGroup(@Nonnull List<ExcelMergerDTO> dtos, int rowSize) {
+		for (ExcelMergerDTO dto : dtos) {
+			for (int rowNum = 0; rowNum < rowSize; rowNum++) {
+				TemplateGroup group = detectGroup(peek());
+				if (group == null) {
+					emit(dto);
+				} else {
+					layoutGroup(group, dto);
+				}
+			}
+		}
+	}
+
+	private void layoutGroup(@Nonnull TemplateGroup group, @Nonnull ExcelMergerDTO dto) {
+		List<ExcelMergerDTO> subGroups = dto.getGroup(group.getField());
+		push(pop().clearColumn(group.getColumn()));
+
+		if (subGroups == null) {
+			emit(dto);
+		} else {
+			expand(group.getRows(), subGroups.size());
+			layoutGroup(subGroups, group.getRows());
+		}
+	}
+
+	/**
+	 * Virtuelles Gegenstueck zu ExcelMerger#duplicateRowsWithStylesMultipleRowShift: die ersten rows Zeilen werden
+	 * count mal hintereinander eingefuegt.
+	 */
+	void expand(int rows, int count) {
+		int groupRow = startRow + emittedRows;
+		int newRows = rows * (count - 1);
+		// entspricht sheet.getLastRowNum() + 1
+		int currentLastRow = groupRow + pendingRows;
+
+		if (shifts != null && newRows > 0 && groupRow + rows <= currentLastRow) {
+			shifts.add(new RowShift(groupRow, groupRow + rows, currentLastRow, newRows));
+		}
+
+		if (count <= 0 || rows <= 0) {
+			return;
+		}
+
+		VirtualRow[] block = new VirtualRow[rows];
+		for (int i = 0; i < rows; i++) {
+			block[i] = pendingRows == 0 ? VirtualRow.empty() : pop();
+		}
+
+		pending.push(new Segment(block, count));
+		pendingRows += rows * count;
+	}
+
+	/**
+	 * @return die Verschiebungen, welche das Expandieren auf dem Sheet verursacht
+	 */
+	@Nonnull
+	List<RowShift> getShifts() {
+		if (shifts == null) {
+			throw new IllegalStateException("Shifts are not recorded");
+		}
+
+		return shifts;
+	}
+
+	/**
+	 * @return die noch nicht verarbeiteten Zeilen, d.h. die Zeilen unterhalb der gemergten Zeilen
+	 */
+	@Nonnull
+	List<VirtualRow> getRemainingRows() {
+		List<VirtualRow> rows = new ArrayList<>(pendingRows);
+		pending.forEach(segment -> segment.addRemaining(rows));
+
+		return rows;
+	}
+
+	@Nonnull
+	private VirtualRow peek() {
+		if (pendingRows == 0) {
+			// entspricht Context#currentRow, welches fehlende Zeilen erstellt
+			push(VirtualRow.empty());
+		}
+
+		return pending.getFirst().current();
+	}
+
+	@Nonnull
+	private VirtualRow pop() {
+		Segment segment = pending.getFirst();
+		VirtualRow row = segment.current();
+		if (segment.next()) {
+			pending.pop();
+		}
+		pendingRows--;
+
+		return row;
+	}
+
+	private void push(@Nonnull VirtualRow row) {
+		pending.push(new Segment(new VirtualRow[] { row }, 1));
+		pendingRows++;
+	}
+
+	private void emit(@Nonnull ExcelMergerDTO dto) {
+		VirtualRow row = pop();
+		emittedRows++;
+		sink.emit(row, dto);
+	}
+
+	/**
+	 * Wie {@link Context#detectGroup(org.apache.poi.ss.usermodel.Row)}: die hinterste Gruppe, die noch nicht
+	 * geloescht wurde.
+	 */
+	@Nullable
+	private TemplateGroup detectGroup(@Nonnull VirtualRow row) {
+		if (row.getSource() < 0) {
+			return null;
+		}
+
+		for (TemplateGroup group : groups.apply(row.getSource())) {
+			if (!row.isCleared(group.getColumn())) {
+				return group;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Ein Block von Zeilen, der count mal wiederholt wird. Die erste Wiederholung enthaelt die Zeilen selbst, alle
+	 * weiteren sind Kopien.
+	 */
+	private static final class Segment {
+
+		@Nonnull
+		private final VirtualRow[] block;
+		private final int size;
+		private int index = 0;
+
+		private Segment(@Nonnull VirtualRow[] block, int count) {
+			this.block = block;
+			this.size = block.length * count;
+		}
+
+		@Nonnull
+		VirtualRow current() {
+			return get(index);
+		}
+
+		/**
+		 * @return TRUE, wenn alle Zeilen gelesen wurden
+		 */
+		boolean next() {
+			index++;
+
+			return index >= size;
+		}
+
+		void addRemaining(@Nonnull List<VirtualRow> rows) {
+			for (int i = index; i < size; i++) {
+				rows.add(get(i));
+			}
+		}
+
+		@Nonnull
+		private VirtualRow get(int i) {
+			VirtualRow row = block[i % block.length];
+
+			return i < block.length ? row : row.copy();
+		}
+	}
+}
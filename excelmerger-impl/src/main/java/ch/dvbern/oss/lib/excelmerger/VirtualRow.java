@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * Eine Zeile im virtuellen Abbild: stammt von der Zeile source (-1 fuer eine leere Zeile) und ist entweder die
+ * Zeile selbst (original) oder eine Kopie davon.
+ */
+final class VirtualRow {
+
+	private static final int[] NO_COLUMNS = new int[0];
+
+	private final int source;
+	private final boolean original;
+	@Nonnull
+	private final int[] clearedColumns;
+
+	private VirtualRow(int source, boolean original, @Nonnull int[] clearedColumns) {
+		this.source = source;
+		this.original = original;
+		this.clearedColumns = clearedColumns;
+	}
+
+	/**
+	 * Die bestehende Zeile rowNum
+	 */
+	@Nonnull
+	static VirtualRow original(int rowNum) {
+		return new VirtualRow(rowNum, true, NO_COLUMNS);
+	}
+
+	/**
+	 * Eine leere Zeile, die es im Sheet (noch) nicht gibt
+	 */
+	@Nonnull
+	static VirtualRow empty() {
+		return new VirtualRow(-1, false, NO_COLUMNS);
+	}
+
+	int getSource() {
+		return source;
+	}
+
+	boolean isOriginal() {
+		return original;
+	}
+
+	@Nonnull
+	VirtualRow copy() {
+		return new VirtualRow(source, false, clearedColumns);
+	}
+
+	@Nonnull
+	VirtualRow clearColumn(int column) {
+		int[] columns = Arrays.copyOf(clearedColumns, clearedColumns.length + 1);
+		columns[clearedColumns.length] = column;
+
+		return new VirtualRow(source, original, columns);
+	}
+
+	boolean isCleared(int column) {
+		for (int cleared : clearedColumns) {
+			if (cleared == column) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Group-Repeat-Info aus den Zellen loeschen, wie {@link GroupPlaceholder#clearPlaceholder()}
+	 */
+	void clearCells(@Nonnull Row row) {
+		for (int column : clearedColumns) {
+			Cell cell = row.getCell(column);
+			if (cell != null) {
+				cell.setCellValue((String) null);
+			}
+		}
+	}
+}
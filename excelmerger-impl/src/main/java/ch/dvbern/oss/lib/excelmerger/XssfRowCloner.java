@@ -0,0 +1,291 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellCopyPolicy;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFHyperlink;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCellFormula;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRow;
+
+/**
+ * Kopiert einen Block von XSSF-Zeilen direkt auf Ebene {@link CTRow}/{@link CTCell}.
+ *
+ * <p>Die Quell-Zeilen werden einmal gelesen: Zeilen-Attribute (Hoehe, Style, ...), Zellen als XML-Kopie, Formeln
+ * (einmal geparst), Hyperlinks und die im Block enthaltenen Merged-Regions. Danach kann der Block beliebig oft
+ * kopiert werden, ohne dass pro Kopie Formeln geparst, Zellwerte gelesen oder Merged-Regions validiert werden.</p>
+ *
+ * <p>Das Resultat entspricht {@link XSSFSheet#copyRows(List, int, CellCopyPolicy)} fuer Policies, welche Werte,
+ * Styles und Formeln kopieren (siehe {@link #supports(CellCopyPolicy)}). Shared- und Array-Formeln werden dabei
+ * wie bei POI zu normalen Formeln.</p>
+ */
+final class XssfRowCloner {
+
+	@Nonnull
+	private final XSSFSheet sheet;
+	private final int firstSourceRow;
+	private final int numRows;
+	@Nonnull
+	private final List<RowTemplate> rows;
+	@Nonnull
+	private final List<CellRangeAddress> mergedRegions;
+
+	private XssfRowCloner(
+		@Nonnull XSSFSheet sheet,
+		int firstSourceRow,
+		int numRows,
+		@Nonnull List<RowTemplate> rows,
+		@Nonnull List<CellRangeAddress> mergedRegions) {
+
+		this.sheet = sheet;
+		this.firstSourceRow = firstSourceRow;
+		this.numRows = numRows;
+		this.rows = rows;
+		this.mergedRegions = mergedRegions;
+	}
+
+	/**
+	 * @return TRUE, wenn mit dieser Policy kopiert werden kann, sonst muss mit POI kopiert werden
+	 */
+	static boolean supports(@Nonnull CellCopyPolicy policy) {
+		return policy.isCopyCellValue()
+			&& policy.isCopyCellStyle()
+			&& policy.isCopyCellFormula()
+			&& !policy.isMergeHyperlink();
+	}
+
+	/**
+	 * Liest die Zeilen firstSourceRow bis firstSourceRow + numRows - 1. Fehlende Zeilen werden nicht kopiert.
+	 */
+	@Nonnull
+	static XssfRowCloner of(@Nonnull XSSFSheet sheet, int firstSourceRow, int numRows, @Nonnull CellCopyPolicy policy) {
+		if (!supports(policy)) {
+			throw new IllegalArgumentException("CellCopyPolicy not supported: values, styles and formulas must be "
+				+ "copied");
+		}
+
+		int lastSourceRow = firstSourceRow + numRows - 1;
+		XSSFEvaluationWorkbook evaluationWorkbook = XSSFEvaluationWorkbook.create(sheet.getWorkbook());
+		List<XSSFHyperlink> hyperlinks = policy.isCopyHyperlink()
+			? getHyperlinks(sheet, firstSourceRow, lastSourceRow)
+			: new ArrayList<>();
+
+		List<RowTemplate> rows = new ArrayList<>(numRows);
+		for (int rowNum = firstSourceRow; rowNum <= lastSourceRow; rowNum++) {
+			XSSFRow row = sheet.getRow(rowNum);
+			if (row != null) {
+				rows.add(RowTemplate.read(evaluationWorkbook, row, hyperlinks, policy.isCopyRowHeight()));
+			}
+		}
+
+		List<CellRangeAddress> mergedRegions = policy.isCopyMergedRegions()
+			? sheet.getMergedRegions().stream()
+			.filter(region -> region.getFirstRow() >= firstSourceRow && region.getLastRow() <= lastSourceRow)
+			.collect(Collectors.toList())
+			: new ArrayList<>();
+
+		return new XssfRowCloner(sheet, firstSourceRow, numRows, rows, mergedRegions);
+	}
+
+	@Nonnull
+	private static List<XSSFHyperlink> getHyperlinks(@Nonnull XSSFSheet sheet, int firstRow, int lastRow) {
+		return sheet.getHyperlinkList().stream()
+			.filter(link -> link.getFirstRow() >= firstRow && link.getFirstRow() <= lastRow)
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Schreibt den Block count mal hintereinander, beginnend auf der Zeile firstTargetRow. Bestehende Zeilen werden
+	 * ueberschrieben.
+	 */
+	void cloneBlock(int firstTargetRow, int count) {
+		for (int i = 0; i < count; i++) {
+			int offset = firstTargetRow + i * numRows - firstSourceRow;
+
+			for (RowTemplate row : rows) {
+				row.cloneTo(sheet, row.getRowNum() + offset);
+			}
+
+			for (CellRangeAddress region : mergedRegions) {
+				sheet.addMergedRegionUnsafe(new CellRangeAddress(
+					region.getFirstRow() + offset,
+					region.getLastRow() + offset,
+					region.getFirstColumn(),
+					region.getLastColumn()));
+			}
+		}
+	}
+
+	@Override
+	@Nonnull
+	public String toString() {
+		return new StringJoiner(", ", XssfRowCloner.class.getSimpleName() + '[', "]")
+			.add("sheet=" + sheet.getSheetName())
+			.add("firstSourceRow=" + firstSourceRow)
+			.add("numRows=" + numRows)
+			.add("mergedRegions=" + mergedRegions.size())
+			.toString();
+	}
+
+	private static final class RowTemplate {
+
+		private final int rowNum;
+		@Nonnull
+		private final CTRow attributes;
+		@Nonnull
+		private final List<CellTemplate> cells;
+
+		private RowTemplate(int rowNum, @Nonnull CTRow attributes, @Nonnull List<CellTemplate> cells) {
+			this.rowNum = rowNum;
+			this.attributes = attributes;
+			this.cells = cells;
+		}
+
+		@Nonnull
+		static RowTemplate read(
+			@Nonnull XSSFEvaluationWorkbook evaluationWorkbook,
+			@Nonnull XSSFRow row,
+			@Nonnull List<XSSFHyperlink> hyperlinks,
+			boolean copyRowHeight) {
+
+			CTRow attributes = (CTRow) row.getCTRow().copy();
+			attributes.setCArray(null);
+			if (!copyRowHeight) {
+				clearHeight(attributes);
+			}
+
+			List<CellTemplate> cells = new ArrayList<>(Math.max(row.getPhysicalNumberOfCells(), 0));
+			for (Cell cell : row) {
+				XSSFHyperlink hyperlink = hyperlinks.stream()
+					.filter(link -> link.getFirstRow() == row.getRowNum()
+						&& link.getFirstColumn() == cell.getColumnIndex())
+					.findFirst()
+					.orElse(null);
+
+				cells.add(CellTemplate.read(evaluationWorkbook, (XSSFCell) cell, hyperlink));
+			}
+
+			return new RowTemplate(row.getRowNum(), attributes, cells);
+		}
+
+		private static void clearHeight(@Nonnull CTRow attributes) {
+			if (attributes.isSetHt()) {
+				attributes.unsetHt();
+			}
+			if (attributes.isSetCustomHeight()) {
+				attributes.unsetCustomHeight();
+			}
+		}
+
+		int getRowNum() {
+			return rowNum;
+		}
+
+		void cloneTo(@Nonnull XSSFSheet sheet, int targetRowNum) {
+			XSSFRow target = sheet.createRow(targetRowNum);
+			CTRow ctRow = target.getCTRow();
+			ctRow.set(attributes);
+			ctRow.setR(targetRowNum + 1L);
+
+			int rows = targetRowNum - rowNum;
+			String rowName = String.valueOf(targetRowNum + 1);
+			for (CellTemplate cell : cells) {
+				cell.cloneTo(target, rowName, rows);
+			}
+		}
+	}
+
+	private static final class CellTemplate {
+
+		private final int column;
+		@Nonnull
+		private final String columnName;
+		@Nonnull
+		private final CTCell cell;
+		@Nullable
+		private final FormulaTemplate formula;
+		@Nullable
+		private final XSSFHyperlink hyperlink;
+
+		private CellTemplate(
+			int column,
+			@Nonnull CTCell cell,
+			@Nullable FormulaTemplate formula,
+			@Nullable XSSFHyperlink hyperlink) {
+
+			this.column = column;
+			this.columnName = CellReference.convertNumToColString(column);
+			this.cell = cell;
+			this.formula = formula;
+			this.hyperlink = hyperlink;
+		}
+
+		@Nonnull
+		static CellTemplate read(
+			@Nonnull XSSFEvaluationWorkbook evaluationWorkbook,
+			@Nonnull XSSFCell source,
+			@Nullable XSSFHyperlink hyperlink) {
+
+			CTCell cell = (CTCell) source.getCTCell().copy();
+			FormulaTemplate formula = null;
+
+			if (cell.isSetF()) {
+				// aufgeloeste Formel, auch fuer Shared-Formulas
+				String text = source.getCellFormula();
+				formula = FormulaTemplate.parse(evaluationWorkbook, source.getSheet(), source.getRowIndex(), text);
+
+				CTCellFormula normalFormula = CTCellFormula.Factory.newInstance();
+				normalFormula.setStringValue(text);
+				cell.setF(normalFormula);
+				if (cell.isSetV()) {
+					cell.unsetV();
+				}
+			}
+
+			return new CellTemplate(source.getColumnIndex(), cell, formula, hyperlink);
+		}
+
+		void cloneTo(@Nonnull XSSFRow target, @Nonnull String rowName, int rows) {
+			XSSFCell targetCell = target.createCell(column);
+			CTCell ctCell = targetCell.getCTCell();
+			ctCell.set(cell);
+			ctCell.setR(columnName + rowName);
+
+			if (formula != null && rows != 0) {
+				ctCell.getF().setStringValue(formula.copiedBy(rows));
+			}
+
+			if (hyperlink != null) {
+				targetCell.setHyperlink(new XSSFHyperlink(hyperlink));
+			}
+		}
+	}
+}
@@ -17,16 +17,19 @@ package ch.dvbern.oss.lib.excelmerger.converters;
 
 import java.awt.Color;
 import java.math.BigDecimal;
-import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Date;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Date1904Support;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 public final class ConverterUtil {
 
@@ -40,6 +43,16 @@ public final class ConverterUtil {
 	public static final String BOOLEAN_VALUE = "X";
 	public static final String EMPTY_STRING = "";
 
+	/**
+	 * 01.01.1900 bzw. 01.01.1904 als {@link LocalDate#toEpochDay()}
+	 */
+	private static final long EPOCH_DAY_1900 = -25_567;
+	private static final long EPOCH_DAY_1904 = -24_107;
+	private static final long FICTITIOUS_LEAP_DAY = 60;
+	private static final double MILLIS_PER_SECOND = 1000;
+	private static final int NANOS_PER_MILLI = 1_000_000;
+	private static final double MILLIS_PER_DAY = 86_400_000;
+
 	public static void writerNumber(
 		@Nonnull Cell cell,
 		@Nonnull String pattern,
@@ -63,12 +76,50 @@ public final class ConverterUtil {
 		}
 	}
 
+	/**
+	 * Wie {@link #writerNumber(Cell, String, Number, boolean)} mit asInteger, ohne Boxing.
+	 */
+	public static void writeLong(@Nonnull Cell cell, @Nonnull String pattern, long value) {
+		if (pattern.equals(cell.getStringCellValue())) {
+			cell.setCellValue(value);
+		} else {
+			cell.setCellValue(cell.getStringCellValue().replace(pattern, Long.toString(value)));
+		}
+	}
+
+	/**
+	 * Wie {@link #writerNumber(Cell, String, Number, boolean)}, ohne Boxing. Der Text entspricht dem von
+	 * {@link BigDecimal#valueOf(double)} bzw. bei asInteger dem der abgeschnittenen Ganzzahl.
+	 */
+	public static void writeDouble(@Nonnull Cell cell, @Nonnull String pattern, double value, boolean asInteger) {
+		if (pattern.equals(cell.getStringCellValue())) {
+			cell.setCellValue(asInteger ? (long) value : value);
+		} else {
+			String text = asInteger ? Long.toString((long) value) : BigDecimal.valueOf(value).toString();
+			cell.setCellValue(cell.getStringCellValue().replace(pattern, text));
+		}
+	}
+
 	public static void writeLocalDate(
 		@Nonnull Cell cell,
 		@Nonnull String pattern,
 		@Nullable LocalDate dateVal,
 		@Nonnull DateTimeFormatter formatter) {
 
+		writeLocalDate(cell, pattern, dateVal, formatter, isDate1904(cell));
+	}
+
+	/**
+	 * Wie {@link #writeLocalDate(Cell, String, LocalDate, DateTimeFormatter)} mit dem bereits ermittelten
+	 * Datums-System des Workbooks.
+	 */
+	public static void writeLocalDate(
+		@Nonnull Cell cell,
+		@Nonnull String pattern,
+		@Nullable LocalDate dateVal,
+		@Nonnull DateTimeFormatter formatter,
+		boolean date1904) {
+
 		if (dateVal == null) {
 			if (pattern.equals(cell.getStringCellValue())) {
 				cell.setCellValue(EMPTY_STRING);
@@ -79,15 +130,78 @@ public final class ConverterUtil {
 			return;
 		}
 
-		Instant instant = dateVal.atStartOfDay().atZone(ZoneId.systemDefault()).toInstant();
-		Date date = Date.from(instant);
 		if (pattern.equals(cell.getStringCellValue())) {
-			cell.setCellValue(date);
+			cell.setCellValue(toExcelDate(dateVal.toEpochDay(), date1904));
 		} else {
 			cell.setCellValue(cell.getStringCellValue().replace(pattern, dateVal.format(formatter)));
 		}
 	}
 
+	/**
+	 * Die Excel-Seriennummer eines Datums, berechnet wie {@link DateUtil#getExcelDate(LocalDate, boolean)}, aber
+	 * ohne Umweg ueber Date, Calendar oder Zeitzone.
+	 *
+	 * @param epochDay siehe {@link LocalDate#toEpochDay()}
+	 * @param date1904 TRUE fuer Workbooks mit dem 1904-Datums-System
+	 * @return die Seriennummer oder -1 fuer Daten vor 1900 (bzw. 1904), wie bei POI
+	 */
+	public static double toExcelDate(long epochDay, boolean date1904) {
+		if (date1904) {
+			return epochDay < EPOCH_DAY_1904 ? -1 : epochDay - EPOCH_DAY_1904;
+		}
+
+		if (epochDay < EPOCH_DAY_1900) {
+			return -1;
+		}
+
+		long serial = epochDay - EPOCH_DAY_1900 + 1;
+
+		// Excel kennt den 29.02.1900, der nicht existiert
+		return serial < FICTITIOUS_LEAP_DAY ? serial : serial + 1;
+	}
+
+	/**
+	 * Wie {@link #toExcelDate(long, boolean)} mit der Uhrzeit als Bruchteil des Tages (auf Millisekunden genau, wie
+	 * bei POI).
+	 */
+	public static double toExcelDate(@Nonnull LocalDateTime dateTime, boolean date1904) {
+		double day = toExcelDate(dateTime.toLocalDate().toEpochDay(), date1904);
+		if (day < 0) {
+			return -1;
+		}
+
+		// wie POI: auf ganze Millisekunden abgeschnitten
+		int millisOfSecond = dateTime.getNano() / NANOS_PER_MILLI;
+		double millis = dateTime.toLocalTime().toSecondOfDay() * MILLIS_PER_SECOND + millisOfSecond;
+
+		return day + millis / MILLIS_PER_DAY;
+	}
+
+	/**
+	 * @return TRUE, wenn das Workbook der Zelle das 1904-Datums-System verwendet
+	 */
+	public static boolean isDate1904(@Nonnull Cell cell) {
+		return isDate1904(cell.getSheet().getWorkbook());
+	}
+
+	/**
+	 * Liest das Datums-System aus dem Workbook. Der ExcelMerger macht das einmal pro Merge und uebergibt es den
+	 * {@link DateCellConverter}n.
+	 *
+	 * @return TRUE, wenn das Workbook das 1904-Datums-System verwendet
+	 */
+	@SuppressWarnings("PMD.CloseResource")
+	public static boolean isDate1904(@Nonnull Workbook workbook) {
+		if (workbook instanceof HSSFWorkbook) {
+			return ((HSSFWorkbook) workbook).getInternalWorkbook().isUsing1904DateWindowing();
+		}
+
+		// wie SXSSFCell#setCellValue(Date): die Einstellung steht im XSSF-Workbook
+		Workbook source = workbook instanceof SXSSFWorkbook ? ((SXSSFWorkbook) workbook).getXSSFWorkbook() : workbook;
+
+		return source instanceof Date1904Support && ((Date1904Support) source).isDate1904();
+	}
+
 	private ConverterUtil() {
 		// utility
 	}
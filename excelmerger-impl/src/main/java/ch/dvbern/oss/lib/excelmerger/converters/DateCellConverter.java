@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.converters;
+
+import java.io.Serializable;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.poi.ss.usermodel.Cell;
+
+/**
+ * Ein Converter, der Datums-Werte als Excel-Datum schreibt und dafuer das Datums-System (1900 oder 1904) des
+ * Workbooks braucht. Der ExcelMerger ermittelt das Datums-System einmal pro Merge und uebergibt es hier, statt dass
+ * es fuer jede Zelle aus dem Workbook gelesen wird.
+ *
+ * @see StandardConverters#DATE_CONVERTER
+ * @see StandardConverters#DATETIME_CONVERTER
+ */
+@FunctionalInterface
+public interface DateCellConverter extends Serializable {
+
+	/**
+	 * Wie {@link Converter#setCellValue(Cell, String, Object)}, mit dem Datums-System des Workbooks.
+	 *
+	 * @param date1904 TRUE fuer Workbooks mit dem 1904-Datums-System
+	 */
+	void setDateCellValue(@Nonnull Cell cell, @Nonnull String pattern, @Nullable Object o, boolean date1904);
+}
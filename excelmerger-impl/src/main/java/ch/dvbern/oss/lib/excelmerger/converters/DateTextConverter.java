@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.converters;
+
+import java.io.Serializable;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.ExcelMergeRuntimeException;
+import org.apache.poi.ss.usermodel.Cell;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Ein {@link TextConverter} fuer Datums-Werte, der auch als {@link DateCellConverter} verwendet werden kann. Ohne
+ * vorgegebenes Datums-System wird es aus dem Workbook der Zelle gelesen.
+ */
+final class DateTextConverter<V> implements TextConverter<V>, DateCellConverter {
+
+	private static final long serialVersionUID = -4281911593734426862L;
+
+	@Nonnull
+	private final DateWriter<V> writer;
+	@Nonnull
+	private final TextFunction<V> textFunction;
+
+	DateTextConverter(@Nonnull DateWriter<V> writer, @Nonnull TextFunction<V> textFunction) {
+		this.writer = requireNonNull(writer);
+		this.textFunction = requireNonNull(textFunction);
+	}
+
+	@Override
+	public void setCellValueImpl(@Nonnull Cell cell, @Nonnull String pattern, @Nullable V value) {
+		writer.write(cell, pattern, value, ConverterUtil.isDate1904(cell));
+	}
+
+	@Override
+	public void setDateCellValue(@Nonnull Cell cell, @Nonnull String pattern, @Nullable Object o, boolean date1904) {
+		try {
+			//noinspection unchecked
+			writer.write(cell, pattern, (V) o, date1904);
+		} catch (RuntimeException rte) {
+			// Dient nur zum Debugging, damit der Entwickler an row und column rankommt
+			String format = "Error converting data on cell %s with pattern %s on object %s";
+			String msg = String.format(format, cell.getAddress().formatAsString(), pattern, o);
+			throw new ExcelMergeRuntimeException(msg, rte); // NOPMD.PreserveStackTrace
+		}
+	}
+
+	@Nonnull
+	@Override
+	public String toText(@Nullable V value) {
+		return textFunction.toText(value);
+	}
+
+	@FunctionalInterface
+	interface DateWriter<V> extends Serializable {
+
+		void write(@Nonnull Cell cell, @Nonnull String pattern, @Nullable V value, boolean date1904);
+	}
+}
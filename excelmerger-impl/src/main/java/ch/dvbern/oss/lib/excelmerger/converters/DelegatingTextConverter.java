@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+package ch.dvbern.oss.lib.excelmerger.converters;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.poi.ss.usermodel.Cell;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @see TextConverter#of(Converter, TextConverter.TextFunction)
+ */
+final class DelegatingTextConverter<V> implements TextConverter<V> {
+
+	private static final long serialVersionUID = 3519205794627618423L;
+
+	@Nonnull
+	private final Converter<V> cellConverter;
+	@Nonnull
+	private final TextFunction<V> textFunction;
+
+	DelegatingTextConverter(@Nonnull Converter<V> cellConverter, @Nonnull TextFunction<V> textFunction) {
+		this.cellConverter = requireNonNull(cellConverter);
+		this.textFunction = requireNonNull(textFunction);
+	}
+
+	@Override
+	public void setCellValueImpl(@Nonnull Cell cell, @Nonnull String pattern, @Nullable V value) {
+		cellConverter.setCellValueImpl(cell, pattern, value);
+	}
+
+	@Nonnull
+	@Override
+	public String toText(@Nullable V value) {
+		return textFunction.toText(value);
+	}
+}
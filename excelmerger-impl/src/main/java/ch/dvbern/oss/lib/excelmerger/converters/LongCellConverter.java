@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.converters;
+
+import java.io.Serializable;
+
+import javax.annotation.Nonnull;
+
+import org.apache.poi.ss.usermodel.Cell;
+
+/**
+ * Ein Converter, der einen long-Wert ohne Boxing in die Zelle schreibt, siehe
+ * {@link ch.dvbern.oss.lib.excelmerger.ExcelMergerDTO#addLong}.
+ *
+ * @see StandardConverters#LONG_CONVERTER
+ */
+@FunctionalInterface
+public interface LongCellConverter extends Serializable {
+
+	/**
+	 * Wie {@link Converter#setCellValue(Cell, String, Object)}, der Wert wird aber nicht geboxt.
+	 */
+	void setLongCellValue(@Nonnull Cell cell, @Nonnull String pattern, long value);
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.converters;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.poi.ss.usermodel.Cell;
+
+import static ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil.writeDouble;
+import static ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil.writeLong;
+import static ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil.writerNumber;
+
+/**
+ * Die Standard-Converter fuer Zahlen: schreiben geboxte Werte wie bisher ueber
+ * {@link ConverterUtil#writerNumber(Cell, String, Number, boolean)} und primitive Werte ohne Boxing.
+ *
+ * @see StandardConverters#INTEGER_CONVERTER
+ * @see StandardConverters#LONG_CONVERTER
+ * @see StandardConverters#BIGDECIMAL_CONVERTER
+ */
+final class NumberConverter<V extends Number>
+	implements TextConverter<V>, IntCellConverter, LongCellConverter, DoubleCellConverter {
+
+	private static final long serialVersionUID = -2416408316471530911L;
+
+	private final boolean asInteger;
+
+	NumberConverter(boolean asInteger) {
+		this.asInteger = asInteger;
+	}
+
+	@Override
+	public void setCellValueImpl(@Nonnull Cell cell, @Nonnull String pattern, @Nullable V value) {
+		writerNumber(cell, pattern, value, asInteger);
+	}
+
+	@Override
+	public void setIntCellValue(@Nonnull Cell cell, @Nonnull String pattern, int value) {
+		writeLong(cell, pattern, value);
+	}
+
+	@Override
+	public void setLongCellValue(@Nonnull Cell cell, @Nonnull String pattern, long value) {
+		writeLong(cell, pattern, value);
+	}
+
+	@Override
+	public void setDoubleCellValue(@Nonnull Cell cell, @Nonnull String pattern, double value) {
+		writeDouble(cell, pattern, value, asInteger);
+	}
+
+	@Nonnull
+	@Override
+	public String toText(@Nullable V value) {
+		return String.valueOf(value);
+	}
+}
@@ -19,9 +19,7 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.Date;
 import java.util.Objects;
 
 import javax.annotation.Nonnull;
@@ -29,10 +27,8 @@ import javax.annotation.Nullable;
 
 import ch.dvbern.oss.lib.excelmerger.StringColorCellDTO;
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.FillPatternType;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFColor;
-import org.apache.poi.xssf.usermodel.XSSFFont;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import static ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil.BD_HUNDRED;
@@ -41,17 +37,18 @@ import static ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil.DEFAULT_DAT
 import static ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil.DEFAULT_DATE_FORMAT;
 import static ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil.EMPTY_STRING;
 import static ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil.SCALE;
+import static ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil.toExcelDate;
 import static ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil.writeLocalDate;
-import static ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil.writerNumber;
 
 @SuppressWarnings("PMD.ClassNamingConventions")
 public final class StandardConverters {
 
-	public static final Converter<String> STRING_CONVERTER =
+	public static final Converter<String> STRING_CONVERTER = TextConverter.of(
 		(@Nonnull Cell cell, @Nonnull String pattern, @Nullable String value) -> {
 			String stringVal = value == null ? EMPTY_STRING : value;
 			cell.setCellValue(cell.getStringCellValue().replace(pattern, stringVal));
-		};
+		},
+		value -> value == null ? EMPTY_STRING : value);
 
 	public static final Converter<StringColorCellDTO> STRING_COLORED_CONVERTER =
 		(@Nonnull Cell cell, @Nonnull String pattern, @Nullable StringColorCellDTO dto) -> {
@@ -65,87 +62,73 @@ public final class StandardConverters {
 			}
 		};
 
+	/**
+	 * Die Styles werden pro Workbook gecached, siehe {@link StyleCache}
+	 */
 	@SuppressWarnings("PMD.CloseResource")
 	private static void applyColors(@Nonnull Cell cell, @Nonnull StringColorCellDTO dto) {
-
 		XSSFWorkbook wb = (XSSFWorkbook) cell.getSheet().getWorkbook();
-		XSSFCellStyle newCellStyle = wb.getStylesSource().createCellStyle();
-		newCellStyle.cloneStyleFrom(cell.getCellStyle());
-
-		if (dto.getColor() != null) {
-			newCellStyle.setFillForegroundColor(dto.getColor());
-			newCellStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-		}
-
-		if (dto.getFontColor() != null) {
-			XSSFFont font = wb.createFont();
-			font.setColor(dto.getFontColor());
-			newCellStyle.setFont(font);
-		}
-
-		if (dto.getBorderColor() != null) {
-			newCellStyle.setTopBorderColor(dto.getBorderColor());
-			newCellStyle.setRightBorderColor(dto.getBorderColor());
-			newCellStyle.setBottomBorderColor(dto.getBorderColor());
-			newCellStyle.setLeftBorderColor(dto.getBorderColor());
-		}
-
-		if (dto.getBorderStyle() != null) {
-			newCellStyle.setBorderTop(dto.getBorderStyle());
-			newCellStyle.setBorderRight(dto.getBorderStyle());
-			newCellStyle.setBorderBottom(dto.getBorderStyle());
-			newCellStyle.setBorderLeft(dto.getBorderStyle());
-		}
-
-		cell.setCellStyle(newCellStyle);
+		XSSFCellStyle style = StyleCache.of(wb).getColoredStyle(wb, (XSSFCellStyle) cell.getCellStyle(),
+			dto.getColor(), dto.getFontColor(), dto.getBorderColor(), dto.getBorderStyle());
+
+		cell.setCellStyle(style);
 	}
 
+	/**
+	 * Die Converter sind auch {@link DateCellConverter}: beim Mergen wird das Datums-System nur einmal ermittelt.
+	 */
 	public static final ParametrisedConverter<DateTimeFormatter, LocalDate> LOCAL_DATE_CONVERTER =
-		formatter -> (@Nonnull Cell cell, @Nonnull String pattern, @Nullable LocalDate value) ->
-			writeLocalDate(cell, pattern, value, formatter);
+		formatter -> new DateTextConverter<>(
+			(@Nonnull Cell cell, @Nonnull String pattern, @Nullable LocalDate value, boolean date1904) ->
+				writeLocalDate(cell, pattern, value, formatter, date1904),
+			value -> value == null ? EMPTY_STRING : value.format(formatter));
 
-	public static final Converter<LocalDate> DATE_CONVERTER =
-		(@Nonnull Cell cell, @Nonnull String pattern, @Nullable LocalDate value) ->
-			LOCAL_DATE_CONVERTER.apply(DEFAULT_DATE_FORMAT).setCellValueImpl(cell, pattern, value);
+	public static final Converter<LocalDate> DATE_CONVERTER = LOCAL_DATE_CONVERTER.apply(DEFAULT_DATE_FORMAT);
 
+	/**
+	 * Die Converter sind auch {@link DateCellConverter}: beim Mergen wird das Datums-System nur einmal ermittelt.
+	 */
 	public static final ParametrisedConverter<DateTimeFormatter, LocalDateTime> LOCAL_DATETIME_CONVERTER =
-		formatter -> (@Nonnull Cell cell, @Nonnull String pattern, @Nullable LocalDateTime dateVal) -> {
-			if (pattern.equals(cell.getStringCellValue())) {
-				if (dateVal == null) {
-					// schade... bei setCellValue(Date) darf kein null uebergeben werden
-					cell.setCellValue(EMPTY_STRING);
+		formatter -> new DateTextConverter<>(
+			(@Nonnull Cell cell, @Nonnull String pattern, @Nullable LocalDateTime dateVal, boolean date1904) -> {
+				if (pattern.equals(cell.getStringCellValue())) {
+					if (dateVal == null) {
+						// schade... bei setCellValue(Date) darf kein null uebergeben werden
+						cell.setCellValue(EMPTY_STRING);
+					} else {
+						// ganze Zelle ist Datum -> die Zelle auch als Datum setzen
+						cell.setCellValue(toExcelDate(dateVal, date1904));
+					}
 				} else {
-					// ganze Zelle ist Datum -> die Zelle auch als Datum setzen
-					Date date = Date.from(dateVal.atZone(ZoneId.systemDefault()).toInstant());
-					cell.setCellValue(date);
+					// nur ein Ausschnitt
+					if (dateVal == null) {
+						cell.setCellValue(cell.getStringCellValue().replace(pattern, EMPTY_STRING));
+					} else {
+						cell.setCellValue(cell.getStringCellValue().replace(pattern, dateVal.format(formatter)));
+					}
 				}
-			} else {
-				// nur ein Ausschnitt
-				if (dateVal == null) {
-					cell.setCellValue(cell.getStringCellValue().replace(pattern, EMPTY_STRING));
-				} else {
-					cell.setCellValue(cell.getStringCellValue().replace(pattern, dateVal.format(formatter)));
-				}
-			}
-		};
+			},
+			dateVal -> dateVal == null ? EMPTY_STRING : dateVal.format(formatter));
 
 	public static final Converter<LocalDateTime> DATETIME_CONVERTER =
-		(@Nonnull Cell cell, @Nonnull String pattern, @Nullable LocalDateTime value) ->
-			LOCAL_DATETIME_CONVERTER.apply(DEFAULT_DATETIME_FORMAT).setCellValueImpl(cell, pattern, value);
+		LOCAL_DATETIME_CONVERTER.apply(DEFAULT_DATETIME_FORMAT);
 
-	public static final Converter<Integer> INTEGER_CONVERTER =
-		(@Nonnull Cell cell, @Nonnull String pattern, @Nullable Integer value) ->
-			writerNumber(cell, pattern, value, true);
+	/**
+	 * Kann auch int- und long-Werte ohne Boxing schreiben, siehe {@link IntCellConverter}
+	 */
+	public static final Converter<Integer> INTEGER_CONVERTER = new NumberConverter<>(true);
 
-	public static final Converter<Long> LONG_CONVERTER =
-		(@Nonnull Cell cell, @Nonnull String pattern, @Nullable Long value) ->
-			writerNumber(cell, pattern, value, true);
+	/**
+	 * Kann auch int- und long-Werte ohne Boxing schreiben, siehe {@link LongCellConverter}
+	 */
+	public static final Converter<Long> LONG_CONVERTER = new NumberConverter<>(true);
 
-	public static final Converter<BigDecimal> BIGDECIMAL_CONVERTER =
-		(@Nonnull Cell cell, @Nonnull String pattern, @Nullable BigDecimal value) ->
-			writerNumber(cell, pattern, value, false);
+	/**
+	 * Kann auch double-Werte ohne Boxing schreiben, siehe {@link DoubleCellConverter}
+	 */
+	public static final Converter<BigDecimal> BIGDECIMAL_CONVERTER = new NumberConverter<>(false);
 
-	public static final Converter<BigDecimal> PERCENT_CONVERTER =
+	public static final Converter<BigDecimal> PERCENT_CONVERTER = TextConverter.of(
 		(@Nonnull Cell cell, @Nonnull String pattern, @Nullable BigDecimal value) -> {
 			if (pattern.equals(cell.getStringCellValue())) {
 				if (value != null) {
@@ -157,12 +140,13 @@ public final class StandardConverters {
 			} else {
 				cell.setCellValue(cell.getStringCellValue().replace(pattern, value + "%"));
 			}
-		};
+		},
+		value -> value + "%");
 
 	/**
 	 * Converts NULL to false
 	 */
-	public static final Converter<Boolean> BOOLEAN_CONVERTER =
+	public static final Converter<Boolean> BOOLEAN_CONVERTER = TextConverter.of(
 		(@Nonnull Cell cell, @Nonnull String pattern, @Nullable Boolean value) -> {
 			Boolean boolVal = value == null ? Boolean.FALSE : value;
 
@@ -171,17 +155,19 @@ public final class StandardConverters {
 			} else {
 				cell.setCellValue(cell.getStringCellValue().replace(pattern, String.valueOf(boolVal)));
 			}
-		};
+		},
+		value -> String.valueOf(value == null ? Boolean.FALSE : value));
 
 	/**
 	 * Writes X when TRUE, otherwise writes empty string
 	 */
-	public static final Converter<Boolean> BOOLEAN_X_CONVERTER =
+	public static final Converter<Boolean> BOOLEAN_X_CONVERTER = TextConverter.of(
 		(@Nonnull Cell cell, @Nonnull String pattern, @Nullable Boolean value) -> {
 			String stringVal = Objects.equals(Boolean.TRUE, value) ? BOOLEAN_VALUE : EMPTY_STRING;
 
 			STRING_CONVERTER.setCellValueImpl(cell, pattern, stringVal);
-		};
+		},
+		value -> Objects.equals(Boolean.TRUE, value) ? BOOLEAN_VALUE : EMPTY_STRING);
 
 	/**
 	 * Colors the cell using the given color when TRUE, otherwise does nothing.
@@ -192,12 +178,7 @@ public final class StandardConverters {
 			cell.setCellValue(cell.getStringCellValue().replace(pattern, EMPTY_STRING));
 			if (Objects.equals(value, Boolean.TRUE)) {
 				XSSFWorkbook wb = (XSSFWorkbook) cell.getSheet().getWorkbook();
-				XSSFCellStyle newCellStyle = wb.getStylesSource().createCellStyle();
-				newCellStyle.cloneStyleFrom(cell.getCellStyle());
-				newCellStyle.setFillForegroundColor(color);
-				newCellStyle.setFillBackgroundColor(color);
-				newCellStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-				cell.setCellStyle(newCellStyle);
+				cell.setCellStyle(StyleCache.of(wb).getFilledStyle(wb, (XSSFCellStyle) cell.getCellStyle(), color));
 			}
 		};
 
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.converters;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Cache fuer die Styles der einfaerbenden Converter ({@link StandardConverters#STRING_COLORED_CONVERTER},
+ * {@link StandardConverters#CELL_COLORING_CONVERTER}), ein Cache pro Workbook.
+ *
+ * <p>Fuer jede Kombination aus Basis-Style und Farben wird nur einmal ein Style (bzw. Font) erstellt, alle weiteren
+ * Zellen verwenden denselben Style. Ein Report mit 100'000 eingefaerbten Zellen braucht so nur so viele Styles, wie es
+ * verschiedene Kombinationen gibt, statt 100'000 (Excel erlaubt max. 64'000 Styles).</p>
+ *
+ * <p>Gespeichert werden nur die Indizes der Styles, der Cache haelt das Workbook nicht fest. Die gecachten Styles
+ * duerfen nach dem Merge nicht mehr veraendert werden, sonst aendern sich alle Zellen, die sie verwenden.</p>
+ */
+public final class StyleCache {
+
+	private static final Map<Workbook, StyleCache> CACHES = Collections.synchronizedMap(new WeakHashMap<>());
+
+	@Nonnull
+	private final Map<StyleKey, Integer> styles = new HashMap<>();
+	@Nonnull
+	private final Map<String, Integer> fonts = new HashMap<>();
+
+	private long hits = 0;
+	private long misses = 0;
+
+	private StyleCache() {
+		// via of(Workbook)
+	}
+
+	/**
+	 * @return den Cache des Workbooks, wird beim ersten Zugriff erstellt
+	 */
+	@Nonnull
+	public static StyleCache of(@Nonnull Workbook workbook) {
+		return CACHES.computeIfAbsent(Objects.requireNonNull(workbook), key -> new StyleCache());
+	}
+
+	/**
+	 * Wie bisher in STRING_COLORED_CONVERTER: Kopie des Basis-Styles mit Hintergrundfarbe, Font-Farbe (auf einem neuen
+	 * Standard-Font) und Rahmen. NULL-Werte werden nicht gesetzt.
+	 */
+	@Nonnull
+	synchronized XSSFCellStyle getColoredStyle(
+		@Nonnull XSSFWorkbook workbook,
+		@Nonnull XSSFCellStyle base,
+		@Nullable XSSFColor color,
+		@Nullable XSSFColor fontColor,
+		@Nullable XSSFColor borderColor,
+		@Nullable BorderStyle borderStyle) {
+
+		StyleKey key = new StyleKey(base.getIndex(), false, colorKey(color), colorKey(fontColor),
+			colorKey(borderColor), borderStyle);
+
+		XSSFCellStyle cached = lookup(workbook, key);
+		if (cached != null) {
+			return cached;
+		}
+
+		XSSFCellStyle style = cloneStyle(workbook, base);
+		if (color != null) {
+			style.setFillForegroundColor(color);
+			style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+		}
+
+		if (fontColor != null) {
+			style.setFont(getFont(workbook, fontColor));
+		}
+
+		if (borderColor != null) {
+			style.setTopBorderColor(borderColor);
+			style.setRightBorderColor(borderColor);
+			style.setBottomBorderColor(borderColor);
+			style.setLeftBorderColor(borderColor);
+		}
+
+		if (borderStyle != null) {
+			style.setBorderTop(borderStyle);
+			style.setBorderRight(borderStyle);
+			style.setBorderBottom(borderStyle);
+			style.setBorderLeft(borderStyle);
+		}
+
+		styles.put(key, (int) style.getIndex());
+
+		return style;
+	}
+
+	/**
+	 * Wie bisher in CELL_COLORING_CONVERTER: Kopie des Basis-Styles mit Vorder- und Hintergrundfarbe
+	 */
+	@Nonnull
+	synchronized XSSFCellStyle getFilledStyle(
+		@Nonnull XSSFWorkbook workbook,
+		@Nonnull XSSFCellStyle base,
+		@Nonnull XSSFColor color) {
+
+		StyleKey key = new StyleKey(base.getIndex(), true, colorKey(color), null, null, null);
+
+		XSSFCellStyle cached = lookup(workbook, key);
+		if (cached != null) {
+			return cached;
+		}
+
+		XSSFCellStyle style = cloneStyle(workbook, base);
+		style.setFillForegroundColor(color);
+		style.setFillBackgroundColor(color);
+		style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+
+		styles.put(key, (int) style.getIndex());
+
+		return style;
+	}
+
+	@Nullable
+	private XSSFCellStyle lookup(@Nonnull XSSFWorkbook workbook, @Nonnull StyleKey key) {
+		Integer index = styles.get(key);
+		if (index == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+
+		return workbook.getCellStyleAt(index);
+	}
+
+	@Nonnull
+	private static XSSFCellStyle cloneStyle(@Nonnull XSSFWorkbook workbook, @Nonnull XSSFCellStyle base) {
+		XSSFCellStyle style = workbook.getStylesSource().createCellStyle();
+		style.cloneStyleFrom(base);
+
+		return style;
+	}
+
+	@Nonnull
+	private XSSFFont getFont(@Nonnull XSSFWorkbook workbook, @Nonnull XSSFColor fontColor) {
+		String key = colorKey(fontColor);
+		Integer index = fonts.get(key);
+		if (index != null) {
+			return workbook.getFontAt(index);
+		}
+
+		XSSFFont font = workbook.createFont();
+		font.setColor(fontColor);
+		fonts.put(key, font.getIndex());
+
+		return font;
+	}
+
+	/**
+	 * Entspricht {@link XSSFColor#equals(Object)}: RGB, Theme, Index, Tint und Auto
+	 */
+	@Nullable
+	private static String colorKey(@Nullable XSSFColor color) {
+		if (color == null) {
+			return null;
+		}
+
+		return new StringJoiner("/")
+			.add(String.valueOf(color.getARGBHex()))
+			.add(color.isThemed() ? String.valueOf(color.getTheme()) : "")
+			.add(color.isIndexed() ? String.valueOf(color.getIndexed()) : "")
+			.add(color.hasTint() ? String.valueOf(color.getTint()) : "")
+			.add(String.valueOf(color.isAuto()))
+			.toString();
+	}
+
+	/**
+	 * @return Anzahl Zellen, die einen bereits erstellten Style erhalten haben
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return Anzahl Zellen, fuer die ein neuer Style erstellt wurde
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return Anteil der Zellen, die einen bereits erstellten Style erhalten haben (0 bis 1), 0 ohne Zugriffe
+	 */
+	public synchronized double getHitRate() {
+		long total = hits + misses;
+
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * @return Anzahl der erstellten Styles
+	 */
+	public synchronized int size() {
+		return styles.size();
+	}
+
+	@Override
+	@Nonnull
+	public synchronized String toString() {
+		return new StringJoiner(", ", StyleCache.class.getSimpleName() + '[', "]")
+			.add("styles=" + styles.size())
+			.add("fonts=" + fonts.size())
+			.add("hits=" + hits)
+			.add("misses=" + misses)
+			.toString();
+	}
+
+	private static final class StyleKey {
+
+		private final short baseStyle;
+		private final boolean filled;
+		@Nullable
+		private final String color;
+		@Nullable
+		private final String fontColor;
+		@Nullable
+		private final String borderColor;
+		@Nullable
+		private final BorderStyle borderStyle;
+
+		private StyleKey(
+			short baseStyle,
+			boolean filled,
+			@Nullable String color,
+			@Nullable String fontColor,
+			@Nullable String borderColor,
+			@Nullable BorderStyle borderStyle) {
+
+			this.baseStyle = baseStyle;
+			this.filled = filled;
+			this.color = color;
+			this.fontColor = fontColor;
+			this.borderColor = borderColor;
+			this.borderStyle = borderStyle;
+		}
+
+		@Override
+		public boolean equals(@Nullable Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof StyleKey)) {
+				return false;
+			}
+
+			StyleKey other = (StyleKey) o;
+
+			return baseStyle == other.baseStyle
+				&& filled == other.filled
+				&& Objects.equals(color, other.color)
+				&& Objects.equals(fontColor, other.fontColor)
+				&& Objects.equals(borderColor, other.borderColor)
+				&& borderStyle == other.borderStyle;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(baseStyle, filled, color, fontColor, borderColor, borderStyle);
+		}
+	}
+}
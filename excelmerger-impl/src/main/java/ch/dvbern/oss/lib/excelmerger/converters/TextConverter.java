@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+package ch.dvbern.oss.lib.excelmerger.converters;
+
+import java.io.Serializable;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.ExcelMergeRuntimeException;
+import org.apache.poi.ss.usermodel.Cell;
+
+/**
+ * A {@link Converter} that can render its value as plain text.
+ * <p>
+ * When a placeholder is only a part of the cell text (e.g. "{name} {vorname}, {ort}"), the ExcelMerger renders the
+ * whole cell text in one pass using {@link #toText(Object)}, instead of calling every converter one after the
+ * other. When the placeholder fills the whole cell, {@link #setCellValueImpl(Cell, String, Object)} is used as usual.
+ *
+ * @param <V> type of the value that's writen into the cell
+ */
+public interface TextConverter<V> extends Converter<V> {
+
+	/**
+	 * @return the text that replaces the placeholder within a cell text
+	 */
+	@Nonnull
+	String toText(@Nullable V value);
+
+	@Nonnull
+	default String getText(@Nonnull Cell cell, @Nonnull String pattern, @Nullable Object o) {
+		try {
+			//noinspection unchecked
+			return toText((V) o);
+		} catch (RuntimeException rte) {
+			// Dient nur zum Debugging, damit der Entwickler an row und column rankommt
+			String format = "Error converting data on cell %s with pattern %s on object %s";
+			String msg = String.format(format, cell.getAddress().formatAsString(), pattern, o);
+			throw new ExcelMergeRuntimeException(msg, rte); // NOPMD.PreserveStackTrace
+		}
+	}
+
+	/**
+	 * Combines a cell converter with the text representation of its value.
+	 *
+	 * @param cellConverter used when the placeholder fills the whole cell
+	 * @param textFunction used when the placeholder is only a part of the cell text
+	 * @param <V> type of the value that's writen into the cell
+	 */
+	@Nonnull
+	static <V> TextConverter<V> of(@Nonnull Converter<V> cellConverter, @Nonnull TextFunction<V> textFunction) {
+		return new DelegatingTextConverter<>(cellConverter, textFunction);
+	}
+
+	@FunctionalInterface
+	interface TextFunction<V> extends Serializable {
+
+		@Nonnull
+		String toText(@Nullable V value);
+	}
+}
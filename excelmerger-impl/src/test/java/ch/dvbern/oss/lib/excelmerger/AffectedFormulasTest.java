@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AffectedFormulasTest {
+
+	@Test
+	public void testFindsDependentSheets() {
+		Workbook wb = createWorkbook(100);
+
+		List<Cell> cells = AffectedFormulas.find(wb, Collections.singletonList(wb.getSheet("Daten")));
+
+		Set<String> sheets = cells.stream()
+			.map(cell -> cell.getSheet().getSheetName())
+			.collect(Collectors.toSet());
+		assertEquals(new HashSet<>(Arrays.asList("Daten", "Auswertung", "Kette", "Name")), sheets);
+	}
+
+	/**
+	 * Die selektive Evaluation liefert fuer die betroffenen Sheets dieselben Werte wie evaluateAll
+	 */
+	@Test
+	public void testSameValuesAsEvaluateAll() {
+		int lookups = 100;
+
+		Workbook expected = createWorkbook(lookups);
+		ExcelMerger.evaluate(expected);
+
+		Workbook actual = createWorkbook(lookups);
+		ExcelMerger.evaluate(actual, Collections.singletonList(actual.getSheet("Daten")));
+
+		for (String sheetName : new String[] { "Daten", "Auswertung", "Kette", "Name" }) {
+			assertEquals(getValues(expected.getSheet(sheetName)), getValues(actual.getSheet(sheetName)));
+		}
+		assertEquals(25, actual.getSheet("Kette").getRow(0).getCell(0).getNumericCellValue());
+	}
+
+	/**
+	 * Daten: das gemergte Sheet, Lookup: statische Formeln, die nicht abhaengig sind, Auswertung und Kette: direkt
+	 * bzw. indirekt abhaengig, Name: ueber einen Named-Range abhaengig
+	 */
+	@Nonnull
+	private static Workbook createWorkbook(int lookups) {
+		Workbook wb = new XSSFWorkbook();
+
+		Sheet daten = wb.createSheet("Daten");
+		for (int i = 0; i < 5; i++) {
+			Row row = daten.createRow(i);
+			row.createCell(0).setCellValue(i + 1);
+			row.createCell(1).setCellFormula("A" + (i + 1) + "*2");
+		}
+
+		Sheet lookup = wb.createSheet("Lookup");
+		for (int i = 0; i < lookups; i++) {
+			Row row = lookup.createRow(i);
+			row.createCell(0).setCellValue(i);
+			row.createCell(1).setCellValue("Wert " + i);
+			row.createCell(2).setCellFormula("VLOOKUP(" + (lookups - i - 1) + ",$A$1:$B$" + lookups + ",2,FALSE)");
+		}
+
+		wb.createSheet("Auswertung").createRow(0).createCell(0).setCellFormula("SUM(Daten!B1:B5)-5");
+		wb.createSheet("Kette").createRow(0).createCell(0).setCellFormula("Auswertung!A1");
+
+		Name name = wb.createName();
+		name.setNameName("Werte");
+		name.setRefersToFormula("Daten!$A$1:$A$5");
+		wb.createSheet("Name").createRow(0).createCell(0).setCellFormula("SUM(Werte)");
+
+		return wb;
+	}
+
+	/**
+	 * @return die gecachten Resultate aller Formeln des Sheets
+	 */
+	@Nonnull
+	private static List<Double> getValues(@Nonnull Sheet sheet) {
+		List<Double> values = new ArrayList<>();
+		for (Row row : sheet) {
+			for (Cell cell : row) {
+				if (cell.getCellType() == CellType.FORMULA) {
+					values.add(cell.getNumericCellValue());
+				}
+			}
+		}
+
+		return values;
+	}
+}
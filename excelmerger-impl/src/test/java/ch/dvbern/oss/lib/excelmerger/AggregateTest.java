@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.math.BigDecimal;
+
+import ch.dvbern.oss.lib.excelmerger.converters.StandardConverters;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatValMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.SimpleMergeField;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AggregateTest {
+
+	private static final SimpleMergeField<BigDecimal> BETRAG =
+		new SimpleMergeField<>("betrag", StandardConverters.BIGDECIMAL_CONVERTER);
+	private static final RepeatValMergeField<Integer> TAGE =
+		new RepeatValMergeField<>("tage", StandardConverters.INTEGER_CONVERTER);
+
+	@Test
+	public void testFunctions() {
+		Aggregate sum = Aggregate.sum(BETRAG);
+		Aggregate count = Aggregate.count(BETRAG);
+		Aggregate min = Aggregate.min(BETRAG);
+		Aggregate max = Aggregate.max(BETRAG);
+		Aggregate avg = Aggregate.avg(BETRAG);
+
+		for (String value : new String[] { "1.5", "-2", null, "6.5" }) {
+			ExcelMergerDTO row = new ExcelMergerDTO();
+			row.addValue(BETRAG, value == null ? null : new BigDecimal(value));
+			for (Aggregate aggregate : new Aggregate[] { sum, count, min, max, avg }) {
+				aggregate.accept(row);
+			}
+		}
+
+		assertEquals(6, sum.getValue());
+		assertEquals(3, count.getValue());
+		assertEquals(-2, min.getValue());
+		assertEquals(6.5, max.getValue());
+		assertEquals(2, avg.getValue());
+	}
+
+	@Test
+	public void testAllValuesOfARow() {
+		Aggregate sum = Aggregate.sum(TAGE);
+
+		ExcelMergerDTO row = new ExcelMergerDTO();
+		row.addValue(TAGE, 1);
+		row.addValue(TAGE, 2);
+		row.addValue(TAGE, 3);
+		sum.accept(row);
+
+		assertEquals(6, sum.getValue());
+		assertEquals(3, sum.getCount());
+	}
+
+	@Test
+	public void testWithoutValues() {
+		Aggregate min = Aggregate.min(BETRAG);
+		min.accept(new ExcelMergerDTO());
+
+		assertTrue(Double.isNaN(min.getValue()));
+		assertEquals(0, Aggregate.sum(BETRAG).getValue());
+
+		Cell cell = new XSSFWorkbook().createSheet().createRow(0).createCell(0);
+		cell.setCellValue("x");
+		min.writeTo(cell);
+		assertEquals(CellType.BLANK, cell.getCellType());
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldProvider;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste;
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.WARTELISTE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.getVal;
+import static java.util.Objects.requireNonNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchMergerTest {
+
+	private static final int THREADS = 4;
+	private static final int JOBS = 12;
+
+	private final List<MergeField<?>> fields = MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values());
+	private final Map<Long, byte[]> outputs = new ConcurrentHashMap<>();
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger maxRunning = new AtomicInteger();
+
+	private ExecutorService executor;
+	private byte[] template;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		executor = Executors.newFixedThreadPool(THREADS);
+		try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(WARTELISTE)) {
+			template = IOUtils.toByteArray(requireNonNull(is));
+		}
+	}
+
+	@AfterEach
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void testMergeAll() throws Exception {
+		BatchMerger merger = BatchMerger.of(template, "Warteliste", fields, executor);
+
+		merger.mergeAll(IntStream.range(0, JOBS).mapToObj(this::createData), this::write);
+
+		assertEquals(JOBS, outputs.size());
+		for (long i = 0; i < JOBS; i++) {
+			Sheet sheet = read(outputs.get(i)).getSheet("Warteliste");
+			assertEquals("Warteliste Kita " + i, getVal(sheet, 1, "A"));
+			assertEquals("Name " + i + ".0", getVal(sheet, 6, "L"));
+		}
+	}
+
+	@Test
+	public void testBudgetLimitsConcurrentJobs() throws Exception {
+		BatchMerger unlimited = BatchMerger.of(template, "Warteliste", fields, executor);
+		long twoJobs = 2 * unlimited.estimateMemory(createData(JOBS));
+
+		BatchMerger merger = BatchMerger.of(template, "Warteliste", fields, executor, twoJobs);
+		merger.mergeAll(IntStream.range(0, JOBS).mapToObj(i -> createData(JOBS)), this::writeSlowly);
+
+		assertEquals(JOBS, outputs.size());
+		assertEquals(2, maxRunning.get());
+	}
+
+	@Test
+	public void testJobLargerThanBudgetRunsAlone() throws Exception {
+		BatchMerger merger = BatchMerger.of(template, "Warteliste", fields, executor, 1);
+		merger.mergeAll(IntStream.range(0, THREADS).mapToObj(this::createData), this::writeSlowly);
+
+		assertEquals(THREADS, outputs.size());
+		assertEquals(1, maxRunning.get());
+	}
+
+	@Test
+	public void testEstimateGrowsWithRows() {
+		BatchMerger merger = BatchMerger.of(template, "Warteliste", fields, executor);
+
+		ExcelMergerDTO small = createData(1);
+		ExcelMergerDTO large = createData(100);
+		assertEquals(1 + 2 * 2, small.countRows());
+		assertEquals(1 + 3 * 2 * 2, small.countValues());
+		assertTrue(merger.estimateMemory(large) > merger.estimateMemory(small));
+		// Workbook aus dem Template
+		assertTrue(merger.estimateMemory(new ExcelMergerDTO()) >= template.length);
+	}
+
+	@Test
+	public void testFailedJobsDoNotStopTheBatch() {
+		BatchMerger merger = BatchMerger.of(template, "Warteliste", fields, executor);
+
+		ExcelMergeException e = assertThrows(ExcelMergeException.class, () -> merger.mergeAll(
+			IntStream.range(0, JOBS).mapToObj(this::createData),
+			(index, data, workbook) -> {
+				if (index % 5 == 3) {
+					throw new IOException("disk full");
+				}
+				write(index, data, workbook);
+			}));
+
+		assertEquals("2 of 12 jobs failed", e.getMessage());
+		assertEquals(1, e.getSuppressed().length);
+		assertEquals(JOBS - 2, outputs.size());
+	}
+
+	@Test
+	public void testUnknownSheet() {
+		assertThrows(ExcelTemplateParseException.class,
+			() -> BatchMerger.of(template, "unknown", fields, executor));
+	}
+
+	@Nonnull
+	private ExcelMergerDTO createData(int job) {
+		ExcelMergerDTO data = new ExcelMergerDTO();
+		data.addValue(MergeFieldWarteliste.KITA_NAME, "Kita " + job);
+		for (int i = 0; i < 2 * (job + 1); i++) {
+			ExcelMergerDTO kind = data.createGroup(MergeFieldWarteliste.REPEAT_KIND);
+			kind.addValue(MergeFieldWarteliste.VORNAME, "Vorname " + i);
+			kind.addValue(MergeFieldWarteliste.NAME, "Name " + job + '.' + i);
+			kind.addValue(MergeFieldWarteliste.PRIORITAET, (long) i * 1000);
+		}
+
+		return data;
+	}
+
+	private void write(long index, @Nonnull ExcelMergerDTO data, @Nonnull Workbook workbook) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		workbook.write(out);
+		outputs.put(index, out.toByteArray());
+	}
+
+	private void writeSlowly(long index, @Nonnull ExcelMergerDTO data, @Nonnull Workbook workbook)
+		throws IOException {
+
+		maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+		try {
+			Thread.sleep(200);
+			write(index, data, workbook);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			running.decrementAndGet();
+		}
+	}
+
+	@Nonnull
+	private Workbook read(@Nonnull byte[] bytes) {
+		return ExcelMerger.createWorkbookFromTemplate(new ByteArrayInputStream(bytes));
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.io.FileInputStream;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import ch.dvbern.oss.lib.excelmerger.converters.StandardConverters;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldProvider;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.SimpleMergeField;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.GET_WORKBOOK;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.WARTELISTE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.writeWorkbookToFile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ColumnAutoSizerTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ColumnAutoSizerTest.class);
+
+	private static final int COLUMNS = 8;
+
+	@Test
+	public void testWidthsLikePoi() {
+		Sheet expected = createSheet();
+		for (int column = 0; column < COLUMNS; column++) {
+			expected.autoSizeColumn(column);
+		}
+
+		Sheet actual = createSheet();
+		ColumnAutoSizer.allColumns().applyAutoSize(actual);
+
+		for (int column = 0; column < COLUMNS; column++) {
+			LOG.info("Column {}: POI {}, ColumnAutoSizer {}", column, expected.getColumnWidth(column),
+				actual.getColumnWidth(column));
+		}
+		for (int column = 0; column < COLUMNS; column++) {
+			assertSimilarWidth(expected.getColumnWidth(column), actual.getColumnWidth(column), "column " + column);
+		}
+	}
+
+	@Test
+	public void testSelectedColumns() {
+		Sheet sheet = createSheet();
+		int defaultWidth = sheet.getColumnWidth(1);
+		ColumnAutoSizer autoSizer = ColumnAutoSizer.of(0);
+
+		autoSizer.applyAutoSize(sheet);
+
+		assertTrue(autoSizer.getWidth(0) > 0);
+		assertEquals(-1, autoSizer.getWidth(1));
+		assertEquals(defaultWidth, sheet.getColumnWidth(1));
+	}
+
+	@Test
+	public void testMergedCellsAreIgnored() {
+		Sheet sheet = new XSSFWorkbook().createSheet("merged");
+		Row row = sheet.createRow(0);
+		row.createCell(0).setCellValue("Ein sehr langer Titel ueber mehrere Spalten");
+		sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, 3));
+		sheet.createRow(1).createCell(0).setCellValue("kurz");
+
+		ColumnAutoSizer autoSizer = ColumnAutoSizer.allColumns();
+		autoSizer.applyAutoSize(sheet);
+
+		sheet.autoSizeColumn(0);
+		assertSimilarWidth(sheet.getColumnWidth(0), (int) Math.round(autoSizer.getWidth(0) * 256), "column 0");
+	}
+
+	@Test
+	public void testMergeDataTracksRows() throws ExcelMergeException {
+		Sheet expected = GET_WORKBOOK.apply(WARTELISTE).getSheet("Warteliste");
+		ExcelMerger.mergeData(expected, MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values()),
+			createWartelisteData());
+		int lastColumn = expected.getRow(expected.getLastRowNum()).getLastCellNum();
+		for (int column = 0; column < lastColumn; column++) {
+			expected.autoSizeColumn(column);
+		}
+
+		Sheet actual = GET_WORKBOOK.apply(WARTELISTE).getSheet("Warteliste");
+		ExcelMerger.mergeData(
+			actual,
+			SheetMerge.of(MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values()), createWartelisteData()),
+			MergeOptions.defaults().withAutoSizer(ColumnAutoSizer.allColumns()));
+
+		for (int column = 0; column < lastColumn; column++) {
+			assertSimilarWidth(expected.getColumnWidth(column), actual.getColumnWidth(column), "column " + column);
+		}
+	}
+
+	@Test
+	public void testRowFillerMeasuresFlushedRows() throws Exception {
+		SimpleMergeField<Integer> value1 = new SimpleMergeField<>("value1", StandardConverters.INTEGER_CONVERTER);
+		SimpleMergeField<Integer> value2 = new SimpleMergeField<>("value2", StandardConverters.INTEGER_CONVERTER);
+		XSSFSheet template = (XSSFSheet) GET_WORKBOOK.apply(ExcelMergerTestUtil.BASE + "sxssf.xlsx").getSheetAt(0);
+
+		ColumnAutoSizer autoSizer = ColumnAutoSizer.of(0);
+		RowFiller rowFiller = RowFiller.initRowFiller(template, Arrays.asList(value1, value2,
+			new RepeatRowMergeField("row")))
+			.autoSize(autoSizer);
+
+		int rows = 1_000;
+		for (int i = 0; i < rows; i++) {
+			// der laengste Wert ist beim Schreiben der Breiten laengst auf der Disk
+			rowFiller.addInt(value1, i == 5 ? 1_234_567_890 : i)
+				.addInt(value2, 2)
+				.fillRow();
+		}
+		rowFiller.finish();
+
+		int width = rowFiller.getSheet().getColumnWidth(0);
+		String file = writeWorkbookToFile(rowFiller.getSheet().getWorkbook(), "sxssf-autosize.xlsx");
+		rowFiller.getSheet().getWorkbook().dispose();
+
+		Sheet filled = ExcelMerger.createWorkbookFromTemplate(new FileInputStream(file)).getSheetAt(0);
+		assertEquals(width, filled.getColumnWidth(0));
+
+		// POI sieht im gespeicherten Workbook alle Zeilen
+		filled.autoSizeColumn(0);
+		assertSimilarWidth(filled.getColumnWidth(0), width, "column 0");
+	}
+
+	/**
+	 * Ohne Kerning weichen die Breiten leicht ab, hoechstens 5% bzw. ein Viertel Zeichen
+	 */
+	private void assertSimilarWidth(int expected, int actual, @Nonnull String message) {
+		int tolerance = Math.max(expected / 20, 64);
+		assertTrue(Math.abs(expected - actual) <= tolerance, message + ": expected " + expected + ", was " + actual);
+	}
+
+	@Nonnull
+	private Sheet createSheet() {
+		Workbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet("autosize");
+
+		Font bold = wb.createFont();
+		bold.setBold(true);
+		bold.setFontHeightInPoints((short) 14);
+		CellStyle boldStyle = wb.createCellStyle();
+		boldStyle.setFont(bold);
+
+		CellStyle numberStyle = wb.createCellStyle();
+		numberStyle.setDataFormat(wb.createDataFormat().getFormat("#,##0.00"));
+		CellStyle dateStyle = wb.createCellStyle();
+		dateStyle.setDataFormat(wb.createDataFormat().getFormat("dd.MM.yyyy"));
+
+		CellStyle indented = wb.createCellStyle();
+		indented.setIndention((short) 2);
+		CellStyle rotated = wb.createCellStyle();
+		rotated.setRotation((short) 90);
+
+		String[] texts = { "Kurz", "Ein etwas laengerer Text", "Aeoeue AEOEUE äöü ÄÖÜ éàè", "Zeile 1\nZweite, laengere Zeile" };
+		for (int i = 0; i < texts.length; i++) {
+			Row row = sheet.createRow(i);
+			row.createCell(0).setCellValue(texts[i]);
+
+			Cell number = row.createCell(1);
+			number.setCellValue(1234567.891 * (i + 1));
+			number.setCellStyle(i % 2 == 0 ? numberStyle : dateStyle);
+
+			Cell title = row.createCell(2);
+			title.setCellValue("Titel " + texts[i].length());
+			title.setCellStyle(boldStyle);
+
+			row.createCell(3).setCellValue(i % 2 == 0);
+
+			Cell indent = row.createCell(4);
+			indent.setCellValue("Eingerueckt " + i);
+			indent.setCellStyle(indented);
+
+			row.createCell(5).setCellFormula("A" + (i + 1) + "&\"-\"&B" + (i + 1));
+
+			Cell vertical = row.createCell(6);
+			vertical.setCellValue("Gedreht");
+			vertical.setCellStyle(rotated);
+
+			row.createCell(7).setCellValue(i * 1000);
+		}
+
+		wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+
+		return sheet;
+	}
+
+	@Nonnull
+	private ExcelMergerDTO createWartelisteData() {
+		ExcelMergerDTO data = new ExcelMergerDTO();
+		data.addValue(MergeFieldWarteliste.KITA_NAME, "Kita Sonnenschein");
+		for (int i = 0; i < 20; i++) {
+			ExcelMergerDTO kind = data.createGroup(MergeFieldWarteliste.REPEAT_KIND);
+			kind.addValue(MergeFieldWarteliste.VORNAME, "Vorname " + i);
+			kind.addValue(MergeFieldWarteliste.NAME, i == 7 ? "Ein ausserordentlich langer Nachname" : "Name");
+			kind.addValue(MergeFieldWarteliste.PRIORITAET, (long) i * 1000);
+		}
+
+		return data;
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.converters.StandardConverters;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldProvider;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.SimpleMergeField;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.GET_WORKBOOK;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.WARTELISTE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.dumpCells;
+import static ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste.GEBURTSTAG;
+import static ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste.NAME;
+import static ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste.PENSUM_WUNSCH_MIN;
+import static ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste.PRIORITAET;
+import static ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste.REPEAT_KIND;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ColumnarGroupTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ColumnarGroupTest.class);
+
+	private static final RepeatRowMergeField ZEILEN = new RepeatRowMergeField("zeilen");
+	private static final SimpleMergeField<Integer> ANZAHL =
+		new SimpleMergeField<>("anzahl", StandardConverters.INTEGER_CONVERTER);
+	private static final SimpleMergeField<Long> SUMME =
+		new SimpleMergeField<>("summe", StandardConverters.LONG_CONVERTER);
+	private static final SimpleMergeField<BigDecimal> BETRAG =
+		new SimpleMergeField<>("betrag", StandardConverters.BIGDECIMAL_CONVERTER);
+	private static final SimpleMergeField<LocalDate> DATUM =
+		new SimpleMergeField<>("datum", StandardConverters.DATE_CONVERTER);
+
+	private static final String[] NAMES = { "Tester", "Lovelace", null, "Hopper" };
+	private static final Long[] PRIORITIES = { 1L, null, 3L, 4L };
+	private static final BigDecimal[] PENSUM = { new BigDecimal("0.5"), new BigDecimal("0.1"), null, BigDecimal.ONE };
+	private static final LocalDate[] BIRTHDAYS = { LocalDate.of(2017, 1, 31), null, LocalDate.of(1970, 1, 1),
+		LocalDate.of(1899, 12, 31) };
+
+	@Test
+	public void testRowValues() {
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		ColumnarGroup group = dto.createColumnarGroup(ZEILEN);
+		group.addRow()
+			.setInt(ANZAHL, 7)
+			.setLong(SUMME, Long.MAX_VALUE)
+			.setDecimal(BETRAG, 12.25)
+			.setDate(DATUM, LocalDate.of(2024, 2, 29));
+		group.addRow();
+
+		List<ExcelMergerDTO> rows = dto.getGroup(ZEILEN);
+		assertEquals(2, rows.size());
+
+		ExcelMergerDTO first = rows.get(0);
+		assertEquals(Integer.valueOf(7), first.getValue(ANZAHL));
+		assertEquals(Long.valueOf(Long.MAX_VALUE), first.getValue(SUMME));
+		assertEquals(new BigDecimal("12.25"), first.getValue(BETRAG));
+		assertEquals(LocalDate.of(2024, 2, 29), first.getValue(DATUM));
+		assertFalse(first.hasValue(ANZAHL, 1));
+
+		ExcelMergerDTO second = rows.get(1);
+		assertFalse(second.hasValue(ANZAHL, 0));
+		assertNull(second.getValue(BETRAG));
+		assertNull(second.getGroup(ZEILEN));
+		assertThrows(UnsupportedOperationException.class, () -> second.addValue(ANZAHL, 1));
+	}
+
+	@Test
+	public void testManyRows() {
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		ColumnarGroup group = dto.createColumnarGroup(ZEILEN);
+		for (int i = 0; i < 1000; i++) {
+			group.addRow();
+			if (i % 3 == 0) {
+				group.setInt(ANZAHL, i);
+			}
+		}
+
+		List<ExcelMergerDTO> rows = dto.getGroup(ZEILEN);
+		assertEquals(1000, group.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i % 3 == 0, rows.get(i).hasValue(ANZAHL, 0), "row " + i);
+		}
+		assertEquals(Integer.valueOf(999), rows.get(999).getValue(ANZAHL));
+	}
+
+	@Test
+	public void testCreateGroupAfterColumnarGroup() {
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		dto.createColumnarGroup(ZEILEN).addRow().setInt(ANZAHL, 1);
+
+		IllegalStateException exception = assertThrows(IllegalStateException.class, () -> dto.createGroup(ZEILEN));
+		assertTrue(exception.getMessage().contains(ZEILEN.getKey()), exception.getMessage());
+		assertEquals(1, dto.getGroup(ZEILEN).size());
+	}
+
+	@Test
+	public void testInvalidUsage() {
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		ColumnarGroup group = dto.createColumnarGroup(ZEILEN);
+
+		assertThrows(IllegalStateException.class, () -> group.setInt(ANZAHL, 1));
+		assertThrows(IllegalStateException.class, () -> dto.createColumnarGroup(ZEILEN));
+		assertThrows(IllegalArgumentException.class, () -> dto.createColumnarGroup(ANZAHL));
+
+		group.addRow().setDate(DATUM, LocalDate.of(2017, 1, 1));
+		assertThrows(IllegalArgumentException.class, () -> group.setValue(DATUM, LocalDate.of(2017, 1, 1)));
+	}
+
+	@Test
+	public void testMergeEqualsRowDtos() throws ExcelMergeException {
+		Sheet expected = GET_WORKBOOK.apply(WARTELISTE).getSheet("Warteliste");
+		ExcelMerger.mergeData(expected, MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values()),
+			createRowData());
+
+		Sheet actual = GET_WORKBOOK.apply(WARTELISTE).getSheet("Warteliste");
+		ExcelMerger.mergeData(actual, MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values()),
+			createColumnarData());
+
+		assertEquals(expected.getLastRowNum(), actual.getLastRowNum());
+		assertEquals(dumpCells(expected), dumpCells(actual));
+	}
+
+	/**
+	 * Schreibt den Heap-Bedarf von Zeilen-DTOs und der ColumnarGroup ins Log
+	 */
+	@Test
+	public void testHeapUsage() {
+		int rows = 200_000;
+
+		long before = usedHeap();
+		ExcelMergerDTO rowData = new ExcelMergerDTO();
+		for (int i = 0; i < rows; i++) {
+			ExcelMergerDTO row = rowData.createGroup(ZEILEN);
+			row.addValue(SUMME, (long) i * 1000);
+			row.addValue(BETRAG, BigDecimal.valueOf(i, 2));
+			row.addValue(DATUM, LocalDate.ofEpochDay(i % 20_000));
+		}
+		long rowBytes = usedHeap() - before;
+
+		before = usedHeap();
+		ExcelMergerDTO columnarData = new ExcelMergerDTO();
+		ColumnarGroup group = columnarData.createColumnarGroup(ZEILEN);
+		for (int i = 0; i < rows; i++) {
+			group.addRow()
+				.setLong(SUMME, (long) i * 1000)
+				.setDecimal(BETRAG, i / 100.0)
+				.setDate(DATUM, LocalDate.ofEpochDay(i % 20_000));
+		}
+		long columnarBytes = usedHeap() - before;
+
+		LOG.info("{} rows with 3 values: ExcelMergerDTO {} KB, ColumnarGroup {} KB", rows, rowBytes / 1024,
+			columnarBytes / 1024);
+
+		assertEquals(rows, rowData.getGroup(ZEILEN).size());
+		assertEquals(rows, columnarData.getGroup(ZEILEN).size());
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc(); // NOPMD.DoNotCallGarbageCollectionExplicitly
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@Nonnull
+	private static ExcelMergerDTO createRowData() {
+		ExcelMergerDTO excelData = new ExcelMergerDTO();
+		excelData.addValue(MergeFieldWarteliste.KITA_NAME, "Testing");
+
+		for (int i = 0; i < NAMES.length; i++) {
+			ExcelMergerDTO kind = excelData.createGroup(REPEAT_KIND);
+			addIfNotNull(kind, NAME, NAMES[i]);
+			addIfNotNull(kind, PRIORITAET, PRIORITIES[i]);
+			addIfNotNull(kind, PENSUM_WUNSCH_MIN, PENSUM[i]);
+			addIfNotNull(kind, GEBURTSTAG, BIRTHDAYS[i]);
+		}
+
+		return excelData;
+	}
+
+	private static <V> void addIfNotNull(@Nonnull ExcelMergerDTO dto, @Nonnull MergeFieldProvider field,
+		@Nullable V value) {
+		if (value != null) {
+			dto.addValue(field, value);
+		}
+	}
+
+	@Nonnull
+	private static ExcelMergerDTO createColumnarData() {
+		ExcelMergerDTO excelData = new ExcelMergerDTO();
+		excelData.addValue(MergeFieldWarteliste.KITA_NAME, "Testing");
+
+		ColumnarGroup kinder = excelData.createColumnarGroup(REPEAT_KIND);
+		for (int i = 0; i < NAMES.length; i++) {
+			kinder.addRow()
+				.setValue(NAME, NAMES[i])
+				.setDecimal(PENSUM_WUNSCH_MIN, PENSUM[i])
+				.setDate(GEBURTSTAG, BIRTHDAYS[i]);
+			if (PRIORITIES[i] != null) {
+				kinder.setLong(PRIORITAET, PRIORITIES[i]);
+			}
+		}
+
+		return excelData;
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+
+import ch.dvbern.oss.lib.excelmerger.CompiledTemplate.TemplateGroup;
+import ch.dvbern.oss.lib.excelmerger.CompiledTemplate.TemplateRow;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldProvider;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.GET_WORKBOOK;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.WARTELISTE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.dumpCells;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.getNumVal;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.getVal;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.named;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompiledTemplateTest {
+
+	private static final int THREADS = 4;
+
+	@Test
+	public void testCompile() {
+		Sheet sheet = GET_WORKBOOK.apply(WARTELISTE).getSheet("Warteliste");
+		CompiledTemplate template =
+			CompiledTemplate.compile(sheet, MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values()));
+
+		assertEquals("Warteliste", template.getSheetName());
+		assertEquals(sheet.getLastRowNum() + 1, template.getRows().size());
+
+		TemplateRow groupRow = template.getFirstGroupRow();
+		assertNotNull(groupRow);
+		assertEquals(5, groupRow.getRowNum());
+		assertNotNull(groupRow.getGroup());
+		assertEquals(MergeFieldWarteliste.REPEAT_KIND.getMergeField(), groupRow.getGroup().getField());
+		assertEquals(named("EI"), groupRow.getGroup().getColumn());
+		assertEquals(1, groupRow.getGroup().getRows());
+
+		TemplateRow totalRow = template.getRow(7);
+		assertNotNull(totalRow);
+		assertTrue(totalRow.hasFormulas());
+		assertNotNull(template.getRow(0));
+		assertFalse(template.getRow(0).hasFormulas());
+		assertTrue(template.getRow(0).getCells().stream().anyMatch(CompiledTemplate.TemplateCell::hasPlaceholder));
+
+		assertEquals(sheet.getNumMergedRegions(), template.getMergedRegions().size());
+	}
+
+	@Test
+	public void testCompileSeveralGroupsOnOneRow() {
+		Workbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet();
+		Row row = sheet.createRow(2);
+		row.createCell(0).setCellValue("{kitasRepeatKita:3}");
+		row.createCell(1).setCellValue("{name}");
+		row.createCell(2).setCellValue("{repeatKind}");
+
+		CompiledTemplate template =
+			CompiledTemplate.compile(sheet, MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values()));
+
+		List<TemplateGroup> groups = template.getGroups(2);
+		assertEquals(2, groups.size());
+		// wie beim Mergen: von der hintersten zur vordersten Spalte
+		assertEquals(MergeFieldWarteliste.REPEAT_KIND.getMergeField(), groups.get(0).getField());
+		assertEquals(2, groups.get(0).getColumn());
+		assertEquals(1, groups.get(0).getRows());
+		assertEquals(MergeFieldWarteliste.KITAS_REPEAT_KITA.getMergeField(), groups.get(1).getField());
+		assertEquals(0, groups.get(1).getColumn());
+		assertEquals(3, groups.get(1).getRows());
+		assertEquals(groups.get(0), template.getRow(2).getGroup());
+
+		assertTrue(template.getGroups(0).isEmpty());
+		assertTrue(template.getGroups(3).isEmpty());
+	}
+
+	@Test
+	public void testTokenizeUsesPreparsedTexts() {
+		Sheet sheet = GET_WORKBOOK.apply(WARTELISTE).getSheet("Warteliste");
+		CompiledTemplate template =
+			CompiledTemplate.compile(sheet, MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values()));
+
+		ParsedPlaceholder parsed = template.tokenize("Warteliste {kitaName}").getLastPlaceholder();
+		assertNotNull(parsed);
+		assertEquals("{kitaName}", parsed.getPattern());
+		assertEquals("kitaName", parsed.getKey());
+
+		// unbekannte Texte werden trotzdem geparst
+		ParsedPlaceholder unknown = template.tokenize("foo {bar:3} baz").getLastPlaceholder();
+		assertNotNull(unknown);
+		assertEquals("bar", unknown.getKey());
+		assertEquals(Integer.valueOf(3), unknown.getRows());
+	}
+
+	@Test
+	public void testReuseAcrossWorkbooksAndThreads() throws Exception {
+		CompiledTemplate template = CompiledTemplate.compile(
+			GET_WORKBOOK.apply(WARTELISTE).getSheet("Warteliste"),
+			MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values()));
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Sheet>> results = new ArrayList<>();
+			for (int i = 0; i < THREADS * 2; i++) {
+				Callable<Sheet> merge = () -> {
+					Workbook wb = GET_WORKBOOK.apply(WARTELISTE);
+					Sheet sheet = wb.getSheet("Warteliste");
+					ExcelMerger.mergeData(sheet, SheetMerge.of(template, createData()), MergeOptions.defaults());
+
+					return sheet;
+				};
+				results.add(executor.submit(merge));
+			}
+
+			for (Future<Sheet> result : results) {
+				Sheet sheet = result.get();
+
+				assertEquals(8, sheet.getLastRowNum());
+				assertEquals("Warteliste Testing", getVal(sheet, 1, "A"));
+				assertEquals("Kita 1", getVal(sheet, 5, "B"));
+				assertEquals("Tester", getVal(sheet, 6, "L"));
+				assertEquals("Lovelace", getVal(sheet, 7, "L"));
+				assertEquals("X", getVal(sheet, 7, "C"));
+				assertEquals(1.0, getNumVal(sheet, 9, "C"), 0.0);
+				assertTrue(sheet.isColumnHidden(named("C")));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testMergeDataWithTemplateEqualsRegularMerge() throws ExcelMergeException {
+		Sheet expected = GET_WORKBOOK.apply(WARTELISTE).getSheet("Warteliste");
+		ExcelMerger.mergeData(expected, MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values()),
+			createData());
+
+		Sheet actual = GET_WORKBOOK.apply(WARTELISTE).getSheet("Warteliste");
+		CompiledTemplate template =
+			CompiledTemplate.compile(actual, MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values()));
+		ExcelMerger.mergeData(actual, SheetMerge.of(template, createData()), MergeOptions.defaults());
+
+		assertEquals(expected.getLastRowNum(), actual.getLastRowNum());
+		for (String col : new String[] { "A", "B", "C", "L", "M" }) {
+			for (int row = 1; row <= 8; row++) {
+				assertEquals(getVal(expected, row, col), getVal(actual, row, col), col + row);
+			}
+		}
+	}
+
+	@Test
+	public void testMergeDataWithTemplateEqualsRegularMerge_severalGroups() throws ExcelMergeException {
+		// die erste Gruppe verschiebt die folgenden, eine leere Gruppe entfernt ihre Zeilen
+		for (int kinder : new int[] { 0, 1, 3 }) {
+			Sheet expected = createSeveralGroupsSheet();
+			ExcelMerger.mergeData(expected, MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values()),
+				createSeveralGroupsData(kinder));
+
+			Sheet actual = createSeveralGroupsSheet();
+			CompiledTemplate template =
+				CompiledTemplate.compile(actual, MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values()));
+			ExcelMerger.mergeData(
+				actual,
+				SheetMerge.of(template, createSeveralGroupsData(kinder)),
+				MergeOptions.defaults());
+
+			assertEquals(dumpCells(expected), dumpCells(actual), "kinder " + kinder);
+		}
+	}
+
+	@Nonnull
+	private static Sheet createSeveralGroupsSheet() {
+		Sheet sheet = new XSSFWorkbook().createSheet();
+		String[][] cells = {
+			{ "{repeatKind}", "{kitaName}" },
+			{ "Zwischentitel" },
+			{ "{kitasRepeatKita:2}", "{kitaName}" },
+			{ "{repeatKind}", "{kitaName}" },
+			{ "Ende" },
+		};
+		for (int rowNum = 0; rowNum < cells.length; rowNum++) {
+			Row row = sheet.createRow(rowNum);
+			for (int col = 0; col < cells[rowNum].length; col++) {
+				row.createCell(col).setCellValue(cells[rowNum][col]);
+			}
+		}
+
+		return sheet;
+	}
+
+	@Nonnull
+	private static ExcelMergerDTO createSeveralGroupsData(int kinder) {
+		ExcelMergerDTO excelData = new ExcelMergerDTO();
+		for (int i = 0; i < kinder; i++) {
+			excelData.createGroup(MergeFieldWarteliste.REPEAT_KIND)
+				.addValue(MergeFieldWarteliste.KITA_NAME, "Kind " + i);
+		}
+		for (int i = 0; i < 2; i++) {
+			ExcelMergerDTO kita = excelData.createGroup(MergeFieldWarteliste.KITAS_REPEAT_KITA);
+			kita.addValue(MergeFieldWarteliste.KITA_NAME, "Kita " + i);
+			for (int j = 0; j < i * 2; j++) {
+				kita.createGroup(MergeFieldWarteliste.REPEAT_KIND)
+					.addValue(MergeFieldWarteliste.KITA_NAME, "Kind " + i + '.' + j);
+			}
+		}
+
+		return excelData;
+	}
+
+	@Nonnull
+	private static ExcelMergerDTO createData() {
+		ExcelMergerDTO excelData = new ExcelMergerDTO();
+		excelData.addValue(MergeFieldWarteliste.KITA_NAME, "Testing");
+		excelData.addValue(MergeFieldWarteliste.REPEAT_KITA, "Kita 1");
+
+		ExcelMergerDTO kind1 = excelData.createGroup(MergeFieldWarteliste.REPEAT_KIND);
+		kind1.addValue(MergeFieldWarteliste.NAME, "Tester");
+		kind1.addValue(MergeFieldWarteliste.KITA_BESETZT, true);
+		kind1.addValue(MergeFieldWarteliste.PENSUM_WUNSCH_MIN, BigDecimal.valueOf(0.5));
+
+		ExcelMergerDTO kind2 = excelData.createGroup(MergeFieldWarteliste.REPEAT_KIND);
+		kind2.addValue(MergeFieldWarteliste.NAME, "Lovelace");
+		kind2.addValue(MergeFieldWarteliste.KITA_BESETZT, false);
+		kind2.addValue(MergeFieldWarteliste.KITA_BESETZT, true);
+		kind2.addValue(MergeFieldWarteliste.PENSUM_WUNSCH_MIN, BigDecimal.valueOf(0.1));
+
+		return excelData;
+	}
+}
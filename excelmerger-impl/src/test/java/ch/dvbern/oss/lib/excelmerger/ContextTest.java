@@ -4,8 +4,11 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
+import ch.dvbern.oss.lib.excelmerger.converters.StandardConverters;
 import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
 import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatValMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.SimpleMergeField;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -16,7 +19,9 @@ import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.mock;
 import static org.easymock.EasyMock.niceMock;
 import static org.easymock.EasyMock.replay;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ContextTest {
@@ -46,4 +51,29 @@ public class ContextTest {
 		GroupPlaceholder resultValue = (GroupPlaceholder) result.get();
 		assertEquals(value, resultValue.getRows());
 	}
+
+	@Test
+	public void testOrdinals() {
+		Sheet sheet = mock(Sheet.class);
+		expect(sheet.getFirstRowNum()).andReturn(0);
+		replay(sheet);
+
+		Map<String, MergeField<?>> fields = new HashMap<>();
+		fields.put("a", new SimpleMergeField<>("a", StandardConverters.STRING_CONVERTER));
+		fields.put("b", new RepeatValMergeField<>("b", StandardConverters.STRING_CONVERTER));
+
+		Context context = new Context(niceMock(Workbook.class), sheet, fields);
+
+		assertEquals(-1, context.ordinalOf("unknown"));
+		for (String key : fields.keySet()) {
+			int ordinal = context.ordinalOf(key);
+			assertTrue(ordinal >= 0 && ordinal < fields.size());
+			assertSame(fields.get(key), context.getMergeField(ordinal));
+		}
+
+		int[] offsets = context.resetValueOffsets();
+		assertEquals(fields.size(), offsets.length);
+		offsets[context.ordinalOf("b")] = 3;
+		assertArrayEquals(new int[fields.size()], context.resetValueOffsets());
+	}
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.jupiter.api.Test;
+
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.BASE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.BELEGUNGSPLAN;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.GET_WORKBOOK;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.WARTELISTE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.dumpCells;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.dumpMergedRegions;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.getVal;
+import static java.util.Objects.requireNonNull;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CreateWorkbookFromTemplateTest {
+
+	private static final List<String> TEMPLATES = Arrays.asList(
+		WARTELISTE,
+		BELEGUNGSPLAN,
+		BASE + "sxssf.xlsx",
+		BASE + "copyRowWithNamedRegion.xlsx",
+		BASE + "copyGroupWithMergedRegion.xlsx",
+		BASE + "shiftDataValidations.xlsx");
+
+	@Test
+	public void testPathReadsLikeInputStream() throws Exception {
+		for (String template : TEMPLATES) {
+			Workbook expected = GET_WORKBOOK.apply(template);
+			// die Datei bleibt bis zum Schliessen des Workbooks geoeffnet
+			try (Workbook actual = ExcelMerger.createWorkbookFromTemplate(resource(template))) {
+				assertEquals(expected.getNumberOfSheets(), actual.getNumberOfSheets(), template);
+				for (int i = 0; i < expected.getNumberOfSheets(); i++) {
+					assertSameSheet(expected.getSheetAt(i), actual.getSheetAt(i));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFile() throws Exception {
+		try (Workbook fromFile = ExcelMerger.createWorkbookFromTemplate(resource(WARTELISTE).toFile())) {
+			assertEquals("Stand: {datumAuswertung}", getVal(fromFile.getSheetAt(0), 2, "A"));
+		}
+	}
+
+	@Test
+	public void testTemplateFileIsNotChanged() throws Exception {
+		Path template = Files.createTempFile("template", ".xlsx");
+		try {
+			Files.copy(resource(WARTELISTE), template, StandardCopyOption.REPLACE_EXISTING);
+			byte[] original = Files.readAllBytes(template);
+
+			ByteArrayOutputStream written = new ByteArrayOutputStream();
+			try (Workbook workbook = ExcelMerger.createWorkbookFromTemplate(template)) {
+				workbook.getSheetAt(0).getRow(1).getCell(0).setCellValue("changed");
+				workbook.write(written);
+			}
+
+			assertArrayEquals(original, Files.readAllBytes(template));
+			Workbook reloaded = ExcelMerger.createWorkbookFromTemplate(new ByteArrayInputStream(written.toByteArray()));
+			assertEquals("changed", getVal(reloaded.getSheetAt(0), 2, "A"));
+		} finally {
+			Files.delete(template);
+		}
+	}
+
+	@Test
+	public void testXlsTemplateFileIsNotChanged() throws Exception {
+		Path template = Files.createTempFile("template", ".xls");
+		try {
+			try (Workbook hssf = new HSSFWorkbook(); OutputStream out = Files.newOutputStream(template)) {
+				hssf.createSheet("Template").createRow(0).createCell(0).setCellValue("{name}");
+				hssf.write(out);
+			}
+			byte[] original = Files.readAllBytes(template);
+
+			ByteArrayOutputStream written = new ByteArrayOutputStream();
+			try (Workbook workbook = ExcelMerger.createWorkbookFromTemplate(template)) {
+				assertTrue(workbook instanceof HSSFWorkbook);
+				workbook.getSheetAt(0).getRow(0).getCell(0).setCellValue("changed");
+				workbook.write(written);
+			}
+
+			assertArrayEquals(original, Files.readAllBytes(template));
+			Workbook reloaded = ExcelMerger.createWorkbookFromTemplate(new ByteArrayInputStream(written.toByteArray()));
+			assertEquals("changed", getVal(reloaded.getSheetAt(0), 1, "A"));
+		} finally {
+			Files.delete(template);
+		}
+	}
+
+	@Test
+	public void testNonSeekableInputStream() throws Exception {
+		try (InputStream is = new FileInputStream(resource(WARTELISTE).toFile())) {
+			Workbook workbook = ExcelMerger.createWorkbookFromTemplate(is);
+
+			assertSameSheet(GET_WORKBOOK.apply(WARTELISTE).getSheetAt(0), workbook.getSheetAt(0));
+		}
+	}
+
+	@Test
+	public void testInvalidFile() throws Exception {
+		Path invalid = Files.write(Files.createTempFile("invalid", ".xlsx"), new byte[] { 1, 2, 3 });
+		try {
+			assertThrows(ExcelTemplateParseException.class, () -> ExcelMerger.createWorkbookFromTemplate(invalid));
+		} finally {
+			Files.delete(invalid);
+		}
+
+		assertThrows(ExcelTemplateParseException.class,
+			() -> ExcelMerger.createWorkbookFromTemplate(invalid));
+	}
+
+	private void assertSameSheet(@Nonnull Sheet expected, @Nonnull Sheet actual) {
+		assertEquals(expected.getSheetName(), actual.getSheetName());
+		assertEquals(dumpCells(expected), dumpCells(actual));
+		assertEquals(dumpMergedRegions(expected), dumpMergedRegions(actual));
+	}
+
+	@Nonnull
+	private static Path resource(@Nonnull String name) throws URISyntaxException {
+		URL url = Thread.currentThread().getContextClassLoader().getResource(name);
+
+		return Paths.get(requireNonNull(url).toURI());
+	}
+}
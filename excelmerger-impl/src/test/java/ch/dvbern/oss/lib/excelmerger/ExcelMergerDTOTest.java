@@ -0,0 +1,316 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import ch.dvbern.oss.lib.excelmerger.converters.Converter;
+import ch.dvbern.oss.lib.excelmerger.converters.StandardConverters;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatColMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatValMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.SimpleMergeField;
+import com.sun.management.ThreadMXBean;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExcelMergerDTOTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ExcelMergerDTOTest.class);
+
+	private static final SimpleMergeField<String> NAME =
+		new SimpleMergeField<>("name", StandardConverters.STRING_CONVERTER);
+	private static final RepeatColMergeField<String> TITEL =
+		new RepeatColMergeField<>("titel", StandardConverters.STRING_CONVERTER);
+	private static final RepeatValMergeField<Long> WERT =
+		new RepeatValMergeField<>("wert", StandardConverters.LONG_CONVERTER);
+	private static final RepeatRowMergeField GRUPPE = new RepeatRowMergeField("gruppe");
+	private static final SimpleMergeField<Integer> ANZAHL =
+		new SimpleMergeField<>("anzahl", StandardConverters.INTEGER_CONVERTER);
+	private static final SimpleMergeField<BigDecimal> BETRAG =
+		new SimpleMergeField<>("betrag", StandardConverters.BIGDECIMAL_CONVERTER);
+	private static final SimpleMergeField<Integer> EIGENES_FORMAT = new SimpleMergeField<>("eigenesFormat",
+		(Converter<Integer>) (cell, pattern, value) -> cell.setCellValue("#" + value));
+
+	@Test
+	public void testValues() {
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		dto.addValue(NAME, "Muster");
+		dto.addValue(WERT, 1L);
+		dto.addValue(WERT, null);
+		dto.addValue(WERT, 3L);
+
+		assertEquals("Muster", dto.getValue(NAME));
+		assertTrue(dto.hasValue(NAME, 0));
+		assertFalse(dto.hasValue(NAME, 1));
+		assertNull(dto.getValue(NAME, 1));
+
+		assertEquals(Long.valueOf(1), dto.getValue(WERT, 0));
+		assertTrue(dto.hasValue(WERT, 1));
+		assertNull(dto.getValue(WERT, 1));
+		assertEquals(Long.valueOf(3), dto.getValue(WERT, 2));
+		assertFalse(dto.hasValue(WERT, 3));
+
+		assertFalse(dto.hasValue(TITEL, 0));
+		assertNull(dto.getValue(TITEL));
+	}
+
+	@Test
+	public void testNullValueIsAValue() {
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		dto.addValue(NAME, null);
+
+		assertTrue(dto.hasValue(NAME, 0));
+		assertNull(dto.getValue(NAME));
+	}
+
+	@Test
+	public void testManyFields() {
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		SimpleMergeField<?>[] fields = new SimpleMergeField<?>[100];
+		for (int i = 0; i < fields.length; i++) {
+			SimpleMergeField<Integer> field = new SimpleMergeField<>("feld" + i, StandardConverters.INTEGER_CONVERTER);
+			fields[i] = field;
+			dto.addValue(field, i);
+		}
+
+		for (int i = 0; i < fields.length; i++) {
+			assertEquals(i, dto.getValue(fields[i]));
+		}
+	}
+
+	@Test
+	public void testPrimitiveValues() {
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		dto.addInt(ANZAHL, 42);
+		dto.addLong(WERT, 1L);
+		dto.addLong(WERT, 2L);
+		dto.addDouble(BETRAG, 12.5);
+
+		assertEquals(Integer.valueOf(42), dto.getValue(ANZAHL));
+		assertEquals(Long.valueOf(1), dto.getValue(WERT, 0));
+		// weitere Werte werden geboxt gespeichert
+		assertEquals(Long.valueOf(2), dto.getValue(WERT, 1));
+		assertFalse(dto.hasValue(WERT, 2));
+		assertEquals(BigDecimal.valueOf(12.5), dto.getValue(BETRAG));
+
+		dto.addValue(ANZAHL, 43);
+		assertEquals(Integer.valueOf(42), dto.getValue(ANZAHL, 0));
+		assertEquals(Integer.valueOf(43), dto.getValue(ANZAHL, 1));
+	}
+
+	@Test
+	public void testManyPrimitiveFields() {
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		List<SimpleMergeField<Integer>> fields = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			SimpleMergeField<Integer> field = new SimpleMergeField<>("feld" + i, StandardConverters.INTEGER_CONVERTER);
+			fields.add(field);
+			dto.addInt(field, i);
+			dto.addValue(NAME, "Name " + i);
+		}
+
+		for (int i = 0; i < fields.size(); i++) {
+			assertEquals(Integer.valueOf(i), dto.getValue(fields.get(i)));
+			assertEquals("Name " + i, dto.getValue(NAME, i));
+		}
+	}
+
+	@Test
+	public void testWritePrimitiveValue() {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		dto.addInt(ANZAHL, 42);
+		dto.addDouble(BETRAG, 12.5);
+		dto.addInt(EIGENES_FORMAT, 7);
+
+		Cell cell = ExcelMergerTestUtil.createCell(wb, "{anzahl}");
+		assertTrue(dto.writeValue(cell, "{anzahl}", ANZAHL, 0, false));
+		assertEquals(42, cell.getNumericCellValue());
+
+		cell.setCellValue("Total: {betrag}");
+		assertTrue(dto.writeValue(cell, "{betrag}", BETRAG, 0, false));
+		assertEquals("Total: 12.5", cell.getStringCellValue());
+
+		// der Converter kann keine ungeboxten Werte schreiben -> wie bisher ueber getValue
+		assertFalse(dto.writeValue(cell, "{eigenesFormat}", EIGENES_FORMAT, 0, false));
+		assertFalse(dto.writeValue(cell, "{anzahl}", ANZAHL, 1, false));
+		assertFalse(dto.writeValue(cell, "{name}", NAME, 0, false));
+	}
+
+	@Test
+	public void testGetDouble() {
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		dto.addInt(ANZAHL, 42);
+		dto.addDouble(BETRAG, 12.5);
+		dto.addValue(NAME, "Muster");
+		dto.addValue(WERT, 1L);
+		dto.addValue(WERT, null);
+		dto.addValue(WERT, 3L);
+
+		assertEquals(42, dto.getDouble(ANZAHL, 0));
+		assertEquals(12.5, dto.getDouble(BETRAG, 0));
+		assertEquals(1, dto.getDouble(WERT, 0));
+		assertEquals(3, dto.getDouble(WERT, 2));
+
+		assertTrue(Double.isNaN(dto.getDouble(WERT, 1)));
+		assertTrue(Double.isNaN(dto.getDouble(WERT, 3)));
+		assertTrue(Double.isNaN(dto.getDouble(ANZAHL, 1)));
+		assertTrue(Double.isNaN(dto.getDouble(NAME, 0)));
+		assertTrue(Double.isNaN(dto.getDouble(EIGENES_FORMAT, 0)));
+	}
+
+	@Test
+	public void testClear() {
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		dto.addInt(ANZAHL, 42);
+		dto.addValue(NAME, "Muster");
+		dto.createGroup(GRUPPE);
+
+		dto.clear();
+
+		assertFalse(dto.hasValue(ANZAHL, 0));
+		assertFalse(dto.hasValue(NAME, 0));
+		assertNull(dto.getGroup(GRUPPE));
+
+		dto.addLong(WERT, 3L);
+		assertEquals(Long.valueOf(3), dto.getValue(WERT));
+	}
+
+	/**
+	 * Ein wiederverwendetes DTO mit ungeboxten Werten fuellen braucht keinen Speicher, mit addValue wird jeder Wert
+	 * geboxt.
+	 */
+	@Test
+	public void testAddPrimitiveDoesNotAllocate() {
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		int rows = 10_000;
+		long primitiveBytes = 0;
+		long boxedBytes = 0;
+
+		for (int iteration = 0; iteration < 5; iteration++) {
+			long start = threads.getCurrentThreadAllocatedBytes();
+			for (int row = 0; row < rows; row++) {
+				dto.clear();
+				dto.addInt(ANZAHL, row * 1_000);
+				dto.addDouble(BETRAG, row * 0.5);
+			}
+			primitiveBytes = threads.getCurrentThreadAllocatedBytes() - start;
+
+			start = threads.getCurrentThreadAllocatedBytes();
+			for (int row = 0; row < rows; row++) {
+				dto.clear();
+				dto.addValue(ANZAHL, row * 1_000);
+				dto.addValue(BETRAG, BigDecimal.valueOf(row * 0.5));
+			}
+			boxedBytes = threads.getCurrentThreadAllocatedBytes() - start;
+		}
+
+		LOG.info("Allocated bytes per row: addInt/addDouble {}, addValue {}", primitiveBytes / rows,
+			boxedBytes / rows);
+
+		assertEquals(0, primitiveBytes / rows);
+	}
+
+	@Test
+	public void testGroups() {
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		assertNull(dto.getGroup(GRUPPE));
+
+		ExcelMergerDTO first = dto.createGroup(GRUPPE);
+		ExcelMergerDTO second = dto.createGroup(GRUPPE);
+
+		List<ExcelMergerDTO> group = dto.getGroup(GRUPPE);
+		assertEquals(Arrays.asList(first, second), group);
+		assertSame(first, group.get(0));
+
+		assertThrows(IllegalArgumentException.class, () -> dto.createGroup(NAME));
+	}
+
+	/**
+	 * Eine Ueberschrift und eine Daten-Zeile mit vielen Spalten, die Dauer misst der ExcelMergerDTOBenchmark
+	 */
+	@Test
+	public void testWideHeader() throws ExcelMergeException {
+		int width = 2_000;
+		Sheet sheet = mergeWideHeader(width);
+
+		assertEquals("Titel 0", sheet.getRow(0).getCell(0).getStringCellValue());
+		assertEquals("Titel " + (width - 1), sheet.getRow(0).getCell(width - 1).getStringCellValue());
+		assertEquals(width - 1, sheet.getRow(1).getCell(width - 1).getNumericCellValue());
+	}
+
+	@Test
+	public void testOffsetAccess() {
+		int width = 25_000;
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		for (long i = 0; i < width; i++) {
+			dto.addValue(WERT, i);
+		}
+
+		long sum = 0;
+		int count = 0;
+		for (int i = 0; dto.hasValue(WERT, i); i++) {
+			sum += dto.getValue(WERT, i);
+			count++;
+		}
+
+		assertEquals(width, count);
+		assertEquals((long) width * (width - 1) / 2, sum);
+		assertNull(dto.getValue(WERT, width));
+	}
+
+	@Nonnull
+	private Sheet mergeWideHeader(int width) throws ExcelMergeException {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		Sheet sheet = wb.createSheet("wide");
+		Row header = sheet.createRow(0);
+		Row data = sheet.createRow(1);
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+
+		for (int i = 0; i < width; i++) {
+			header.createCell(i).setCellValue("{titel}");
+			data.createCell(i).setCellValue("{wert}");
+			dto.addValue(TITEL, "Titel " + i);
+			dto.addValue(WERT, (long) i);
+		}
+
+		List<MergeField<?>> fields = Arrays.asList(TITEL, WERT);
+		ExcelMerger.mergeData(sheet, fields, dto, false);
+
+		return sheet;
+	}
+}
@@ -35,6 +35,8 @@ import org.junit.jupiter.api.Test;
 import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.BELEGUNGSPLAN;
 import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.GET_WORKBOOK;
 import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.WARTELISTE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.dumpCells;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.dumpMergedRegions;
 import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.getVal;
 import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.writeWorkbookToFile;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -81,6 +83,88 @@ public class ExcelMergerMergeGroupTest {
 		newMerger.test("improved");
 	}
 
+	@Test
+	public void testLayoutSingleGroup_shouldHandleZeroRows() throws Exception {
+		Tester newMerger = new Tester(new SimpleGroup(0, ExcelMerger::layoutSubGroup));
+		newMerger.test("layout");
+	}
+
+	@Test
+	public void testLayoutSingleGroup_shouldHandleMultipleRows() throws Exception {
+		Tester newMerger = new Tester(new SimpleGroup(5, ExcelMerger::layoutSubGroup));
+		newMerger.test("layout");
+	}
+
+	@Test
+	public void testLayoutGroupWithMultipleRows_shouldHandleZeroGroups() throws Exception {
+		Tester newMerger = new Tester(new GroupWithMultipleRows(0, ExcelMerger::layoutSubGroup));
+		newMerger.test("layout");
+	}
+
+	@Test
+	public void testLayoutGroupWithMultipleRows_shouldHandleMultipleGroups() throws Exception {
+		Tester newMerger = new Tester(new GroupWithMultipleRows(3, ExcelMerger::layoutSubGroup));
+		newMerger.test("layout");
+	}
+
+	@Test
+	public void testLayoutNestedGroups() throws Exception {
+		Tester newMerger = new Tester(new NestedGroups(3, 4, ExcelMerger::layoutSubGroup));
+		newMerger.test("layout");
+	}
+
+	@Test
+	public void testLayoutEqualsMergeSubGroup_nestedGroups() throws Exception {
+		Sheet expected = mergeMixedNestedGroups(ExcelMerger::mergeSubGroup);
+		Sheet actual = mergeMixedNestedGroups(ExcelMerger::layoutSubGroup);
+
+		assertEquals(expected.getLastRowNum(), actual.getLastRowNum());
+		assertEquals(dumpCells(expected), dumpCells(actual));
+		assertEquals(dumpMergedRegions(expected), dumpMergedRegions(actual));
+	}
+
+	@Test
+	public void testLayoutEqualsMergeSubGroup_formulas() throws Exception {
+		SimpleGroup expectedBuilder = new SimpleGroup(4, ExcelMerger::mergeSubGroup);
+		new Tester(expectedBuilder).test("improved");
+		SimpleGroup actualBuilder = new SimpleGroup(4, ExcelMerger::layoutSubGroup);
+		new Tester(actualBuilder).test("layout");
+
+		assertEquals(dumpCells(expectedBuilder.getSheet()), dumpCells(actualBuilder.getSheet()));
+		assertEquals(dumpMergedRegions(expectedBuilder.getSheet()), dumpMergedRegions(actualBuilder.getSheet()));
+	}
+
+	/**
+	 * Gruppen mit mehreren, einem und ohne verschachtelte Kinder-Gruppen
+	 */
+	@Nonnull
+	private static Sheet mergeMixedNestedGroups(@Nonnull ExcelMerger.GroupMerger merger) throws Exception {
+		Workbook wb = GET_WORKBOOK.apply(BELEGUNGSPLAN);
+		Map<String, MergeField<?>> fieldMap = new HashMap<>();
+		MergeFieldProvider.toMergeFields(MergeFieldBelegungsplan.values())
+			.forEach(field -> fieldMap.put(field.getKey(), field));
+
+		ExcelMergerDTO excelData = new ExcelMergerDTO();
+		int[] numKinder = { 2, 0, 1, 3 };
+		for (int i = 0; i < numKinder.length; i++) {
+			ExcelMergerDTO group = excelData.createGroup(MergeFieldBelegungsplan.REPEAT_GROUP);
+			group.addValue(MergeFieldBelegungsplan.GRUPPEN_NAME, "Gruppe " + i);
+			for (int j = 0; j < numKinder[i]; j++) {
+				ExcelMergerDTO kind = group.createGroup(MergeFieldBelegungsplan.REPEAT_KIND);
+				kind.addValue(MergeFieldBelegungsplan.NAME, "Kind " + i + '.' + j);
+				kind.addValue(MergeFieldBelegungsplan.MONTAG, "X");
+				kind.addValue(MergeFieldBelegungsplan.MONTAG, "Y");
+			}
+		}
+
+		Context ctx = new Context(wb, wb.getSheetAt(0), fieldMap, 5);
+		Optional<GroupPlaceholder> group = ctx.detectGroup();
+		assertTrue(group.isPresent());
+		ExcelMerger.mergeGroup(ctx, group.get(), excelData, ctx.currentRow(), merger);
+
+		return ctx.getSheet();
+	}
+
 	private static class SimpleGroup extends ContextBuilder {
 
 		public SimpleGroup(int numRowsTest, @Nonnull ExcelMerger.GroupMerger merger) {
@@ -19,23 +19,35 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
 
+import ch.dvbern.oss.lib.excelmerger.mergefields.DefaultMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField.Type;
 import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldBelegungsplan;
 import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldProvider;
 import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste;
+import ch.dvbern.oss.lib.excelmerger.mergefields.SimpleMergeField;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.Test;
 
 import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.BELEGUNGSPLAN;
 import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.GET_WORKBOOK;
 import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.WARTELISTE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.createCell;
 import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.getNumVal;
 import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.getVal;
 import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.named;
 import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.writeWorkbookToFile;
 import static ch.dvbern.oss.lib.excelmerger.converters.ConverterUtil.DEFAULT_DATE_FORMAT;
+import static ch.dvbern.oss.lib.excelmerger.converters.StandardConverters.DO_NOTHING_CONVERTER;
+import static ch.dvbern.oss.lib.excelmerger.converters.StandardConverters.INTEGER_CONVERTER;
+import static ch.dvbern.oss.lib.excelmerger.converters.StandardConverters.STRING_CONVERTER;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -197,4 +209,86 @@ public class ExcelMergerTest {
 
 		writeWorkbookToFile(wb, "belegungsplan-filled.xlsx");
 	}
+
+	@Test
+	public void testMultiplePlaceholdersInOneCell() {
+		Workbook wb = new XSSFWorkbook();
+		Cell cell = createCell(wb, "{name} {vorname}, {ort} ({anzahl}) {name} {unknown}");
+
+		SimpleMergeField<String> name = new SimpleMergeField<>("name", STRING_CONVERTER);
+		SimpleMergeField<String> vorname = new SimpleMergeField<>("vorname", STRING_CONVERTER);
+		SimpleMergeField<String> ort = new SimpleMergeField<>("ort", STRING_CONVERTER);
+		SimpleMergeField<Integer> anzahl = new SimpleMergeField<>("anzahl", INTEGER_CONVERTER);
+
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		dto.addValue(name, "Lovelace");
+		dto.addValue(vorname, "Ada");
+		dto.addValue(anzahl, 3);
+
+		ExcelMerger.mergeRow(createContext(wb, cell, name, vorname, ort, anzahl), dto, cell.getRow());
+
+		assertEquals("Lovelace Ada,  (3) Lovelace {unknown}", cell.getStringCellValue());
+	}
+
+	@Test
+	public void testMultiplePlaceholdersWithCellConverter() {
+		Workbook wb = new XSSFWorkbook();
+		Cell cell = createCell(wb, "{name}: {keep}");
+
+		SimpleMergeField<String> name = new SimpleMergeField<>("name", STRING_CONVERTER);
+		SimpleMergeField<String> keep = new SimpleMergeField<>("keep", DO_NOTHING_CONVERTER);
+
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		dto.addValue(name, "Lovelace");
+		dto.addValue(keep, "ignored");
+
+		ExcelMerger.mergeRow(createContext(wb, cell, name, keep), dto, cell.getRow());
+
+		assertEquals("Lovelace: {keep}", cell.getStringCellValue());
+	}
+
+	@Test
+	public void testPageBreakWithOtherPlaceholders() {
+		Workbook wb = new XSSFWorkbook();
+		Cell cell = createCell(wb, "{name} {pagebreak}");
+
+		SimpleMergeField<String> name = new SimpleMergeField<>("name", STRING_CONVERTER);
+		DefaultMergeField<String> pageBreak = new DefaultMergeField<>("pagebreak", Type.PAGE_BREAK, STRING_CONVERTER);
+
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		dto.addValue(name, "Lovelace");
+
+		ExcelMerger.mergeRow(createContext(wb, cell, name, pageBreak), dto, cell.getRow());
+
+		assertEquals("Lovelace ", cell.getStringCellValue());
+		assertTrue(cell.getSheet().isRowBroken(cell.getRowIndex()));
+		assertFalse(cell.getSheet().isColumnHidden(cell.getColumnIndex()));
+	}
+
+	@Test
+	public void testPageBreakWithCellConverter() {
+		Workbook wb = new XSSFWorkbook();
+		Cell cell = createCell(wb, "{name} {pagebreak}");
+
+		SimpleMergeField<String> name = new SimpleMergeField<>("name", STRING_CONVERTER);
+		DefaultMergeField<String> pageBreak =
+			new DefaultMergeField<>("pagebreak", Type.PAGE_BREAK, DO_NOTHING_CONVERTER);
+
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		dto.addValue(name, "Lovelace");
+
+		ExcelMerger.mergeRow(createContext(wb, cell, name, pageBreak), dto, cell.getRow());
+
+		assertEquals("Lovelace {pagebreak}", cell.getStringCellValue());
+		assertTrue(cell.getSheet().isRowBroken(cell.getRowIndex()));
+	}
+
+	private Context createContext(Workbook wb, Cell cell, MergeField<?>... fields) {
+		Map<String, MergeField<?>> fieldMap = new HashMap<>();
+		for (MergeField<?> field : fields) {
+			fieldMap.put(field.getKey(), field);
+		}
+
+		return new Context(wb, cell.getSheet(), fieldMap);
+	}
 }
@@ -15,14 +15,23 @@
 
 package ch.dvbern.oss.lib.excelmerger;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import javax.annotation.Nonnull;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.CreationHelper;
@@ -89,6 +98,67 @@ public final class ExcelMergerTestUtil {
 		cell.setCellStyle(cellStyle);
 	}
 
+	/**
+	 * @return alle Zellen des Sheets als Text (Adresse, Typ, Wert bzw. Formel und Style), z.B. um zwei Sheets zu
+	 * vergleichen
+	 */
+	@Nonnull
+	static List<String> dumpCells(@Nonnull Sheet sheet) {
+		List<String> cells = new ArrayList<>();
+		for (Row row : sheet) {
+			for (Cell cell : row) {
+				cells.add(cell.getAddress() + " " + cell.getCellType() + ' ' + getText(cell) + " style="
+					+ cell.getCellStyle().getIndex());
+			}
+		}
+
+		return cells;
+	}
+
+	@Nonnull
+	static List<String> dumpMergedRegions(@Nonnull Sheet sheet) {
+		return sheet.getMergedRegions().stream()
+			.map(region -> region.formatAsString())
+			.sorted()
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return der Inhalt aller Dateien des geschriebenen Workbooks (Name und Bytes), ohne die Zeitstempel des Zip-Files.
+	 * Zwei Workbooks, die zu unterschiedlichen Zeiten geschrieben werden, ergeben so dieselben Bytes.
+	 */
+	@Nonnull
+	static byte[] toContentBytes(@Nonnull Workbook workbook) throws IOException {
+		ByteArrayOutputStream written = new ByteArrayOutputStream();
+		workbook.write(written);
+
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(written.toByteArray()))) {
+			for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+				content.write(entry.getName().getBytes(StandardCharsets.UTF_8));
+				IOUtils.copy(zip, content);
+			}
+		}
+
+		return content.toByteArray();
+	}
+
+	@Nonnull
+	private static String getText(@Nonnull Cell cell) {
+		switch (cell.getCellType()) {
+		case STRING:
+			return cell.getStringCellValue();
+		case NUMERIC:
+			return String.valueOf(cell.getNumericCellValue());
+		case BOOLEAN:
+			return String.valueOf(cell.getBooleanCellValue());
+		case FORMULA:
+			return '=' + cell.getCellFormula();
+		default:
+			return "";
+		}
+	}
+
 	@Nonnull
 	public static String writeWorkbookToFile(@Nonnull Workbook wb, @Nonnull String sheetName) throws IOException {
 		String name = "target/" + sheetName;
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import ch.dvbern.oss.lib.excelmerger.converters.StandardConverters;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldProvider;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.SimpleMergeField;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.junit.jupiter.api.Test;
+
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.BASE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.GET_WORKBOOK;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.WARTELISTE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Zeichnet die Events mit einer JFR-Recording in eine Datei auf und liest sie wieder ein
+ */
+public class MergeEventsTest {
+
+	private static final int KINDER = 20;
+	private static final int ROWS = 5;
+
+	private static final SimpleMergeField<Integer> VALUE_1 =
+		new SimpleMergeField<>("value1", StandardConverters.INTEGER_CONVERTER);
+	private static final SimpleMergeField<Integer> VALUE_2 =
+		new SimpleMergeField<>("value2", StandardConverters.INTEGER_CONVERTER);
+	private static final RepeatRowMergeField REPEAT_ROW = new RepeatRowMergeField("row");
+
+	private final List<MergeField<?>> fields = MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values());
+
+	@Test
+	public void testExcelMergerEvents() throws Exception {
+		List<RecordedEvent> events = record(() -> {
+			Workbook workbook = GET_WORKBOOK.apply(WARTELISTE);
+			Sheet sheet = workbook.getSheetAt(0);
+			CompiledTemplate template = CompiledTemplate.compile(sheet, fields);
+			ExcelMerger.mergeData(sheet, SheetMerge.of(template, createData()), MergeOptions.defaults());
+		});
+
+		RecordedEvent parse = single(events, TemplateParseEvent.NAME);
+		assertEquals("Warteliste", parse.getString("sheet"));
+		assertTrue(parse.getInt("placeholders") > 0);
+
+		RecordedEvent merge = single(events, MergeSheetEvent.NAME);
+		assertEquals("Warteliste", merge.getString("sheet"));
+		assertFalse(merge.getBoolean("streaming"));
+		assertEquals(merge.getInt("templateRows") + KINDER - 1, merge.getInt("rows"));
+		assertFalse(merge.getDuration().isNegative());
+
+		RecordedEvent group = single(events, GroupExpansionEvent.NAME);
+		assertEquals(MergeFieldWarteliste.REPEAT_KIND.getMergeField().getKey(), group.getString("group"));
+		assertEquals(KINDER, group.getInt("instances"));
+		assertEquals(1, group.getInt("templateRows"));
+
+		List<RecordedEvent> shifts = filter(events, RowShiftEvent.NAME);
+		assertFalse(shifts.isEmpty());
+		assertEquals(KINDER - 1, shifts.stream().mapToInt(shift -> shift.getInt("offset")).sum());
+
+		RecordedEvent evaluation = single(events, FormulaEvaluationEvent.NAME);
+		assertEquals("Warteliste", evaluation.getString("sheets"));
+		assertTrue(evaluation.getInt("formulas") > 0);
+	}
+
+	@Test
+	public void testRowFillerEvents() throws Exception {
+		List<RecordedEvent> events = record(() -> {
+			Workbook workbook = GET_WORKBOOK.apply(BASE + "sxssf.xlsx");
+			RowFiller rowFiller = RowFiller.initRowFiller((XSSFSheet) workbook.getSheetAt(0),
+				Arrays.asList(VALUE_1, VALUE_2, REPEAT_ROW));
+			for (int i = 0; i < ROWS; i++) {
+				rowFiller.addInt(VALUE_1, i)
+					.addInt(VALUE_2, 2)
+					.fillRow();
+			}
+			rowFiller.finish();
+			rowFiller.getSheet().getWorkbook().dispose();
+		});
+
+		RecordedEvent parse = single(events, TemplateParseEvent.NAME);
+		assertEquals(1, parse.getInt("rows"));
+		assertEquals(2, parse.getInt("placeholders"));
+
+		RecordedEvent merge = single(events, MergeSheetEvent.NAME);
+		assertTrue(merge.getBoolean("streaming"));
+		assertEquals(merge.getInt("templateRows") + ROWS - 1, merge.getInt("rows"));
+
+		assertTrue(filter(events, GroupExpansionEvent.NAME).isEmpty());
+		assertTrue(filter(events, RowShiftEvent.NAME).isEmpty());
+	}
+
+	/**
+	 * Ohne das Modul jdk.jfr werden die Event-Klassen nie geladen, alle Events sind No-Ops
+	 */
+	@Test
+	public void testWithoutJfr() throws Exception {
+		assertTrue(MergeEvents.isAvailable());
+
+		ClassLoader loader = new WithoutJfrClassLoader();
+		Class<?> events = Class.forName(MergeEvents.class.getName(), true, loader);
+		assertFalse((Boolean) invoke(events, "isAvailable", null));
+
+		Class<?> eventInterface = Class.forName(MergeEvents.class.getName() + "$MergeEvent", false, loader);
+		for (String factory : Arrays.asList("mergeSheet", "groupExpansion", "rowShift", "formulaEvaluation",
+			"templateParse")) {
+			Object event = invoke(events, factory, null);
+			invoke(eventInterface, "begin", event);
+			assertFalse((Boolean) invoke(eventInterface, "isEnabled", event), factory);
+			assertFalse((Boolean) invoke(eventInterface, "shouldCommit", event), factory);
+			invoke(eventInterface, "commit", event);
+		}
+	}
+
+	@Nullable
+	private static Object invoke(@Nonnull Class<?> type, @Nonnull String name, @Nullable Object target)
+		throws ReflectiveOperationException {
+		Method method = type.getDeclaredMethod(name);
+		method.setAccessible(true);
+
+		return method.invoke(target);
+	}
+
+	/**
+	 * Laedt die Klassen des ExcelMergers selbst und kennt jdk.jfr nicht, wie eine Runtime ohne JFR
+	 */
+	private static final class WithoutJfrClassLoader extends ClassLoader {
+
+		private static final String PACKAGE = MergeEvents.class.getPackage().getName() + '.';
+
+		WithoutJfrClassLoader() {
+			super(MergeEventsTest.class.getClassLoader());
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (name.startsWith("jdk.jfr.")) {
+				throw new ClassNotFoundException(name);
+			}
+
+			if (!name.startsWith(PACKAGE)) {
+				return super.loadClass(name, resolve);
+			}
+
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> loaded = findLoadedClass(name);
+				if (loaded != null) {
+					return loaded;
+				}
+
+				try (InputStream is = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+					if (is == null) {
+						throw new ClassNotFoundException(name);
+					}
+					byte[] bytes = IOUtils.toByteArray(is);
+
+					return defineClass(name, bytes, 0, bytes.length);
+				} catch (IOException e) {
+					throw new ClassNotFoundException(name, e);
+				}
+			}
+		}
+	}
+
+	@Nonnull
+	private List<RecordedEvent> record(@Nonnull Procedure<Exception> merge) throws Exception {
+		Path file = Files.createTempFile("excelmerger", ".jfr");
+		try (Recording recording = new Recording()) {
+			for (String name : Arrays.asList(MergeSheetEvent.NAME, GroupExpansionEvent.NAME, RowShiftEvent.NAME,
+				FormulaEvaluationEvent.NAME, TemplateParseEvent.NAME)) {
+				recording.enable(name);
+			}
+			recording.start();
+			merge.execute();
+			recording.stop();
+			recording.dump(file);
+
+			return RecordingFile.readAllEvents(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Nonnull
+	private List<RecordedEvent> filter(@Nonnull List<RecordedEvent> events, @Nonnull String name) {
+		return events.stream()
+			.filter(event -> event.getEventType().getName().equals(name))
+			.collect(Collectors.toList());
+	}
+
+	@Nonnull
+	private RecordedEvent single(@Nonnull List<RecordedEvent> events, @Nonnull String name) {
+		List<RecordedEvent> filtered = filter(events, name);
+		assertEquals(1, filtered.size(), name);
+
+		return filtered.get(0);
+	}
+
+	@Nonnull
+	private ExcelMergerDTO createData() {
+		ExcelMergerDTO data = new ExcelMergerDTO();
+		data.addValue(MergeFieldWarteliste.KITA_NAME, "Kita");
+		for (int i = 0; i < KINDER; i++) {
+			ExcelMergerDTO kind = data.createGroup(MergeFieldWarteliste.REPEAT_KIND);
+			kind.addValue(MergeFieldWarteliste.VORNAME, "Vorname " + i);
+			kind.addValue(MergeFieldWarteliste.NAME, "Name " + i);
+		}
+
+		return data;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldProvider;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.jupiter.api.Test;
+
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.GET_WORKBOOK;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.WARTELISTE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.toContentBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MergeOptionsTest {
+
+	private final List<MergeField<?>> fields = MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values());
+
+	@Test
+	public void testDefaults() throws Exception {
+		MergeOptions options = MergeOptions.defaults();
+		assertTrue(options.isEvaluate());
+		assertNull(options.getAutoSizer());
+		assertSame(MergeListener.NO_OP, options.getListener());
+
+		Workbook expected = GET_WORKBOOK.apply(WARTELISTE);
+		ExcelMerger.mergeData(expected.getSheetAt(0), fields, createData());
+
+		Workbook actual = GET_WORKBOOK.apply(WARTELISTE);
+		ExcelMerger.mergeData(actual.getSheetAt(0), SheetMerge.of(fields, createData()), options);
+
+		assertArrayEquals(toContentBytes(expected), toContentBytes(actual));
+	}
+
+	@Test
+	public void testWithoutEvaluation() throws Exception {
+		MergeStatistics statistics = MergeStatistics.create();
+		MergeOptions options = MergeOptions.defaults().withListener(statistics).withoutEvaluation();
+		assertFalse(options.isEvaluate());
+		assertSame(statistics, options.getListener());
+		assertTrue(MergeOptions.defaults().isEvaluate());
+
+		Workbook expected = GET_WORKBOOK.apply(WARTELISTE);
+		ExcelMerger.mergeData(expected.getSheetAt(0), fields, createData(), false);
+
+		Workbook actual = GET_WORKBOOK.apply(WARTELISTE);
+		ExcelMerger.mergeData(actual.getSheetAt(0), SheetMerge.of(fields, createData()), options);
+
+		assertArrayEquals(toContentBytes(expected), toContentBytes(actual));
+	}
+
+	@Nonnull
+	private ExcelMergerDTO createData() {
+		ExcelMergerDTO data = new ExcelMergerDTO();
+		data.addValue(MergeFieldWarteliste.KITA_NAME, "Kita");
+		for (int i = 0; i < 10; i++) {
+			ExcelMergerDTO kind = data.createGroup(MergeFieldWarteliste.REPEAT_KIND);
+			kind.addValue(MergeFieldWarteliste.VORNAME, "Vorname " + i);
+			kind.addValue(MergeFieldWarteliste.NAME, "Name " + i);
+			kind.addValue(MergeFieldWarteliste.PRIORITAET, (long) i * 1000);
+		}
+
+		return data;
+	}
+}
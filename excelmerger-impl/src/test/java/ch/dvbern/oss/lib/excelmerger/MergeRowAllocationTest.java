@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import ch.dvbern.oss.lib.excelmerger.converters.StandardConverters;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.SimpleMergeField;
+import com.sun.management.ThreadMXBean;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Prueft, dass {@link ExcelMerger#mergeRow(Context, ExcelMergerDTO, Row)} fuer einfache Felder keine eigenen Objekte
+ * erzeugt: es wird nur so viel Speicher alloziert wie fuer dieselben Zugriffe auf die POI-Zellen. Dasselbe gilt fuer
+ * die {@link Aggregate} eines {@link RowFiller}s.
+ */
+public class MergeRowAllocationTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MergeRowAllocationTest.class);
+
+	private static final int ROWS = 2_000;
+	private static final int COLUMNS = 10;
+	private static final int ITERATIONS = 5;
+
+	/**
+	 * Kleiner als das kleinste Objekt (Header + Referenz), d.h. es wird kein Objekt pro Zeile erzeugt
+	 */
+	private static final int MAX_BYTES_PER_ROW = 8;
+
+	private static final SimpleMergeField<Integer> VALUE_1 =
+		new SimpleMergeField<>("value1", StandardConverters.INTEGER_CONVERTER);
+	private static final SimpleMergeField<Integer> VALUE_2 =
+		new SimpleMergeField<>("value2", StandardConverters.INTEGER_CONVERTER);
+	private static final RepeatRowMergeField REPEAT_ROW = new RepeatRowMergeField("row");
+
+	@Test
+	public void testMergeRowDoesNotAllocate() {
+		List<MergeField<?>> fields = new ArrayList<>();
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		for (int i = 0; i < COLUMNS; i++) {
+			SimpleMergeField<Long> field = new SimpleMergeField<>("feld" + i, StandardConverters.LONG_CONVERTER);
+			fields.add(field);
+			dto.addValue(field, (long) i);
+		}
+
+		XSSFWorkbook wb = new XSSFWorkbook();
+		XSSFSheet sheet = wb.createSheet("allocation");
+		writePlaceholders(sheet);
+		Context ctx = new Context(wb, sheet, CompiledTemplate.compile(sheet, fields));
+
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long mergeBytes = 0;
+		long poiBytes = 0;
+
+		// die letzte Messung zaehlt, vorher wird der Code vom JIT kompiliert
+		for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+			writePlaceholders(sheet);
+			long start = threads.getCurrentThreadAllocatedBytes();
+			for (Row row : sheet) {
+				ExcelMerger.mergeRow(ctx, dto, row);
+			}
+			mergeBytes = threads.getCurrentThreadAllocatedBytes() - start;
+
+			writePlaceholders(sheet);
+			start = threads.getCurrentThreadAllocatedBytes();
+			for (Row row : sheet) {
+				accessCellsLikeMerge(row);
+			}
+			poiBytes = threads.getCurrentThreadAllocatedBytes() - start;
+		}
+
+		LOG.info("Allocated bytes per row: mergeRow {}, POI only {}", mergeBytes / ROWS, poiBytes / ROWS);
+
+		assertEquals(COLUMNS - 1, sheet.getRow(ROWS - 1).getCell(COLUMNS - 1).getNumericCellValue());
+		assertTrue((mergeBytes - poiBytes) / ROWS < MAX_BYTES_PER_ROW,
+			"mergeRow allocates " + (mergeBytes - poiBytes) / ROWS + " bytes per row");
+	}
+
+	/**
+	 * Die Aggregate eines RowFillers lesen ungeboxte Werte direkt: mit Aggregaten wird nicht mehr alloziert als ohne
+	 */
+	@Test
+	public void testRowFillerAggregatesDoNotAllocate() {
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long aggregateBytes = Long.MAX_VALUE;
+		long plainBytes = Long.MAX_VALUE;
+
+		// SXSSF alloziert beim Schreiben der temporaeren Datei nicht immer gleich viel -> das Minimum zaehlt
+		for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+			aggregateBytes = Math.min(aggregateBytes, fillRows(threads, true));
+			plainBytes = Math.min(plainBytes, fillRows(threads, false));
+		}
+
+		LOG.info("Allocated bytes per row: RowFiller with aggregates {}, without {}", aggregateBytes / ROWS,
+			plainBytes / ROWS);
+
+		assertTrue((aggregateBytes - plainBytes) / ROWS < MAX_BYTES_PER_ROW,
+			"aggregates allocate " + (aggregateBytes - plainBytes) / ROWS + " bytes per row");
+	}
+
+	/**
+	 * @return die beim Fuellen der Zeilen allozierten Bytes
+	 */
+	private long fillRows(@Nonnull ThreadMXBean threads, boolean withAggregates) {
+		// nur die Marker-Zeile: die Werte werden aggregiert, aber nicht geschrieben, sonst ueberwiegt SXSSF
+		XSSFSheet sheet = new XSSFWorkbook().createSheet("aggregates");
+		sheet.createRow(0).createCell(0).setCellValue("Total");
+		sheet.createRow(1).createCell(0).setCellValue("{row}");
+		RowFiller rowFiller = RowFiller.initRowFiller(sheet, Arrays.asList(VALUE_1, VALUE_2, REPEAT_ROW));
+		Aggregate sum = Aggregate.sum(VALUE_1);
+		Aggregate max = Aggregate.max(VALUE_2);
+		if (withAggregates) {
+			rowFiller.aggregate(sum, new CellAddress("C1"))
+				.aggregate(max, new CellAddress("D1"));
+		}
+
+		long start = threads.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < ROWS; i++) {
+			// ausserhalb des Integer-Caches, Boxing wuerde allozieren
+			rowFiller.addInt(VALUE_1, i + ROWS)
+				.addInt(VALUE_2, i * 2 + ROWS)
+				.fillRow();
+		}
+		long allocated = threads.getCurrentThreadAllocatedBytes() - start;
+
+		rowFiller.finish();
+		rowFiller.getSheet().getWorkbook().dispose();
+
+		if (withAggregates) {
+			assertEquals(ROWS * (ROWS - 1) / 2 + (double) ROWS * ROWS, sum.getValue());
+			assertEquals((ROWS - 1) * 2 + ROWS, max.getValue());
+		}
+
+		return allocated;
+	}
+
+	private void writePlaceholders(@Nonnull XSSFSheet sheet) {
+		for (int rowNum = 0; rowNum < ROWS; rowNum++) {
+			Row row = sheet.getRow(rowNum) == null ? sheet.createRow(rowNum) : sheet.getRow(rowNum);
+			for (int column = 0; column < COLUMNS; column++) {
+				row.createCell(column).setCellValue("{feld" + column + '}');
+			}
+		}
+	}
+
+	/**
+	 * Dieselben Zell-Zugriffe wie mergeRow mit dem LONG_CONVERTER, ohne den Merger
+	 */
+	private void accessCellsLikeMerge(@Nonnull Row row) {
+		for (int i = Math.max(row.getFirstCellNum(), 0); i <= Math.max(row.getLastCellNum(), 0); i++) {
+			Cell cell = row.getCell(i);
+			if (cell != null && cell.getCellType() == CellType.STRING) {
+				String text = cell.getStringCellValue();
+				if (text.equals(cell.getStringCellValue())) {
+					cell.setCellValue(i);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldProvider;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.jupiter.api.Test;
+
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.GET_WORKBOOK;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.WARTELISTE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.getVal;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.toContentBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MergeSheetsTest {
+
+	private static final int SHEETS = 6;
+
+	private final List<MergeField<?>> fields = MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values());
+
+	@Test
+	public void testSameBytesAsSequentialMerge() throws Exception {
+		Workbook sequential = createWorkbook();
+		for (int i = 0; i < SHEETS; i++) {
+			ExcelMerger.mergeData(sequential.getSheetAt(i), fields, createData(i));
+		}
+
+		Workbook batched = createWorkbook();
+		Map<Sheet, SheetMerge> merges = new LinkedHashMap<>();
+		for (int i = 0; i < SHEETS; i++) {
+			merges.put(batched.getSheetAt(i), SheetMerge.of(fields, createData(i)));
+		}
+
+		ExcelMerger.mergeSheets(merges);
+
+		assertEquals("Warteliste Kita 3", getVal(batched.getSheetAt(3), 1, "A"));
+		assertArrayEquals(toContentBytes(sequential), toContentBytes(batched));
+	}
+
+	@Test
+	public void testCompiledTemplate() throws Exception {
+		Workbook sequential = createWorkbook();
+		Workbook batched = createWorkbook();
+		CompiledTemplate template = CompiledTemplate.compile(batched.getSheetAt(0), fields);
+
+		Map<Sheet, SheetMerge> merges = new LinkedHashMap<>();
+		for (int i = 0; i < SHEETS; i++) {
+			ExcelMerger.mergeData(sequential.getSheetAt(i), fields, createData(i));
+			merges.put(batched.getSheetAt(i), SheetMerge.of(template, createData(i)));
+		}
+		ExcelMerger.mergeSheets(merges);
+
+		assertArrayEquals(toContentBytes(sequential), toContentBytes(batched));
+	}
+
+	@Test
+	public void testWithoutEvaluation() throws Exception {
+		Workbook sequential = createWorkbook();
+		Workbook batched = createWorkbook();
+
+		Map<Sheet, SheetMerge> merges = new LinkedHashMap<>();
+		for (int i = 0; i < SHEETS; i++) {
+			ExcelMerger.mergeData(sequential.getSheetAt(i), fields, createData(i), false);
+			merges.put(batched.getSheetAt(i), SheetMerge.of(fields, createData(i)));
+		}
+		ExcelMerger.mergeSheets(merges, false);
+
+		assertArrayEquals(toContentBytes(sequential), toContentBytes(batched));
+	}
+
+	@Test
+	public void testCompileError() {
+		Workbook workbook = createWorkbook();
+		List<MergeField<?>> duplicates = new ArrayList<>(fields);
+		duplicates.addAll(fields);
+
+		Map<Sheet, SheetMerge> merges = new LinkedHashMap<>();
+		merges.put(workbook.getSheetAt(0), SheetMerge.of(fields, createData(0)));
+		merges.put(workbook.getSheetAt(1), SheetMerge.of(duplicates, createData(1)));
+
+		assertThrows(ExcelMergeException.class, () -> ExcelMerger.mergeSheets(merges));
+	}
+
+	@Test
+	public void testSheetsOfDifferentWorkbooks() {
+		Map<Sheet, SheetMerge> merges = new LinkedHashMap<>();
+		merges.put(createWorkbook().getSheetAt(0), SheetMerge.of(fields, createData(0)));
+		merges.put(createWorkbook().getSheetAt(0), SheetMerge.of(fields, createData(1)));
+
+		assertThrows(IllegalArgumentException.class, () -> ExcelMerger.mergeSheets(merges));
+	}
+
+	@Nonnull
+	private Workbook createWorkbook() {
+		Workbook workbook = GET_WORKBOOK.apply(WARTELISTE);
+		for (int i = 1; i < SHEETS; i++) {
+			workbook.cloneSheet(0);
+		}
+
+		return workbook;
+	}
+
+	@Nonnull
+	private ExcelMergerDTO createData(int sheet) {
+		ExcelMergerDTO data = new ExcelMergerDTO();
+		data.addValue(MergeFieldWarteliste.KITA_NAME, "Kita " + sheet);
+		for (int i = 0; i < 10 * (sheet + 1); i++) {
+			ExcelMergerDTO kind = data.createGroup(MergeFieldWarteliste.REPEAT_KIND);
+			// teilweise dieselben Texte auf allen Sheets, teilweise pro Sheet
+			kind.addValue(MergeFieldWarteliste.VORNAME, "Vorname " + i);
+			kind.addValue(MergeFieldWarteliste.NAME, "Name " + sheet + '.' + i);
+			kind.addValue(MergeFieldWarteliste.PRIORITAET, (long) i * 1000);
+		}
+
+		return data;
+	}
+}
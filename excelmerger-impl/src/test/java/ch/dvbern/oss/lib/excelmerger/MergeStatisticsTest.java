@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldProvider;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldWarteliste;
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.jupiter.api.Test;
+
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.GET_WORKBOOK;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.WARTELISTE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.toContentBytes;
+import static java.util.Objects.requireNonNull;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MergeStatisticsTest {
+
+	private static final int KINDER = 20;
+	private static final int JOBS = 3;
+
+	private final List<MergeField<?>> fields = MergeFieldProvider.toMergeFields(MergeFieldWarteliste.values());
+
+	@Test
+	public void testStatistics() throws Exception {
+		Workbook workbook = GET_WORKBOOK.apply(WARTELISTE);
+		int styles = workbook.getNumCellStyles();
+		MergeStatistics statistics = MergeStatistics.create();
+
+		ExcelMerger.mergeData(
+			workbook.getSheetAt(0),
+			SheetMerge.of(fields, createData(KINDER)),
+			MergeOptions.defaults().withListener(statistics));
+
+		assertEquals(1, statistics.getCount(MergePhase.MERGE));
+		assertEquals(1, statistics.getCount(MergePhase.EVALUATE));
+		assertTrue(statistics.getCount(MergePhase.GROUP_EXPANSION) >= 1);
+		assertTrue(statistics.getCount(MergePhase.PARSE) > 0);
+		assertTrue(statistics.getNanos(MergePhase.MERGE) >= statistics.getNanos(MergePhase.EVALUATE));
+		assertTrue(statistics.getCellsMerged() > KINDER);
+		assertTrue(statistics.getRowsCreated() >= KINDER - 1);
+		assertTrue(statistics.getShifts() > 0);
+		assertTrue(statistics.getShiftedRows() > 0);
+		assertTrue(statistics.getFormulasEvaluated() > 0);
+		assertEquals(workbook.getNumCellStyles() - styles, statistics.getStylesCreated());
+		assertEquals(0, statistics.getCount(MergePhase.WRITE));
+
+		statistics.reset();
+		assertEquals(0, statistics.getCount(MergePhase.MERGE));
+		assertEquals(0, statistics.getCellsMerged());
+	}
+
+	@Test
+	public void testListenerDoesNotChangeResult() throws Exception {
+		Workbook plain = GET_WORKBOOK.apply(WARTELISTE);
+		ExcelMerger.mergeData(plain.getSheetAt(0), fields, createData(KINDER));
+
+		Workbook listened = GET_WORKBOOK.apply(WARTELISTE);
+		ExcelMerger.mergeData(
+			listened.getSheetAt(0),
+			SheetMerge.of(fields, createData(KINDER)),
+			MergeOptions.defaults().withListener(MergeStatistics.create()));
+
+		assertArrayEquals(toContentBytes(plain), toContentBytes(listened));
+	}
+
+	@Test
+	public void testPhasesAreNested() throws Exception {
+		List<String> events = new ArrayList<>();
+		MergeListener listener = new MergeListener() {
+			@Override
+			public void phaseStarted(@Nonnull MergePhase phase, long startNanos) {
+				events.add("+" + phase);
+			}
+
+			@Override
+			public void phaseFinished(@Nonnull MergePhase phase, long startNanos, long endNanos) {
+				assertTrue(endNanos >= startNanos);
+				events.add("-" + phase);
+			}
+		};
+
+		Workbook workbook = GET_WORKBOOK.apply(WARTELISTE);
+		ExcelMerger.mergeData(
+			workbook.getSheetAt(0),
+			SheetMerge.of(fields, createData(KINDER)),
+			MergeOptions.defaults().withListener(listener));
+
+		assertEquals("+" + MergePhase.MERGE, events.get(0));
+		assertEquals("-" + MergePhase.MERGE, events.get(events.size() - 1));
+
+		List<String> open = new ArrayList<>();
+		for (String event : events) {
+			if (event.startsWith("+")) {
+				open.add(event.substring(1));
+			} else {
+				assertEquals(open.remove(open.size() - 1), event.substring(1));
+			}
+		}
+		assertEquals(Collections.emptyList(), open);
+	}
+
+	@Test
+	public void testBatchMerger() throws Exception {
+		byte[] template;
+		try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(WARTELISTE)) {
+			template = IOUtils.toByteArray(requireNonNull(is));
+		}
+		MergeStatistics statistics = MergeStatistics.create();
+		BatchMerger merger = BatchMerger.of(template, "Warteliste", fields, Runnable::run).withListener(statistics);
+
+		merger.mergeAll(IntStream.range(0, JOBS).mapToObj(this::createData), (index, data, workbook) -> workbook.write(new ByteArrayOutputStream()));
+
+		assertEquals(JOBS, statistics.getCount(MergePhase.OPEN_TEMPLATE));
+		assertEquals(JOBS, statistics.getCount(MergePhase.MERGE));
+		assertEquals(JOBS, statistics.getCount(MergePhase.WRITE));
+	}
+
+	@Nonnull
+	private ExcelMergerDTO createData(int kinder) {
+		ExcelMergerDTO data = new ExcelMergerDTO();
+		data.addValue(MergeFieldWarteliste.KITA_NAME, "Kita");
+		for (int i = 0; i < kinder; i++) {
+			ExcelMergerDTO kind = data.createGroup(MergeFieldWarteliste.REPEAT_KIND);
+			kind.addValue(MergeFieldWarteliste.VORNAME, "Vorname " + i);
+			kind.addValue(MergeFieldWarteliste.NAME, "Name " + i);
+			kind.addValue(MergeFieldWarteliste.PRIORITAET, (long) i * 1000);
+		}
+
+		return data;
+	}
+}
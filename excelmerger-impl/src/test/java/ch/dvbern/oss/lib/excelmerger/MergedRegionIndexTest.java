@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.dumpMergedRegions;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MergedRegionIndexTest {
+
+	private static final int CALENDAR_ROWS = 50;
+	private static final int SHIFTS = 4;
+
+	@Test
+	public void testShiftRows() {
+		XSSFSheet sheet = createSheet(12);
+		addRegions(sheet, "A1:B1", "A3:A5", "C4:D5", "E6:F6", "G8:H9", "I10:J10");
+
+		MergedRegionIndex index = MergedRegionIndex.of(sheet);
+		index.shiftRows(3, 6, 2);
+		// bis zum writeBack sind die Regions nur im Index
+		assertEquals(0, sheet.getNumMergedRegions());
+		index.writeBack();
+
+		// A3:A5 ragt aus dem verschobenen Bereich und bleibt, G8:H9 wird ueberschrieben
+		assertEquals(Arrays.asList("A1:B1", "A3:A5", "C6:D7", "E8:F8", "I10:J10"), dumpMergedRegions(sheet));
+		assertEquals("E8", sheet.getRow(7).getCell(4).getAddress().formatAsString());
+	}
+
+	@Test
+	public void testSameResultAsPoi() {
+		XSSFSheet expected = createCalendar();
+		XSSFSheet actual = createCalendar();
+		MergedRegionIndex index = MergedRegionIndex.of(actual);
+
+		for (int i = 0; i < SHIFTS; i++) {
+			expected.shiftRows(i * 10, expected.getLastRowNum() + 1, 3);
+			index.shiftRows(i * 10, actual.getLastRowNum() + 1, 3);
+		}
+		index.writeBack();
+
+		assertEquals(CALENDAR_ROWS, actual.getNumMergedRegions());
+		assertEquals(dumpMergedRegions(expected), dumpMergedRegions(actual));
+	}
+
+	@Test
+	public void testAppendedRegionsAreIndexed() {
+		XSSFSheet sheet = createSheet(10);
+		addRegions(sheet, "A2:B2");
+
+		MergedRegionIndex index = MergedRegionIndex.of(sheet);
+		index.shiftRows(1, 9, 1);
+		index.writeBack();
+
+		// z.B. beim Kopieren von Zeilen
+		sheet.addMergedRegionUnsafe(CellRangeAddress.valueOf("C5:D6"));
+		assertEquals(Arrays.asList("C5:D6"), toStrings(index.getContained(4, 5)));
+
+		index.shiftRows(2, 10, 2);
+		index.writeBack();
+
+		assertEquals(Arrays.asList("A5:B5", "C7:D8"), dumpMergedRegions(sheet));
+	}
+
+	@Test
+	public void testGetContained() {
+		XSSFSheet sheet = createSheet(10);
+		addRegions(sheet, "A1:A3", "B2:C2", "B3:B4", "D5:E5");
+
+		MergedRegionIndex index = MergedRegionIndex.of(sheet);
+		List<CellRangeAddress> contained = index.getContained(1, 3);
+		assertEquals(Arrays.asList("B2:C2", "B3:B4"), toStrings(contained));
+
+		// Kopien, der Index wird nicht veraendert
+		contained.get(0).setFirstRow(7);
+		assertEquals(Arrays.asList("B2:C2", "B3:B4"), toStrings(index.getContained(1, 3)));
+	}
+
+	@Nonnull
+	private XSSFSheet createSheet(int rows) {
+		XSSFSheet sheet = new XSSFWorkbook().createSheet();
+		for (int rowNum = 0; rowNum < rows; rowNum++) {
+			sheet.createRow(rowNum).createCell(4).setCellValue(rowNum);
+		}
+
+		return sheet;
+	}
+
+	/**
+	 * Wie ein Kalender-Layout: auf jeder Zeile mehrere verbundene Zellen
+	 */
+	@Nonnull
+	private XSSFSheet createCalendar() {
+		XSSFSheet sheet = createSheet(CALENDAR_ROWS);
+		for (int rowNum = 0; rowNum < CALENDAR_ROWS; rowNum++) {
+			int firstColumn = (rowNum % 5) * 2;
+			sheet.addMergedRegionUnsafe(new CellRangeAddress(rowNum, rowNum, firstColumn, firstColumn + 1));
+		}
+
+		return sheet;
+	}
+
+	private void addRegions(@Nonnull XSSFSheet sheet, @Nonnull String... regions) {
+		for (String region : regions) {
+			sheet.addMergedRegion(CellRangeAddress.valueOf(region));
+		}
+	}
+
+	@Nonnull
+	private List<String> toStrings(@Nonnull List<CellRangeAddress> regions) {
+		return regions.stream()
+			.map(CellRangeAddress::formatAsString)
+			.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+package ch.dvbern.oss.lib.excelmerger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PlaceholderTokenizerTest {
+
+	@Test
+	public void testNoPlaceholder() {
+		assertSame(TokenizedText.NONE, PlaceholderTokenizer.tokenize("Total"));
+		assertSame(TokenizedText.NONE, PlaceholderTokenizer.tokenize(""));
+		assertSame(TokenizedText.NONE, PlaceholderTokenizer.tokenize("{} { foo} {bar {baz:}"));
+		assertNull(PlaceholderTokenizer.tokenize("{ab-c}").getLastPlaceholder());
+	}
+
+	@Test
+	public void testSinglePlaceholder() {
+		TokenizedText text = PlaceholderTokenizer.tokenize("{name}");
+
+		assertTrue(text.isSinglePlaceholder());
+		assertEquals(1, text.getNumberOfPlaceholders());
+		assertEquals("{name}", text.getPlaceholder(0).getPattern());
+		assertEquals("name", text.getPlaceholder(0).getKey());
+		assertNull(text.getPlaceholder(0).getRows());
+	}
+
+	@Test
+	public void testMultiplePlaceholders() {
+		TokenizedText text = PlaceholderTokenizer.tokenize("{name} {vorname}, {ort}");
+
+		assertFalse(text.isSinglePlaceholder());
+		assertEquals(3, text.getNumberOfPlaceholders());
+		assertEquals("", text.getLiteral(0));
+		assertEquals("name", text.getPlaceholder(0).getKey());
+		assertEquals(" ", text.getLiteral(1));
+		assertEquals("vorname", text.getPlaceholder(1).getKey());
+		assertEquals(", ", text.getLiteral(2));
+		assertEquals("ort", text.getPlaceholder(2).getKey());
+		assertEquals("", text.getLiteral(3));
+
+		ParsedPlaceholder last = text.getLastPlaceholder();
+		assertNotNull(last);
+		assertEquals("{ort}", last.getPattern());
+	}
+
+	@Test
+	public void testGroupRows() {
+		TokenizedText text = PlaceholderTokenizer.tokenize("{{repeatGroup:12}}");
+
+		assertEquals(1, text.getNumberOfPlaceholders());
+		assertEquals("{", text.getLiteral(0));
+		assertEquals("{repeatGroup:12}", text.getPlaceholder(0).getPattern());
+		assertEquals("repeatGroup", text.getPlaceholder(0).getKey());
+		assertEquals(Integer.valueOf(12), text.getPlaceholder(0).getRows());
+		assertEquals("}", text.getLiteral(1));
+	}
+
+	@Test
+	public void testRepeatedPattern() {
+		TokenizedText text = PlaceholderTokenizer.tokenize("{a}-{b}-{a}");
+
+		assertEquals(3, text.getNumberOfPlaceholders());
+		assertEquals(0, text.firstIndexOfPattern(0));
+		assertEquals(1, text.firstIndexOfPattern(1));
+		assertEquals(0, text.firstIndexOfPattern(2));
+	}
+
+	@Test
+	public void testMultiLineText() {
+		TokenizedText text = PlaceholderTokenizer.tokenize("Name:\n{name}");
+
+		assertEquals(1, text.getNumberOfPlaceholders());
+		assertEquals("Name:\n", text.getLiteral(0));
+	}
+}
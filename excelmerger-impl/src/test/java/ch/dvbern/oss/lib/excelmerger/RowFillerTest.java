@@ -29,12 +29,16 @@ import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.Test;
 
 import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.writeWorkbookToFile;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class RowFillerTest {
 
@@ -115,6 +119,310 @@ public class RowFillerTest {
 			});
 	}
 
+	@Test
+	public void testMultiRowGroup() throws Exception {
+		XSSFSheet xssfSheet = init();
+		// Datenzeile plus Kommentarzeile mit Bezug auf die Datenzeile und einer Merged-Region
+		xssfSheet.getRow(2).getCell(21).setCellValue("{row:2}");
+		Row commentRow = xssfSheet.createRow(3);
+		commentRow.createCell(0).setCellValue("{value2}");
+		commentRow.createCell(1).setCellFormula("C3*2");
+		commentRow.createCell(3).setCellValue("Kommentar");
+		xssfSheet.addMergedRegion(new CellRangeAddress(3, 3, 3, 5));
+
+		int numberOfDataRows = 3;
+
+		RowFiller rowFiller = executeTestRun(xssfSheet, numberOfDataRows);
+
+		String file = writeWorkbookToFile(rowFiller.getSheet().getWorkbook(), "sxssf-multirow.xlsx");
+
+		assertEquals(4, rowFiller.getSheet().getPhysicalNumberOfRows());
+
+		// dispose of temporary files backing this workbook on disk
+		rowFiller.getSheet().getWorkbook().dispose();
+
+		Workbook workbookFromTemplate = ExcelMerger.createWorkbookFromTemplate(new FileInputStream(file));
+		Sheet filledSheet = workbookFromTemplate.getSheetAt(0);
+
+		IntStream.of(3, 5, 7)
+			.forEach(i -> {
+				Row dataRow = filledSheet.getRow(i - 1);
+				assertEquals(1, dataRow.getCell(0).getNumericCellValue());
+				assertEquals(String.format("A%1$d+B%1$d", i), dataRow.getCell(2).getCellFormula());
+
+				Row comment = filledSheet.getRow(i);
+				assertEquals(2, comment.getCell(0).getNumericCellValue());
+				assertEquals(String.format("C%d*2", i), comment.getCell(1).getCellFormula());
+				assertEquals("Kommentar", comment.getCell(3).getStringCellValue());
+				assertTrue(filledSheet.getMergedRegions().contains(new CellRangeAddress(i, i, 3, 5)));
+			});
+		assertEquals(3, filledSheet.getNumMergedRegions());
+	}
+
+	@Test
+	public void testUnknownNumberOfRows() throws Exception {
+		XSSFSheet xssfSheet = init();
+		int initialNumberOfRows = xssfSheet.getPhysicalNumberOfRows();
+
+		RowFiller rowFiller = RowFiller.initRowFiller(xssfSheet, Arrays.asList(VALUE_1, VALUE_2, REPEAT_ROW));
+		IntStream.range(0, 3).forEach(i -> {
+			ExcelMergerDTO rowDTO = new ExcelMergerDTO();
+			rowDTO.addValue(VALUE_1, i);
+			rowDTO.addValue(VALUE_2, 2);
+
+			rowFiller.fillRow(rowDTO);
+		});
+
+		// the first data row is held back until finish
+		assertEquals("{value1}", xssfSheet.getRow(2).getCell(0).getStringCellValue());
+
+		rowFiller.finish();
+		rowFiller.finish();
+
+		assertEquals(initialNumberOfRows, xssfSheet.getPhysicalNumberOfRows());
+		assertEquals(2, rowFiller.getSheet().getPhysicalNumberOfRows());
+		assertThrows(IllegalStateException.class, () -> rowFiller.fillRow(new ExcelMergerDTO()));
+
+		String file = writeWorkbookToFile(rowFiller.getSheet().getWorkbook(), "sxssf-unknown-rows.xlsx");
+		rowFiller.getSheet().getWorkbook().dispose();
+
+		Sheet filledSheet = ExcelMerger.createWorkbookFromTemplate(new FileInputStream(file)).getSheetAt(0);
+		IntStream.range(0, 3).forEach(i -> {
+			Row row = filledSheet.getRow(i + 2);
+			assertEquals(i, row.getCell(0).getNumericCellValue());
+			assertEquals(String.format("A%1$d+B%1$d", i + 3), row.getCell(2).getCellFormula());
+		});
+	}
+
+	@Test
+	public void testMoreRowsThanAnnounced() throws Exception {
+		XSSFSheet xssfSheet = init();
+
+		RowFiller rowFiller = executeTestRun(xssfSheet, 2);
+		ExcelMergerDTO rowDTO = new ExcelMergerDTO();
+		rowDTO.addValue(VALUE_1, 3);
+		rowDTO.addValue(VALUE_2, 2);
+		rowFiller.fillRow(rowDTO);
+
+		String file = writeWorkbookToFile(rowFiller.getSheet().getWorkbook(), "sxssf-more-rows.xlsx");
+		rowFiller.getSheet().getWorkbook().dispose();
+
+		// wie bisher wird die zusaetzliche Zeile angehaengt
+		Sheet filledSheet = ExcelMerger.createWorkbookFromTemplate(new FileInputStream(file)).getSheetAt(0);
+		assertEquals(4, filledSheet.getLastRowNum());
+		assertEquals(1, filledSheet.getRow(3).getCell(0).getNumericCellValue());
+		assertEquals("A5+B5", filledSheet.getRow(4).getCell(2).getCellFormula());
+	}
+
+	@Test
+	public void testMoreRowsThanAnnouncedWithFooter() {
+		XSSFSheet xssfSheet = init();
+		xssfSheet.createRow(3).createCell(0).setCellValue("Total");
+
+		RowFiller rowFiller = executeTestRun(xssfSheet, 2);
+
+		// der Footer steht bereits unterhalb der letzten angekuendigten Zeile
+		assertThrows(IllegalStateException.class, () -> rowFiller.fillRow(new ExcelMergerDTO()));
+
+		rowFiller.getSheet().getWorkbook().dispose();
+	}
+
+	@Test
+	public void testNoRowsWithFooter() throws Exception {
+		XSSFSheet xssfSheet = init();
+		xssfSheet.createRow(3).createCell(0).setCellValue("Total");
+
+		RowFiller rowFiller = executeTestRun(xssfSheet, 0);
+
+		String file = writeWorkbookToFile(rowFiller.getSheet().getWorkbook(), "sxssf-no-rows.xlsx");
+		rowFiller.getSheet().getWorkbook().dispose();
+
+		// ohne letzte Zeile wird der Footer direkt bei der Initialisierung geschrieben
+		Sheet filledSheet = ExcelMerger.createWorkbookFromTemplate(new FileInputStream(file)).getSheetAt(0);
+		assertEquals(3, filledSheet.getLastRowNum());
+		assertEquals("", filledSheet.getRow(2).getCell(0).getStringCellValue());
+		assertEquals("Total", filledSheet.getRow(3).getCell(0).getStringCellValue());
+	}
+
+	@Test
+	public void testFewerRowsThanAnnounced() throws Exception {
+		XSSFSheet xssfSheet = init();
+		xssfSheet.createRow(3).createCell(0).setCellValue("Total");
+
+		RowFiller rowFiller = RowFiller.initRowFiller(xssfSheet, Arrays.asList(VALUE_1, VALUE_2, REPEAT_ROW), 3);
+		rowFiller.addInt(VALUE_1, 1)
+			.addInt(VALUE_2, 2)
+			.fillRow();
+
+		// der Footer wuerde sonst fehlen
+		assertThrows(IllegalStateException.class,
+			() -> writeWorkbookToFile(rowFiller.getSheet().getWorkbook(), "sxssf-fewer-rows.xlsx"));
+
+		rowFiller.finish();
+		String file = writeWorkbookToFile(rowFiller.getSheet().getWorkbook(), "sxssf-fewer-rows.xlsx");
+		rowFiller.getSheet().getWorkbook().dispose();
+
+		Sheet filledSheet = ExcelMerger.createWorkbookFromTemplate(new FileInputStream(file)).getSheetAt(0);
+		assertEquals(3, filledSheet.getLastRowNum());
+		assertEquals(1, filledSheet.getRow(2).getCell(0).getNumericCellValue());
+		assertEquals("Total", filledSheet.getRow(3).getCell(0).getStringCellValue());
+	}
+
+	@Test
+	public void testWriteWithoutFinish() throws Exception {
+		XSSFSheet xssfSheet = init();
+
+		RowFiller rowFiller = RowFiller.initRowFiller(xssfSheet, Arrays.asList(VALUE_1, VALUE_2, REPEAT_ROW));
+		rowFiller.addInt(VALUE_1, 1)
+			.addInt(VALUE_2, 2)
+			.fillRow();
+
+		assertThrows(IllegalStateException.class,
+			() -> writeWorkbookToFile(rowFiller.getSheet().getWorkbook(), "sxssf-without-finish.xlsx"));
+
+		rowFiller.finish();
+		writeWorkbookToFile(rowFiller.getSheet().getWorkbook(), "sxssf-without-finish.xlsx");
+		rowFiller.getSheet().getWorkbook().dispose();
+	}
+
+	@Test
+	public void testFillRowWithPrimitives() throws Exception {
+		XSSFSheet xssfSheet = init();
+
+		RowFiller rowFiller = RowFiller.initRowFiller(xssfSheet, Arrays.asList(VALUE_1, VALUE_2, REPEAT_ROW));
+		for (int i = 0; i < 3; i++) {
+			rowFiller.addInt(VALUE_1, i)
+				.addInt(VALUE_2, 2)
+				.fillRow();
+		}
+		rowFiller.finish();
+
+		String file = writeWorkbookToFile(rowFiller.getSheet().getWorkbook(), "sxssf-primitives.xlsx");
+		rowFiller.getSheet().getWorkbook().dispose();
+
+		// die erste Zeile wird zurueckgehalten und darf durch die Wiederverwendung nicht ueberschrieben werden
+		Sheet filledSheet = ExcelMerger.createWorkbookFromTemplate(new FileInputStream(file)).getSheetAt(0);
+		for (int i = 0; i < 3; i++) {
+			Row row = filledSheet.getRow(i + 2);
+			assertEquals(i, row.getCell(0).getNumericCellValue());
+			assertEquals(2, row.getCell(1).getNumericCellValue());
+		}
+	}
+
+	@Test
+	public void testFinishWithoutRows() {
+		XSSFSheet xssfSheet = init();
+
+		RowFiller rowFiller = RowFiller.initRowFiller(xssfSheet, Arrays.asList(VALUE_1, VALUE_2, REPEAT_ROW));
+		rowFiller.finish();
+
+		// placeholders are merged with null values
+		assertEquals("", xssfSheet.getRow(2).getCell(0).getStringCellValue());
+		assertEquals("", xssfSheet.getRow(2).getCell(1).getStringCellValue());
+		assertEquals(0, rowFiller.getSheet().getPhysicalNumberOfRows());
+
+		rowFiller.getSheet().getWorkbook().dispose();
+	}
+
+	@Test
+	public void testFooterRows() throws Exception {
+		XSSFSheet xssfSheet = init();
+		Row total = xssfSheet.createRow(3);
+		total.createCell(0).setCellValue("Total");
+		total.createCell(1).setCellFormula("SUM(B3:B3)");
+		total.createCell(2).setCellFormula("$A$1&COUNT(A3)");
+		Row remark = xssfSheet.createRow(4);
+		remark.createCell(0).setCellValue("Bemerkung");
+		remark.createCell(3).setCellFormula("B4+1");
+		xssfSheet.addMergedRegion(new CellRangeAddress(4, 4, 0, 2));
+
+		int numberOfDataRows = 1000;
+
+		RowFiller rowFiller = executeTestRun(xssfSheet, numberOfDataRows);
+
+		String file = writeWorkbookToFile(rowFiller.getSheet().getWorkbook(), "sxssf-footer.xlsx");
+		rowFiller.getSheet().getWorkbook().dispose();
+
+		Sheet filledSheet = ExcelMerger.createWorkbookFromTemplate(new FileInputStream(file)).getSheetAt(0);
+		assertEquals(1003, filledSheet.getLastRowNum());
+		assertEquals(1, filledSheet.getRow(1001).getCell(0).getNumericCellValue());
+
+		Row filledTotal = filledSheet.getRow(1002);
+		assertEquals("Total", filledTotal.getCell(0).getStringCellValue());
+		assertEquals("SUM(B3:B1002)", filledTotal.getCell(1).getCellFormula());
+		assertEquals("$A$1&COUNT(A3)", filledTotal.getCell(2).getCellFormula());
+
+		Row filledRemark = filledSheet.getRow(1003);
+		assertEquals("Bemerkung", filledRemark.getCell(0).getStringCellValue());
+		assertEquals("B1003+1", filledRemark.getCell(3).getCellFormula());
+		assertEquals(Collections.singletonList(new CellRangeAddress(1003, 1003, 0, 2)),
+			filledSheet.getMergedRegions());
+	}
+
+	@Test
+	public void testAggregateAfterFirstRow() {
+		XSSFSheet xssfSheet = init();
+		xssfSheet.createRow(3).createCell(0).setCellValue("Total");
+
+		RowFiller rowFiller = RowFiller.initRowFiller(xssfSheet, Arrays.asList(VALUE_1, VALUE_2, REPEAT_ROW));
+		rowFiller.addInt(VALUE_1, 1)
+			.fillRow();
+
+		// die zurueckgehaltene erste Zeile wuerde im Aggregat fehlen
+		assertThrows(IllegalStateException.class,
+			() -> rowFiller.aggregate(Aggregate.sum(VALUE_1), new CellAddress("A4")));
+
+		rowFiller.addInt(VALUE_1, 2)
+			.fillRow();
+
+		assertThrows(IllegalStateException.class,
+			() -> rowFiller.aggregate(Aggregate.sum(VALUE_1), new CellAddress("A4")));
+
+		rowFiller.finish();
+		rowFiller.getSheet().getWorkbook().dispose();
+	}
+
+	@Test
+	public void testAggregates() throws Exception {
+		XSSFSheet xssfSheet = init();
+		Row total = xssfSheet.createRow(3);
+		total.createCell(0).setCellFormula("SUM(A3:A3)");
+
+		int numberOfDataRows = 100;
+
+		RowFiller rowFiller = RowFiller.initRowFiller(xssfSheet, Arrays.asList(VALUE_1, VALUE_2, REPEAT_ROW))
+			.aggregate(Aggregate.sum(VALUE_1), new CellAddress("A4"))
+			.aggregate(Aggregate.max(VALUE_1), new CellAddress("B4"))
+			.aggregate(Aggregate.count(VALUE_2), new CellAddress("C1"))
+			.aggregate(Aggregate.avg(VALUE_2), new CellAddress("D1"));
+
+		assertThrows(IllegalArgumentException.class,
+			() -> rowFiller.aggregate(Aggregate.min(VALUE_1), new CellAddress("A3")));
+		assertThrows(IllegalArgumentException.class,
+			() -> rowFiller.aggregate(Aggregate.min(VALUE_1), new CellAddress("A10")));
+
+		IntStream.rangeClosed(1, numberOfDataRows).forEach(i -> {
+			ExcelMergerDTO rowDTO = new ExcelMergerDTO();
+			rowDTO.addValue(VALUE_1, i);
+			rowDTO.addValue(VALUE_2, i % 2 == 0 ? 4 : null);
+
+			rowFiller.fillRow(rowDTO);
+		});
+		rowFiller.finish();
+
+		String file = writeWorkbookToFile(rowFiller.getSheet().getWorkbook(), "sxssf-aggregates.xlsx");
+		rowFiller.getSheet().getWorkbook().dispose();
+
+		Sheet filledSheet = ExcelMerger.createWorkbookFromTemplate(new FileInputStream(file)).getSheetAt(0);
+		Row filledTotal = filledSheet.getRow(2 + numberOfDataRows);
+		// formula is kept, the aggregate is its cached result
+		assertEquals("SUM(A3:A102)", filledTotal.getCell(0).getCellFormula());
+		assertEquals(5050, filledTotal.getCell(0).getNumericCellValue());
+		assertEquals(100, filledTotal.getCell(1).getNumericCellValue());
+		assertEquals(50, filledSheet.getRow(0).getCell(2).getNumericCellValue());
+		assertEquals(4, filledSheet.getRow(0).getCell(3).getNumericCellValue());
+	}
+
 	@Nonnull
 	private XSSFSheet init() {
 		String filename = "sxssf.xlsx";
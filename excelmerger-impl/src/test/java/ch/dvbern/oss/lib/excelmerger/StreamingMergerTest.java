@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldBelegungsplan;
+import ch.dvbern.oss.lib.excelmerger.mergefields.MergeFieldProvider;
+import ch.dvbern.oss.lib.excelmerger.mergefields.RepeatRowMergeField;
+import ch.dvbern.oss.lib.excelmerger.mergefields.SimpleMergeField;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.BELEGUNGSPLAN;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.GET_WORKBOOK;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.dumpCells;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.dumpMergedRegions;
+import static ch.dvbern.oss.lib.excelmerger.converters.StandardConverters.INTEGER_CONVERTER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StreamingMergerTest {
+
+	private static final List<MergeField<?>> FIELDS =
+		MergeFieldProvider.toMergeFields(MergeFieldBelegungsplan.values());
+
+	@Test
+	public void testEqualsMergeData_nestedGroups() throws Exception {
+		// Gruppen mit mehreren, einem und ohne verschachtelte Kinder-Gruppen
+		ExcelMergerDTO excelData = createBelegungsplan(2, 0, 1, 3);
+
+		Sheet expected = GET_WORKBOOK.apply(BELEGUNGSPLAN).getSheetAt(0);
+		ExcelMerger.mergeData(expected, FIELDS, excelData, false);
+
+		Sheet actual = streamAndReload(excelData);
+
+		assertEquals(expected.getLastRowNum(), actual.getLastRowNum());
+		assertEquals(dumpCells(expected), dumpCells(actual));
+		assertEquals(dumpMergedRegions(expected), dumpMergedRegions(actual));
+	}
+
+	@Test
+	public void testEqualsMergeData_compiledTemplate() throws Exception {
+		ExcelMergerDTO excelData = createBelegungsplan(2, 0, 1, 3);
+
+		Sheet expected = GET_WORKBOOK.apply(BELEGUNGSPLAN).getSheetAt(0);
+		ExcelMerger.mergeData(expected, FIELDS, excelData, false);
+
+		// die Gruppen kommen aus dem Template statt aus den Zellen
+		Sheet layouted = GET_WORKBOOK.apply(BELEGUNGSPLAN).getSheetAt(0);
+		ExcelMerger.mergeData(
+			layouted,
+			SheetMerge.of(CompiledTemplate.compile(layouted, FIELDS), excelData),
+			MergeOptions.defaults());
+
+		XSSFSheet template = (XSSFSheet) GET_WORKBOOK.apply(BELEGUNGSPLAN).getSheetAt(0);
+		Sheet streamed = writeAndReload(
+			StreamingMerger.mergeData(template, CompiledTemplate.compile(template, FIELDS), excelData));
+
+		assertEquals(dumpCells(expected), dumpCells(layouted));
+		assertEquals(dumpMergedRegions(expected), dumpMergedRegions(layouted));
+		assertEquals(dumpCells(expected), dumpCells(streamed));
+		assertEquals(dumpMergedRegions(expected), dumpMergedRegions(streamed));
+	}
+
+	@Test
+	public void testEqualsMergeData_withoutGroups() throws Exception {
+		ExcelMergerDTO excelData = createBelegungsplan();
+
+		Sheet expected = GET_WORKBOOK.apply(BELEGUNGSPLAN).getSheetAt(0);
+		ExcelMerger.mergeData(expected, FIELDS, excelData, false);
+
+		Sheet actual = streamAndReload(excelData);
+
+		assertEquals(dumpCells(expected), dumpCells(actual));
+		assertEquals(dumpMergedRegions(expected), dumpMergedRegions(actual));
+	}
+
+	@Test
+	public void testTotalBelowGroup() throws Exception {
+		RepeatRowMergeField group = new RepeatRowMergeField("grp");
+		SimpleMergeField<Integer> betrag = new SimpleMergeField<>("betrag", INTEGER_CONVERTER);
+		List<MergeField<?>> fields = Arrays.asList(group, betrag);
+
+		ExcelMergerDTO excelData = new ExcelMergerDTO();
+		for (int i = 1; i <= 4; i++) {
+			excelData.createGroup(group).addValue(betrag, i);
+		}
+
+		Sheet expected = createTotalTemplate();
+		ExcelMerger.mergeData(expected, fields, excelData, false);
+
+		Sheet actual = writeAndReload(StreamingMerger.mergeData(createTotalTemplate(), fields, excelData));
+
+		assertEquals("SUM(B2:B6)", expected.getRow(6).getCell(1).getCellFormula());
+		assertEquals(dumpCells(expected), dumpCells(actual));
+	}
+
+	@Test
+	public void testManyRows() throws Exception {
+		int[] numKinder = new int[20];
+		Arrays.fill(numKinder, 250);
+
+		Sheet actual = streamAndReload(createBelegungsplan(numKinder));
+
+		List<String> kinder = new ArrayList<>();
+		actual.forEach(row -> row.forEach(cell -> {
+			if (cell.getCellType() == CellType.STRING && cell.getStringCellValue().startsWith("Kind ")) {
+				kinder.add(cell.getStringCellValue());
+			}
+		}));
+
+		assertEquals(20 * 250, kinder.size());
+		assertEquals("Kind 0.0", kinder.get(0));
+		assertEquals("Kind 19.249", kinder.get(kinder.size() - 1));
+	}
+
+	@Nonnull
+	private static Sheet streamAndReload(@Nonnull ExcelMergerDTO excelData) throws Exception {
+		XSSFSheet template = (XSSFSheet) GET_WORKBOOK.apply(BELEGUNGSPLAN).getSheetAt(0);
+
+		return writeAndReload(StreamingMerger.mergeData(template, FIELDS, excelData));
+	}
+
+	@Nonnull
+	private static Sheet writeAndReload(@Nonnull SXSSFWorkbook wb) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			wb.write(out);
+		} finally {
+			wb.dispose();
+		}
+
+		return new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray())).getSheetAt(0);
+	}
+
+	/**
+	 * Titel, eine Gruppe, eine Leerzeile und ein Total, welches die Leerzeile einschliesst
+	 */
+	@Nonnull
+	private static XSSFSheet createTotalTemplate() {
+		XSSFSheet sheet = new XSSFWorkbook().createSheet();
+		sheet.createRow(0).createCell(0).setCellValue("Titel");
+		Row row = sheet.createRow(1);
+		row.createCell(0).setCellValue("{grp}");
+		row.createCell(1).setCellValue("{betrag}");
+		sheet.createRow(2);
+		Row total = sheet.createRow(3);
+		total.createCell(0).setCellValue("Total");
+		total.createCell(1).setCellFormula("SUM(B2:B3)");
+
+		return sheet;
+	}
+
+	@Nonnull
+	private static ExcelMergerDTO createBelegungsplan(int... numKinder) {
+		ExcelMergerDTO excelData = new ExcelMergerDTO();
+		excelData.addValue(MergeFieldBelegungsplan.KITA_NAME, "Testkita");
+		excelData.addValue(MergeFieldBelegungsplan.KALENDERWOCHE, "KW 42");
+
+		for (int i = 0; i < numKinder.length; i++) {
+			ExcelMergerDTO group = excelData.createGroup(MergeFieldBelegungsplan.REPEAT_GROUP);
+			group.addValue(MergeFieldBelegungsplan.GRUPPEN_NAME, "Gruppe " + i);
+			for (int j = 0; j < numKinder[i]; j++) {
+				ExcelMergerDTO kind = group.createGroup(MergeFieldBelegungsplan.REPEAT_KIND);
+				kind.addValue(MergeFieldBelegungsplan.NAME, "Kind " + i + '.' + j);
+				kind.addValue(MergeFieldBelegungsplan.MONTAG, "X");
+				kind.addValue(MergeFieldBelegungsplan.MONTAG, "Y");
+			}
+		}
+
+		return excelData;
+	}
+}
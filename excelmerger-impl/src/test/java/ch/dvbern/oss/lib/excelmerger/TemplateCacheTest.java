@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import ch.dvbern.oss.lib.excelmerger.TemplateCache.TemplateLoader;
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.BELEGUNGSPLAN;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.WARTELISTE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.getVal;
+import static java.util.Objects.requireNonNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TemplateCacheTest {
+
+	private final AtomicInteger loads = new AtomicInteger();
+	private byte[] warteliste;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		warteliste = readResource(WARTELISTE);
+	}
+
+	@Test
+	public void testLoadsOnce() {
+		TemplateCache cache = TemplateCache.withMaxSize(Long.MAX_VALUE);
+
+		Workbook first = cache.createWorkbook("warteliste", loader(warteliste));
+		Workbook second = cache.createWorkbook("warteliste", loader(warteliste));
+
+		assertEquals(1, loads.get());
+		assertEquals(warteliste.length, cache.getSize());
+		assertNotSame(first, second);
+
+		// die Workbooks sind unabhaengig
+		first.getSheetAt(0).getRow(1).getCell(0).setCellValue("changed");
+		assertEquals("changed", getVal(first.getSheetAt(0), 2, "A"));
+		assertEquals("Stand: {datumAuswertung}", getVal(second.getSheetAt(0), 2, "A"));
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		TemplateCache cache = TemplateCache.withMaxSize(warteliste.length * 2L);
+
+		cache.createWorkbook("a", loader(warteliste));
+		cache.createWorkbook("b", loader(warteliste));
+		cache.createWorkbook("a", loader(warteliste));
+		cache.createWorkbook("c", loader(warteliste));
+
+		assertTrue(cache.contains("a"));
+		assertFalse(cache.contains("b"));
+		assertTrue(cache.contains("c"));
+		assertEquals(warteliste.length * 2L, cache.getSize());
+		assertEquals(3, loads.get());
+	}
+
+	@Test
+	public void testEvictsBySize() throws IOException {
+		byte[] belegungsplan = readResource(BELEGUNGSPLAN);
+		TemplateCache cache = TemplateCache.withMaxSize(belegungsplan.length + warteliste.length - 1L);
+
+		cache.createWorkbook("warteliste", loader(warteliste));
+		cache.createWorkbook("belegungsplan", loader(belegungsplan));
+
+		assertFalse(cache.contains("warteliste"));
+		assertTrue(cache.contains("belegungsplan"));
+		assertEquals(belegungsplan.length, cache.getSize());
+	}
+
+	@Test
+	public void testTemplateLargerThanCache() {
+		TemplateCache cache = TemplateCache.withMaxSize(warteliste.length - 1L);
+
+		Workbook workbook = cache.createWorkbook("warteliste", loader(warteliste));
+
+		assertEquals("Warteliste", workbook.getSheetAt(0).getSheetName());
+		assertFalse(cache.contains("warteliste"));
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testInvalidate() {
+		TemplateCache cache = TemplateCache.withMaxSize(Long.MAX_VALUE);
+		cache.createWorkbook("warteliste", loader(warteliste));
+
+		cache.invalidate("warteliste");
+		assertFalse(cache.contains("warteliste"));
+		assertEquals(0, cache.getSize());
+
+		cache.createWorkbook("warteliste", loader(warteliste));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testInvalidTemplateIsNotCached() {
+		TemplateCache cache = TemplateCache.withMaxSize(Long.MAX_VALUE);
+
+		assertThrows(ExcelTemplateParseException.class,
+			() -> cache.createWorkbook("invalid", loader(new byte[] { 1, 2, 3 })));
+		assertThrows(ExcelTemplateParseException.class, () -> cache.createWorkbook("missing", () -> {
+			throw new FileNotFoundException("missing.xlsx");
+		}));
+
+		assertEquals(0, cache.getSize());
+	}
+
+	@Nonnull
+	private TemplateLoader loader(@Nonnull byte[] template) {
+		return () -> {
+			loads.incrementAndGet();
+
+			return new ByteArrayInputStream(template);
+		};
+	}
+
+	@Nonnull
+	private static byte[] readResource(@Nonnull String name) throws IOException {
+		try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(name)) {
+			return IOUtils.toByteArray(requireNonNull(is));
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+import org.apache.poi.ss.usermodel.CellCopyPolicy;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.BELEGUNGSPLAN;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.GET_WORKBOOK;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.WARTELISTE;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.dumpCells;
+import static ch.dvbern.oss.lib.excelmerger.ExcelMergerTestUtil.dumpMergedRegions;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class XssfRowClonerTest {
+
+	private static final CellCopyPolicy POLICY = new CellCopyPolicy();
+
+	@Test
+	public void testCloneBlockEqualsCopyRows_formulas() {
+		// Kind-Zeile, Leerzeile und Total-Zeile mit Formeln
+		assertCloneEqualsCopyRows(WARTELISTE, 5, 3, 4);
+	}
+
+	@Test
+	public void testCloneBlockEqualsCopyRows_mergedRegions() {
+		// ganze Gruppe inkl. der Merged-Region auf der Gruppen-Zeile
+		assertCloneEqualsCopyRows(BELEGUNGSPLAN, 5, 6, 3);
+	}
+
+	@Test
+	public void testSupports() {
+		assertTrue(XssfRowCloner.supports(POLICY));
+
+		CellCopyPolicy withoutStyles = new CellCopyPolicy.Builder().cellStyle(false).build();
+		assertFalse(XssfRowCloner.supports(withoutStyles));
+	}
+
+	@Test
+	public void testCloneBlock_stylesFormulasMergedRegions() {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		XSSFSheet sheet = wb.createSheet();
+		XSSFCellStyle style = wb.createCellStyle();
+		style.setDataFormat(wb.createDataFormat().getFormat("0.00"));
+
+		XSSFRow source = sheet.createRow(1);
+		source.setHeight((short) 500);
+		source.createCell(0).setCellValue("{name}");
+		source.createCell(1).setCellValue(2.5);
+		source.getCell(1).setCellStyle(style);
+		source.createCell(2).setCellFormula("B2*2");
+		source.createCell(3).setCellFormula("SUM($B$1:B2)");
+		sheet.addMergedRegion(new CellRangeAddress(1, 1, 4, 5));
+
+		XssfRowCloner.of(sheet, 1, 1, POLICY).cloneBlock(4, 2);
+
+		for (int rowNum = 4; rowNum <= 5; rowNum++) {
+			XSSFRow row = sheet.getRow(rowNum);
+			assertEquals(500, row.getHeight());
+			assertEquals("{name}", row.getCell(0).getStringCellValue());
+			assertEquals(2.5, row.getCell(1).getNumericCellValue(), 0.0);
+			assertEquals(style.getIndex(), row.getCell(1).getCellStyle().getIndex());
+			// relative Bezuege werden verschoben, absolute nicht
+			assertEquals("B" + (rowNum + 1) + "*2", row.getCell(2).getCellFormula());
+			assertEquals("SUM($B$1:B" + (rowNum + 1) + ')', row.getCell(3).getCellFormula());
+		}
+		assertNull(sheet.getRow(3));
+
+		List<String> regions = sheet.getMergedRegions().stream()
+			.map(CellRangeAddress::formatAsString)
+			.collect(Collectors.toList());
+		assertEquals(Arrays.asList("E2:F2", "E5:F5", "E6:F6"), regions);
+	}
+
+	private void assertCloneEqualsCopyRows(@Nonnull String template, int firstRow, int numRows, int count) {
+		XSSFSheet expected = getSheet(template);
+		int target = expected.getLastRowNum() + 1;
+		copyRows(expected, firstRow, numRows, target, count);
+
+		XSSFSheet actual = getSheet(template);
+		XssfRowCloner.of(actual, firstRow, numRows, POLICY).cloneBlock(target, count);
+
+		assertEquals(expected.getLastRowNum(), actual.getLastRowNum());
+		assertEquals(dumpCells(expected), dumpCells(actual));
+		assertEquals(dumpMergedRegions(expected), dumpMergedRegions(actual));
+		for (int rowNum = 0; rowNum <= expected.getLastRowNum(); rowNum++) {
+			Row expectedRow = expected.getRow(rowNum);
+			Row actualRow = actual.getRow(rowNum);
+			assertEquals(expectedRow == null, actualRow == null, "row " + rowNum);
+			if (expectedRow != null) {
+				assertEquals(expectedRow.getHeight(), actualRow.getHeight(), "row " + rowNum);
+			}
+		}
+	}
+
+	/**
+	 * Der bisherige Weg, siehe ExcelMerger#copyXssfRows
+	 */
+	private void copyRows(@Nonnull XSSFSheet sheet, int firstRow, int numRows, int target, int count) {
+		List<XSSFRow> rows = new ArrayList<>();
+		for (int i = 0; i < numRows; i++) {
+			rows.add(sheet.getRow(firstRow + i));
+		}
+
+		for (int i = 0; i < count; i++) {
+			sheet.copyRows(rows, target + i * numRows, POLICY);
+		}
+	}
+
+	@Nonnull
+	private XSSFSheet getSheet(@Nonnull String template) {
+		return (XSSFSheet) GET_WORKBOOK.apply(template).getSheetAt(0);
+	}
+}
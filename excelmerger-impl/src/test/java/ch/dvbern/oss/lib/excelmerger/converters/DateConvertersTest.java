@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.converters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.annotation.Nonnull;
+
+import ch.dvbern.oss.lib.excelmerger.ExcelMergeException;
+import ch.dvbern.oss.lib.excelmerger.ExcelMerger;
+import ch.dvbern.oss.lib.excelmerger.ExcelMergerDTO;
+import ch.dvbern.oss.lib.excelmerger.mergefields.SimpleMergeField;
+import com.sun.management.ThreadMXBean;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbookPr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DateConvertersTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DateConvertersTest.class);
+
+	private static final String PATTERN = "{datum}";
+	private static final int CELLS = 2_000;
+
+	@Test
+	public void testExcelDateEqualsPoi() {
+		// rund um den 01.01.1900, den fiktiven 29.02.1900 und den 01.01.1904
+		LocalDate start = LocalDate.of(1899, 12, 1);
+		for (LocalDate date = start; date.isBefore(LocalDate.of(1904, 3, 1)); date = date.plusDays(1)) {
+			assertExcelDateEqualsPoi(date);
+		}
+
+		for (LocalDate date = start; date.getYear() < 2200; date = date.plusDays(97)) {
+			assertExcelDateEqualsPoi(date);
+		}
+	}
+
+	private void assertExcelDateEqualsPoi(@Nonnull LocalDate date) {
+		assertEquals(DateUtil.getExcelDate(date, false), ConverterUtil.toExcelDate(date.toEpochDay(), false),
+			date.toString());
+		assertEquals(DateUtil.getExcelDate(date, true), ConverterUtil.toExcelDate(date.toEpochDay(), true),
+			date.toString());
+	}
+
+	@Test
+	public void testExcelDateTimeEqualsPoi() {
+		LocalDateTime[] values = {
+			LocalDateTime.of(1900, 2, 28, 23, 59, 59, 999_999_999),
+			LocalDateTime.of(1900, 3, 1, 0, 0),
+			LocalDateTime.of(1904, 1, 1, 12, 30, 15, 123_456_789),
+			LocalDateTime.of(2017, 10, 29, 2, 30),
+			LocalDateTime.of(2024, 2, 29, 18, 45, 1, 500_000_000),
+			LocalDateTime.of(1899, 12, 31, 23, 59)
+		};
+
+		for (LocalDateTime value : values) {
+			assertEquals(DateUtil.getExcelDate(value, false), ConverterUtil.toExcelDate(value, false), value.toString());
+			assertEquals(DateUtil.getExcelDate(value, true), ConverterUtil.toExcelDate(value, true), value.toString());
+		}
+	}
+
+	@Test
+	public void testConvertersEqualDateCells() {
+		for (boolean date1904 : new boolean[] { false, true }) {
+			XSSFWorkbook wb = new XSSFWorkbook();
+			setDate1904(wb, date1904);
+			XSSFSheet sheet = wb.createSheet("datum");
+
+			LocalDate date = LocalDate.of(2017, 3, 26);
+			Cell dateCell = createCell(sheet, 0);
+			StandardConverters.DATE_CONVERTER.setCellValue(dateCell, PATTERN, date);
+			// bisher: ueber java.util.Date in der Default-Zeitzone
+			Cell expectedDateCell = createCell(sheet, 1);
+			expectedDateCell.setCellValue(Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+			assertEquals(expectedDateCell.getNumericCellValue(), dateCell.getNumericCellValue());
+
+			LocalDateTime dateTime = LocalDateTime.of(2017, 3, 26, 14, 5, 30);
+			Cell dateTimeCell = createCell(sheet, 2);
+			StandardConverters.DATETIME_CONVERTER.setCellValue(dateTimeCell, PATTERN, dateTime);
+			Cell expectedDateTimeCell = createCell(sheet, 3);
+			expectedDateTimeCell.setCellValue(Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant()));
+			assertEquals(expectedDateTimeCell.getNumericCellValue(), dateTimeCell.getNumericCellValue(), 1e-9);
+		}
+	}
+
+	@Test
+	public void testDateSystemPerWorkbook() {
+		XSSFWorkbook wb1900 = new XSSFWorkbook();
+		XSSFWorkbook wb1904 = new XSSFWorkbook();
+		setDate1904(wb1904, true);
+		Cell cell1900 = createCell(wb1900.createSheet("datum"), 0);
+		Cell cell1904 = createCell(wb1904.createSheet("datum"), 0);
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(false, ConverterUtil.isDate1904(cell1900));
+			assertEquals(true, ConverterUtil.isDate1904(cell1904));
+		}
+	}
+
+	@Test
+	public void testDateSystemChangedAfterUse() {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		Cell cell = createCell(wb.createSheet("datum"), 0);
+		assertFalse(ConverterUtil.isDate1904(cell));
+
+		setDate1904(wb, true);
+
+		assertTrue(ConverterUtil.isDate1904(cell));
+	}
+
+	@Test
+	public void testDateSystemHssf() throws IOException {
+		HSSFWorkbook wb1900 = new HSSFWorkbook();
+		HSSFWorkbook wb1904 = createHssfDate1904();
+
+		assertFalse(ConverterUtil.isDate1904(wb1900));
+		assertTrue(ConverterUtil.isDate1904(wb1904));
+	}
+
+	@Test
+	public void testMergeDateHssf1904() throws ExcelMergeException, IOException {
+		HSSFWorkbook wb = createHssfDate1904();
+		Sheet sheet = wb.createSheet("datum");
+		Row row = sheet.createRow(0);
+		row.createCell(0).setCellValue("{datum}");
+		row.createCell(1).setCellValue("{zeit}");
+
+		SimpleMergeField<LocalDate> datum = new SimpleMergeField<>("datum", StandardConverters.DATE_CONVERTER);
+		SimpleMergeField<LocalDateTime> zeit = new SimpleMergeField<>("zeit", StandardConverters.DATETIME_CONVERTER);
+		LocalDate date = LocalDate.of(2017, 3, 26);
+		LocalDateTime dateTime = LocalDateTime.of(2017, 3, 26, 14, 5, 30);
+		ExcelMergerDTO dto = new ExcelMergerDTO();
+		dto.addValue(datum, date);
+		dto.addValue(zeit, dateTime);
+
+		ExcelMerger.mergeData(sheet, Arrays.asList(datum, zeit), dto);
+
+		assertEquals(DateUtil.getExcelDate(date, true), row.getCell(0).getNumericCellValue());
+		assertEquals(DateUtil.getExcelDate(dateTime, true), row.getCell(1).getNumericCellValue(), 1e-9);
+		assertEquals(date, row.getCell(0).getLocalDateTimeCellValue().toLocalDate());
+	}
+
+	/**
+	 * Der DATE_CONVERTER alloziert nur so viel wie dieselben Zugriffe auf die POI-Zellen (kein Date, keine Zeitzone)
+	 */
+	@Test
+	public void testDateConverterDoesNotAllocate() {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		XSSFSheet sheet = wb.createSheet("datum");
+		LocalDate date = LocalDate.of(2017, 1, 31);
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long converterBytes = 0;
+		long poiBytes = 0;
+
+		for (int iteration = 0; iteration < 5; iteration++) {
+			writePlaceholders(sheet);
+			long start = threads.getCurrentThreadAllocatedBytes();
+			for (Row row : sheet) {
+				StandardConverters.DATE_CONVERTER.setCellValue(row.getCell(0), PATTERN, date);
+			}
+			converterBytes = threads.getCurrentThreadAllocatedBytes() - start;
+
+			writePlaceholders(sheet);
+			start = threads.getCurrentThreadAllocatedBytes();
+			for (Row row : sheet) {
+				Cell cell = row.getCell(0);
+				if (PATTERN.equals(cell.getStringCellValue())) {
+					cell.setCellValue(42_766d);
+				}
+			}
+			poiBytes = threads.getCurrentThreadAllocatedBytes() - start;
+		}
+
+		LOG.info("Allocated bytes per date cell: DATE_CONVERTER {}, POI only {}", converterBytes / CELLS,
+			poiBytes / CELLS);
+
+		assertEquals(DateUtil.getExcelDate(date), sheet.getRow(0).getCell(0).getNumericCellValue());
+		assertTrue((converterBytes - poiBytes) / CELLS < 8,
+			"DATE_CONVERTER allocates " + (converterBytes - poiBytes) / CELLS + " bytes per cell");
+	}
+
+	private void writePlaceholders(@Nonnull XSSFSheet sheet) {
+		for (int rowNum = 0; rowNum < CELLS; rowNum++) {
+			createCell(sheet, rowNum);
+		}
+	}
+
+	private static void setDate1904(@Nonnull XSSFWorkbook wb, boolean date1904) {
+		CTWorkbook ctWorkbook = wb.getCTWorkbook();
+		CTWorkbookPr workbookPr = ctWorkbook.isSetWorkbookPr() ? ctWorkbook.getWorkbookPr() : ctWorkbook.addNewWorkbookPr();
+		workbookPr.setDate1904(date1904);
+	}
+
+	/**
+	 * POI kann das Datums-System eines HSSF-Workbooks nicht umstellen, es wird nur beim Lesen ausgewertet
+	 */
+	@Nonnull
+	private static HSSFWorkbook createHssfDate1904() throws IOException {
+		try (HSSFWorkbook wb = new HSSFWorkbook()) {
+			DateWindow1904Record record =
+				(DateWindow1904Record) wb.getInternalWorkbook().findFirstRecordBySid(DateWindow1904Record.sid);
+			record.setWindowing((short) 1);
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			wb.write(out);
+
+			return new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+		}
+	}
+
+	@Nonnull
+	private static Cell createCell(@Nonnull XSSFSheet sheet, int rowNum) {
+		Row row = sheet.getRow(rowNum) == null ? sheet.createRow(rowNum) : sheet.getRow(rowNum);
+		Cell cell = row.createCell(0);
+		cell.setCellValue(PATTERN);
+
+		return cell;
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 DV Bern AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * limitations under the License.
+ */
+
+package ch.dvbern.oss.lib.excelmerger.converters;
+
+import ch.dvbern.oss.lib.excelmerger.StringColorCellDTO;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class StyleCacheTest {
+
+	private static final XSSFColor RED = new XSSFColor(new byte[] { (byte) 255, 0, 0 });
+	private static final XSSFColor YELLOW = new XSSFColor(new byte[] { (byte) 255, (byte) 255, 0 });
+	private static final XSSFColor GREEN = new XSSFColor(new byte[] { 0, (byte) 255, 0 });
+	private static final XSSFColor[] TRAFFIC_LIGHT = { RED, YELLOW, GREEN };
+
+	private static final String PATTERN = "{ampel}";
+
+	@Test
+	public void testColoredCellsShareStyles() {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		XSSFSheet sheet = wb.createSheet("ampel");
+		int stylesBefore = wb.getNumCellStyles();
+		int fontsBefore = wb.getNumberOfFonts();
+
+		for (int i = 0; i < 3000; i++) {
+			XSSFColor color = TRAFFIC_LIGHT[i % 3];
+			StringColorCellDTO dto = new StringColorCellDTO("Ampel " + i, color, RED);
+			dto.setBorderColor(color);
+			dto.setBorderStyle(BorderStyle.THIN);
+			StandardConverters.STRING_COLORED_CONVERTER.setCellValue(createCell(sheet, i), PATTERN, dto);
+		}
+
+		assertEquals(stylesBefore + 3, wb.getNumCellStyles());
+		assertEquals(fontsBefore + 1, wb.getNumberOfFonts());
+
+		StyleCache cache = StyleCache.of(wb);
+		assertEquals(3, cache.size());
+		assertEquals(2997, cache.getHits());
+		assertEquals(3, cache.getMisses());
+		assertEquals(0.999, cache.getHitRate(), 0.0001);
+
+		for (int i = 0; i < 3; i++) {
+			XSSFCellStyle style = sheet.getRow(i).getCell(0).getCellStyle();
+			assertEquals(TRAFFIC_LIGHT[i], style.getFillForegroundColorColor());
+			assertEquals(FillPatternType.SOLID_FOREGROUND, style.getFillPattern());
+			assertEquals(RED, style.getFont().getXSSFColor());
+			assertEquals(TRAFFIC_LIGHT[i], style.getTopBorderXSSFColor());
+			assertEquals(BorderStyle.THIN, style.getBorderLeft());
+			assertEquals(style.getIndex(), sheet.getRow(i + 3).getCell(0).getCellStyle().getIndex());
+		}
+	}
+
+	@Test
+	public void testCellColoringConverter() {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		XSSFSheet sheet = wb.createSheet("ampel");
+		Converter<Boolean> red = StandardConverters.CELL_COLORING_CONVERTER.apply(RED);
+		Converter<Boolean> green = StandardConverters.CELL_COLORING_CONVERTER.apply(GREEN);
+
+		for (int i = 0; i < 100; i++) {
+			red.setCellValue(createCell(sheet, 2 * i), PATTERN, i % 2 == 0);
+			green.setCellValue(createCell(sheet, 2 * i + 1), PATTERN, true);
+		}
+
+		assertEquals(2, StyleCache.of(wb).size());
+		assertEquals(RED, sheet.getRow(0).getCell(0).getCellStyle().getFillForegroundColorColor());
+		assertEquals(RED, sheet.getRow(0).getCell(0).getCellStyle().getFillBackgroundColorColor());
+		assertEquals(GREEN, sheet.getRow(1).getCell(0).getCellStyle().getFillForegroundColorColor());
+		// FALSE -> Style bleibt
+		assertEquals(0, sheet.getRow(2).getCell(0).getCellStyle().getIndex());
+	}
+
+	@Test
+	public void testBaseStyleIsPartOfTheKey() {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		XSSFSheet sheet = wb.createSheet("ampel");
+		XSSFCellStyle bold = wb.createCellStyle();
+		bold.setFont(wb.createFont());
+		bold.getFont().setBold(true);
+
+		Cell plain = createCell(sheet, 0);
+		Cell boldCell = createCell(sheet, 1);
+		boldCell.setCellStyle(bold);
+
+		StandardConverters.STRING_COLORED_CONVERTER.setCellValue(plain, PATTERN, new StringColorCellDTO("a", RED));
+		StandardConverters.STRING_COLORED_CONVERTER.setCellValue(boldCell, PATTERN, new StringColorCellDTO("b", RED));
+
+		assertNotEquals(plain.getCellStyle().getIndex(), boldCell.getCellStyle().getIndex());
+		assertEquals(2, StyleCache.of(wb).size());
+	}
+
+	@Test
+	public void testCachePerWorkbook() {
+		XSSFWorkbook first = new XSSFWorkbook();
+		XSSFWorkbook second = new XSSFWorkbook();
+
+		assertSame(StyleCache.of(first), StyleCache.of(first));
+		assertNotSame(StyleCache.of(first), StyleCache.of(second));
+	}
+
+	private static Cell createCell(XSSFSheet sheet, int rowNum) {
+		Row row = sheet.createRow(rowNum);
+		Cell cell = row.createCell(0);
+		cell.setCellValue(PATTERN);
+
+		return cell;
+	}
+}